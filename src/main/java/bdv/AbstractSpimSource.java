@@ -33,6 +33,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import bdv.img.LevelStatistics;
+import bdv.img.LevelStatisticsProvider;
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import mpicbg.spim.data.generic.AbstractSpimData;
@@ -129,6 +131,8 @@ public abstract class AbstractSpimSource< T extends NumericType< T > > implement
 
 	private final int numMipmapLevels;
 
+	private final ViewerSetupImgLoader< ?, ? > setupImgLoader;
+
 	private final static int numInterpolationMethods = 2;
 
 	private final static int iNearestNeighborMethod = 0;
@@ -153,7 +157,8 @@ public abstract class AbstractSpimSource< T extends NumericType< T > > implement
 				? new HashSet<>()
 				: seq.getMissingViews().getMissingViews();
 		voxelDimensions = seq.getViewSetups().get( setupId ).getVoxelSize();
-		numMipmapLevels = ( ( ViewerImgLoader ) seq.getImgLoader() ).getSetupImgLoader( setupId ).numMipmapLevels();
+		setupImgLoader = ( ( ViewerImgLoader ) seq.getImgLoader() ).getSetupImgLoader( setupId );
+		numMipmapLevels = setupImgLoader.numMipmapLevels();
 
 		interpolatorFactories = new InterpolatorFactory[ numInterpolationMethods ];
 		interpolatorFactories[ iNearestNeighborMethod ] = new NearestNeighborInterpolatorFactory<>();
@@ -209,6 +214,18 @@ public abstract class AbstractSpimSource< T extends NumericType< T > > implement
 
 	abstract AffineTransform3D[] getMipmapTransforms();
 
+	/**
+	 * Get the intensity statistics of timepoint index {@code t} at resolution
+	 * {@code level}, if they were recorded at export and the image loader
+	 * provides them. Otherwise returns {@code null}.
+	 */
+	public LevelStatistics getLevelStatistics( final int t, final int level )
+	{
+		if ( !( setupImgLoader instanceof LevelStatisticsProvider ) || !isPresent( t ) )
+			return null;
+		return ( ( LevelStatisticsProvider ) setupImgLoader ).getLevelStatistics( timePointsOrdered.get( t ).getId(), level );
+	}
+
 	abstract RandomAccessibleInterval< T > getImage( int timepointId, int level );
 
 	@Override
@@ -77,7 +77,7 @@ import bdv.export.ProgressWriter;
 import bdv.export.ProgressWriterConsole;
 import bdv.spimdata.SpimDataMinimal;
 import bdv.spimdata.WrapBasicImgLoader;
-import bdv.spimdata.XmlIoSpimDataMinimal;
+import bdv.spimdata.XmlIoSpimDataMinimalStreaming;
 import bdv.tools.HelpDialog;
 import bdv.tools.InitializeViewerState;
 import bdv.tools.RecordMaxProjectionDialog;
@@ -548,10 +548,10 @@ public class BigDataViewer
 
 	public static BigDataViewer open( final String xmlFilename, final String windowTitle, final ProgressWriter progressWriter, final ViewerOptions options ) throws SpimDataException
 	{
-		final SpimDataMinimal spimData = new XmlIoSpimDataMinimal().load( xmlFilename );
+		final SpimDataMinimal spimData = new XmlIoSpimDataMinimalStreaming().load( xmlFilename );
 		final BigDataViewer bdv = open( spimData, windowTitle, progressWriter, options );
 		if ( !bdv.tryLoadSettings( xmlFilename ) )
-			InitializeViewerState.initBrightness( 0.001, 0.999, bdv.viewerFrame );
+			InitializeViewerState.initBrightnessInBackground( 0.001, 0.999, bdv.viewerFrame );
 		return bdv;
 	}
 
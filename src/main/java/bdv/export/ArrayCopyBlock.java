@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import bdv.img.cache.ConstantVolatileArrays.ConstantAccess;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
+
+/**
+ * Fast path for {@link CopyBlock}, for source images that are backed by
+ * primitive arrays: {@link ArrayImg}, {@link PlanarImg}, and
+ * {@link AbstractCellImg} (including the cached images of the HDF5 and N5
+ * image loaders). Blocks are copied row by row with
+ * {@code System.arraycopy}, directly from the source storage into the storage
+ * array of the block.
+ * <p>
+ * Only blocks that lie completely inside the source image are handled. For
+ * other blocks, {@link #copyBlock} returns {@code false} and the caller has to
+ * fall back to {@link CopyBlock}.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public abstract class ArrayCopyBlock
+{
+	/**
+	 * Create an {@code ArrayCopyBlock} for the given source image.
+	 *
+	 * @return an {@code ArrayCopyBlock}, or {@code null}, if {@code img} is
+	 *         not backed by primitive arrays, or {@code type} has more or
+	 *         less than one storage entity per pixel.
+	 */
+	public static ArrayCopyBlock create( final RandomAccessibleInterval< ? > img, final NativeType< ? > type )
+	{
+		final Fraction entitiesPerPixel = type.getEntitiesPerPixel();
+		if ( entitiesPerPixel.getNumerator() != 1 || entitiesPerPixel.getDenominator() != 1 )
+			return null;
+
+		if ( img instanceof ArrayImg )
+		{
+			final Object access = ( ( ArrayImg< ?, ? > ) img ).update( null );
+			if ( access instanceof ArrayDataAccess )
+				return new FromArrayImg( img, ( ( ArrayDataAccess< ? > ) access ).getCurrentStorageArray() );
+		}
+		else if ( img instanceof PlanarImg && img.numDimensions() == 3 )
+		{
+			final PlanarImg< ?, ? > planarImg = ( PlanarImg< ?, ? > ) img;
+			if ( planarImg.numSlices() > 0 && planarImg.getPlane( 0 ) instanceof ArrayDataAccess )
+				return new FromPlanarImg( planarImg );
+		}
+		else if ( img instanceof AbstractCellImg )
+		{
+			return new FromCellImg( ( AbstractCellImg< ?, ?, ?, ? > ) img );
+		}
+		return null;
+	}
+
+	final int n;
+
+	final long[] dimensions;
+
+	final int[] srcDims;
+
+	final int[] srcPos;
+
+	final int[] dstPos;
+
+	final int[] size;
+
+	ArrayCopyBlock( final RandomAccessibleInterval< ? > img )
+	{
+		n = img.numDimensions();
+		dimensions = Intervals.dimensionsAsLongArray( img );
+		srcDims = new int[ n ];
+		srcPos = new int[ n ];
+		dstPos = new int[ n ];
+		size = new int[ n ];
+	}
+
+	/**
+	 * Copy the block with the given {@code min} and {@code blockSize} from the
+	 * source image into {@code dest} (flattened, with dimensions
+	 * {@code blockSize}).
+	 *
+	 * @return {@code true} if the block was copied. {@code false}, if the
+	 *         block is not completely contained in the source image, or the
+	 *         source storage does not match {@code dest}. In this case,
+	 *         {@code dest} may have been partially written, and the block has
+	 *         to be copied by other means.
+	 */
+	public boolean copyBlock( final long[] min, final int[] blockSize, final Object dest )
+	{
+		for ( int d = 0; d < n; ++d )
+			if ( min[ d ] < 0 || min[ d ] + blockSize[ d ] > dimensions[ d ] )
+				return false;
+		return copyContainedBlock( min, blockSize, dest );
+	}
+
+	abstract boolean copyContainedBlock( final long[] min, final int[] blockSize, final Object dest );
+
+	/**
+	 * Copy an nD region of {@code size} from the flattened array {@code src}
+	 * (dimensions {@code srcDims}, starting at {@code srcPos}) to the flattened
+	 * array {@code dst} (dimensions {@code dstDims}, starting at
+	 * {@code dstPos}). {@code srcOffset} and {@code dstOffset} are added to the
+	 * flattened indices.
+	 * <p>
+	 * {@code src} may also be a {@link ConstantAccess}, in which case the
+	 * region is filled with its value, without expanding it to an array.
+	 */
+	static void copyRegion(
+			final Object src, final int srcOffset, final int[] srcDims, final int[] srcPos,
+			final Object dst, final int dstOffset, final int[] dstDims, final int[] dstPos,
+			final int[] size, final int n )
+	{
+		int srcIndex = srcOffset;
+		int dstIndex = dstOffset;
+		for ( int d = 0, srcStride = 1, dstStride = 1; d < n; ++d )
+		{
+			srcIndex += srcPos[ d ] * srcStride;
+			dstIndex += dstPos[ d ] * dstStride;
+			srcStride *= srcDims[ d ];
+			dstStride *= dstDims[ d ];
+		}
+
+		final int rowLength = size[ 0 ];
+		int numRows = 1;
+		for ( int d = 1; d < n; ++d )
+			numRows *= size[ d ];
+
+		// position of the current row, relative to the region min
+		final ConstantAccess constant = src instanceof ConstantAccess ? ( ConstantAccess ) src : null;
+		final int[] row = new int[ n ];
+		for ( int r = 0; r < numRows; ++r )
+		{
+			if ( constant != null )
+				constant.fill( dst, dstIndex, rowLength );
+			else
+				System.arraycopy( src, srcIndex, dst, dstIndex, rowLength );
+
+			// advance to next row
+			int srcStride = srcDims[ 0 ];
+			int dstStride = dstDims[ 0 ];
+			for ( int d = 1; d < n; ++d )
+			{
+				if ( ++row[ d ] < size[ d ] )
+				{
+					srcIndex += srcStride;
+					dstIndex += dstStride;
+					break;
+				}
+				row[ d ] = 0;
+				srcIndex -= ( size[ d ] - 1 ) * srcStride;
+				dstIndex -= ( size[ d ] - 1 ) * dstStride;
+				srcStride *= srcDims[ d ];
+				dstStride *= dstDims[ d ];
+			}
+		}
+	}
+
+	static boolean sameStorage( final Object src, final Object dst )
+	{
+		return src != null && dst != null && src.getClass() == dst.getClass();
+	}
+
+	private static class FromArrayImg extends ArrayCopyBlock
+	{
+		private final Object storage;
+
+		FromArrayImg( final RandomAccessibleInterval< ? > img, final Object storage )
+		{
+			super( img );
+			this.storage = storage;
+			for ( int d = 0; d < n; ++d )
+				srcDims[ d ] = ( int ) dimensions[ d ];
+		}
+
+		@Override
+		boolean copyContainedBlock( final long[] min, final int[] blockSize, final Object dest )
+		{
+			if ( !sameStorage( storage, dest ) )
+				return false;
+			for ( int d = 0; d < n; ++d )
+				srcPos[ d ] = ( int ) min[ d ];
+			copyRegion( storage, 0, srcDims, srcPos, dest, 0, blockSize, dstPos, blockSize, n );
+			return true;
+		}
+	}
+
+	private static class FromPlanarImg extends ArrayCopyBlock
+	{
+		private final PlanarImg< ?, ? > img;
+
+		FromPlanarImg( final PlanarImg< ?, ? > img )
+		{
+			super( img );
+			this.img = img;
+			srcDims[ 0 ] = ( int ) dimensions[ 0 ];
+			srcDims[ 1 ] = ( int ) dimensions[ 1 ];
+		}
+
+		@Override
+		boolean copyContainedBlock( final long[] min, final int[] blockSize, final Object dest )
+		{
+			srcPos[ 0 ] = ( int ) min[ 0 ];
+			srcPos[ 1 ] = ( int ) min[ 1 ];
+			final int dstPlaneSize = blockSize[ 0 ] * blockSize[ 1 ];
+			for ( int z = 0; z < blockSize[ 2 ]; ++z )
+			{
+				final Object plane = ( ( ArrayDataAccess< ? > ) img.getPlane( ( int ) min[ 2 ] + z ) ).getCurrentStorageArray();
+				if ( !sameStorage( plane, dest ) )
+					return false;
+				copyRegion( plane, 0, srcDims, srcPos, dest, z * dstPlaneSize, blockSize, dstPos, blockSize, 2 );
+			}
+			return true;
+		}
+	}
+
+	private static class FromCellImg extends ArrayCopyBlock
+	{
+		private final CellGrid grid;
+
+		private final RandomAccess< ? extends Cell< ? > > cells;
+
+		private final long[] gridMin;
+
+		private final long[] gridMax;
+
+		private final long[] gridPos;
+
+		private final long[] cellMin;
+
+		private final int[] cellDims;
+
+		FromCellImg( final AbstractCellImg< ?, ?, ?, ? > img )
+		{
+			super( img );
+			grid = img.getCellGrid();
+			cells = img.getCells().randomAccess();
+			gridMin = new long[ n ];
+			gridMax = new long[ n ];
+			gridPos = new long[ n ];
+			cellMin = new long[ n ];
+			cellDims = new int[ n ];
+		}
+
+		@Override
+		boolean copyContainedBlock( final long[] min, final int[] blockSize, final Object dest )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				final int c = grid.cellDimension( d );
+				gridMin[ d ] = min[ d ] / c;
+				gridMax[ d ] = ( min[ d ] + blockSize[ d ] - 1 ) / c;
+				gridPos[ d ] = gridMin[ d ];
+			}
+
+			// iterate over all source cells that intersect the block
+			while ( true )
+			{
+				grid.getCellDimensions( gridPos, cellMin, cellDims );
+				cells.setPosition( gridPos );
+				final Object access = cells.get().getData();
+				final Object storage;
+				if ( access instanceof ConstantAccess )
+				{
+					// uniform cell: fill from the value, don't expand it
+					if ( dest == null || ( ( ConstantAccess ) access ).getStorageArrayClass() != dest.getClass() )
+						return false;
+					storage = access;
+				}
+				else if ( access instanceof ArrayDataAccess )
+				{
+					storage = ( ( ArrayDataAccess< ? > ) access ).getCurrentStorageArray();
+					if ( !sameStorage( storage, dest ) )
+						return false;
+				}
+				else
+					return false;
+
+				for ( int d = 0; d < n; ++d )
+				{
+					final long from = Math.max( min[ d ], cellMin[ d ] );
+					final long to = Math.min( min[ d ] + blockSize[ d ], cellMin[ d ] + cellDims[ d ] );
+					srcPos[ d ] = ( int ) ( from - cellMin[ d ] );
+					dstPos[ d ] = ( int ) ( from - min[ d ] );
+					size[ d ] = ( int ) ( to - from );
+				}
+				copyRegion( storage, 0, cellDims, srcPos, dest, 0, blockSize, dstPos, size, n );
+
+				// advance to next cell
+				int d = 0;
+				for ( ; d < n; ++d )
+				{
+					if ( ++gridPos[ d ] <= gridMax[ d ] )
+						break;
+					gridPos[ d ] = gridMin[ d ];
+				}
+				if ( d == n )
+					return true;
+			}
+		}
+	}
+}
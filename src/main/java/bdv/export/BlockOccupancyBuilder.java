@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.util.BitSet;
+
+import bdv.img.n5.BlockOccupancy;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Collects the {@link BlockOccupancy} index of one resolution level, as its
+ * blocks are written by the exporters. {@link #setOccupied(long[])} may be
+ * called concurrently from several threads.
+ */
+public class BlockOccupancyBuilder
+{
+	private final long[] gridDimensions;
+
+	private final BitSet occupied = new BitSet();
+
+	public BlockOccupancyBuilder( final long[] gridDimensions )
+	{
+		if ( Intervals.numElements( gridDimensions ) > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "too many blocks" );
+		this.gridDimensions = gridDimensions.clone();
+	}
+
+	public synchronized void setOccupied( final long[] gridPosition )
+	{
+		occupied.set( ( int ) IntervalIndexer.positionToIndex( gridPosition, gridDimensions ) );
+	}
+
+	public synchronized BlockOccupancy build()
+	{
+		return new BlockOccupancy( gridDimensions, occupied );
+	}
+}
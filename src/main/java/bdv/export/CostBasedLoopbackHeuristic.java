@@ -0,0 +1,217 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.lang.ref.WeakReference;
+import java.util.function.Supplier;
+
+import bdv.export.ExportScalePyramid.DefaultLoopbackHeuristic;
+import bdv.export.ExportScalePyramid.LoopbackHeuristic;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Cast;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * A {@link LoopbackHeuristic} that decides based on measured read costs,
+ * instead of a fixed rule.
+ * <p>
+ * For each resolution level, the time per pixel for reading the original
+ * image and for reading back the previously written level is measured, by
+ * reading a sample slab (full XY extent where possible, centered in Z) of up
+ * to {@code samplePixels} pixels from each. Before that, a smaller region at
+ * the corner of each image is read untimed, so that one-time costs (class
+ * loading, JIT compilation, opening files) do not count against whichever
+ * input is measured first. Creating a block requires reading
+ * as many input pixels as the product of the downsampling factors with
+ * respect to the input, so the input with the smaller
+ * {@code factors * timePerPixel} is chosen. This accounts for slow sources
+ * (virtual stacks, which load whole planes), cached sources, and in-memory
+ * images, as well as for the cost of decompressing the written data.
+ * <p>
+ * The original image is measured only once (for consecutive levels of the
+ * same image). If the previously written level is not available, loopback is
+ * not used.
+ * <p>
+ * Timings differ between runs and machines, so the decisions are not
+ * deterministic (see {@link #isDeterministic()}), and this heuristic cannot be
+ * used for exports that are written by several processes.
+ */
+public class CostBasedLoopbackHeuristic implements LoopbackHeuristic
+{
+	public static final long DEFAULT_SAMPLE_PIXELS = 1 << 18;
+
+	private final long samplePixels;
+
+	private final DefaultLoopbackHeuristic fallback = new DefaultLoopbackHeuristic();
+
+	/**
+	 * The original image that {@link #originalNanosPerPixel} was measured
+	 * for. (Weak, so that the image is not kept alive after it was exported.)
+	 */
+	private WeakReference< RandomAccessibleInterval< ? > > lastOriginalImg = new WeakReference<>( null );
+
+	private double originalNanosPerPixel;
+
+	/**
+	 * Receives the sum of sampled values, so that reading them cannot be
+	 * optimized away.
+	 */
+	private static volatile double sink;
+
+	public CostBasedLoopbackHeuristic()
+	{
+		this( DEFAULT_SAMPLE_PIXELS );
+	}
+
+	/**
+	 * @param samplePixels
+	 *            how many pixels to read from each input to measure its cost.
+	 */
+	public CostBasedLoopbackHeuristic( final long samplePixels )
+	{
+		this.samplePixels = samplePixels;
+	}
+
+	@Override
+	public boolean decide( final RandomAccessibleInterval< ? > originalImg, final int[] factorsToOriginalImg, final int previousLevel, final int[] factorsToPreviousLevel, final int[] chunkSize )
+	{
+		return fallback.decide( originalImg, factorsToOriginalImg, previousLevel, factorsToPreviousLevel, chunkSize );
+	}
+
+	@Override
+	public synchronized boolean decide( final RandomAccessibleInterval< ? > originalImg, final int[] factorsToOriginalImg, final int previousLevel, final Supplier< ? extends RandomAccessibleInterval< ? > > previousLevelImgSupplier, final int[] factorsToPreviousLevel, final int[] chunkSize )
+	{
+		if ( previousLevel < 0 )
+			return false;
+		final RandomAccessibleInterval< ? > previousLevelImg = previousLevelImgSupplier.get();
+		if ( previousLevelImg == null )
+			return false;
+
+		if ( originalImg != lastOriginalImg.get() )
+		{
+			originalNanosPerPixel = measureNanosPerPixel( originalImg, samplePixels );
+			lastOriginalImg = new WeakReference<>( originalImg );
+		}
+		final double previousNanosPerPixel = measureNanosPerPixel( previousLevelImg, samplePixels );
+
+		final double originalCost = Intervals.numElements( factorsToOriginalImg ) * originalNanosPerPixel;
+		final double loopbackCost = Intervals.numElements( factorsToPreviousLevel ) * previousNanosPerPixel;
+		return loopbackCost < originalCost;
+	}
+
+	@Override
+	public boolean isDeterministic()
+	{
+		return false;
+	}
+
+	/**
+	 * Measure the average time in nanoseconds for reading one pixel of a
+	 * sample slab of {@code img}.
+	 */
+	static double measureNanosPerPixel( final RandomAccessibleInterval< ? > img, final long samplePixels )
+	{
+		sink = readAll( Cast.unchecked( img ), warmUpRegion( img, Math.max( 1, samplePixels / 16 ) ) );
+		final FinalInterval region = sampleRegion( img, samplePixels );
+		final long t0 = System.nanoTime();
+		sink = readAll( Cast.unchecked( img ), region );
+		final long t1 = System.nanoTime();
+		return ( double ) ( t1 - t0 ) / Intervals.numElements( region );
+	}
+
+	/**
+	 * Choose a region of about {@code samplePixels} pixels of {@code img}:
+	 * full extent in X and Y (scaled down if a single plane has more than
+	 * {@code samplePixels} pixels), as many planes as fit in the remaining
+	 * budget, centered in all dimensions.
+	 */
+	static FinalInterval sampleRegion( final RandomAccessibleInterval< ? > img, final long samplePixels )
+	{
+		final int n = img.numDimensions();
+		final long[] size = sampleSize( img, samplePixels );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = img.min( d ) + ( img.dimension( d ) - size[ d ] ) / 2;
+			max[ d ] = min[ d ] + size[ d ] - 1;
+		}
+		return new FinalInterval( min, max );
+	}
+
+	/**
+	 * Like {@link #sampleRegion}, but at the min corner of {@code img} instead
+	 * of centered.
+	 */
+	static FinalInterval warmUpRegion( final RandomAccessibleInterval< ? > img, final long samplePixels )
+	{
+		final int n = img.numDimensions();
+		final long[] size = sampleSize( img, samplePixels );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = img.min( d );
+			max[ d ] = min[ d ] + size[ d ] - 1;
+		}
+		return new FinalInterval( min, max );
+	}
+
+	private static long[] sampleSize( final RandomAccessibleInterval< ? > img, final long samplePixels )
+	{
+		final int n = img.numDimensions();
+		final long[] size = new long[ n ];
+		img.dimensions( size );
+		final long planePixels = size[ 0 ] * ( n > 1 ? size[ 1 ] : 1 );
+		if ( planePixels > samplePixels )
+		{
+			final double scale = Math.sqrt( ( double ) samplePixels / planePixels );
+			for ( int d = 0; d < Math.min( n, 2 ); ++d )
+				size[ d ] = Math.max( 1, ( long ) ( size[ d ] * scale ) );
+		}
+		long remaining = Math.max( 1, samplePixels / ( size[ 0 ] * ( n > 1 ? size[ 1 ] : 1 ) ) );
+		for ( int d = 2; d < n; ++d )
+		{
+			size[ d ] = Math.min( size[ d ], remaining );
+			remaining = Math.max( 1, remaining / size[ d ] );
+		}
+		return size;
+	}
+
+	private static < T extends RealType< T > > double readAll( final RandomAccessibleInterval< T > img, final FinalInterval region )
+	{
+		double sum = 0;
+		for ( final T t : Views.flatIterable( Views.interval( img, region ) ) )
+			sum += t.getRealDouble();
+		return sum;
+	}
+}
@@ -29,13 +29,19 @@
 package bdv.export;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
@@ -43,6 +49,7 @@ import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.img.SingleCellArrayImg;
 import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.NativeTypeFactory;
@@ -74,6 +81,43 @@ public class ExportScalePyramid
 				final int previousLevel,
 				final int[] factorsToPreviousLevel,
 				final int[] chunkSize );
+
+		/**
+		 * Like {@link #decide(RandomAccessibleInterval, int[], int, int[], int[])},
+		 * but with access to the previously written resolution level, for
+		 * heuristics that take the cost of reading it into account. The
+		 * default implementation ignores {@code previousLevelImg}.
+		 *
+		 * @param previousLevelImg
+		 *            opens resolution level {@code previousLevel}, read back
+		 *            from the dataset, on the first call (and returns
+		 *            {@code null} if it is not available). Heuristics that
+		 *            don't need the image should not call it.
+		 *
+		 * @return {@code true} if source pixels should be read back from
+		 *         dataset. {@code false} if source pixels should be taken from
+		 *         original image.
+		 */
+		default boolean decide(
+				final RandomAccessibleInterval< ? > originalImg,
+				final int[] factorsToOriginalImg,
+				final int previousLevel,
+				final Supplier< ? extends RandomAccessibleInterval< ? > > previousLevelImg,
+				final int[] factorsToPreviousLevel,
+				final int[] chunkSize )
+		{
+			return decide( originalImg, factorsToOriginalImg, previousLevel, factorsToPreviousLevel, chunkSize );
+		}
+
+		/**
+		 * Whether {@link #decide} always comes to the same decision for the
+		 * same arguments, in any process. Exporters that write one image from
+		 * several processes require deterministic heuristics.
+		 */
+		default boolean isDeterministic()
+		{
+			return true;
+		}
 	}
 
 	/**
@@ -97,7 +141,10 @@ public class ExportScalePyramid
 
 	/**
 	 * Callback that is called after each "plane of blocks" is written, giving
-	 * the opportunity to clear caches, etc.
+	 * the opportunity to clear caches, etc. (If the source of a resolution
+	 * level is chunked such that one input cell is used by several planes of
+	 * blocks, these planes are written together, and the callback is called
+	 * after each such slab of planes.)
 	 */
 	public interface AfterEachPlane
 	{
@@ -121,12 +168,31 @@ public class ExportScalePyramid
 		final SingleCellArrayImg< T, ? > data;
 		final int[] size;
 		final long[] position;
+		private final Runnable recycler;
 
 		Block( final SingleCellArrayImg< T, ? > data, final int[] size, final long[] position )
+		{
+			this( data, size, position, null );
+		}
+
+		Block( final SingleCellArrayImg< T, ? > data, final int[] size, final long[] position, final Runnable recycler )
 		{
 			this.data = data;
 			this.size = size.clone();
 			this.position = position.clone();
+			this.recycler = recycler;
+		}
+
+		/**
+		 * Signal that the block has been written and its storage can be
+		 * reused for other blocks. This is optional: blocks that are never
+		 * released are garbage-collected as usual. It must be called at most
+		 * once, and neither the block nor its data may be used afterwards.
+		 */
+		public void release()
+		{
+			if ( recycler != null )
+				recycler.run();
 		}
 
 		public SingleCellArrayImg< T, ? > getData()
@@ -167,6 +233,11 @@ public class ExportScalePyramid
 
 		/**
 		 * Write the given {@code dataBlock} to the {@code dataset}.
+		 * <p>
+		 * Implementations should call {@link Block#release()} when they are
+		 * done with {@code dataBlock}: either before this method returns, or,
+		 * if the block is written asynchronously, after it has been written.
+		 * This allows the storage of the block to be reused.
 		 */
 		void writeBlock(
 				final D dataset,
@@ -234,8 +305,6 @@ public class ExportScalePyramid
 			final AfterEachPlane afterEachPlane,
 			ProgressWriter progressWriter ) throws IOException
 	{
-		final BlockCreator< T > blockCreator = BlockCreator.forType( type );
-
 		if ( progressWriter == null )
 			progressWriter = new ProgressWriterNull();
 
@@ -244,11 +313,6 @@ public class ExportScalePyramid
 		int numCompletedTasks = 0;
 		progressWriter.setProgress( 0.0 );
 
-		// write image data for all views to the HDF5 file
-		final int n = 3; // TODO checkNumDimensions( img.numDimensions() );
-		final long[] dimensions = new long[ n ];
-
-		final int[][] resolutions = mipmapInfo.getExportResolutions();
 		final int[][] subdivisions = mipmapInfo.getSubdivisions();
 		final int numLevels = mipmapInfo.getNumLevels();
 
@@ -256,6 +320,299 @@ public class ExportScalePyramid
 		{
 			progressWriter.out().println( "writing level " + level );
 
+			final LevelSource< T > source = LevelSource.create( img, mipmapInfo, level, io, loopbackHeuristic );
+
+			final int[] cellDimensions = subdivisions[ level ];
+			final D dataset = io.createDataset( level, source.dimensions, cellDimensions );
+
+			final ProgressWriter subProgressWriter = new SubTaskProgressWriter(
+					progressWriter, ( double ) numCompletedTasks / numTasks,
+					( double ) ( numCompletedTasks + 1 ) / numTasks );
+			// generate one "plane" (or slab of planes) of cells after the other to avoid cache thrashing
+			final CellGrid grid = new CellGrid( source.dimensions, cellDimensions );
+			final BlockOrder order = new BlockOrder( grid.getGridDimensions(), source.getBlocksPerInputCell( cellDimensions ) );
+			final int numSlabs = order.numSlabs();
+
+			// per-worker state, reused for all planes of this level
+			final List< BlockWorker< T > > workers = new ArrayList<>( numThreads );
+			for ( int threadNum = 0; threadNum < numThreads; ++threadNum )
+				workers.add( source.createWorker( type, cellDimensions ) );
+
+			for ( int slab = 0; slab < numSlabs; ++slab )
+			{
+				final long[] blockIndices = order.slab( slab );
+				final AtomicInteger nextCellInSlab = new AtomicInteger();
+				final List< Callable< Void > > tasks = new ArrayList<>();
+				for ( final BlockWorker< T > worker : workers )
+				{
+					tasks.add( () -> {
+						for ( int i = nextCellInSlab.getAndIncrement(); i < blockIndices.length; i = nextCellInSlab.getAndIncrement() )
+						{
+							final Block< T > block = worker.createBlock( grid, blockIndices[ i ] );
+							io.writeBlock( dataset, block );
+						}
+						return null;
+					} );
+				}
+				try
+				{
+					final List< Future< Void > > futures = executorService.invokeAll( tasks );
+					for ( final Future< Void > future : futures )
+						future.get();
+				}
+				catch ( final InterruptedException | ExecutionException e )
+				{
+					// TODO...
+					e.printStackTrace();
+					throw new IOException( e );
+				}
+				if ( afterEachPlane != null )
+					afterEachPlane.afterEachPlane( source.useLoopBack );
+
+				subProgressWriter.setProgress( ( double ) slab / numSlabs );
+			}
+			io.flush();
+			progressWriter.setProgress( ( double ) ++numCompletedTasks / numTasks );
+		}
+	}
+
+	/**
+	 * Write a range of blocks of one resolution {@code level} to an existing
+	 * {@code dataset}. This is used to split the export of a large image into
+	 * independent work units (for example, to be processed by several
+	 * processes).
+	 * <p>
+	 * Blocks are identified by their flattened index in the block grid of the
+	 * level. If the level is created by loopback, the previous level must have
+	 * been written completely.
+	 *
+	 * @param img
+	 *            the (full resolution) image to be written.
+	 * @param type
+	 *            instance of the pixel type of the image.
+	 * @param mipmapInfo
+	 *            contains for each mipmap level of the setup, the subsampling
+	 *            factors and block sizes.
+	 * @param level
+	 *            the resolution level to write.
+	 * @param io
+	 *            writer for image blocks.
+	 * @param dataset
+	 *            handle to the dataset of {@code level}.
+	 * @param firstBlock
+	 *            flattened index of the first block to write.
+	 * @param numBlocks
+	 *            number of blocks to write (clipped to the number of blocks of
+	 *            the level).
+	 * @param executorService
+	 *            ExecutorService where block-creator tasks are submitted.
+	 * @param numThreads
+	 *            How many block-creator tasks to run in parallel.
+	 * @param loopbackHeuristic
+	 *            heuristic to decide whether to create the resolution level by
+	 *            reading pixels from the original image or by reading back a
+	 *            finer resolution level. may be null (in this case always use
+	 *            the original image).
+	 */
+	public static < T extends RealType< T > & NativeType< T >, D > void writeLevelBlocks(
+			final RandomAccessibleInterval< T > img,
+			final T type,
+			final ExportMipmapInfo mipmapInfo,
+			final int level,
+			final DatasetIO< D, T > io,
+			final D dataset,
+			final long firstBlock,
+			final long numBlocks,
+			final ExecutorService executorService,
+			final int numThreads,
+			final LoopbackHeuristic loopbackHeuristic ) throws IOException
+	{
+		final LevelSource< T > source = LevelSource.create( img, mipmapInfo, level, io, loopbackHeuristic );
+		final int[] cellDimensions = mipmapInfo.getSubdivisions()[ level ];
+		final CellGrid grid = new CellGrid( source.dimensions, cellDimensions );
+		final long endBlock = Math.min( firstBlock + numBlocks, Intervals.numElements( grid.getGridDimensions() ) );
+
+		final AtomicLong nextBlock = new AtomicLong( firstBlock );
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( int threadNum = 0; threadNum < numThreads; ++threadNum )
+		{
+			tasks.add( () -> {
+				final BlockWorker< T > worker = source.createWorker( type, cellDimensions );
+				for ( long i = nextBlock.getAndIncrement(); i < endBlock; i = nextBlock.getAndIncrement() )
+					io.writeBlock( dataset, worker.createBlock( grid, i ) );
+				return null;
+			} );
+		}
+		try
+		{
+			final List< Future< Void > > futures = executorService.invokeAll( tasks );
+			for ( final Future< Void > future : futures )
+				future.get();
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			throw new IOException( e );
+		}
+		io.flush();
+	}
+
+	/**
+	 * Returns the dimensions of resolution {@code level} of {@code img}.
+	 */
+	public static long[] getLevelDimensions( final RandomAccessibleInterval< ? > img, final ExportMipmapInfo mipmapInfo, final int level )
+	{
+		final int[] factor = mipmapInfo.getExportResolutions()[ level ];
+		final long[] dimensions = Intervals.dimensionsAsLongArray( img );
+		for ( int d = 0; d < dimensions.length; ++d )
+			dimensions[ d ] = Math.max( dimensions[ d ] / factor[ d ], 1 );
+		return dimensions;
+	}
+
+	private static long numElements( final long[] size, final int mind, final int maxd )
+	{
+		long numElements = 1;
+		for ( int d = mind; d < maxd; ++d )
+			numElements *= size[ d ];
+		return numElements;
+	}
+
+	/**
+	 * The order in which the blocks of one resolution level are written.
+	 * <p>
+	 * Blocks are written in slabs: a slab comprises one or more "planes" of
+	 * blocks (blocks with the same grid position in dimensions {@code >=2}).
+	 * If several output blocks are created from the same cell of a chunked
+	 * input image, blocks are grouped such that those sharing input cells are
+	 * written consecutively: a slab then spans the planes covered by one input
+	 * cell, and within the slab, blocks are written tile by tile, where a tile
+	 * is the XY extent of one input cell. With one block per input cell (or
+	 * for non-chunked input, like virtual stacks, which are loaded plane by
+	 * plane), this is simply flattened order, plane by plane.
+	 */
+	static class BlockOrder
+	{
+		private final long[] numBlocks;
+
+		private final int[] blocksPerInputCell;
+
+		private final long numPlanes;
+
+		private final long planesPerSlab;
+
+		/**
+		 * @param numBlocks
+		 *            block grid dimensions
+		 * @param blocksPerInputCell
+		 *            the number of output blocks created from one input cell
+		 *            in each dimension
+		 */
+		BlockOrder( final long[] numBlocks, final int[] blocksPerInputCell )
+		{
+			this.numBlocks = numBlocks;
+			this.blocksPerInputCell = blocksPerInputCell;
+			numPlanes = numElements( numBlocks, 2, numBlocks.length );
+			planesPerSlab = numBlocks.length == 3 ? blocksPerInputCell[ 2 ] : 1;
+		}
+
+		int numSlabs()
+		{
+			return ( int ) ( ( numPlanes + planesPerSlab - 1 ) / planesPerSlab );
+		}
+
+		/**
+		 * Get the flattened indices of the blocks in {@code slab}, in the
+		 * order they should be written.
+		 */
+		long[] slab( final int slab )
+		{
+			final long nx = numBlocks.length > 0 ? numBlocks[ 0 ] : 1;
+			final long ny = numBlocks.length > 1 ? numBlocks[ 1 ] : 1;
+			final int tx = blocksPerInputCell.length > 0 ? blocksPerInputCell[ 0 ] : 1;
+			final int ty = blocksPerInputCell.length > 1 ? blocksPerInputCell[ 1 ] : 1;
+			final long z0 = slab * planesPerSlab;
+			final long z1 = Math.min( z0 + planesPerSlab, numPlanes );
+
+			final long[] indices = new long[ ( int ) ( nx * ny * ( z1 - z0 ) ) ];
+			int i = 0;
+			for ( long y0 = 0; y0 < ny; y0 += ty )
+				for ( long x0 = 0; x0 < nx; x0 += tx )
+					for ( long z = z0; z < z1; ++z )
+						for ( long y = y0; y < Math.min( y0 + ty, ny ); ++y )
+							for ( long x = x0; x < Math.min( x0 + tx, nx ); ++x )
+								indices[ i++ ] = x + nx * ( y + ny * z );
+			return indices;
+		}
+	}
+
+	/**
+	 * The image from which the blocks of one resolution level are created
+	 * (either the original image, or a previously written level read back
+	 * through {@link DatasetIO#getImage(int)}), and the downsampling factors
+	 * relative to that image.
+	 */
+	private static class LevelSource< T extends RealType< T > & NativeType< T > >
+	{
+		final RandomAccessibleInterval< T > sourceImg;
+		final RandomAccessibleInterval< T > extendedImg;
+		final int[] factor;
+		final long[] dimensions;
+		final boolean fullResolution;
+		final boolean useLoopBack;
+
+		private LevelSource(
+				final RandomAccessibleInterval< T > sourceImg,
+				final RandomAccessibleInterval< T > extendedImg,
+				final int[] factor,
+				final long[] dimensions,
+				final boolean fullResolution,
+				final boolean useLoopBack )
+		{
+			this.sourceImg = sourceImg;
+			this.extendedImg = extendedImg;
+			this.factor = factor;
+			this.dimensions = dimensions;
+			this.fullResolution = fullResolution;
+			this.useLoopBack = useLoopBack;
+		}
+
+		/**
+		 * Returns how many output blocks of size {@code cellDimensions} are
+		 * created from one cell of {@code sourceImg} in each dimension (at
+		 * least 1). If {@code sourceImg} is not a {@code AbstractCellImg}, all
+		 * ones.
+		 */
+		int[] getBlocksPerInputCell( final int[] cellDimensions )
+		{
+			final int n = cellDimensions.length;
+			final int[] blocksPerInputCell = new int[ n ];
+			Arrays.fill( blocksPerInputCell, 1 );
+			if ( sourceImg instanceof AbstractCellImg )
+			{
+				final CellGrid inputGrid = ( ( AbstractCellImg< ?, ?, ?, ? > ) sourceImg ).getCellGrid();
+				for ( int d = 0; d < Math.min( n, inputGrid.numDimensions() ); ++d )
+					blocksPerInputCell[ d ] = Math.max( 1, inputGrid.cellDimension( d ) / ( cellDimensions[ d ] * factor[ d ] ) );
+			}
+			return blocksPerInputCell;
+		}
+
+		BlockWorker< T > createWorker( final T type, final int[] cellDimensions )
+		{
+			return new BlockWorker<>( sourceImg, extendedImg, type, cellDimensions, factor, fullResolution );
+		}
+
+		static < T extends RealType< T > & NativeType< T > > LevelSource< T > create(
+				final RandomAccessibleInterval< T > img,
+				final ExportMipmapInfo mipmapInfo,
+				final int level,
+				final DatasetIO< ?, T > io,
+				final LoopbackHeuristic loopbackHeuristic ) throws IOException
+		{
+			final int n = 3; // TODO checkNumDimensions( img.numDimensions() );
+			final long[] dimensions = new long[ n ];
+
+			final int[][] resolutions = mipmapInfo.getExportResolutions();
+			final int[][] subdivisions = mipmapInfo.getSubdivisions();
+
 			boolean useLoopBack = false;
 			int[] factorsToPreviousLevel = null;
 			RandomAccessibleInterval< T > loopbackImg = null;
@@ -293,13 +650,24 @@ public class ExportScalePyramid
 				//   individual planes are very large.
 
 				if ( previousLevel >= 0 )
-					useLoopBack = loopbackHeuristic.decide( img, resolutions[ level ], previousLevel, factorsToPreviousLevel, subdivisions[ level ] );
-
-				if ( useLoopBack )
-					loopbackImg = io.getImage( previousLevel );
-
-				if ( loopbackImg == null )
-					useLoopBack = false;
+				{
+					// the previous level is only opened if the heuristic
+					// needs it, or decides to use it
+					final PreviousLevelImg< T > previous = new PreviousLevelImg<>( io, previousLevel );
+					try
+					{
+						useLoopBack = loopbackHeuristic.decide( img, resolutions[ level ], previousLevel, previous, factorsToPreviousLevel, subdivisions[ level ] );
+						if ( useLoopBack )
+						{
+							loopbackImg = previous.get();
+							useLoopBack = loopbackImg != null;
+						}
+					}
+					catch ( final UncheckedIOException e )
+					{
+						throw e.getCause();
+					}
+				}
 			}
 
 			final RandomAccessibleInterval< T > sourceImg;
@@ -334,94 +702,142 @@ public class ExportScalePyramid
 			// TODO: pass OutOfBoundsFactory
 			final RandomAccessibleInterval< T > extendedImg = Views.interval( Views.extendBorder( sourceImg ), new FinalInterval( minRequiredInput, maxRequiredInput ) );
 
-			final int[] cellDimensions = subdivisions[ level ];
-			final D dataset = io.createDataset( level, dimensions, cellDimensions );
+			return new LevelSource<>( sourceImg, extendedImg, factor, dimensions, fullResolution, useLoopBack );
+		}
+	}
 
-			final ProgressWriter subProgressWriter = new SubTaskProgressWriter(
-					progressWriter, ( double ) numCompletedTasks / numTasks,
-					( double ) ( numCompletedTasks + 1 ) / numTasks );
-			// generate one "plane" of cells after the other to avoid cache thrashing when exporting from virtual stacks
-			final CellGrid grid = new CellGrid( dimensions, cellDimensions );
-			final long[] numCells = grid.getGridDimensions();
-			final long numBlocksPerPlane = numElements( numCells, 0, 2 );
-			final long numPlanes = numElements( numCells, 2, n );
-			for ( int plane = 0; plane < numPlanes; ++plane )
-			{
-				final long planeBaseIndex = numBlocksPerPlane * plane;
-				final AtomicInteger nextCellInPlane = new AtomicInteger();
-				final List< Callable< Void > > tasks = new ArrayList<>();
-				for ( int threadNum = 0; threadNum < numThreads; ++threadNum )
-				{
-					tasks.add( () -> {
-						final long[] currentCellMin = new long[ n ];
-						final int[] currentCellDim = new int[ n ];
-						final long[] currentCellPos = new long[ n ];
-						final long[] blockMin = new long[ n ];
-						final RandomAccess< T > in = extendedImg.randomAccess();
-
-						final Class< ? extends RealType > kl1 = type.getClass();
-						final Class< ? extends RandomAccess > kl2 = in.getClass();
-						final CopyBlock< T > copyBlock = fullResolution ? CopyBlock.create( n, kl1, kl2 ) : null;
-						final DownsampleBlock< T > downsampleBlock = fullResolution ? null : DownsampleBlock.create( cellDimensions, factor, kl1, kl2 );
-
-						for ( int i = nextCellInPlane.getAndIncrement(); i < numBlocksPerPlane; i = nextCellInPlane.getAndIncrement() )
-						{
-							final long index = planeBaseIndex + i;
-
-							grid.getCellDimensions( index, currentCellMin, currentCellDim );
-							grid.getCellGridPositionFlat( index, currentCellPos );
-							final Block< T > block = blockCreator.create( currentCellDim, currentCellMin, currentCellPos );
-
-							if ( fullResolution )
-							{
-								final RandomAccess< T > out = block.getData().randomAccess();
-								in.setPosition( currentCellMin );
-								out.setPosition( currentCellMin );
-								copyBlock.copyBlock( in, out, currentCellDim );
-							}
-							else
-							{
-								for ( int d = 0; d < n; ++d )
-									blockMin[ d ] = currentCellMin[ d ] * factor[ d ];
-								in.setPosition( blockMin );
-								downsampleBlock.downsampleBlock( in, block.getData().cursor(), currentCellDim );
-							}
+	/**
+	 * Opens a previously written resolution level through
+	 * {@link DatasetIO#getImage(int)} on the first call to {@link #get()}.
+	 */
+	private static class PreviousLevelImg< T extends NativeType< T > > implements Supplier< RandomAccessibleInterval< T > >
+	{
+		private final DatasetIO< ?, T > io;
 
-							io.writeBlock( dataset, block );
-						}
-						return null;
-					} );
-				}
+		private final int level;
+
+		private boolean opened;
+
+		private RandomAccessibleInterval< T > img;
+
+		PreviousLevelImg( final DatasetIO< ?, T > io, final int level )
+		{
+			this.io = io;
+			this.level = level;
+		}
+
+		@Override
+		public RandomAccessibleInterval< T > get()
+		{
+			if ( !opened )
+			{
 				try
 				{
-					final List< Future< Void > > futures = executorService.invokeAll( tasks );
-					for ( final Future< Void > future : futures )
-						future.get();
+					img = io.getImage( level );
 				}
-				catch ( final InterruptedException | ExecutionException e )
+				catch ( final IOException e )
 				{
-					// TODO...
-					e.printStackTrace();
-					throw new IOException( e );
+					throw new UncheckedIOException( e );
 				}
-				if ( afterEachPlane != null )
-					afterEachPlane.afterEachPlane( useLoopBack );
-
-				subProgressWriter.setProgress( ( double ) plane / numPlanes );
+				opened = true;
 			}
-			io.flush();
-			progressWriter.setProgress( ( double ) ++numCompletedTasks / numTasks );
+			return img;
 		}
 	}
 
-	private static long numElements( final long[] size, final int mind, final int maxd )
+	/**
+	 * Creates the blocks of one worker thread. Holds the {@code RandomAccess}
+	 * into the source image, the copy/downsample operation, and the position
+	 * arrays of the worker, which are reused for all blocks of a resolution
+	 * level.
+	 * <p>
+	 * If the source image is backed by primitive arrays, blocks are bulk-copied
+	 * by {@link ArrayCopyBlock} at full resolution. At lower resolutions, the
+	 * source region is bulk-copied and downsampled by a
+	 * {@link PrimitiveDownsampleBlock} kernel (if there is one for the pixel
+	 * type). {@link CopyBlock} and {@link DownsampleBlock} are used for blocks
+	 * at the image border (which need out-of-bounds values) and for other
+	 * source images.
+	 */
+	private static class BlockWorker< T extends RealType< T > & NativeType< T > >
 	{
-		long numElements = 1;
-		for ( int d = mind; d < maxd; ++d )
-			numElements *= size[ d ];
-		return numElements;
+		private final BlockCreator< T > blockCreator;
+		private final RandomAccess< T > in;
+		private final CopyBlock< T > copyBlock;
+		private final ArrayCopyBlock arrayCopyBlock;
+		private final DownsampleBlock< T > downsampleBlock;
+		private final PrimitiveDownsampleBlock primitiveDownsampleBlock;
+		private final int[] factor;
+		private final long[] currentCellMin;
+		private final int[] currentCellDim;
+		private final long[] currentCellPos;
+		private final long[] blockMin;
+
+		BlockWorker(
+				final RandomAccessibleInterval< T > sourceImg,
+				final RandomAccessibleInterval< T > extendedImg,
+				final T type,
+				final int[] cellDimensions,
+				final int[] factor,
+				final boolean fullResolution )
+		{
+			final int n = extendedImg.numDimensions();
+			blockCreator = BlockCreator.forType( type );
+			in = extendedImg.randomAccess();
+			final Class< ? extends RealType > kl1 = type.getClass();
+			final Class< ? extends RandomAccess > kl2 = in.getClass();
+			copyBlock = fullResolution ? CopyBlock.create( n, kl1, kl2 ) : null;
+			arrayCopyBlock = ArrayCopyBlock.create( sourceImg, type );
+			downsampleBlock = fullResolution ? null : DownsampleBlock.create( cellDimensions, factor, kl1, kl2 );
+			primitiveDownsampleBlock = fullResolution || arrayCopyBlock == null ? null : PrimitiveDownsampleBlock.create( cellDimensions, factor, type );
+			this.factor = factor;
+			currentCellMin = new long[ n ];
+			currentCellDim = new int[ n ];
+			currentCellPos = new long[ n ];
+			blockMin = new long[ n ];
+		}
+
+		Block< T > createBlock( final CellGrid grid, final long index )
+		{
+			grid.getCellDimensions( index, currentCellMin, currentCellDim );
+			grid.getCellGridPositionFlat( index, currentCellPos );
+			final Block< T > block = blockCreator.create( currentCellDim, currentCellMin, currentCellPos );
+
+			if ( copyBlock != null )
+			{
+				if ( arrayCopyBlock != null && arrayCopyBlock.copyBlock( currentCellMin, currentCellDim, block.getData().getStorageArray() ) )
+					return block;
+				final RandomAccess< T > out = block.getData().randomAccess();
+				in.setPosition( currentCellMin );
+				out.setPosition( currentCellMin );
+				copyBlock.copyBlock( in, out, currentCellDim );
+			}
+			else
+			{
+				for ( int d = 0; d < blockMin.length; ++d )
+					blockMin[ d ] = currentCellMin[ d ] * factor[ d ];
+				if ( primitiveDownsampleBlock != null )
+				{
+					final Object input = primitiveDownsampleBlock.getInputBuffer();
+					if ( arrayCopyBlock.copyBlock( blockMin, primitiveDownsampleBlock.getInputSize( currentCellDim ), input ) )
+					{
+						primitiveDownsampleBlock.downsample( block.getData().getStorageArray(), currentCellDim );
+						return block;
+					}
+				}
+				in.setPosition( blockMin );
+				downsampleBlock.downsampleBlock( in, block.getData().cursor(), currentCellDim );
+			}
+			return block;
+		}
 	}
 
+	/**
+	 * Creates {@link Block}s, reusing the storage of {@link Block#release()
+	 * released} blocks. Every pixel of a created block is overwritten by
+	 * {@link CopyBlock} or {@link DownsampleBlock}, so recycled storage is not
+	 * cleared.
+	 */
 	private interface BlockCreator< T extends NativeType< T > >
 	{
 		Block< T > create( final int[] blockSize, final long[] blockMin, final long[] gridPosition );
@@ -430,11 +846,19 @@ public class ExportScalePyramid
 		{
 			final A accessFactory = Cast.unchecked( ArrayDataAccessFactory.get( type ) );
 			final NativeTypeFactory< T, A > nativeTypeFactory = Cast.unchecked( type.getNativeTypeFactory() );
+
+			// released storage arrays, by number of elements
+			// (blocks may be released from other threads, e.g., an asynchronous writer)
+			final ConcurrentHashMap< Integer, ConcurrentLinkedQueue< A > > released = new ConcurrentHashMap<>();
+
 			return ( blockSize, blockMin, gridPosition ) -> {
-				final A data = accessFactory.createArray( ( int ) Intervals.numElements( blockSize ) );
+				final int numElements = ( int ) Intervals.numElements( blockSize );
+				final ConcurrentLinkedQueue< A > queue = released.computeIfAbsent( numElements, k -> new ConcurrentLinkedQueue<>() );
+				final A polled = queue.poll();
+				final A data = polled != null ? polled : accessFactory.createArray( numElements );
 				final SingleCellArrayImg< T, A > img = new SingleCellArrayImg<>( blockSize, blockMin, data, null );
 				img.setLinkedType( nativeTypeFactory.createLinkedType( img ) );
-				return new Block<>( img, blockSize, gridPosition );
+				return new Block<>( img, blockSize, gridPosition, () -> queue.add( data ) );
 			};
 		}
 	}
@@ -192,6 +192,11 @@ class HDF5Access
 		hdf5Writer.string().setAttr( Util.getSetupPath( setupId ), "dataType", dataType.toString() );
 	}
 
+	public void writeStringAttribute( final String pathName, final String key, final String value )
+	{
+		hdf5Writer.string().setAttr( pathName, key, value );
+	}
+
 	public void createDataset(
 			final String pathName,
 			final long[] dimensions,
@@ -141,6 +141,11 @@ class Hdf5BlockWriterThread extends Thread
 		put( () -> hdf5Access.writeDataType( setupIdPartition, dataType ) );
 	}
 
+	public void writeStringAttribute( final String path, final String key, final String value )
+	{
+		put( () -> hdf5Access.writeStringAttribute( path, key, value ) );
+	}
+
 	public void createDataset( final String path, final long[] dimensions, final int[] cellDimensions, final DataType dataType, final Compression compression )
 	{
 		put( () -> hdf5Access.createDataset( path, dimensions, cellDimensions, dataType, compression ) );
@@ -154,6 +159,22 @@ class Hdf5BlockWriterThread extends Thread
 		put( () -> hdf5Access.writeBlock( pathName, datasetAttributes, dataBlock ) );
 	}
 
+	/**
+	 * Enqueue writing {@code dataBlock}, and run {@code afterWrite} in the
+	 * writer thread when it has been written.
+	 */
+	public < T > void writeBlock(
+			final String pathName,
+			final DatasetAttributes datasetAttributes,
+			final DataBlock< T > dataBlock,
+			final Runnable afterWrite )
+	{
+		put( () -> {
+			hdf5Access.writeBlock( pathName, datasetAttributes, dataBlock );
+			afterWrite.run();
+		} );
+	}
+
 	public void flush()
 	{
 		waitUntilEmpty();
@@ -0,0 +1,359 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.janelia.saalfeldlab.n5.DataType;
+
+import bdv.img.LevelStatistics;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Accumulates {@link LevelStatistics} from the blocks of one resolution level,
+ * as they are written by the exporters. {@link #add(long[], Object)} may be
+ * called concurrently from several threads.
+ * <p>
+ * The level min and max only take finite values into account, so that levels
+ * with NaN or infinite values still get a useful (and serializable) range.
+ * Block min and max include infinite values and ignore NaN.
+ */
+public class LevelStatisticsBuilder
+{
+	/**
+	 * Number of histogram bins in the built {@link LevelStatistics}.
+	 */
+	private static final int NUM_BINS = 256;
+
+	/**
+	 * Block statistics are not recorded for levels with more blocks.
+	 */
+	private static final long MAX_NUM_BLOCKS = 1 << 22;
+
+	private final DataType dataType;
+
+	private final long[] gridDimensions;
+
+	private final double[] blockMinMax;
+
+	/**
+	 * Offset from value to index into the full-resolution histogram (for 8-
+	 * and 16-bit types).
+	 */
+	private final int histogramOffset;
+
+	private final int histogramSize;
+
+	/**
+	 * All full-resolution histograms. There is one per concurrent
+	 * {@link #add} call, they are summed in {@link #build}.
+	 */
+	private final ConcurrentLinkedQueue< long[] > histograms = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Histograms of {@link #histograms} that are not currently used by an
+	 * {@link #add} call.
+	 */
+	private final ConcurrentLinkedQueue< long[] > idleHistograms = new ConcurrentLinkedQueue<>();
+
+	private double min = Double.POSITIVE_INFINITY;
+
+	private double max = Double.NEGATIVE_INFINITY;
+
+	private long count;
+
+	public LevelStatisticsBuilder( final DataType dataType, final long[] gridDimensions )
+	{
+		this.dataType = dataType;
+		this.gridDimensions = gridDimensions.clone();
+		final long numBlocks = Intervals.numElements( gridDimensions );
+		if ( numBlocks <= MAX_NUM_BLOCKS )
+		{
+			blockMinMax = new double[ 2 * ( int ) numBlocks ];
+			Arrays.fill( blockMinMax, Double.NaN );
+		}
+		else
+			blockMinMax = null;
+
+		switch ( dataType )
+		{
+		case INT8:
+			histogramOffset = 128;
+			histogramSize = 256;
+			break;
+		case UINT8:
+			histogramOffset = 0;
+			histogramSize = 256;
+			break;
+		case INT16:
+			histogramOffset = 32768;
+			histogramSize = 65536;
+			break;
+		case UINT16:
+			histogramOffset = 0;
+			histogramSize = 65536;
+			break;
+		default:
+			histogramOffset = 0;
+			histogramSize = 0;
+		}
+	}
+
+	/**
+	 * Add the block at {@code gridPosition}, with the given flattened
+	 * {@code data} (a primitive array matching the {@code DataType}).
+	 */
+	public void add( final long[] gridPosition, final Object data )
+	{
+		final long[] h = histogramSize > 0 ? acquireHistogram() : null;
+		try
+		{
+			add( gridPosition, data, h );
+		}
+		finally
+		{
+			if ( h != null )
+				idleHistograms.add( h );
+		}
+	}
+
+	private long[] acquireHistogram()
+	{
+		long[] h = idleHistograms.poll();
+		if ( h == null )
+		{
+			h = new long[ histogramSize ];
+			histograms.add( h );
+		}
+		return h;
+	}
+
+	private void add( final long[] gridPosition, final Object data, final long[] h )
+	{
+		double bmin = Double.POSITIVE_INFINITY;
+		double bmax = Double.NEGATIVE_INFINITY;
+		final int n;
+		switch ( dataType )
+		{
+		case INT8:
+		case UINT8:
+		{
+			final byte[] a = ( byte[] ) data;
+			final int mask = dataType == DataType.UINT8 ? 0xff : -1;
+			int imin = Integer.MAX_VALUE;
+			int imax = Integer.MIN_VALUE;
+			for ( final byte b : a )
+			{
+				final int v = b & mask;
+				imin = Math.min( imin, v );
+				imax = Math.max( imax, v );
+				++h[ v + histogramOffset ];
+			}
+			bmin = imin;
+			bmax = imax;
+			n = a.length;
+			break;
+		}
+		case INT16:
+		case UINT16:
+		{
+			final short[] a = ( short[] ) data;
+			final int mask = dataType == DataType.UINT16 ? 0xffff : -1;
+			int imin = Integer.MAX_VALUE;
+			int imax = Integer.MIN_VALUE;
+			for ( final short s : a )
+			{
+				final int v = s & mask;
+				imin = Math.min( imin, v );
+				imax = Math.max( imax, v );
+				++h[ v + histogramOffset ];
+			}
+			bmin = imin;
+			bmax = imax;
+			n = a.length;
+			break;
+		}
+		case INT32:
+		case UINT32:
+		{
+			final int[] a = ( int[] ) data;
+			final long mask = dataType == DataType.UINT32 ? 0xffffffffL : -1L;
+			long lmin = Long.MAX_VALUE;
+			long lmax = Long.MIN_VALUE;
+			for ( final int i : a )
+			{
+				final long v = i & mask;
+				lmin = Math.min( lmin, v );
+				lmax = Math.max( lmax, v );
+			}
+			bmin = lmin;
+			bmax = lmax;
+			n = a.length;
+			break;
+		}
+		case INT64:
+		{
+			final long[] a = ( long[] ) data;
+			long lmin = Long.MAX_VALUE;
+			long lmax = Long.MIN_VALUE;
+			for ( final long v : a )
+			{
+				lmin = Math.min( lmin, v );
+				lmax = Math.max( lmax, v );
+			}
+			bmin = lmin;
+			bmax = lmax;
+			n = a.length;
+			break;
+		}
+		case UINT64:
+		{
+			final long[] a = ( long[] ) data;
+			long lmin = -1L;
+			long lmax = 0;
+			for ( final long v : a )
+			{
+				if ( Long.compareUnsigned( v, lmin ) < 0 )
+					lmin = v;
+				if ( Long.compareUnsigned( v, lmax ) > 0 )
+					lmax = v;
+			}
+			bmin = unsignedToDouble( lmin );
+			bmax = unsignedToDouble( lmax );
+			n = a.length;
+			break;
+		}
+		case FLOAT32:
+		{
+			final float[] a = ( float[] ) data;
+			for ( final float v : a )
+			{
+				if ( v < bmin )
+					bmin = v;
+				if ( v > bmax )
+					bmax = v;
+			}
+			n = a.length;
+			break;
+		}
+		case FLOAT64:
+		{
+			final double[] a = ( double[] ) data;
+			for ( final double v : a )
+			{
+				if ( v < bmin )
+					bmin = v;
+				if ( v > bmax )
+					bmax = v;
+			}
+			n = a.length;
+			break;
+		}
+		default:
+			throw new IllegalArgumentException();
+		}
+
+		if ( blockMinMax != null )
+		{
+			final int i = 2 * ( int ) IntervalIndexer.positionToIndex( gridPosition, gridDimensions );
+			blockMinMax[ i ] = bmin;
+			blockMinMax[ i + 1 ] = bmax;
+		}
+
+		// only finite values go into the level range
+		double lmin = bmin;
+		double lmax = bmax;
+		if ( !Double.isFinite( bmin ) || !Double.isFinite( bmax ) )
+		{
+			lmin = Double.POSITIVE_INFINITY;
+			lmax = Double.NEGATIVE_INFINITY;
+			if ( data instanceof float[] )
+			{
+				for ( final float v : ( float[] ) data )
+				{
+					if ( Float.isFinite( v ) )
+					{
+						lmin = Math.min( lmin, v );
+						lmax = Math.max( lmax, v );
+					}
+				}
+			}
+			else if ( data instanceof double[] )
+			{
+				for ( final double v : ( double[] ) data )
+				{
+					if ( Double.isFinite( v ) )
+					{
+						lmin = Math.min( lmin, v );
+						lmax = Math.max( lmax, v );
+					}
+				}
+			}
+		}
+
+		synchronized ( this )
+		{
+			min = Math.min( min, lmin );
+			max = Math.max( max, lmax );
+			count += n;
+		}
+	}
+
+	/**
+	 * Build statistics from the blocks added so far. If no finite values were
+	 * added, min and max of the result are infinite, and it must not be stored
+	 * (see {@link LevelStatistics#hasFiniteRange()}).
+	 */
+	public synchronized LevelStatistics build()
+	{
+		if ( histogramSize == 0 || count == 0 )
+			return new LevelStatistics( min, max, count, 0, 0, null, blockMinMax );
+
+		final long[] full = new long[ histogramSize ];
+		for ( final long[] h : histograms )
+			for ( int i = 0; i < histogramSize; ++i )
+				full[ i ] += h[ i ];
+
+		// re-bin [min, max] into (at most) NUM_BINS integer-aligned bins
+		final int first = ( int ) min + histogramOffset;
+		final int last = ( int ) max + histogramOffset;
+		final int binWidth = ( last - first + NUM_BINS ) / NUM_BINS;
+		final long[] histogram = new long[ ( last - first ) / binWidth + 1 ];
+		for ( int i = first; i <= last; ++i )
+			histogram[ ( i - first ) / binWidth ] += full[ i ];
+		return new LevelStatistics( min, max, count, min, binWidth, histogram, blockMinMax );
+	}
+
+	private static double unsignedToDouble( final long v )
+	{
+		return v >= 0 ? v : ( double ) ( v >>> 1 ) * 2 + ( v & 1 );
+	}
+}
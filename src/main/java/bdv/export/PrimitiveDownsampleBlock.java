@@ -0,0 +1,372 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Downsampling kernels for 3D blocks of {@link UnsignedByteType},
+ * {@link UnsignedShortType}, and {@link FloatType} that work directly on
+ * primitive arrays. They compute the same result as {@link DownsampleBlock}
+ * (averaging, rounding integer results half-up), but accumulate integer types
+ * in {@code int}/{@code long} instead of {@code double}, and have unrolled
+ * paths for the common factors (2,2,2) and (2,2,1).
+ * <p>
+ * The input is the flattened source region of size
+ * {@code dimensions * downsamplingFactors}, which is gathered into
+ * {@link #getInputBuffer()} (e.g., by {@link ArrayCopyBlock}). The output is
+ * the flattened storage array of the block.
+ * <p>
+ * Instances are not thread-safe.
+ */
+abstract class PrimitiveDownsampleBlock
+{
+	/**
+	 * Create a kernel for 3D blocks of (at most) {@code blockDimensions} and
+	 * the given {@code downsamplingFactors}.
+	 *
+	 * @return a kernel or {@code null}, if there is no primitive kernel for
+	 *         {@code type} or the number of dimensions.
+	 */
+	static PrimitiveDownsampleBlock create( final int[] blockDimensions, final int[] downsamplingFactors, final Object type )
+	{
+		if ( blockDimensions.length != 3 || downsamplingFactors.length != 3 )
+			return null;
+		final Class< ? > kl = type.getClass();
+		if ( kl == UnsignedByteType.class )
+			return new UnsignedBytes( blockDimensions, downsamplingFactors );
+		if ( kl == UnsignedShortType.class )
+			return new UnsignedShorts( blockDimensions, downsamplingFactors );
+		if ( kl == FloatType.class )
+			return new Floats( blockDimensions, downsamplingFactors );
+		return null;
+	}
+
+	final int fx;
+
+	final int fy;
+
+	final int fz;
+
+	final double scale;
+
+	final int[] inputSize = new int[ 3 ];
+
+	PrimitiveDownsampleBlock( final int[] downsamplingFactors )
+	{
+		fx = downsamplingFactors[ 0 ];
+		fy = downsamplingFactors[ 1 ];
+		fz = downsamplingFactors[ 2 ];
+		scale = 1.0 / Intervals.numElements( downsamplingFactors );
+	}
+
+	static int inputBufferSize( final int[] blockDimensions, final int[] downsamplingFactors )
+	{
+		return ( int ) ( Intervals.numElements( blockDimensions ) * Intervals.numElements( downsamplingFactors ) );
+	}
+
+	/**
+	 * Get the size of the input region for an output block of the given
+	 * {@code dimensions}. The returned array is reused.
+	 */
+	int[] getInputSize( final int[] dimensions )
+	{
+		inputSize[ 0 ] = dimensions[ 0 ] * fx;
+		inputSize[ 1 ] = dimensions[ 1 ] * fy;
+		inputSize[ 2 ] = dimensions[ 2 ] * fz;
+		return inputSize;
+	}
+
+	/**
+	 * Get the primitive array that the input region is gathered into.
+	 */
+	abstract Object getInputBuffer();
+
+	/**
+	 * Downsample the input region in {@link #getInputBuffer()} into
+	 * {@code output}, which has the given {@code dimensions}.
+	 */
+	abstract void downsample( final Object output, final int[] dimensions );
+
+	private static class UnsignedBytes extends PrimitiveDownsampleBlock
+	{
+		private final byte[] input;
+
+		private final long[] accumulator;
+
+		UnsignedBytes( final int[] blockDimensions, final int[] downsamplingFactors )
+		{
+			super( downsamplingFactors );
+			input = new byte[ inputBufferSize( blockDimensions, downsamplingFactors ) ];
+			accumulator = new long[ blockDimensions[ 0 ] * blockDimensions[ 1 ] ];
+		}
+
+		@Override
+		Object getInputBuffer()
+		{
+			return input;
+		}
+
+		@Override
+		void downsample( final Object output, final int[] dimensions )
+		{
+			final byte[] src = input;
+			final byte[] dst = ( byte[] ) output;
+			final int ox = dimensions[ 0 ];
+			final int oy = dimensions[ 1 ];
+			final int oz = dimensions[ 2 ];
+			final int sx = ox * fx;
+			final int sxy = sx * oy * fy;
+			final double scale = this.scale;
+
+			if ( fx == 2 && fy == 2 && ( fz == 2 || fz == 1 ) )
+			{
+				final int dz = fz == 2 ? sxy : 0;
+				for ( int z = 0, o = 0; z < oz; ++z )
+				{
+					for ( int y = 0; y < oy; ++y )
+					{
+						int i = z * fz * sxy + 2 * y * sx;
+						for ( int x = 0; x < ox; ++x, ++o, i += 2 )
+						{
+							int sum = ( src[ i ] & 0xff ) + ( src[ i + 1 ] & 0xff )
+									+ ( src[ i + sx ] & 0xff ) + ( src[ i + sx + 1 ] & 0xff );
+							if ( dz != 0 )
+								sum += ( src[ i + dz ] & 0xff ) + ( src[ i + dz + 1 ] & 0xff )
+										+ ( src[ i + dz + sx ] & 0xff ) + ( src[ i + dz + sx + 1 ] & 0xff );
+							dst[ o ] = ( byte ) ( int ) ( sum * scale + 0.5 );
+						}
+					}
+				}
+				return;
+			}
+
+			final long[] acc = accumulator;
+			final int oxy = ox * oy;
+			for ( int z = 0, i = 0, o = 0; z < oz; ++z )
+			{
+				for ( int a = 0; a < oxy; ++a )
+					acc[ a ] = 0;
+				for ( int bz = 0; bz < fz; ++bz )
+				{
+					for ( int y = 0; y < oy; ++y )
+					{
+						final int row = y * ox;
+						for ( int by = 0; by < fy; ++by )
+						{
+							for ( int x = 0; x < ox; ++x )
+							{
+								int sum = 0;
+								for ( int bx = 0; bx < fx; ++bx )
+									sum += src[ i++ ] & 0xff;
+								acc[ row + x ] += sum;
+							}
+						}
+					}
+				}
+				for ( int a = 0; a < oxy; ++a, ++o )
+					dst[ o ] = ( byte ) ( int ) ( acc[ a ] * scale + 0.5 );
+			}
+		}
+	}
+
+	private static class UnsignedShorts extends PrimitiveDownsampleBlock
+	{
+		private final short[] input;
+
+		private final long[] accumulator;
+
+		UnsignedShorts( final int[] blockDimensions, final int[] downsamplingFactors )
+		{
+			super( downsamplingFactors );
+			input = new short[ inputBufferSize( blockDimensions, downsamplingFactors ) ];
+			accumulator = new long[ blockDimensions[ 0 ] * blockDimensions[ 1 ] ];
+		}
+
+		@Override
+		Object getInputBuffer()
+		{
+			return input;
+		}
+
+		@Override
+		void downsample( final Object output, final int[] dimensions )
+		{
+			final short[] src = input;
+			final short[] dst = ( short[] ) output;
+			final int ox = dimensions[ 0 ];
+			final int oy = dimensions[ 1 ];
+			final int oz = dimensions[ 2 ];
+			final int sx = ox * fx;
+			final int sxy = sx * oy * fy;
+			final double scale = this.scale;
+
+			if ( fx == 2 && fy == 2 && ( fz == 2 || fz == 1 ) )
+			{
+				final int dz = fz == 2 ? sxy : 0;
+				for ( int z = 0, o = 0; z < oz; ++z )
+				{
+					for ( int y = 0; y < oy; ++y )
+					{
+						int i = z * fz * sxy + 2 * y * sx;
+						for ( int x = 0; x < ox; ++x, ++o, i += 2 )
+						{
+							int sum = ( src[ i ] & 0xffff ) + ( src[ i + 1 ] & 0xffff )
+									+ ( src[ i + sx ] & 0xffff ) + ( src[ i + sx + 1 ] & 0xffff );
+							if ( dz != 0 )
+								sum += ( src[ i + dz ] & 0xffff ) + ( src[ i + dz + 1 ] & 0xffff )
+										+ ( src[ i + dz + sx ] & 0xffff ) + ( src[ i + dz + sx + 1 ] & 0xffff );
+							dst[ o ] = ( short ) ( int ) ( sum * scale + 0.5 );
+						}
+					}
+				}
+				return;
+			}
+
+			final long[] acc = accumulator;
+			final int oxy = ox * oy;
+			for ( int z = 0, i = 0, o = 0; z < oz; ++z )
+			{
+				for ( int a = 0; a < oxy; ++a )
+					acc[ a ] = 0;
+				for ( int bz = 0; bz < fz; ++bz )
+				{
+					for ( int y = 0; y < oy; ++y )
+					{
+						final int row = y * ox;
+						for ( int by = 0; by < fy; ++by )
+						{
+							for ( int x = 0; x < ox; ++x )
+							{
+								long sum = 0;
+								for ( int bx = 0; bx < fx; ++bx )
+									sum += src[ i++ ] & 0xffff;
+								acc[ row + x ] += sum;
+							}
+						}
+					}
+				}
+				for ( int a = 0; a < oxy; ++a, ++o )
+					dst[ o ] = ( short ) ( int ) ( acc[ a ] * scale + 0.5 );
+			}
+		}
+	}
+
+	private static class Floats extends PrimitiveDownsampleBlock
+	{
+		private final float[] input;
+
+		private final double[] accumulator;
+
+		Floats( final int[] blockDimensions, final int[] downsamplingFactors )
+		{
+			super( downsamplingFactors );
+			input = new float[ inputBufferSize( blockDimensions, downsamplingFactors ) ];
+			accumulator = new double[ blockDimensions[ 0 ] * blockDimensions[ 1 ] ];
+		}
+
+		@Override
+		Object getInputBuffer()
+		{
+			return input;
+		}
+
+		/*
+		 * Values are summed in the same order as in DownsampleBlock
+		 * (flattened input order), to give bit-identical results.
+		 */
+		@Override
+		void downsample( final Object output, final int[] dimensions )
+		{
+			final float[] src = input;
+			final float[] dst = ( float[] ) output;
+			final int ox = dimensions[ 0 ];
+			final int oy = dimensions[ 1 ];
+			final int oz = dimensions[ 2 ];
+			final int sx = ox * fx;
+			final int sxy = sx * oy * fy;
+			final double scale = this.scale;
+
+			if ( fx == 2 && fy == 2 && ( fz == 2 || fz == 1 ) )
+			{
+				final int dz = fz == 2 ? sxy : 0;
+				for ( int z = 0, o = 0; z < oz; ++z )
+				{
+					for ( int y = 0; y < oy; ++y )
+					{
+						int i = z * fz * sxy + 2 * y * sx;
+						for ( int x = 0; x < ox; ++x, ++o, i += 2 )
+						{
+							double sum = 0;
+							sum += src[ i ];
+							sum += src[ i + 1 ];
+							sum += src[ i + sx ];
+							sum += src[ i + sx + 1 ];
+							if ( dz != 0 )
+							{
+								sum += src[ i + dz ];
+								sum += src[ i + dz + 1 ];
+								sum += src[ i + dz + sx ];
+								sum += src[ i + dz + sx + 1 ];
+							}
+							dst[ o ] = ( float ) ( sum * scale );
+						}
+					}
+				}
+				return;
+			}
+
+			final double[] acc = accumulator;
+			final int oxy = ox * oy;
+			for ( int z = 0, i = 0, o = 0; z < oz; ++z )
+			{
+				for ( int a = 0; a < oxy; ++a )
+					acc[ a ] = 0;
+				for ( int bz = 0; bz < fz; ++bz )
+				{
+					for ( int y = 0; y < oy; ++y )
+					{
+						final int row = y * ox;
+						for ( int by = 0; by < fy; ++by )
+						{
+							for ( int x = 0; x < ox; ++x )
+								for ( int bx = 0; bx < fx; ++bx )
+									acc[ row + x ] += src[ i++ ];
+						}
+					}
+				}
+				for ( int a = 0; a < oxy; ++a, ++o )
+					dst[ o ] = ( float ) ( acc[ a ] * scale );
+			}
+		}
+	}
+}
@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiFunction;
 
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.BasicViewSetup;
@@ -47,7 +48,8 @@ import mpicbg.spim.data.sequence.VoxelDimensions;
  * lengths, are roughly square in world space, and contain close to (but not
  * more than) a specified number of elements (4096 by default). It is very
  * likely that more efficient choices can be found by manual tuning, depending
- * on hardware and use case.
+ * on hardware and use case. Alternatively, chunk sizes can be proposed based
+ * on a {@link StorageCalibration} measured on the target storage.
  *
  * @author Tobias Pietzsch
  */
@@ -93,6 +95,47 @@ public class ProposeMipmaps
 	 * @return proposed mipmap settings
 	 */
 	public static ExportMipmapInfo proposeMipmaps( final BasicViewSetup setup, final int maxNumElements )
+	{
+		return proposeMipmaps( setup, ( voxelScale, size ) -> suggestPoTBlockSize( voxelScale, size, maxNumElements ) );
+	}
+
+	/**
+	 * Propose number of mipmap levels as well subsampling factors and chunk
+	 * size for each level, for each setup of the given sequence, with chunk
+	 * sizes optimized for the measured storage {@code calibration}.
+	 *
+	 * @param seq
+	 * @param calibration
+	 * @return map from setup id to proposed mipmap settings
+	 */
+	public static Map< Integer, ExportMipmapInfo > proposeMipmaps( final AbstractSequenceDescription< ?, ?, ? > seq, final StorageCalibration calibration )
+	{
+		final HashMap< Integer, ExportMipmapInfo > perSetupExportMipmapInfo = new HashMap<>();
+		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+			perSetupExportMipmapInfo.put( setup.getId(), proposeMipmaps( setup, calibration ) );
+		return perSetupExportMipmapInfo;
+	}
+
+	/**
+	 * Propose number of mipmap levels as well subsampling factors and chunk
+	 * size for each level, based on the image and voxel size of the given
+	 * setup. Subsampling factors are chosen as by
+	 * {@link #proposeMipmaps(BasicViewSetup)}. Chunk sizes are proposed such
+	 * that the estimated time for loading the chunks needed to show a slice is
+	 * minimal, given the read latency, throughput and compression measured by
+	 * {@code calibration} (see {@link StorageCalibration#proposeBlockSize}).
+	 *
+	 * @param setup
+	 * @param calibration
+	 *            measured storage and compression costs
+	 * @return proposed mipmap settings
+	 */
+	public static ExportMipmapInfo proposeMipmaps( final BasicViewSetup setup, final StorageCalibration calibration )
+	{
+		return proposeMipmaps( setup, calibration::proposeBlockSize );
+	}
+
+	private static ExportMipmapInfo proposeMipmaps( final BasicViewSetup setup, final BiFunction< double[], long[], int[] > proposeBlockSize )
 	{
 		final VoxelDimensions voxelSize = setup.getVoxelSize();
 		final double[] voxelScale = new double[ 3 ];
@@ -118,7 +161,7 @@ public class ProposeMipmaps
 				maxSize = Math.max( maxSize, size[ d ] );
 			}
 
-			subdivisions.add( suggestPoTBlockSize( voxelScale, size, maxNumElements ) );
+			subdivisions.add( proposeBlockSize.apply( voxelScale, size ) );
 
 //			System.out.println( "  level " + level );
 //			System.out.println( "    res:        " + net.imglib2.util.Util.printCoordinates( res ) );
@@ -0,0 +1,505 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.DefaultBlockWriter;
+
+import bdv.img.n5.DataTypeProperties;
+import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import mpicbg.spim.data.generic.sequence.BasicImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicSetupImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.sequence.TimePoint;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Cast;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Measured costs of storing and loading blocks on a particular storage with a
+ * particular compression, used by
+ * {@link ProposeMipmaps#proposeMipmaps(BasicViewSetup, StorageCalibration)}
+ * to propose block sizes for interactive viewing.
+ * <p>
+ * {@link #measure(RandomAccessibleInterval, Compression, File) measure()}
+ * compresses blocks of several sizes copied from sample image data and writes
+ * them as files to the target directory. When all files are written, they are
+ * read back in random order. From this, the per-file read latency and
+ * throughput of the storage (fitted linearly over the compressed block sizes),
+ * the encode and decode throughput of the codec, and the compression ratio are
+ * estimated.
+ * <p>
+ * Note that files that were written recently may still be served from the OS
+ * file cache, so the measured read latency is a lower bound for cold reads.
+ * <p>
+ * The cost model is fitted to the sampled block sizes, and is not reliable far
+ * outside of that range. Therefore, {@link #proposeBlockSize} extrapolates by
+ * at most a factor of 2 beyond the largest sample block (in each dimension,
+ * and in number of elements).
+ */
+public class StorageCalibration
+{
+	/**
+	 * Side lengths of the (cubic, where the image permits) sample blocks.
+	 */
+	private static final int[] SAMPLE_BLOCK_SIDES = { 8, 16, 32, 64 };
+
+	private static final int SAMPLES_PER_SIZE = 8;
+
+	private static final int MAX_SAMPLE_BLOCK_SIDE = SAMPLE_BLOCK_SIDES[ SAMPLE_BLOCK_SIDES.length - 1 ];
+
+	/**
+	 * Maximum side length of proposed blocks.
+	 */
+	private static final int MAX_BLOCK_SIDE = 2 * MAX_SAMPLE_BLOCK_SIDE;
+
+	private final double latencyNanos;
+
+	private final double readNanosPerByte;
+
+	private final double encodeNanosPerByte;
+
+	private final double decodeNanosPerByte;
+
+	private final double compressionRatio;
+
+	private final int bytesPerElement;
+
+	/**
+	 * @param latencyNanos
+	 *            fixed cost of reading one block file (ns)
+	 * @param readNanosPerByte
+	 *            cost of reading one byte of compressed data (ns)
+	 * @param encodeNanosPerByte
+	 *            cost of compressing one byte of raw data (ns)
+	 * @param decodeNanosPerByte
+	 *            cost of decompressing to one byte of raw data (ns)
+	 * @param compressionRatio
+	 *            compressed size divided by raw size
+	 * @param bytesPerElement
+	 *            size of one pixel (bytes)
+	 */
+	public StorageCalibration(
+			final double latencyNanos,
+			final double readNanosPerByte,
+			final double encodeNanosPerByte,
+			final double decodeNanosPerByte,
+			final double compressionRatio,
+			final int bytesPerElement )
+	{
+		this.latencyNanos = latencyNanos;
+		this.readNanosPerByte = readNanosPerByte;
+		this.encodeNanosPerByte = encodeNanosPerByte;
+		this.decodeNanosPerByte = decodeNanosPerByte;
+		this.compressionRatio = compressionRatio;
+		this.bytesPerElement = bytesPerElement;
+	}
+
+	public double getLatencyNanos()
+	{
+		return latencyNanos;
+	}
+
+	public double getReadNanosPerByte()
+	{
+		return readNanosPerByte;
+	}
+
+	public double getEncodeNanosPerByte()
+	{
+		return encodeNanosPerByte;
+	}
+
+	public double getDecodeNanosPerByte()
+	{
+		return decodeNanosPerByte;
+	}
+
+	public double getCompressionRatio()
+	{
+		return compressionRatio;
+	}
+
+	public int getBytesPerElement()
+	{
+		return bytesPerElement;
+	}
+
+	/**
+	 * Estimated time to load (read and decompress) a block of
+	 * {@code numElements} pixels (ns).
+	 */
+	public double blockLoadNanos( final long numElements )
+	{
+		final double rawBytes = ( double ) numElements * bytesPerElement;
+		return latencyNanos + rawBytes * ( compressionRatio * readNanosPerByte + decodeNanosPerByte );
+	}
+
+	/**
+	 * Estimated relative cost of showing a slice through an image stored with
+	 * the given {@code blockSize}, averaged over slices orthogonal to X, Y, Z
+	 * and one oblique slice.
+	 * <p>
+	 * A slice with unit normal {@code n} intersects blocks within a slab of
+	 * thickness {@code t = sum_d |n_d| blockSize_d voxelSize_d} (the extent of a
+	 * block along {@code n}), that is {@code area * t / blockVolume} blocks.
+	 * Of the loaded pixels, only a fraction of about {@code 1 / t} is visible
+	 * in the slice. The cost per slice area is thus
+	 * {@code t / blockVolume * blockLoadNanos}.
+	 *
+	 * @param voxelSize
+	 *            (normalized) voxel size
+	 * @param blockSize
+	 *            block size to evaluate
+	 */
+	public double sliceCost( final double[] voxelSize, final int[] blockSize )
+	{
+		final int n = blockSize.length;
+		double volume = 1;
+		long numElements = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			volume *= blockSize[ d ] * voxelSize[ d ];
+			numElements *= blockSize[ d ];
+		}
+		final double load = blockLoadNanos( numElements );
+
+		double cost = 0;
+		for ( int i = 0; i <= n; ++i )
+		{
+			// i < n: slice orthogonal to axis i, i == n: oblique slice
+			double t = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				final double nd = i == n ? 1 / Math.sqrt( n ) : ( d == i ? 1 : 0 );
+				t += nd * blockSize[ d ] * voxelSize[ d ];
+			}
+			cost += t / volume * load;
+		}
+		return cost / ( n + 1 );
+	}
+
+	/**
+	 * Propose the power-of-two block size with minimal {@link #sliceCost}.
+	 * Block sizes are limited to twice the largest sampled block: to at most
+	 * 128 (and to the next power of two of the image {@code size}) in each
+	 * dimension, and to at most {@code 2 * 64^n} elements.
+	 *
+	 * @param voxelSize
+	 *            (normalized) voxel size
+	 * @param size
+	 *            image size (may be {@code null})
+	 */
+	public int[] proposeBlockSize( final double[] voxelSize, final long[] size )
+	{
+		final int n = voxelSize.length;
+		long maxBlockElements = 2;
+		for ( int d = 0; d < n; ++d )
+			maxBlockElements *= MAX_SAMPLE_BLOCK_SIDE;
+		final int[] maxBits = new int[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			maxBits[ d ] = Integer.numberOfTrailingZeros( MAX_BLOCK_SIDE );
+			if ( size != null )
+				maxBits[ d ] = Math.min( maxBits[ d ], size[ d ] <= 1 ? 0 : 64 - Long.numberOfLeadingZeros( size[ d ] - 1 ) );
+		}
+
+		final int[] bits = new int[ n ];
+		final int[] blockSize = new int[ n ];
+		final int[] best = new int[ n ];
+		double bestCost = Double.POSITIVE_INFINITY;
+		while ( true )
+		{
+			long numElements = 1;
+			for ( int d = 0; d < n; ++d )
+			{
+				blockSize[ d ] = 1 << bits[ d ];
+				numElements *= blockSize[ d ];
+			}
+			final double cost = numElements <= maxBlockElements ? sliceCost( voxelSize, blockSize ) : Double.POSITIVE_INFINITY;
+			if ( cost < bestCost )
+			{
+				bestCost = cost;
+				System.arraycopy( blockSize, 0, best, 0, n );
+			}
+
+			int d = 0;
+			for ( ; d < n && bits[ d ] == maxBits[ d ]; ++d )
+				bits[ d ] = 0;
+			if ( d == n )
+				break;
+			++bits[ d ];
+		}
+		return best;
+	}
+
+	/**
+	 * Measure storage and compression costs with blocks from the first setup
+	 * and timepoint of {@code seq}. See
+	 * {@link #measure(RandomAccessibleInterval, Compression, File)}.
+	 */
+	public static StorageCalibration measure(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Compression compression,
+			final File directory ) throws IOException
+	{
+		final BasicImgLoader imgLoader = seq.getImgLoader();
+		final BasicViewSetup setup = seq.getViewSetupsOrdered().get( 0 );
+		final TimePoint timepoint = seq.getTimePoints().getTimePointsOrdered().get( 0 );
+		final BasicSetupImgLoader< ? > setupImgLoader = imgLoader.getSetupImgLoader( setup.getId() );
+		return measure( Cast.unchecked( setupImgLoader.getImage( timepoint.getId() ) ), compression, directory );
+	}
+
+	/**
+	 * Measure storage and compression costs, using blocks copied from
+	 * {@code img} (at random positions), compressed with {@code compression},
+	 * and written to a temporary directory in {@code directory} (which is
+	 * removed afterwards). Blocks are read back only after all of them are
+	 * written, in random order, so that reads do not immediately follow the
+	 * write of the same file.
+	 */
+	public static < T extends RealType< T > & NativeType< T > > StorageCalibration measure(
+			final RandomAccessibleInterval< T > img,
+			final Compression compression,
+			final File directory ) throws IOException
+	{
+		final T type = Util.getTypeFromInterval( img ).createVariable();
+		final DataType dataType = DataTypeProperties.n5DataType( type );
+		final int n = img.numDimensions();
+		final Random random = new Random( 1 );
+
+		final List< double[] > reads = new ArrayList<>(); // { compressedBytes, nanos }
+		double encodeNanos = 0;
+		double decodeNanos = 0;
+		double rawBytes = 0;
+		double compressedBytes = 0;
+		int bytesPerElement = 0;
+
+		final Path tmp = Files.createTempDirectory( directory.toPath(), "bdv-calibration" );
+		try
+		{
+			// write all sample blocks
+			final List< SampleFile > warmUp = new ArrayList<>();
+			final List< SampleFile > samples = new ArrayList<>();
+			for ( final int side : SAMPLE_BLOCK_SIDES )
+			{
+				final int[] blockSize = new int[ n ];
+				for ( int d = 0; d < n; ++d )
+					blockSize[ d ] = ( int ) Math.min( side, img.dimension( d ) );
+				final DatasetAttributes attributes = new DatasetAttributes( Arrays.stream( blockSize ).asLongStream().toArray(), blockSize, dataType, compression );
+
+				for ( int s = 0; s < SAMPLES_PER_SIZE; ++s )
+				{
+					final DataBlock< ? > block = copyBlock( img, type, dataType, blockSize, random );
+					bytesPerElement = bytesPerElement( block.getData() );
+
+					final ByteArrayOutputStream out = new ByteArrayOutputStream();
+					final long t0 = System.nanoTime();
+					DefaultBlockWriter.writeBlock( out, attributes, block );
+					final long t1 = System.nanoTime();
+					final byte[] bytes = out.toByteArray();
+
+					final SampleFile sample = new SampleFile( tmp.resolve( Integer.toString( warmUp.size() + samples.size() ) ), attributes, bytes.length );
+					Files.write( sample.file, bytes );
+
+					// the first sample of each size warms up code paths
+					if ( s == 0 )
+					{
+						warmUp.add( sample );
+						continue;
+					}
+					samples.add( sample );
+					encodeNanos += t1 - t0;
+					rawBytes += ( double ) block.getNumElements() * bytesPerElement;
+					compressedBytes += bytes.length;
+				}
+			}
+
+			// read them back
+			for ( final SampleFile sample : warmUp )
+				sample.read();
+			Collections.shuffle( samples, random );
+			for ( final SampleFile sample : samples )
+			{
+				final long t0 = System.nanoTime();
+				final byte[] read = Files.readAllBytes( sample.file );
+				final long t1 = System.nanoTime();
+				DefaultBlockReader.readBlock( new ByteArrayInputStream( read ), sample.attributes, new long[ n ] );
+				final long t2 = System.nanoTime();
+				decodeNanos += t2 - t1;
+				reads.add( new double[] { sample.compressedBytes, t1 - t0 } );
+			}
+		}
+		finally
+		{
+			deleteRecursively( tmp );
+		}
+
+		// fit read time = latency + compressedBytes * readNanosPerByte
+		double sx = 0, sy = 0, sxx = 0, sxy = 0;
+		for ( final double[] r : reads )
+		{
+			sx += r[ 0 ];
+			sy += r[ 1 ];
+			sxx += r[ 0 ] * r[ 0 ];
+			sxy += r[ 0 ] * r[ 1 ];
+		}
+		final int m = reads.size();
+		final double denominator = m * sxx - sx * sx;
+		double readNanosPerByte = denominator > 0 ? ( m * sxy - sx * sy ) / denominator : 0;
+		readNanosPerByte = Math.max( 0, readNanosPerByte );
+		final double latencyNanos = Math.max( 0, ( sy - readNanosPerByte * sx ) / m );
+
+		return new StorageCalibration(
+				latencyNanos,
+				readNanosPerByte,
+				encodeNanos / rawBytes,
+				decodeNanos / rawBytes,
+				compressedBytes / rawBytes,
+				bytesPerElement );
+	}
+
+	/**
+	 * A sample block written to a file.
+	 */
+	private static class SampleFile
+	{
+		final Path file;
+
+		final DatasetAttributes attributes;
+
+		final int compressedBytes;
+
+		SampleFile( final Path file, final DatasetAttributes attributes, final int compressedBytes )
+		{
+			this.file = file;
+			this.attributes = attributes;
+			this.compressedBytes = compressedBytes;
+		}
+
+		void read() throws IOException
+		{
+			final byte[] bytes = Files.readAllBytes( file );
+			DefaultBlockReader.readBlock( new ByteArrayInputStream( bytes ), attributes, new long[ attributes.getNumDimensions() ] );
+		}
+	}
+
+	private static < T extends RealType< T > & NativeType< T > > DataBlock< ? > copyBlock(
+			final RandomAccessibleInterval< T > img,
+			final T type,
+			final DataType dataType,
+			final int[] blockSize,
+			final Random random )
+	{
+		final int n = img.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			final long range = img.dimension( d ) - blockSize[ d ] + 1;
+			min[ d ] = img.min( d ) + ( long ) ( random.nextDouble() * range );
+			max[ d ] = min[ d ] + blockSize[ d ] - 1;
+		}
+
+		final ArrayImg< T, ? > copy = new ArrayImgFactory<>( type ).create( blockSize );
+		final Cursor< T > in = Views.flatIterable( Views.interval( img, new FinalInterval( min, max ) ) ).cursor();
+		final Cursor< T > out = copy.cursor();
+		while ( out.hasNext() )
+			out.next().set( in.next() );
+
+		final DataBlock< ? > block = dataType.createDataBlock( blockSize, new long[ n ] );
+		final Object data = ( ( ArrayDataAccess< ? > ) copy.update( null ) ).getCurrentStorageArray();
+		System.arraycopy( data, 0, block.getData(), 0, block.getNumElements() );
+		return block;
+	}
+
+	private static int bytesPerElement( final Object array )
+	{
+		if ( array instanceof byte[] )
+			return 1;
+		if ( array instanceof short[] )
+			return 2;
+		if ( array instanceof int[] || array instanceof float[] )
+			return 4;
+		return 8;
+	}
+
+	private static void deleteRecursively( final Path dir ) throws IOException
+	{
+		try ( Stream< Path > paths = Files.walk( dir ) )
+		{
+			final List< Path > list = new ArrayList<>();
+			paths.forEach( list::add );
+			for ( int i = list.size() - 1; i >= 0; --i )
+				Files.deleteIfExists( list.get( i ) );
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "StorageCalibration[ latency = %.1f us, read = %.1f MB/s, encode = %.1f MB/s, decode = %.1f MB/s, compression ratio = %.3f, %d bytes/pixel ]",
+				latencyNanos / 1000,
+				mbPerSecond( readNanosPerByte ),
+				mbPerSecond( encodeNanosPerByte ),
+				mbPerSecond( decodeNanosPerByte ),
+				compressionRatio,
+				bytesPerElement );
+	}
+
+	private static double mbPerSecond( final double nanosPerByte )
+	{
+		return nanosPerByte > 0 ? 1000 / nanosPerByte : Double.POSITIVE_INFINITY;
+	}
+}
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
@@ -56,6 +57,7 @@ import bdv.export.ExportScalePyramid.AfterEachPlane;
 import bdv.export.ExportScalePyramid.Block;
 import bdv.export.ExportScalePyramid.DatasetIO;
 import bdv.export.ExportScalePyramid.LoopbackHeuristic;
+import bdv.img.LevelStatistics;
 import bdv.img.hdf5.Hdf5ImageLoader;
 import bdv.img.hdf5.Partition;
 import bdv.img.hdf5.Util;
@@ -74,6 +76,7 @@ import mpicbg.spim.data.sequence.TimePoints;
 import mpicbg.spim.data.sequence.ViewId;
 import net.imglib2.Dimensions;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
@@ -486,11 +489,13 @@ public class WriteSequenceToHdf5
 	{
 		final String pathName;
 		final DatasetAttributes attributes;
+		final LevelStatisticsBuilder statistics;
 
-		public H5Dataset( final String pathName, final DatasetAttributes attributes )
+		public H5Dataset( final String pathName, final DatasetAttributes attributes, final LevelStatisticsBuilder statistics )
 		{
 			this.pathName = pathName;
 			this.attributes = attributes;
+			this.statistics = statistics;
 		}
 	}
 
@@ -504,6 +509,7 @@ public class WriteSequenceToHdf5
 		private final T type;
 		private final Function< Block< T >, DataBlock< ? > > getDataBlock;
 		private final LoopBackImageLoader loopback;
+		private final List< H5Dataset > pendingStatistics = new ArrayList<>();
 
 		public HDF5DatasetIO(
 				final Hdf5BlockWriterThread writerQueue,
@@ -563,18 +569,35 @@ public class WriteSequenceToHdf5
 		{
 			final String path = Util.getCellsPath( timepointIdPartition, setupIdPartition, level );
 			writerQueue.createDataset( path, dimensions, blockSize, dataType, compression );
-			return new H5Dataset( path, new DatasetAttributes(dimensions, blockSize, dataType, compression) );
+			final LevelStatisticsBuilder statistics = new LevelStatisticsBuilder( dataType, new CellGrid( dimensions, blockSize ).getGridDimensions() );
+			final H5Dataset dataset = new H5Dataset( path, new DatasetAttributes(dimensions, blockSize, dataType, compression), statistics );
+			synchronized ( pendingStatistics )
+			{
+				pendingStatistics.add( dataset );
+			}
+			return dataset;
 		}
 
 		@Override
 		public void writeBlock( final H5Dataset dataset, final ExportScalePyramid.Block< T > dataBlock )
 		{
-			writerQueue.writeBlock( dataset.pathName, dataset.attributes, getDataBlock.apply( dataBlock ) );
+			dataset.statistics.add( dataBlock.getGridPosition(), dataBlock.getData().getStorageArray() );
+			writerQueue.writeBlock( dataset.pathName, dataset.attributes, getDataBlock.apply( dataBlock ), dataBlock::release );
 		}
 
 		@Override
 		public void flush()
 		{
+			synchronized ( pendingStatistics )
+			{
+				for ( final H5Dataset dataset : pendingStatistics )
+				{
+					final LevelStatistics statistics = dataset.statistics.build();
+					if ( statistics.hasFiniteRange() )
+						writerQueue.writeStringAttribute( dataset.pathName, LevelStatistics.STATISTICS_KEY, statistics.toJson() );
+				}
+				pendingStatistics.clear();
+			}
 			writerQueue.flush();
 		}
 
@@ -0,0 +1,776 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export.n5;
+
+import static bdv.img.n5.BdvN5Format.DATA_TYPE_KEY;
+import static bdv.img.n5.BdvN5Format.DOWNSAMPLING_FACTORS_KEY;
+import static bdv.img.n5.BdvN5Format.getPathName;
+import static bdv.img.n5.DataTypeProperties.n5DataType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DefaultBlockWriter;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+import bdv.export.ExportMipmapInfo;
+import bdv.export.ExportScalePyramid;
+import bdv.export.ExportScalePyramid.LoopbackHeuristic;
+import bdv.export.ProgressWriter;
+import bdv.export.ProgressWriterNull;
+import bdv.export.n5.WriteSequenceToN5.N5Dataset;
+import bdv.export.n5.WriteSequenceToN5.N5DatasetIO;
+import bdv.img.LevelStatistics;
+import bdv.img.n5.BlockOccupancy;
+import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import mpicbg.spim.data.generic.sequence.BasicImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicSetupImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.ViewId;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Cast;
+import net.imglib2.util.Intervals;
+
+/**
+ * Export a sequence to a BDV N5 container cooperatively from several
+ * independent processes (on one machine, or on several machines sharing a
+ * file system). Every process calls
+ * {@link #writeN5File(AbstractSequenceDescription, Map, Compression, File, LoopbackHeuristic, int, int, long, ProgressWriter)
+ * writeN5File} with identical arguments.
+ * <p>
+ * The export is split into work units of (timepoint, setup, level, range of
+ * blocks). Processes coordinate through marker files in the
+ * {@value #COORDINATION_DIR} directory of the container:
+ * <ul>
+ * <li>The first process to create {@code prepare.claim} creates all groups and
+ * datasets and writes the mipmap metadata. Other processes wait for
+ * {@code prepare.done}.</li>
+ * <li>A work unit is claimed by atomically creating its {@code .claim} file,
+ * which contains a token identifying the claiming process, and marked
+ * complete by creating its {@code .done} file. Before every block, a process
+ * touches all claims it holds, so that the claim of a crashed process can be
+ * detected (by its age) and taken over. A process that finds one of its
+ * claims taken over abandons that unit.</li>
+ * <li>Blocks are written to a temporary file which is then renamed, so a
+ * block file is always complete, even if two processes write the same block
+ * (after a takeover).</li>
+ * <li>Work units are processed level by level. With a loopback heuristic, a
+ * unit of level {@code l} waits until the previous levels of its view are
+ * complete.</li>
+ * <li>When all units are done, the first process to create
+ * {@code finish.claim} writes the consolidated metadata and
+ * {@code finish.done}.</li>
+ * </ul>
+ * An interrupted export can be resumed by starting processes again: units
+ * which are done are skipped. The {@value #COORDINATION_DIR} directory can be
+ * removed when the export is finished.
+ */
+public class DistributedWriteSequenceToN5
+{
+	/**
+	 * Name of the directory (in the N5 container) that contains the marker
+	 * files.
+	 */
+	public static final String COORDINATION_DIR = "bdv-export";
+
+	private static final String PREPARE = "prepare";
+
+	private static final String FINISH = "finish";
+
+	private static final String CLAIM = ".claim";
+
+	private static final String DONE = ".done";
+
+	private static final long POLL_INTERVAL_MILLIS = 500;
+
+	/**
+	 * Create (or contribute to creating) a n5 group containing image data from
+	 * all views and all timepoints in a chunked, mipmaped representation.
+	 *
+	 * @param seq
+	 *            description of the sequence to be stored as n5.
+	 * @param perSetupMipmapInfo
+	 *            this maps from setup {@link BasicViewSetup#getId() id} to
+	 *            {@link ExportMipmapInfo} for that setup.
+	 * @param compression
+	 *            n5 compression scheme.
+	 * @param n5File
+	 *            n5 root.
+	 * @param loopbackHeuristic
+	 *            heuristic to decide whether to create each resolution level by
+	 *            reading pixels from the original image or by reading back a
+	 *            finer resolution level already written to the n5. may be null
+	 *            (in this case always use the original image). Must be
+	 *            {@link LoopbackHeuristic#isDeterministic() deterministic},
+	 *            because all processes must come to the same decision.
+	 * @param numCellCreatorThreads
+	 *            The number of threads of this process that will be
+	 *            instantiated to generate cell data.
+	 * @param blocksPerWorkUnit
+	 *            the maximum number of blocks in one work unit.
+	 * @param staleClaimTimeoutMillis
+	 *            a claimed work unit which has not made progress for this long
+	 *            is taken over by another process. This should be well above
+	 *            the time it takes to write one block (and to create all
+	 *            datasets). If {@code <= 0}, claims are never taken over.
+	 * @param progressWriter
+	 *            completion ratio and status output will be directed here.
+	 * @return {@code true} if this process wrote the final metadata (i.e., it
+	 *         is the process that should write the XML for the dataset).
+	 */
+	public static boolean writeN5File(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final Compression compression,
+			final File n5File,
+			final LoopbackHeuristic loopbackHeuristic,
+			final int numCellCreatorThreads,
+			final int blocksPerWorkUnit,
+			final long staleClaimTimeoutMillis,
+			ProgressWriter progressWriter ) throws IOException
+	{
+		if ( loopbackHeuristic != null && !loopbackHeuristic.isDeterministic() )
+			throw new IllegalArgumentException( "The loopback heuristic must be deterministic: " + loopbackHeuristic.getClass().getSimpleName() );
+
+		if ( progressWriter == null )
+			progressWriter = new ProgressWriterNull();
+		progressWriter.setProgress( 0 );
+
+		final BasicImgLoader imgLoader = seq.getImgLoader();
+		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+		{
+			final Object type = imgLoader.getSetupImgLoader( setup.getId() ).getImageType();
+			if ( !( type instanceof RealType &&
+					type instanceof NativeType &&
+					n5DataType( Cast.unchecked( type ) ) != null ) )
+				throw new IllegalArgumentException( "Unsupported pixel type: " + type.getClass().getSimpleName() );
+		}
+
+		final List< Integer > timepointIds = seq.getTimePoints().getTimePointsOrdered().stream()
+				.map( TimePoint::getId )
+				.collect( Collectors.toList() );
+		final List< Integer > setupIds = seq.getViewSetupsOrdered().stream()
+				.map( BasicViewSetup::getId )
+				.collect( Collectors.toList() );
+
+		final N5Writer n5 = new N5FSWriter( n5File.getAbsolutePath() );
+		final Markers markers = new Markers( n5File.toPath().resolve( COORDINATION_DIR ), staleClaimTimeoutMillis );
+
+		// create groups, datasets, and mipmap metadata (once)
+		if ( markers.claimOrAwaitDone( PREPARE ) )
+		{
+			progressWriter.out().println( "preparing datasets" );
+			prepare( seq, perSetupMipmapInfo, compression, n5, timepointIds, setupIds );
+			markers.markDone( PREPARE );
+		}
+
+		// enumerate work units, level by level
+		final List< WorkUnit > units = new ArrayList<>();
+		int maxNumLevels = 0;
+		for ( final int setupId : setupIds )
+			maxNumLevels = Math.max( maxNumLevels, perSetupMipmapInfo.get( setupId ).getNumLevels() );
+		for ( int level = 0; level < maxNumLevels; ++level )
+			for ( final int timepointId : timepointIds )
+				for ( final int setupId : setupIds )
+				{
+					if ( !seq.getViewDescriptions().get( new ViewId( timepointId, setupId ) ).isPresent() )
+						continue;
+					final ExportMipmapInfo mipmapInfo = perSetupMipmapInfo.get( setupId );
+					if ( level >= mipmapInfo.getNumLevels() )
+						continue;
+					final long[] dimensions = n5.getDatasetAttributes( getPathName( setupId, timepointId, level ) ).getDimensions();
+					final long numBlocks = Intervals.numElements( new CellGrid( dimensions, mipmapInfo.getSubdivisions()[ level ] ).getGridDimensions() );
+					for ( long firstBlock = 0; firstBlock < numBlocks; firstBlock += blocksPerWorkUnit )
+						units.add( new WorkUnit( timepointId, setupId, level, firstBlock, Math.min( blocksPerWorkUnit, numBlocks - firstBlock ) ) );
+				}
+
+		final ExecutorService executorService = Executors.newFixedThreadPool( numCellCreatorThreads );
+		try
+		{
+			final UnitWriter writer = new UnitWriter( seq, perSetupMipmapInfo, n5, n5File.toPath(), compression, units, markers, executorService, numCellCreatorThreads, loopbackHeuristic, progressWriter );
+
+			// claim and process units until all units are done
+			int numDone = 0;
+			while ( numDone < units.size() )
+			{
+				numDone = 0;
+				boolean processed = false;
+				for ( final WorkUnit unit : units )
+				{
+					if ( markers.isDone( unit.name() ) )
+						++numDone;
+					else if ( markers.claim( unit.name() ) )
+					{
+						try
+						{
+							writer.process( unit );
+							++numDone;
+						}
+						catch ( final IOException e )
+						{
+							final ClaimLostException lost = ClaimLostException.find( e );
+							if ( lost == null )
+								throw e;
+							progressWriter.out().println( "claim of " + lost.getName() + " was taken over, abandoning " + unit.name() );
+						}
+						processed = true;
+					}
+					progressWriter.setProgress( ( double ) numDone / units.size() );
+				}
+				if ( !processed && numDone < units.size() )
+					sleep();
+			}
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+
+		// consolidated metadata, for fast opening of many timepoints (once)
+		final boolean finishing = markers.claimOrAwaitDone( FINISH );
+		if ( finishing )
+		{
+			for ( final int setupId : setupIds )
+				WriteSequenceToN5.writeConsolidatedAttributes( n5, setupId, timepointIds, perSetupMipmapInfo.get( setupId ).getNumLevels() );
+			markers.markDone( FINISH );
+		}
+
+		progressWriter.setProgress( 1.0 );
+		return finishing;
+	}
+
+	private static void prepare(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+			final Compression compression,
+			final N5Writer n5,
+			final List< Integer > timepointIds,
+			final List< Integer > setupIds ) throws IOException
+	{
+		final BasicImgLoader imgLoader = seq.getImgLoader();
+		for ( final int setupId : setupIds )
+		{
+			final ExportMipmapInfo mipmapInfo = perSetupMipmapInfo.get( setupId );
+			final String pathName = getPathName( setupId );
+			final DataType dataType = n5DataType( Cast.unchecked( imgLoader.getSetupImgLoader( setupId ).getImageType() ) );
+			n5.createGroup( pathName );
+			n5.setAttribute( pathName, DOWNSAMPLING_FACTORS_KEY, mipmapInfo.getExportResolutions() );
+			n5.setAttribute( pathName, DATA_TYPE_KEY, dataType );
+
+			for ( final int timepointId : timepointIds )
+			{
+				if ( !seq.getViewDescriptions().get( new ViewId( timepointId, setupId ) ).isPresent() )
+					continue;
+				final RandomAccessibleInterval< ? > img = imgLoader.getSetupImgLoader( setupId ).getImage( timepointId );
+				for ( int level = 0; level < mipmapInfo.getNumLevels(); ++level )
+				{
+					final long[] dimensions = ExportScalePyramid.getLevelDimensions( img, mipmapInfo, level );
+					final String levelPathName = getPathName( setupId, timepointId, level );
+					n5.createDataset( levelPathName, dimensions, mipmapInfo.getSubdivisions()[ level ], dataType, compression );
+					// blocks are written by several processes, so no occupancy index or statistics are recorded
+					n5.removeAttribute( levelPathName, BlockOccupancy.OCCUPANCY_KEY );
+					n5.removeAttribute( levelPathName, LevelStatistics.STATISTICS_KEY );
+				}
+				WriteSequenceToN5.writeTimepointAttributes( n5, seq, setupId, timepointId, mipmapInfo.getExportResolutions() );
+			}
+		}
+	}
+
+	/**
+	 * Writes claimed work units of this process.
+	 */
+	private static class UnitWriter
+	{
+		private final AbstractSequenceDescription< ?, ?, ? > seq;
+		private final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo;
+		private final N5Writer n5;
+		private final Path n5Path;
+		private final Compression compression;
+		private final List< WorkUnit > units;
+		private final Markers markers;
+		private final ExecutorService executorService;
+		private final int numThreads;
+		private final LoopbackHeuristic loopbackHeuristic;
+		private final ProgressWriter progressWriter;
+
+		UnitWriter(
+				final AbstractSequenceDescription< ?, ?, ? > seq,
+				final Map< Integer, ExportMipmapInfo > perSetupMipmapInfo,
+				final N5Writer n5,
+				final Path n5Path,
+				final Compression compression,
+				final List< WorkUnit > units,
+				final Markers markers,
+				final ExecutorService executorService,
+				final int numThreads,
+				final LoopbackHeuristic loopbackHeuristic,
+				final ProgressWriter progressWriter )
+		{
+			this.seq = seq;
+			this.perSetupMipmapInfo = perSetupMipmapInfo;
+			this.n5 = n5;
+			this.n5Path = n5Path;
+			this.compression = compression;
+			this.units = units;
+			this.markers = markers;
+			this.executorService = executorService;
+			this.numThreads = numThreads;
+			this.loopbackHeuristic = loopbackHeuristic;
+			this.progressWriter = progressWriter;
+		}
+
+		/**
+		 * Write the blocks of the claimed {@code unit} and mark it done.
+		 * <p>
+		 * With a loopback heuristic, the blocks of {@code unit} may be computed
+		 * from previous levels of the same view. These are waited for first
+		 * (while keeping all claims of this process alive). Previous-level
+		 * units which are not claimed (any more) are processed right away.
+		 * <p>
+		 * If the claim on {@code unit} (or on a unit that this one waits for)
+		 * is taken over, a {@link ClaimLostException} is thrown (possibly
+		 * wrapped) and the claim on {@code unit} is released.
+		 */
+		void process( final WorkUnit unit ) throws IOException
+		{
+			try
+			{
+				if ( loopbackHeuristic != null )
+					awaitPreviousLevels( unit );
+				progressWriter.out().println( "processing " + unit.name() );
+				write( unit );
+				markers.markDone( unit.name() );
+			}
+			finally
+			{
+				markers.release( unit.name() );
+			}
+		}
+
+		private void awaitPreviousLevels( final WorkUnit unit ) throws IOException
+		{
+			for ( final WorkUnit other : units )
+			{
+				if ( other.level >= unit.level )
+					break;
+				if ( other.timepointId != unit.timepointId || other.setupId != unit.setupId )
+					continue;
+				while ( !markers.isDone( other.name() ) )
+				{
+					if ( markers.claim( other.name() ) )
+					{
+						try
+						{
+							process( other );
+						}
+						catch ( final IOException e )
+						{
+							// if someone else took over other, keep waiting for it
+							final ClaimLostException lost = ClaimLostException.find( e );
+							if ( lost == null || !lost.getName().equals( other.name() ) )
+								throw e;
+						}
+					}
+					else
+					{
+						markers.touchAll();
+						sleep();
+					}
+				}
+			}
+		}
+
+		private < T extends RealType< T > & NativeType< T > > void write( final WorkUnit unit ) throws IOException
+		{
+			final BasicSetupImgLoader< T > setupImgLoader = Cast.unchecked( seq.getImgLoader().getSetupImgLoader( unit.setupId ) );
+			final RandomAccessibleInterval< T > img = setupImgLoader.getImage( unit.timepointId );
+			final T type = setupImgLoader.getImageType();
+			final N5DatasetIO< T > io = new ClaimedDatasetIO<>( n5, n5Path, compression, unit.setupId, unit.timepointId, type, markers );
+			final String pathName = getPathName( unit.setupId, unit.timepointId, unit.level );
+			final N5Dataset dataset = new N5Dataset( pathName, n5.getDatasetAttributes( pathName ) );
+			ExportScalePyramid.writeLevelBlocks(
+					img, type, perSetupMipmapInfo.get( unit.setupId ), unit.level, io, dataset,
+					unit.firstBlock, unit.numBlocks,
+					executorService, numThreads, loopbackHeuristic );
+		}
+	}
+
+	/**
+	 * Writes blocks only while this process holds all its claims, and writes
+	 * each block to a temporary file that is then renamed to the block file.
+	 */
+	private static class ClaimedDatasetIO< T extends RealType< T > & NativeType< T > > extends N5DatasetIO< T >
+	{
+		private final Path n5Path;
+
+		private final Markers markers;
+
+		ClaimedDatasetIO(
+				final N5Writer n5,
+				final Path n5Path,
+				final Compression compression,
+				final int setupId,
+				final int timepointId,
+				final T type,
+				final Markers markers )
+		{
+			super( n5, compression, setupId, timepointId, type, false );
+			this.n5Path = n5Path;
+			this.markers = markers;
+		}
+
+		@Override
+		public void writeBlock( final N5Dataset dataset, final ExportScalePyramid.Block< T > dataBlock ) throws IOException
+		{
+			markers.touchAll();
+			super.writeBlock( dataset, dataBlock );
+		}
+
+		@Override
+		protected void writeDataBlock( final N5Dataset dataset, final DataBlock< ? > block ) throws IOException
+		{
+			final Path path = blockPath( dataset.pathName, block.getGridPosition() );
+			Files.createDirectories( path.getParent() );
+			final Path tmp = path.resolveSibling( path.getFileName() + "." + markers.getOwner() + ".tmp" );
+			try
+			{
+				try ( OutputStream out = Files.newOutputStream( tmp ) )
+				{
+					DefaultBlockWriter.writeBlock( out, dataset.attributes, block );
+				}
+				Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			finally
+			{
+				Files.deleteIfExists( tmp );
+			}
+		}
+
+		@Override
+		protected void deleteDataBlock( final N5Dataset dataset, final long[] gridPosition ) throws IOException
+		{
+			Files.deleteIfExists( blockPath( dataset.pathName, gridPosition ) );
+		}
+
+		private Path blockPath( final String pathName, final long[] gridPosition )
+		{
+			Path path = n5Path.resolve( pathName );
+			for ( final long p : gridPosition )
+				path = path.resolve( Long.toString( p ) );
+			return path;
+		}
+	}
+
+	private static void sleep() throws IOException
+	{
+		try
+		{
+			Thread.sleep( POLL_INTERVAL_MILLIS );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+	}
+
+	private static class WorkUnit
+	{
+		final int timepointId;
+		final int setupId;
+		final int level;
+		final long firstBlock;
+		final long numBlocks;
+
+		WorkUnit( final int timepointId, final int setupId, final int level, final long firstBlock, final long numBlocks )
+		{
+			this.timepointId = timepointId;
+			this.setupId = setupId;
+			this.level = level;
+			this.firstBlock = firstBlock;
+			this.numBlocks = numBlocks;
+		}
+
+		String name()
+		{
+			return String.format( "t%d-s%d-l%d-b%d", timepointId, setupId, level, firstBlock );
+		}
+	}
+
+	/**
+	 * Thrown when a claim of this process has been taken over by another
+	 * process.
+	 */
+	static class ClaimLostException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+
+		ClaimLostException( final String name )
+		{
+			super( "claim of " + name + " was taken over" );
+			this.name = name;
+		}
+
+		String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Find a {@code ClaimLostException} in the cause chain of {@code t}
+		 * (work unit exceptions come back wrapped from the executor).
+		 */
+		static ClaimLostException find( Throwable t )
+		{
+			for ( ; t != null; t = t.getCause() )
+				if ( t instanceof ClaimLostException )
+					return ( ClaimLostException ) t;
+			return null;
+		}
+	}
+
+	/**
+	 * Claim and done marker files in the coordination directory.
+	 * <p>
+	 * Claims rely on {@link Files#createFile} failing atomically if the file
+	 * already exists. Taking over a stale claim relies on {@link Files#move}
+	 * of the claim file succeeding for only one process. Each claim file
+	 * contains the token of its owner, so that a process whose claim was
+	 * taken over notices that (and does not keep the new claim alive).
+	 * <p>
+	 * A process may lose a claim between checking it and writing a block or
+	 * marking the unit done. Then both processes write the same blocks, which
+	 * is harmless, because blocks are deterministic and replaced atomically.
+	 */
+	static class Markers
+	{
+		private final Path dir;
+
+		private final long staleClaimTimeoutMillis;
+
+		private final String owner = UUID.randomUUID().toString();
+
+		/**
+		 * Names of the claims currently held by this process.
+		 */
+		private final Set< String > held = ConcurrentHashMap.newKeySet();
+
+		Markers( final Path dir, final long staleClaimTimeoutMillis ) throws IOException
+		{
+			this.dir = dir;
+			this.staleClaimTimeoutMillis = staleClaimTimeoutMillis;
+			Files.createDirectories( dir );
+		}
+
+		/**
+		 * Token that identifies the claims of this process.
+		 */
+		String getOwner()
+		{
+			return owner;
+		}
+
+		boolean isDone( final String name )
+		{
+			return Files.exists( dir.resolve( name + DONE ) );
+		}
+
+		/**
+		 * Try to claim {@code name}. Returns {@code true} if the claim
+		 * succeeded, either because nobody claimed {@code name} before, or
+		 * because an existing claim was stale and could be taken over.
+		 */
+		boolean claim( final String name ) throws IOException
+		{
+			if ( isDone( name ) )
+				return false;
+			final Path claim = dir.resolve( name + CLAIM );
+			if ( tryCreateClaim( name ) )
+				return true;
+			if ( staleClaimTimeoutMillis > 0 && !isDone( name ) )
+			{
+				try
+				{
+					final long age = System.currentTimeMillis() - Files.getLastModifiedTime( claim ).toMillis();
+					if ( age > staleClaimTimeoutMillis )
+					{
+						Files.move( claim, dir.resolve( name + CLAIM + "." + UUID.randomUUID() + ".stale" ) );
+						return tryCreateClaim( name );
+					}
+				}
+				catch ( final NoSuchFileException e )
+				{
+					// the claim was taken over by someone else
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Returns {@code true} if this process owns the claim on
+		 * {@code name}.
+		 */
+		boolean holds( final String name ) throws IOException
+		{
+			try
+			{
+				return Arrays.equals( Files.readAllBytes( dir.resolve( name + CLAIM ) ), owner.getBytes( StandardCharsets.UTF_8 ) );
+			}
+			catch ( final NoSuchFileException e )
+			{
+				return false;
+			}
+		}
+
+		/**
+		 * Refresh all claims held by this process.
+		 *
+		 * @throws ClaimLostException
+		 *             if one of them has been taken over by another process.
+		 *             That claim is no longer held.
+		 */
+		void touchAll() throws IOException
+		{
+			final FileTime now = FileTime.fromMillis( System.currentTimeMillis() );
+			for ( final String name : held )
+			{
+				if ( !holds( name ) )
+				{
+					held.remove( name );
+					throw new ClaimLostException( name );
+				}
+				try
+				{
+					Files.setLastModifiedTime( dir.resolve( name + CLAIM ), now );
+				}
+				catch ( final NoSuchFileException e )
+				{
+					held.remove( name );
+					throw new ClaimLostException( name );
+				}
+			}
+		}
+
+		/**
+		 * Mark the claimed {@code name} done.
+		 *
+		 * @throws ClaimLostException
+		 *             if the claim has been taken over by another process.
+		 */
+		void markDone( final String name ) throws IOException
+		{
+			if ( !holds( name ) )
+			{
+				held.remove( name );
+				throw new ClaimLostException( name );
+			}
+			tryCreate( dir.resolve( name + DONE ) );
+			held.remove( name );
+		}
+
+		/**
+		 * Stop keeping the claim on {@code name} alive. If it was not marked
+		 * done and is still owned by this process, the claim file is removed,
+		 * so that other processes can claim {@code name} right away.
+		 */
+		void release( final String name ) throws IOException
+		{
+			if ( held.remove( name ) && !isDone( name ) && holds( name ) )
+				Files.deleteIfExists( dir.resolve( name + CLAIM ) );
+		}
+
+		/**
+		 * Wait until {@code name} is done, or until it can be claimed (by
+		 * this process, either because nobody claimed it, or because the
+		 * existing claim is stale). Returns {@code true} if {@code name} was
+		 * claimed.
+		 */
+		boolean claimOrAwaitDone( final String name ) throws IOException
+		{
+			while ( !isDone( name ) )
+			{
+				if ( claim( name ) )
+					return true;
+				sleep();
+			}
+			return false;
+		}
+
+		private boolean tryCreateClaim( final String name ) throws IOException
+		{
+			final Path claim = dir.resolve( name + CLAIM );
+			if ( !tryCreate( claim ) )
+				return false;
+			Files.write( claim, owner.getBytes( StandardCharsets.UTF_8 ) );
+			held.add( name );
+			return true;
+		}
+
+		private static boolean tryCreate( final Path path ) throws IOException
+		{
+			try
+			{
+				Files.createFile( path );
+				return true;
+			}
+			catch ( final FileAlreadyExistsException e )
+			{
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,507 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export.n5;
+
+import static bdv.img.n5.BdvN5Format.DATA_TYPE_KEY;
+import static bdv.img.n5.BdvN5Format.DOWNSAMPLING_FACTORS_KEY;
+import static bdv.img.n5.BdvN5Format.getPathName;
+import static bdv.img.n5.DataTypeProperties.n5DataType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+import bdv.export.ArrayCopyBlock;
+import bdv.export.ProgressWriter;
+import bdv.export.ProgressWriterNull;
+import bdv.export.SubTaskProgressWriter;
+import bdv.img.hdf5.Hdf5ImageLoader;
+import bdv.img.n5.N5ImageLoader;
+import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
+import mpicbg.spim.data.generic.sequence.BasicImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.sequence.MultiResolutionSetupImgLoader;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.ViewId;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Cast;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Convert an existing BDV HDF5 or N5 dataset to N5, block by block, without
+ * recomputing the resolution pyramid.
+ * <p>
+ * All resolution levels of the source are copied as they are, and the mipmap
+ * metadata (downsampling factors, data type) is taken over from the source.
+ * Depending on the source, each block is transferred in the cheapest possible
+ * way:
+ * <ul>
+ * <li>N5 source, same block size, same compression: the block files are copied
+ * byte by byte, without decoding.</li>
+ * <li>N5 source, same block size, different compression: blocks are read and
+ * written with the new compression, without going through the image.</li>
+ * <li>otherwise (HDF5 source, or different block size): blocks are copied from
+ * the cell storage of the source image into the target block arrays (see
+ * {@link ArrayCopyBlock}).</li>
+ * </ul>
+ * HDF5 chunks are always decoded, because they are stored little-endian (and
+ * possibly with shuffle filter), whereas N5 blocks are big-endian.
+ * <p>
+ * Blocks are transferred in parallel. The XML for the resulting dataset must
+ * be written separately (with a {@link N5ImageLoader} for {@code n5File}).
+ */
+public class TranscodeToN5
+{
+	/**
+	 * Transcode all views of {@code seq} to a new N5 container.
+	 *
+	 * @param seq
+	 *            description of the sequence to be transcoded. Its
+	 *            {@link BasicImgLoader} must be a {@link Hdf5ImageLoader} or a
+	 *            {@link N5ImageLoader}.
+	 * @param compression
+	 *            n5 compression scheme. If {@code null}, the compression of the
+	 *            source datasets is kept for N5 sources, and
+	 *            {@link GzipCompression} is used for HDF5 sources.
+	 * @param perSetupBlockSizes
+	 *            maps from setup id to the block sizes for each resolution
+	 *            level. May be {@code null}, or not contain a setup, in which
+	 *            case the block sizes of the source are kept.
+	 * @param n5File
+	 *            n5 root.
+	 * @param numThreads
+	 *            the number of threads used to copy blocks.
+	 * @param progressWriter
+	 *            completion ratio and status output will be directed here.
+	 */
+	public static void transcode(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Compression compression,
+			final Map< Integer, int[][] > perSetupBlockSizes,
+			final File n5File,
+			final int numThreads,
+			ProgressWriter progressWriter ) throws IOException
+	{
+		if ( progressWriter == null )
+			progressWriter = new ProgressWriterNull();
+		progressWriter.setProgress( 0 );
+
+		final BasicImgLoader imgLoader = seq.getImgLoader();
+		if ( !( imgLoader instanceof N5ImageLoader || imgLoader instanceof Hdf5ImageLoader ) )
+			throw new IllegalArgumentException( "Unsupported image loader: " + imgLoader.getClass().getSimpleName() );
+
+		final List< Integer > timepointIds = seq.getTimePoints().getTimePointsOrdered().stream()
+				.map( TimePoint::getId )
+				.collect( Collectors.toList() );
+		final List< Integer > setupIds = seq.getViewSetupsOrdered().stream()
+				.map( BasicViewSetup::getId )
+				.collect( Collectors.toList() );
+
+		try ( final Source source = imgLoader instanceof N5ImageLoader
+				? new N5Source( ( N5ImageLoader ) imgLoader )
+				: new Hdf5Source( ( Hdf5ImageLoader ) imgLoader );
+				final N5Writer n5 = new N5FSWriter( n5File.getAbsolutePath() ) )
+		{
+			transcodeViews( seq, source, compression, perSetupBlockSizes, n5, n5File, timepointIds, setupIds, numThreads, progressWriter );
+		}
+
+		progressWriter.setProgress( 1.0 );
+	}
+
+	private static void transcodeViews(
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final Source source,
+			final Compression compression,
+			final Map< Integer, int[][] > perSetupBlockSizes,
+			final N5Writer n5,
+			final File n5File,
+			final List< Integer > timepointIds,
+			final List< Integer > setupIds,
+			final int numThreads,
+			final ProgressWriter progressWriter ) throws IOException
+	{
+		// write Mipmap descriptions
+		final int[][][] perSetupDownsamplingFactors = new int[ setupIds.size() ][][];
+		for ( int i = 0; i < setupIds.size(); ++i )
+		{
+			final int setupId = setupIds.get( i );
+			final MultiResolutionSetupImgLoader< ? > setupImgLoader = source.getSetupImgLoader( setupId );
+			final int[][] downsamplingFactors = toIntFactors( setupImgLoader.getMipmapResolutions() );
+			perSetupDownsamplingFactors[ i ] = downsamplingFactors;
+			final String pathName = getPathName( setupId );
+			final DataType dataType = n5DataType( Cast.unchecked( setupImgLoader.getImageType() ) );
+			n5.createGroup( pathName );
+			n5.setAttribute( pathName, DOWNSAMPLING_FACTORS_KEY, downsamplingFactors );
+			n5.setAttribute( pathName, DATA_TYPE_KEY, dataType );
+		}
+
+		// calculate number of tasks for progressWriter
+		int numTasks = 0;
+		for ( final int timepointId : timepointIds )
+			for ( final int setupId : setupIds )
+				if ( seq.getViewDescriptions().get( new ViewId( timepointId, setupId ) ).isPresent() )
+					numTasks++;
+		int numCompletedTasks = 0;
+
+		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
+		try
+		{
+			final int numTimepoints = timepointIds.size();
+			int timepointIndex = 0;
+			for ( final int timepointId : timepointIds )
+			{
+				progressWriter.out().printf( "proccessing timepoint %d / %d\n", ++timepointIndex, numTimepoints );
+				for ( int i = 0; i < setupIds.size(); ++i )
+				{
+					final int setupId = setupIds.get( i );
+					if ( !seq.getViewDescriptions().get( new ViewId( timepointId, setupId ) ).isPresent() )
+						continue;
+
+					final int[][] blockSizes = perSetupBlockSizes == null ? null : perSetupBlockSizes.get( setupId );
+					final double startCompletionRatio = ( double ) numCompletedTasks++ / numTasks;
+					final double endCompletionRatio = ( double ) numCompletedTasks / numTasks;
+					final ProgressWriter subProgressWriter = new SubTaskProgressWriter( progressWriter, startCompletionRatio, endCompletionRatio );
+					transcodeView( source, n5, n5File, compression, blockSizes, setupId, timepointId, executorService, numThreads, subProgressWriter );
+
+					WriteSequenceToN5.writeTimepointAttributes( n5, seq, setupId, timepointId, perSetupDownsamplingFactors[ i ] );
+				}
+			}
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+
+		// consolidated metadata, for fast opening of many timepoints
+		for ( int i = 0; i < setupIds.size(); ++i )
+			WriteSequenceToN5.writeConsolidatedAttributes( n5, setupIds.get( i ), timepointIds, perSetupDownsamplingFactors[ i ].length );
+	}
+
+	private static void transcodeView(
+			final Source source,
+			final N5Writer n5,
+			final File n5File,
+			final Compression compression,
+			final int[][] blockSizes,
+			final int setupId,
+			final int timepointId,
+			final ExecutorService executorService,
+			final int numThreads,
+			final ProgressWriter progressWriter ) throws IOException
+	{
+		final MultiResolutionSetupImgLoader< ? > setupImgLoader = source.getSetupImgLoader( setupId );
+		final NativeType< ? > type = Cast.unchecked( setupImgLoader.getImageType() );
+		final DataType dataType = n5DataType( Cast.unchecked( type ) );
+		final int numLevels = setupImgLoader.numMipmapLevels();
+
+		// compute the number of blocks over all levels, for progress reporting
+		final CellGrid[] grids = new CellGrid[ numLevels ];
+		long numBlocksTotal = 0;
+		for ( int level = 0; level < numLevels; ++level )
+		{
+			final long[] dimensions = Intervals.dimensionsAsLongArray( setupImgLoader.getImageSize( timepointId, level ) );
+			final int[] sourceBlockSize = source.getBlockSize( setupId, timepointId, level );
+			final int[] blockSize = blockSizes == null ? sourceBlockSize : blockSizes[ level ];
+			grids[ level ] = new CellGrid( dimensions, blockSize );
+			numBlocksTotal += Intervals.numElements( grids[ level ].getGridDimensions() );
+		}
+
+		long numBlocksDone = 0;
+		for ( int level = 0; level < numLevels; ++level )
+		{
+			final CellGrid grid = grids[ level ];
+			final int[] blockSize = new int[ grid.numDimensions() ];
+			grid.cellDimensions( blockSize );
+			final String pathName = getPathName( setupId, timepointId, level );
+			final boolean sameBlockSize = Arrays.equals( blockSize, source.getBlockSize( setupId, timepointId, level ) );
+			final RawBlockSource rawSource = sameBlockSize && source instanceof RawBlockSource ? ( RawBlockSource ) source : null;
+			final Compression sourceCompression = rawSource == null ? null : rawSource.getCompression( setupId, timepointId, level );
+			final Compression levelCompression = compression != null
+					? compression
+					: sourceCompression != null ? sourceCompression : new GzipCompression();
+			n5.createDataset( pathName, grid.getImgDimensions(), blockSize, dataType, levelCompression );
+			final DatasetAttributes attributes = n5.getDatasetAttributes( pathName );
+
+			final BlockTransfer transfer;
+			if ( rawSource != null && compression == null )
+				transfer = rawSource.rawCopy( pathName, n5File.toPath().resolve( pathName ) );
+			else if ( rawSource != null )
+				transfer = rawSource.recompress( pathName, n5, attributes );
+			else
+			{
+				final RandomAccessibleInterval< ? > img = setupImgLoader.getImage( timepointId, level );
+				transfer = () -> {
+					final ArrayCopyBlock copy = ArrayCopyBlock.create( img, type );
+					if ( copy == null )
+						throw new IllegalArgumentException( "Source image is not backed by primitive arrays" );
+					return gridPosition -> {
+						final long[] min = new long[ grid.numDimensions() ];
+						final int[] size = new int[ grid.numDimensions() ];
+						grid.getCellDimensions( gridPosition, min, size );
+						final DataBlock< ? > block = dataType.createDataBlock( size, gridPosition, ( int ) Intervals.numElements( size ) );
+						if ( !copy.copyBlock( min, size, block.getData() ) )
+							throw new IllegalStateException( "Block " + Arrays.toString( gridPosition ) + " could not be copied" );
+						n5.writeBlock( pathName, attributes, block );
+					};
+				};
+			}
+
+			final long numBlocks = Intervals.numElements( grid.getGridDimensions() );
+			final double startCompletionRatio = ( double ) numBlocksDone / numBlocksTotal;
+			numBlocksDone += numBlocks;
+			final double endCompletionRatio = ( double ) numBlocksDone / numBlocksTotal;
+			final ProgressWriter subProgressWriter = new SubTaskProgressWriter( progressWriter, startCompletionRatio, endCompletionRatio );
+			transferBlocks( grid, transfer, executorService, numThreads, subProgressWriter );
+		}
+	}
+
+	/**
+	 * Transfer all blocks of {@code grid}, using {@code numThreads} tasks that
+	 * pick the next block index from a shared counter.
+	 */
+	private static void transferBlocks(
+			final CellGrid grid,
+			final BlockTransfer transfer,
+			final ExecutorService executorService,
+			final int numThreads,
+			final ProgressWriter progressWriter ) throws IOException
+	{
+		final long[] gridDimensions = grid.getGridDimensions();
+		final int numBlocks = ( int ) Intervals.numElements( gridDimensions );
+		final AtomicInteger nextBlock = new AtomicInteger();
+		final AtomicInteger numDone = new AtomicInteger();
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( int i = 0; i < numThreads; ++i )
+		{
+			tasks.add( () -> {
+				final BlockTransferWorker worker = transfer.createWorker();
+				final long[] gridPosition = new long[ gridDimensions.length ];
+				for ( int b = nextBlock.getAndIncrement(); b < numBlocks; b = nextBlock.getAndIncrement() )
+				{
+					IntervalIndexer.indexToPosition( b, gridDimensions, gridPosition );
+					worker.transfer( gridPosition.clone() );
+					progressWriter.setProgress( ( double ) numDone.incrementAndGet() / numBlocks );
+				}
+				return null;
+			} );
+		}
+		try
+		{
+			for ( final Future< Void > future : executorService.invokeAll( tasks ) )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new IOException( e.getCause() );
+		}
+	}
+
+	private static int[][] toIntFactors( final double[][] resolutions )
+	{
+		final int[][] factors = new int[ resolutions.length ][];
+		for ( int l = 0; l < resolutions.length; ++l )
+		{
+			factors[ l ] = new int[ resolutions[ l ].length ];
+			for ( int d = 0; d < factors[ l ].length; ++d )
+				factors[ l ][ d ] = ( int ) Math.round( resolutions[ l ][ d ] );
+		}
+		return factors;
+	}
+
+	@FunctionalInterface
+	private interface BlockTransfer
+	{
+		/**
+		 * Create a worker with per-thread state.
+		 */
+		BlockTransferWorker createWorker();
+	}
+
+	@FunctionalInterface
+	private interface BlockTransferWorker
+	{
+		void transfer( long[] gridPosition ) throws IOException;
+	}
+
+	/**
+	 * A source dataset, whose blocks are transferred through the image.
+	 */
+	private interface Source extends AutoCloseable
+	{
+		MultiResolutionSetupImgLoader< ? > getSetupImgLoader( int setupId );
+
+		int[] getBlockSize( int setupId, int timepointId, int level ) throws IOException;
+
+		@Override
+		default void close()
+		{}
+	}
+
+	/**
+	 * A source dataset, whose blocks can also be transferred without going
+	 * through the image, if the block size stays the same.
+	 */
+	private interface RawBlockSource extends Source
+	{
+		Compression getCompression( int setupId, int timepointId, int level ) throws IOException;
+
+		BlockTransfer rawCopy( String pathName, Path targetPath );
+
+		BlockTransfer recompress( String pathName, N5Writer target, DatasetAttributes targetAttributes );
+	}
+
+	private static class N5Source implements RawBlockSource
+	{
+		private final N5ImageLoader imgLoader;
+
+		private final N5Reader n5;
+
+		private final Path n5Path;
+
+		N5Source( final N5ImageLoader imgLoader )
+		{
+			this.imgLoader = imgLoader;
+			n5Path = imgLoader.getN5File().toPath();
+			n5 = new N5FSReader( imgLoader.getN5File().getAbsolutePath() );
+		}
+
+		@Override
+		public MultiResolutionSetupImgLoader< ? > getSetupImgLoader( final int setupId )
+		{
+			return imgLoader.getSetupImgLoader( setupId );
+		}
+
+		@Override
+		public void close()
+		{
+			n5.close();
+		}
+
+		@Override
+		public int[] getBlockSize( final int setupId, final int timepointId, final int level )
+		{
+			return n5.getDatasetAttributes( getPathName( setupId, timepointId, level ) ).getBlockSize();
+		}
+
+		@Override
+		public Compression getCompression( final int setupId, final int timepointId, final int level )
+		{
+			return n5.getDatasetAttributes( getPathName( setupId, timepointId, level ) ).getCompression();
+		}
+
+		@Override
+		public BlockTransfer rawCopy( final String pathName, final Path targetPath )
+		{
+			final Path sourcePath = n5Path.resolve( pathName );
+			return () -> gridPosition -> {
+				final Path relative = blockPath( gridPosition );
+				final Path sourceBlock = sourcePath.resolve( relative );
+				if ( Files.exists( sourceBlock ) )
+				{
+					final Path targetBlock = targetPath.resolve( relative );
+					Files.createDirectories( targetBlock.getParent() );
+					Files.copy( sourceBlock, targetBlock, StandardCopyOption.REPLACE_EXISTING );
+				}
+			};
+		}
+
+		@Override
+		public BlockTransfer recompress( final String pathName, final N5Writer target, final DatasetAttributes targetAttributes )
+		{
+			final DatasetAttributes sourceAttributes = n5.getDatasetAttributes( pathName );
+			return () -> gridPosition -> {
+				final DataBlock< ? > block = n5.readBlock( pathName, sourceAttributes, gridPosition );
+				if ( block != null )
+					target.writeBlock( pathName, targetAttributes, block );
+			};
+		}
+
+		private static Path blockPath( final long[] gridPosition )
+		{
+			final String[] elements = new String[ gridPosition.length - 1 ];
+			for ( int d = 1; d < gridPosition.length; ++d )
+				elements[ d - 1 ] = Long.toString( gridPosition[ d ] );
+			return Paths.get( Long.toString( gridPosition[ 0 ] ), elements );
+		}
+	}
+
+	private static class Hdf5Source implements Source
+	{
+		private final Hdf5ImageLoader imgLoader;
+
+		Hdf5Source( final Hdf5ImageLoader imgLoader )
+		{
+			this.imgLoader = imgLoader;
+		}
+
+		@Override
+		public MultiResolutionSetupImgLoader< ? > getSetupImgLoader( final int setupId )
+		{
+			return imgLoader.getSetupImgLoader( setupId );
+		}
+
+		@Override
+		public int[] getBlockSize( final int setupId, final int timepointId, final int level )
+		{
+			return imgLoader.getSetupImgLoader( setupId ).getMipmapInfo().getSubdivisions()[ level ];
+		}
+	}
+}
@@ -37,6 +37,7 @@ import static net.imglib2.cache.img.ReadOnlyCachedCellImgOptions.options;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -58,14 +59,19 @@ import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
 
+import bdv.export.BlockOccupancyBuilder;
 import bdv.export.ExportMipmapInfo;
 import bdv.export.ExportScalePyramid;
 import bdv.export.ExportScalePyramid.AfterEachPlane;
 import bdv.export.ExportScalePyramid.LoopbackHeuristic;
+import bdv.export.LevelStatisticsBuilder;
 import bdv.export.ProgressWriter;
 import bdv.export.ProgressWriterNull;
 import bdv.export.SubTaskProgressWriter;
+import bdv.img.LevelStatistics;
 import bdv.img.cache.SimpleCacheArrayLoader;
+import bdv.img.n5.BlockOccupancy;
+import bdv.img.n5.N5DatasetAttributesCache;
 import bdv.img.n5.N5ImageLoader;
 import mpicbg.spim.data.generic.sequence.AbstractSequenceDescription;
 import mpicbg.spim.data.generic.sequence.BasicImgLoader;
@@ -213,20 +219,7 @@ public class WriteSequenceToN5
 							loopbackHeuristic, afterEachPlane, subProgressWriter );
 
 
-					// additional attributes for paintera compatibility
-					final String pathName = getPathName( setupId, timepointId );
-					n5.createGroup( pathName );
-					n5.setAttribute( pathName, MULTI_SCALE_KEY, true );
-					final VoxelDimensions voxelSize = seq.getViewSetups().get( setupId ).getVoxelSize();
-					if ( voxelSize != null )
-					{
-						final double[] resolution = new double[ voxelSize.numDimensions() ];
-						voxelSize.dimensions( resolution );
-						n5.setAttribute( pathName, RESOLUTION_KEY, resolution );
-					}
-					final int[][] downsamplingFactors = perSetupMipmapInfo.get( setupId ).getExportResolutions();
-					for( int l = 0; l < downsamplingFactors.length; ++l )
-						n5.setAttribute( getPathName( setupId, timepointId, l ), DOWNSAMPLING_FACTORS_KEY, downsamplingFactors[ l ] );
+					writeTimepointAttributes( n5, seq, setupId, timepointId, perSetupMipmapInfo.get( setupId ).getExportResolutions() );
 				}
 			}
 		}
@@ -235,9 +228,63 @@ public class WriteSequenceToN5
 			executorService.shutdown();
 		}
 
+		// consolidated metadata, for fast opening of many timepoints
+		for ( final int setupId : setupIds )
+			writeConsolidatedAttributes( n5, setupId, timepointIds, perSetupMipmapInfo.get( setupId ).getNumLevels() );
+
 		progressWriter.setProgress( 1.0 );
 	}
 
+	/**
+	 * Write additional attributes of the {@code setupId}, {@code timepointId}
+	 * group for paintera compatibility, and the downsampling factors of each
+	 * level dataset.
+	 */
+	static void writeTimepointAttributes(
+			final N5Writer n5,
+			final AbstractSequenceDescription< ?, ?, ? > seq,
+			final int setupId,
+			final int timepointId,
+			final int[][] downsamplingFactors )
+	{
+		final String pathName = getPathName( setupId, timepointId );
+		n5.createGroup( pathName );
+		n5.setAttribute( pathName, MULTI_SCALE_KEY, true );
+		final VoxelDimensions voxelSize = seq.getViewSetups().get( setupId ).getVoxelSize();
+		if ( voxelSize != null )
+		{
+			final double[] resolution = new double[ voxelSize.numDimensions() ];
+			voxelSize.dimensions( resolution );
+			n5.setAttribute( pathName, RESOLUTION_KEY, resolution );
+		}
+		for( int l = 0; l < downsamplingFactors.length; ++l )
+			n5.setAttribute( getPathName( setupId, timepointId, l ), DOWNSAMPLING_FACTORS_KEY, downsamplingFactors[ l ] );
+	}
+
+	/**
+	 * Write consolidated dataset attributes of all timepoints and levels of
+	 * {@code setupId}, for fast opening of many timepoints.
+	 */
+	static void writeConsolidatedAttributes(
+			final N5Writer n5,
+			final int setupId,
+			final List< Integer > timepointIds,
+			final int numLevels )
+	{
+		final Map< String, DatasetAttributes > datasetAttributes = new LinkedHashMap<>();
+		for ( final int timepointId : timepointIds )
+		{
+			for ( int level = 0; level < numLevels; ++level )
+			{
+				final String pathName = getPathName( setupId, timepointId, level );
+				final DatasetAttributes attributes = n5.getDatasetAttributes( pathName );
+				if ( attributes != null )
+					datasetAttributes.put( pathName, attributes );
+			}
+		}
+		N5DatasetAttributesCache.writeConsolidatedAttributes( n5, setupId, datasetAttributes );
+	}
+
 	static < T extends RealType< T > & NativeType< T > > void writeScalePyramid(
 			final N5Writer n5,
 			final Compression compression,
@@ -266,10 +313,28 @@ public class WriteSequenceToN5
 		final String pathName;
 		final DatasetAttributes attributes;
 
+		/**
+		 * Records the written (non-empty) blocks. May be {@code null}.
+		 */
+		final BlockOccupancyBuilder occupancy;
+
+		/**
+		 * Accumulates intensity statistics of the written blocks. May be
+		 * {@code null}.
+		 */
+		final LevelStatisticsBuilder statistics;
+
 		public N5Dataset( final String pathName, final DatasetAttributes attributes )
+		{
+			this( pathName, attributes, null, null );
+		}
+
+		public N5Dataset( final String pathName, final DatasetAttributes attributes, final BlockOccupancyBuilder occupancy, final LevelStatisticsBuilder statistics )
 		{
 			this.pathName = pathName;
 			this.attributes = attributes;
+			this.occupancy = occupancy;
+			this.statistics = statistics;
 		}
 	}
 
@@ -282,10 +347,25 @@ public class WriteSequenceToN5
 		private final DataType dataType;
 		private final T type;
 		private final Function< ExportScalePyramid.Block< T >, DataBlock< ? > > getDataBlock;
+		private final boolean writeLevelIndices;
+		private final List< N5Dataset > pendingIndices = new ArrayList<>();
 
 		public N5DatasetIO( final N5Writer n5, final Compression compression, final int setupId, final int timepointId, final T type )
+		{
+			this( n5, compression, setupId, timepointId, type, true );
+		}
+
+		/**
+		 * Blocks that contain only zeros are not written (and existing block
+		 * files for them are removed). If {@code writeLevelIndices==true}, the
+		 * written blocks of each created dataset are recorded, and stored as
+		 * {@link BlockOccupancy} index and {@link LevelStatistics} when the
+		 * dataset is {@link #flush() flushed}.
+		 */
+		public N5DatasetIO( final N5Writer n5, final Compression compression, final int setupId, final int timepointId, final T type, final boolean writeLevelIndices )
 		{
 			this.n5 = n5;
+			this.writeLevelIndices = writeLevelIndices;
 			this.compression = compression;
 			this.setupId = setupId;
 			this.timepointId = timepointId;
@@ -343,7 +423,18 @@ public class WriteSequenceToN5
 			}
 
 			final DatasetAttributes attributes = n5.getDatasetAttributes( pathName );
-			return new N5Dataset( pathName, attributes );
+			if ( !writeLevelIndices )
+				return new N5Dataset( pathName, attributes );
+
+			final long[] gridDimensions = new CellGrid( dimensions, blockSize ).getGridDimensions();
+			final BlockOccupancyBuilder occupancy = new BlockOccupancyBuilder( gridDimensions );
+			final LevelStatisticsBuilder statistics = new LevelStatisticsBuilder( dataType, gridDimensions );
+			final N5Dataset dataset = new N5Dataset( pathName, attributes, occupancy, statistics );
+			synchronized ( pendingIndices )
+			{
+				pendingIndices.add( dataset );
+			}
+			return dataset;
 		}
 
 		@Override
@@ -351,7 +442,17 @@ public class WriteSequenceToN5
 		{
 			try
 			{
-				n5.writeBlock( dataset.pathName, dataset.attributes, getDataBlock.apply( dataBlock ) );
+				if ( dataset.statistics != null )
+					dataset.statistics.add( dataBlock.getGridPosition(), dataBlock.getData().getStorageArray() );
+				if ( isZero( dataBlock.getData().getStorageArray() ) )
+					deleteDataBlock( dataset, dataBlock.getGridPosition() );
+				else
+				{
+					writeDataBlock( dataset, getDataBlock.apply( dataBlock ) );
+					if ( dataset.occupancy != null )
+						dataset.occupancy.setOccupied( dataBlock.getGridPosition() );
+				}
+				dataBlock.release();
 			}
 			catch ( final N5Exception e )
 			{
@@ -359,9 +460,88 @@ public class WriteSequenceToN5
 			}
 		}
 
+		/**
+		 * Write a non-empty {@code block} of {@code dataset}.
+		 */
+		protected void writeDataBlock( final N5Dataset dataset, final DataBlock< ? > block ) throws IOException
+		{
+			n5.writeBlock( dataset.pathName, dataset.attributes, block );
+		}
+
+		/**
+		 * Remove the block at {@code gridPosition} of {@code dataset}, if it
+		 * exists.
+		 */
+		protected void deleteDataBlock( final N5Dataset dataset, final long[] gridPosition ) throws IOException
+		{
+			n5.deleteBlock( dataset.pathName, gridPosition );
+		}
+
 		@Override
-		public void flush()
-		{}
+		public void flush() throws IOException
+		{
+			synchronized ( pendingIndices )
+			{
+				try
+				{
+					for ( final N5Dataset dataset : pendingIndices )
+					{
+						n5.setAttribute( dataset.pathName, BlockOccupancy.OCCUPANCY_KEY, dataset.occupancy.build().encode() );
+						final LevelStatistics statistics = dataset.statistics.build();
+						if ( statistics.hasFiniteRange() )
+							n5.setAttribute( dataset.pathName, LevelStatistics.STATISTICS_KEY, statistics );
+					}
+				}
+				catch ( final N5Exception e )
+				{
+					throw new IOException( e );
+				}
+				pendingIndices.clear();
+			}
+		}
+
+		private static boolean isZero( final Object array )
+		{
+			if ( array instanceof byte[] )
+			{
+				for ( final byte v : ( byte[] ) array )
+					if ( v != 0 )
+						return false;
+			}
+			else if ( array instanceof short[] )
+			{
+				for ( final short v : ( short[] ) array )
+					if ( v != 0 )
+						return false;
+			}
+			else if ( array instanceof int[] )
+			{
+				for ( final int v : ( int[] ) array )
+					if ( v != 0 )
+						return false;
+			}
+			else if ( array instanceof long[] )
+			{
+				for ( final long v : ( long[] ) array )
+					if ( v != 0 )
+						return false;
+			}
+			else if ( array instanceof float[] )
+			{
+				for ( final float v : ( float[] ) array )
+					if ( Float.floatToRawIntBits( v ) != 0 )
+						return false;
+			}
+			else if ( array instanceof double[] )
+			{
+				for ( final double v : ( double[] ) array )
+					if ( Double.doubleToRawLongBits( v ) != 0 )
+						return false;
+			}
+			else
+				return false;
+			return true;
+		}
 
 		@Override
 		public RandomAccessibleInterval< T > getImage( final int level ) throws IOException
@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encode binary data as deflated, base64-encoded strings, for storing compact
+ * indices (e.g., {@link LevelStatistics} block min/max, or
+ * {@link bdv.img.n5.BlockOccupancy}) as dataset attributes.
+ */
+public final class DeflatedBase64
+{
+	private DeflatedBase64()
+	{}
+
+	/**
+	 * Deflate {@code data} with the given compression {@code level} (see
+	 * {@link Deflater}), and base64-encode the result.
+	 */
+	public static String encode( final byte[] data, final int level )
+	{
+		final Deflater deflater = new Deflater( level );
+		try
+		{
+			deflater.setInput( data );
+			deflater.finish();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buf = new byte[ 4096 ];
+			while ( !deflater.finished() )
+				out.write( buf, 0, deflater.deflate( buf ) );
+			return Base64.getEncoder().encodeToString( out.toByteArray() );
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Decode a string created by {@link #encode(byte[], int)}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if {@code encoded} is not valid base64, or not a complete
+	 *             deflate stream.
+	 */
+	public static byte[] decode( final String encoded )
+	{
+		final Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput( Base64.getDecoder().decode( encoded ) );
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buf = new byte[ 4096 ];
+			while ( !inflater.finished() )
+			{
+				final int n = inflater.inflate( buf );
+				if ( n == 0 && !inflater.finished() && ( inflater.needsInput() || inflater.needsDictionary() ) )
+					throw new IllegalArgumentException( "truncated deflate stream" );
+				out.write( buf, 0, n );
+			}
+			return out.toByteArray();
+		}
+		catch ( final DataFormatException e )
+		{
+			throw new IllegalArgumentException( e );
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import com.google.gson.Gson;
+
+import bdv.util.Bounds;
+
+/**
+ * Intensity statistics of one resolution level of one view, recorded at
+ * export: minimum and maximum value, a coarse histogram (for integer types of
+ * up to 16 bits), and the minimum and maximum of every block.
+ * <p>
+ * Exporters store the statistics as the {@link #STATISTICS_KEY} attribute of
+ * the level dataset (as JSON object in N5, as JSON string in HDF5). They are
+ * used for auto-contrast without touching the image data (see
+ * {@link #estimateRange(double, double)}), and allow to skip blocks without
+ * loading them (see {@link #getBlockMinMax()}).
+ * <p>
+ * Min and max cover only finite values. Statistics of levels without any
+ * finite values are not stored (see {@link #hasFiniteRange()}).
+ */
+public class LevelStatistics
+{
+	public static final String STATISTICS_KEY = "statistics";
+
+	private double min;
+
+	private double max;
+
+	private long count;
+
+	/**
+	 * Lower edge of the first histogram bin.
+	 */
+	private double histogramMin;
+
+	/**
+	 * Width of a histogram bin.
+	 */
+	private double binWidth;
+
+	/**
+	 * Histogram counts. May be {@code null}.
+	 */
+	private long[] histogram;
+
+	/**
+	 * Interleaved (min, max) of every block, in flattened grid order,
+	 * serialized as big-endian doubles, deflated, and base64 encoded. May be
+	 * {@code null}.
+	 */
+	private String blockMinMax;
+
+	private transient double[] decodedBlockMinMax;
+
+	LevelStatistics()
+	{}
+
+	public LevelStatistics( final double min, final double max, final long count, final double histogramMin, final double binWidth, final long[] histogram, final double[] blockMinMax )
+	{
+		this.min = min;
+		this.max = max;
+		this.count = count;
+		this.histogramMin = histogramMin;
+		this.binWidth = binWidth;
+		this.histogram = histogram;
+		this.blockMinMax = blockMinMax == null ? null : encode( blockMinMax );
+		this.decodedBlockMinMax = blockMinMax;
+	}
+
+	public double getMin()
+	{
+		return min;
+	}
+
+	public double getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Whether min and max are finite, i.e., the level contained at least one
+	 * finite value. Only then can the statistics be serialized to JSON.
+	 */
+	public boolean hasFiniteRange()
+	{
+		return Double.isFinite( min ) && Double.isFinite( max ) && min <= max;
+	}
+
+	/**
+	 * Number of pixels in the level.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the histogram counts, or {@code null}. Bin {@code i} covers
+	 * values in {@code [histogramMin + i * binWidth, histogramMin + (i+1) * binWidth)}.
+	 */
+	public long[] getHistogram()
+	{
+		return histogram;
+	}
+
+	public double getHistogramMin()
+	{
+		return histogramMin;
+	}
+
+	public double getBinWidth()
+	{
+		return binWidth;
+	}
+
+	/**
+	 * Estimate the display range such that (approximately) a fraction
+	 * {@code cumulativeMinCutoff} of pixels is below, and a fraction
+	 * {@code 1 - cumulativeMaxCutoff} of pixels is above the range. Without
+	 * histogram, returns {@code [min, max]}.
+	 */
+	public Bounds estimateRange( final double cumulativeMinCutoff, final double cumulativeMaxCutoff )
+	{
+		if ( !( min <= max ) )
+			return null;
+		if ( histogram == null || count == 0 )
+			return new Bounds( min, max );
+
+		final int numBins = histogram.length;
+		double cumulative = 0;
+		int i = 0;
+		for ( ; i < numBins && cumulative < cumulativeMinCutoff; ++i )
+			cumulative += ( double ) histogram[ i ] / count;
+		final double lo = Math.max( min, histogramMin + i * binWidth );
+		for ( ; i < numBins && cumulative < cumulativeMaxCutoff; ++i )
+			cumulative += ( double ) histogram[ i ] / count;
+		final double hi = Math.min( max, histogramMin + i * binWidth );
+		return new Bounds( Math.min( lo, hi ), hi );
+	}
+
+	/**
+	 * Returns the interleaved (min, max) of every block, in flattened grid
+	 * order, or {@code null} if no block statistics were recorded.
+	 */
+	public synchronized double[] getBlockMinMax()
+	{
+		if ( decodedBlockMinMax == null && blockMinMax != null )
+			decodedBlockMinMax = decode( blockMinMax );
+		return decodedBlockMinMax;
+	}
+
+	public String toJson()
+	{
+		return new Gson().toJson( this );
+	}
+
+	public static LevelStatistics fromJson( final String json )
+	{
+		return new Gson().fromJson( json, LevelStatistics.class );
+	}
+
+	private static String encode( final double[] values )
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( values.length * 8 );
+		buffer.asDoubleBuffer().put( values );
+		return DeflatedBase64.encode( buffer.array(), Deflater.DEFAULT_COMPRESSION );
+	}
+
+	private static double[] decode( final String encoded )
+	{
+		final ByteBuffer buffer = ByteBuffer.wrap( DeflatedBase64.decode( encoded ) );
+		final double[] values = new double[ buffer.remaining() / 8 ];
+		buffer.asDoubleBuffer().get( values );
+		return values;
+	}
+}
@@ -0,0 +1,429 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A pool of primitive arrays ({@code byte[]}, {@code short[]}, {@code int[]},
+ * {@code long[]}, {@code float[]}, {@code double[]}) for cell loading.
+ * <p>
+ * Arrays are pooled in size classes by element type and exact length, which
+ * is what cell loaders need (all cells of a level, except border cells, have
+ * the same size). {@code take} methods hand out a pooled array if one is
+ * available and allocate a new one otherwise.
+ * <p>
+ * Arrays come back into the pool either explicitly, through
+ * {@link #recycle(Object)}, or when the access that wraps them is evicted from
+ * the cache: {@link #recycleWhenUnreachable(ArrayDataAccess)} registers the
+ * access of a loaded cell, and its array is returned to the pool once the
+ * cache (and everyone else) has dropped the access. Because the cell caches
+ * evict by clearing soft references, the garbage collector is the one that
+ * decides when this happens.
+ * <p>
+ * The pool holds at most {@link #getMaxPooledBytes()} bytes, and only through
+ * soft references, so pooled arrays never keep the JVM from reclaiming memory.
+ */
+public class ArrayPool
+{
+	private static final ArrayPool shared = new ArrayPool( Math.min( 256L << 20, Runtime.getRuntime().maxMemory() / 16 ) );
+
+	/**
+	 * Get the pool that is shared by the cell loaders.
+	 */
+	public static ArrayPool shared()
+	{
+		return shared;
+	}
+
+	private static final class SizeClass
+	{
+		private final Class< ? > componentType;
+
+		private final int length;
+
+		private final int hashcode;
+
+		SizeClass( final Class< ? > componentType, final int length )
+		{
+			this.componentType = componentType;
+			this.length = length;
+			this.hashcode = 31 * componentType.hashCode() + length;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof SizeClass ) )
+				return false;
+			final SizeClass other = ( SizeClass ) obj;
+			return length == other.length && componentType == other.componentType;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashcode;
+		}
+	}
+
+	/**
+	 * Weak reference to an access that strongly references its storage array,
+	 * so that the array can be recycled when the access is collected.
+	 */
+	private static final class TrackedAccess extends WeakReference< Object >
+	{
+		private final Object array;
+
+		TrackedAccess( final Object access, final Object array, final ReferenceQueue< Object > queue )
+		{
+			super( access, queue );
+			this.array = array;
+		}
+	}
+
+	private final long maxPooledBytes;
+
+	private long pooledBytes;
+
+	private final Map< SizeClass, ArrayDeque< SoftReference< Object > > > pool = new HashMap<>();
+
+	private final ReferenceQueue< Object > queue = new ReferenceQueue<>();
+
+	private final Set< TrackedAccess > tracked = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder numAllocated = new LongAdder();
+
+	private final LongAdder bytesAllocated = new LongAdder();
+
+	private final LongAdder numReused = new LongAdder();
+
+	private final LongAdder bytesReused = new LongAdder();
+
+	private final LongAdder numRecycled = new LongAdder();
+
+	private final LongAdder numDiscarded = new LongAdder();
+
+	/**
+	 * @param maxPooledBytes
+	 *            maximum total size of arrays held in the pool.
+	 */
+	public ArrayPool( final long maxPooledBytes )
+	{
+		this.maxPooledBytes = maxPooledBytes;
+	}
+
+	public long getMaxPooledBytes()
+	{
+		return maxPooledBytes;
+	}
+
+	public byte[] takeBytes( final int length, final boolean clear )
+	{
+		return ( byte[] ) take( byte.class, length, clear );
+	}
+
+	public short[] takeShorts( final int length, final boolean clear )
+	{
+		return ( short[] ) take( short.class, length, clear );
+	}
+
+	public int[] takeInts( final int length, final boolean clear )
+	{
+		return ( int[] ) take( int.class, length, clear );
+	}
+
+	public long[] takeLongs( final int length, final boolean clear )
+	{
+		return ( long[] ) take( long.class, length, clear );
+	}
+
+	public float[] takeFloats( final int length, final boolean clear )
+	{
+		return ( float[] ) take( float.class, length, clear );
+	}
+
+	public double[] takeDoubles( final int length, final boolean clear )
+	{
+		return ( double[] ) take( double.class, length, clear );
+	}
+
+	/**
+	 * Get a primitive array with the given component type and length.
+	 *
+	 * @param componentType
+	 *            primitive component type, e.g., {@code short.class}.
+	 * @param length
+	 *            number of elements.
+	 * @param clear
+	 *            whether the array must be filled with zeros. (Newly
+	 *            allocated arrays are always zero.) Set this to {@code false}
+	 *            if the caller overwrites every element anyway.
+	 *
+	 * @return a primitive array of the given type and length.
+	 */
+	public Object take( final Class< ? > componentType, final int length, final boolean clear )
+	{
+		drainQueue();
+		final SizeClass sizeClass = new SizeClass( componentType, length );
+		final long bytes = sizeInBytes( componentType, length );
+		synchronized ( pool )
+		{
+			final ArrayDeque< SoftReference< Object > > arrays = pool.get( sizeClass );
+			if ( arrays != null )
+			{
+				SoftReference< Object > ref;
+				while ( ( ref = arrays.poll() ) != null )
+				{
+					pooledBytes -= bytes;
+					final Object array = ref.get();
+					if ( array != null )
+					{
+						numReused.increment();
+						bytesReused.add( bytes );
+						if ( clear )
+							clear( array );
+						return array;
+					}
+				}
+			}
+		}
+		numAllocated.increment();
+		bytesAllocated.add( bytes );
+		return Array.newInstance( componentType, length );
+	}
+
+	/**
+	 * Return a primitive array to the pool. The caller must not use the array
+	 * afterwards.
+	 */
+	public void recycle( final Object array )
+	{
+		final Class< ? > componentType = array.getClass().getComponentType();
+		if ( componentType == null || !componentType.isPrimitive() )
+			throw new IllegalArgumentException();
+		final int length = Array.getLength( array );
+		final long bytes = sizeInBytes( componentType, length );
+		synchronized ( pool )
+		{
+			if ( pooledBytes + bytes > maxPooledBytes )
+			{
+				numDiscarded.increment();
+				return;
+			}
+			pooledBytes += bytes;
+			pool.computeIfAbsent( new SizeClass( componentType, length ), k -> new ArrayDeque<>() ).push( new SoftReference<>( array ) );
+		}
+		numRecycled.increment();
+	}
+
+	/**
+	 * Return the storage array of {@code access} to the pool, as soon as
+	 * {@code access} becomes unreachable (e.g., because the cell it belongs
+	 * to was evicted from the cache).
+	 * <p>
+	 * The storage array must not be referenced (other than through
+	 * {@code access}) once the access is dropped.
+	 * {@link ConstantVolatileArrays.ConstantAccess Constant accesses} are
+	 * ignored.
+	 *
+	 * @return {@code access}
+	 */
+	public < A extends ArrayDataAccess< ? > > A recycleWhenUnreachable( final A access )
+	{
+		drainQueue();
+		if ( access instanceof ConstantVolatileArrays.ConstantAccess )
+			return access;
+		final Object array = access.getCurrentStorageArray();
+		if ( array != null )
+			tracked.add( new TrackedAccess( access, array, queue ) );
+		return access;
+	}
+
+	/**
+	 * Remove all arrays from the pool.
+	 */
+	public void clear()
+	{
+		synchronized ( pool )
+		{
+			pool.clear();
+			pooledBytes = 0;
+		}
+	}
+
+	private void drainQueue()
+	{
+		Reference< ? > ref;
+		while ( ( ref = queue.poll() ) != null )
+		{
+			final TrackedAccess t = ( TrackedAccess ) ref;
+			if ( tracked.remove( t ) )
+				recycle( t.array );
+		}
+	}
+
+	private static void clear( final Object array )
+	{
+		if ( array instanceof byte[] )
+			Arrays.fill( ( byte[] ) array, ( byte ) 0 );
+		else if ( array instanceof short[] )
+			Arrays.fill( ( short[] ) array, ( short ) 0 );
+		else if ( array instanceof int[] )
+			Arrays.fill( ( int[] ) array, 0 );
+		else if ( array instanceof long[] )
+			Arrays.fill( ( long[] ) array, 0 );
+		else if ( array instanceof float[] )
+			Arrays.fill( ( float[] ) array, 0 );
+		else if ( array instanceof double[] )
+			Arrays.fill( ( double[] ) array, 0 );
+		else if ( array instanceof char[] )
+			Arrays.fill( ( char[] ) array, ( char ) 0 );
+		else if ( array instanceof boolean[] )
+			Arrays.fill( ( boolean[] ) array, false );
+	}
+
+	private static long sizeInBytes( final Class< ? > componentType, final int length )
+	{
+		final int bytesPerElement;
+		if ( componentType == byte.class || componentType == boolean.class )
+			bytesPerElement = 1;
+		else if ( componentType == short.class || componentType == char.class )
+			bytesPerElement = 2;
+		else if ( componentType == int.class || componentType == float.class )
+			bytesPerElement = 4;
+		else
+			bytesPerElement = 8;
+		return ( long ) bytesPerElement * length;
+	}
+
+	/**
+	 * Allocation metrics of an {@link ArrayPool}.
+	 */
+	public static class Statistics
+	{
+		/**
+		 * How many arrays were newly allocated, because no pooled array was
+		 * available.
+		 */
+		public final long numAllocated;
+
+		/**
+		 * Total size in bytes of newly allocated arrays.
+		 */
+		public final long bytesAllocated;
+
+		/**
+		 * How many requests were served from the pool.
+		 */
+		public final long numReused;
+
+		/**
+		 * Total size in bytes of arrays served from the pool.
+		 */
+		public final long bytesReused;
+
+		/**
+		 * How many arrays were returned to the pool.
+		 */
+		public final long numRecycled;
+
+		/**
+		 * How many arrays were dropped, because the pool was full.
+		 */
+		public final long numDiscarded;
+
+		/**
+		 * Current total size in bytes of pooled arrays (including arrays that
+		 * may have been reclaimed by the garbage collector since).
+		 */
+		public final long pooledBytes;
+
+		Statistics( final long numAllocated, final long bytesAllocated, final long numReused, final long bytesReused, final long numRecycled, final long numDiscarded, final long pooledBytes )
+		{
+			this.numAllocated = numAllocated;
+			this.bytesAllocated = bytesAllocated;
+			this.numReused = numReused;
+			this.bytesReused = bytesReused;
+			this.numRecycled = numRecycled;
+			this.numDiscarded = numDiscarded;
+			this.pooledBytes = pooledBytes;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "ArrayPool{allocated=%d (%d bytes), reused=%d (%d bytes), recycled=%d, discarded=%d, pooled=%d bytes}",
+					numAllocated, bytesAllocated, numReused, bytesReused, numRecycled, numDiscarded, pooledBytes );
+		}
+	}
+
+	public Statistics getStatistics()
+	{
+		final long pooled;
+		synchronized ( pool )
+		{
+			pooled = pooledBytes;
+		}
+		return new Statistics(
+				numAllocated.sum(),
+				bytesAllocated.sum(),
+				numReused.sum(),
+				bytesReused.sum(),
+				numRecycled.sum(),
+				numDiscarded.sum(),
+				pooled );
+	}
+
+	/**
+	 * Reset the allocation metrics.
+	 */
+	public void resetStatistics()
+	{
+		numAllocated.reset();
+		bytesAllocated.reset();
+		numReused.reset();
+		bytesReused.reset();
+		numRecycled.reset();
+		numDiscarded.reset();
+	}
+}
@@ -0,0 +1,507 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.DefaultBlockWriter;
+import org.janelia.saalfeldlab.n5.DoubleArrayDataBlock;
+import org.janelia.saalfeldlab.n5.FloatArrayDataBlock;
+import org.janelia.saalfeldlab.n5.IntArrayDataBlock;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+
+import net.imglib2.img.basictypeaccess.DataAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.util.Cast;
+
+/**
+ * A second, compressed cache tier for {@link VolatileGlobalCellCache}.
+ * <p>
+ * The cells of the {@link VolatileGlobalCellCache} are held through soft
+ * references, and are dropped when memory gets low. With a compressed tier,
+ * every loaded cell is also stored compressed on the heap (compressed with an
+ * N5 {@link Compression}, {@link Lz4Compression} by default). When a dropped
+ * cell is requested again, it is decompressed from the tier instead of being
+ * loaded from its source. Compression and decompression happen in the cell
+ * loader, that is, on the fetcher threads (or the thread that does a blocking
+ * load).
+ * <p>
+ * The tier holds at most {@code maxCompressedBytes} bytes of compressed data,
+ * and drops the least recently used cells when this is exceeded. Every cell
+ * is charged a fixed {@link #ENTRY_OVERHEAD_BYTES overhead} in addition to its
+ * compressed data, such that the number of cells in the tier is bounded, too.
+ * Cells with {@link ConstantVolatileArrays constant} data are stored without
+ * their (trivial) data. Cells whose data is not backed by a primitive array
+ * are not stored.
+ * <p>
+ * A tier must not be shared between caches (the cell keys of different caches
+ * are not distinct).
+ */
+public class CompressedCellTier
+{
+	/**
+	 * Estimated heap size of an entry apart from its compressed data (map
+	 * node, key, entry, cell dimensions and min, access), in bytes. This is
+	 * counted against {@code maxCompressedBytes} for every entry, including
+	 * constant cells, which have no compressed data.
+	 */
+	static final long ENTRY_OVERHEAD_BYTES = 256;
+
+	private final long maxCompressedBytes;
+
+	private final Compression compression;
+
+	private final LinkedHashMap< Object, Entry > entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long compressedBytes;
+
+	private long uncompressedBytes;
+
+	private final LongAdder numHits = new LongAdder();
+
+	private final LongAdder numMisses = new LongAdder();
+
+	private final LongAdder numStored = new LongAdder();
+
+	private final LongAdder numEvicted = new LongAdder();
+
+	private final LongAdder compressNanos = new LongAdder();
+
+	private final LongAdder decompressNanos = new LongAdder();
+
+	/**
+	 * Create a tier that stores cells {@link Lz4Compression LZ4}-compressed.
+	 *
+	 * @param maxCompressedBytes
+	 *            the maximum total size of compressed data in the tier
+	 *            (including {@link #ENTRY_OVERHEAD_BYTES} per entry).
+	 */
+	public CompressedCellTier( final long maxCompressedBytes )
+	{
+		this( maxCompressedBytes, new Lz4Compression() );
+	}
+
+	/**
+	 * @param maxCompressedBytes
+	 *            the maximum total size of compressed data in the tier
+	 *            (including {@link #ENTRY_OVERHEAD_BYTES} per entry).
+	 * @param compression
+	 *            the codec used to compress cell data (for example
+	 *            {@link Lz4Compression}, or a Zstandard compression if
+	 *            available).
+	 */
+	public CompressedCellTier( final long maxCompressedBytes, final Compression compression )
+	{
+		this.maxCompressedBytes = maxCompressedBytes;
+		this.compression = compression;
+	}
+
+	public long getMaxCompressedBytes()
+	{
+		return maxCompressedBytes;
+	}
+
+	/**
+	 * Get the cell stored for {@code key}, decompressing its data.
+	 *
+	 * @return the cell, or {@code null} if no cell is stored for {@code key}.
+	 */
+	public Cell< ? > get( final Object key )
+	{
+		final Entry entry;
+		synchronized ( entries )
+		{
+			entry = entries.get( key );
+		}
+		if ( entry == null )
+		{
+			numMisses.increment();
+			return null;
+		}
+		numHits.increment();
+
+		if ( entry.compressed == null )
+			return new Cell<>( entry.cellDims, entry.cellMin, entry.constant );
+
+		final long t0 = System.nanoTime();
+		final Object data;
+		try
+		{
+			final DataBlock< ? > block = DefaultBlockReader.readBlock(
+					new ByteArrayInputStream( entry.compressed ),
+					attributes( entry.dataType, entry.numElements ),
+					new long[] { 0 } );
+			data = block.getData();
+		}
+		catch ( final IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+		final DataAccess access = Cast.unchecked( entry.factory.createView( data ) );
+		decompressNanos.add( System.nanoTime() - t0 );
+		return new Cell<>( entry.cellDims, entry.cellMin, access );
+	}
+
+	/**
+	 * Store (a compressed copy of) {@code cell} for {@code key}.
+	 */
+	public void put( final Object key, final Cell< ? > cell )
+	{
+		final Object access = cell.getData();
+		if ( access instanceof VolatileAccess && !( ( VolatileAccess ) access ).isValid() )
+			return;
+		if ( !( access instanceof ArrayDataAccess ) )
+			return;
+
+		final int n = cell.numDimensions();
+		final int[] cellDims = new int[ n ];
+		final long[] cellMin = new long[ n ];
+		cell.dimensions( cellDims );
+		cell.min( cellMin );
+
+		final Entry entry;
+		if ( access instanceof ConstantVolatileArrays.ConstantAccess )
+		{
+			entry = new Entry( cellDims, cellMin, ( DataAccess ) access );
+		}
+		else
+		{
+			final ArrayDataAccess< ? > arrayAccess = ( ArrayDataAccess< ? > ) access;
+			final Object data = arrayAccess.getCurrentStorageArray();
+			final DataType dataType = dataType( data );
+			if ( dataType == null )
+				return;
+			final int numElements = Array.getLength( data );
+
+			final long t0 = System.nanoTime();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try
+			{
+				DefaultBlockWriter.writeBlock( out, attributes( dataType, numElements ), createDataBlock( numElements, data ) );
+			}
+			catch ( final IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
+			final byte[] compressed = out.toByteArray();
+			compressNanos.add( System.nanoTime() - t0 );
+
+			final long bytes = ( long ) numElements * bytesPerElement( data );
+			entry = new Entry( cellDims, cellMin, Cast.unchecked( arrayAccess.createArray( 0 ) ), dataType, numElements, compressed, bytes );
+		}
+
+		synchronized ( entries )
+		{
+			final Entry previous = entries.put( key, entry );
+			if ( previous != null )
+				remove( previous );
+			compressedBytes += entry.compressedSize();
+			uncompressedBytes += entry.uncompressedBytes;
+			numStored.increment();
+
+			final Iterator< Entry > it = entries.values().iterator();
+			while ( compressedBytes + entries.size() * ENTRY_OVERHEAD_BYTES > maxCompressedBytes && it.hasNext() )
+			{
+				final Entry eldest = it.next();
+				it.remove();
+				remove( eldest );
+				numEvicted.increment();
+			}
+		}
+	}
+
+	/**
+	 * Remove all cells from the tier.
+	 */
+	public void clear()
+	{
+		synchronized ( entries )
+		{
+			entries.clear();
+			compressedBytes = 0;
+			uncompressedBytes = 0;
+		}
+	}
+
+	private void remove( final Entry entry )
+	{
+		compressedBytes -= entry.compressedSize();
+		uncompressedBytes -= entry.uncompressedBytes;
+	}
+
+	private DatasetAttributes attributes( final DataType dataType, final int numElements )
+	{
+		return new DatasetAttributes( new long[] { numElements }, new int[] { numElements }, dataType, compression );
+	}
+
+	private static DataType dataType( final Object data )
+	{
+		if ( data instanceof byte[] )
+			return DataType.INT8;
+		else if ( data instanceof short[] )
+			return DataType.INT16;
+		else if ( data instanceof int[] )
+			return DataType.INT32;
+		else if ( data instanceof long[] )
+			return DataType.INT64;
+		else if ( data instanceof float[] )
+			return DataType.FLOAT32;
+		else if ( data instanceof double[] )
+			return DataType.FLOAT64;
+		else
+			return null;
+	}
+
+	private static int bytesPerElement( final Object data )
+	{
+		if ( data instanceof byte[] )
+			return 1;
+		else if ( data instanceof short[] )
+			return 2;
+		else if ( data instanceof int[] || data instanceof float[] )
+			return 4;
+		else
+			return 8;
+	}
+
+	private static DataBlock< ? > createDataBlock( final int numElements, final Object data )
+	{
+		final int[] size = { numElements };
+		final long[] gridPosition = { 0 };
+		if ( data instanceof byte[] )
+			return new ByteArrayDataBlock( size, gridPosition, ( byte[] ) data );
+		else if ( data instanceof short[] )
+			return new ShortArrayDataBlock( size, gridPosition, ( short[] ) data );
+		else if ( data instanceof int[] )
+			return new IntArrayDataBlock( size, gridPosition, ( int[] ) data );
+		else if ( data instanceof long[] )
+			return new LongArrayDataBlock( size, gridPosition, ( long[] ) data );
+		else if ( data instanceof float[] )
+			return new FloatArrayDataBlock( size, gridPosition, ( float[] ) data );
+		else
+			return new DoubleArrayDataBlock( size, gridPosition, ( double[] ) data );
+	}
+
+	private static final class Entry
+	{
+		final int[] cellDims;
+
+		final long[] cellMin;
+
+		/**
+		 * The access of a cell with constant data. {@code null} for
+		 * compressed entries.
+		 */
+		final DataAccess constant;
+
+		/**
+		 * Creates accesses of the original type for decompressed data.
+		 */
+		final ArrayDataAccess< ? > factory;
+
+		final DataType dataType;
+
+		final int numElements;
+
+		final byte[] compressed;
+
+		final long uncompressedBytes;
+
+		Entry( final int[] cellDims, final long[] cellMin, final DataAccess constant )
+		{
+			this.cellDims = cellDims;
+			this.cellMin = cellMin;
+			this.constant = constant;
+			this.factory = null;
+			this.dataType = null;
+			this.numElements = 0;
+			this.compressed = null;
+			this.uncompressedBytes = 0;
+		}
+
+		Entry( final int[] cellDims, final long[] cellMin, final ArrayDataAccess< ? > factory, final DataType dataType, final int numElements, final byte[] compressed, final long uncompressedBytes )
+		{
+			this.cellDims = cellDims;
+			this.cellMin = cellMin;
+			this.constant = null;
+			this.factory = factory;
+			this.dataType = dataType;
+			this.numElements = numElements;
+			this.compressed = compressed;
+			this.uncompressedBytes = uncompressedBytes;
+		}
+
+		long compressedSize()
+		{
+			return compressed == null ? 0 : compressed.length;
+		}
+	}
+
+	/**
+	 * Metrics of a {@link CompressedCellTier}.
+	 */
+	public static class Statistics
+	{
+		/**
+		 * How many requested cells were found in the tier.
+		 */
+		public final long numHits;
+
+		/**
+		 * How many requested cells were not found in the tier.
+		 */
+		public final long numMisses;
+
+		/**
+		 * How many cells were stored in the tier.
+		 */
+		public final long numStored;
+
+		/**
+		 * How many cells were dropped, because the tier was full.
+		 */
+		public final long numEvicted;
+
+		/**
+		 * Current number of cells in the tier.
+		 */
+		public final int numEntries;
+
+		/**
+		 * Current total size in bytes of compressed data in the tier.
+		 */
+		public final long compressedBytes;
+
+		/**
+		 * Current total size in bytes of the (uncompressed) data of the cells
+		 * in the tier.
+		 */
+		public final long uncompressedBytes;
+
+		/**
+		 * Total time spent compressing cells, in nanoseconds.
+		 */
+		public final long compressNanos;
+
+		/**
+		 * Total time spent decompressing cells, in nanoseconds.
+		 */
+		public final long decompressNanos;
+
+		Statistics( final long numHits, final long numMisses, final long numStored, final long numEvicted, final int numEntries, final long compressedBytes, final long uncompressedBytes, final long compressNanos, final long decompressNanos )
+		{
+			this.numHits = numHits;
+			this.numMisses = numMisses;
+			this.numStored = numStored;
+			this.numEvicted = numEvicted;
+			this.numEntries = numEntries;
+			this.compressedBytes = compressedBytes;
+			this.uncompressedBytes = uncompressedBytes;
+			this.compressNanos = compressNanos;
+			this.decompressNanos = decompressNanos;
+		}
+
+		/**
+		 * Memory saved by storing the cells of the tier compressed, in bytes.
+		 */
+		public long savedBytes()
+		{
+			return uncompressedBytes - compressedBytes;
+		}
+
+		/**
+		 * Average time to decompress a cell, in nanoseconds.
+		 */
+		public double averageDecompressNanos()
+		{
+			return numHits == 0 ? 0 : ( double ) decompressNanos / numHits;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "CompressedCellTier{hits=%d, misses=%d, stored=%d, evicted=%d, entries=%d, compressed=%d bytes, uncompressed=%d bytes, saved=%d bytes, compress=%.1f ms, decompress=%.1f ms}",
+					numHits, numMisses, numStored, numEvicted, numEntries, compressedBytes, uncompressedBytes, savedBytes(), compressNanos / 1e6, decompressNanos / 1e6 );
+		}
+	}
+
+	public Statistics getStatistics()
+	{
+		final int numEntries;
+		final long compressed;
+		final long uncompressed;
+		synchronized ( entries )
+		{
+			numEntries = entries.size();
+			compressed = compressedBytes;
+			uncompressed = uncompressedBytes;
+		}
+		return new Statistics(
+				numHits.sum(),
+				numMisses.sum(),
+				numStored.sum(),
+				numEvicted.sum(),
+				numEntries,
+				compressed,
+				uncompressed,
+				compressNanos.sum(),
+				decompressNanos.sum() );
+	}
+
+	/**
+	 * Reset the hit, miss, store, evict, and timing metrics.
+	 */
+	public void resetStatistics()
+	{
+		numHits.reset();
+		numMisses.reset();
+		numStored.reset();
+		numEvicted.reset();
+		compressNanos.reset();
+		decompressNanos.reset();
+	}
+}
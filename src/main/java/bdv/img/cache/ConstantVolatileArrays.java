@@ -0,0 +1,585 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import java.lang.reflect.Array;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileDoubleArray;
+
+/**
+ * Compact accesses for uniform cells: a single value and a length, instead of
+ * a full primitive array. Each class extends the corresponding
+ * {@code Volatile*Array} type, so that it can be used in the volatile cell
+ * images of the image loaders, and is read by samplers and projectors through
+ * {@code getValue()} without being expanded.
+ * <p>
+ * Constant accesses are read-only: {@code setValue()} throws
+ * {@link UnsupportedOperationException}. {@code getCurrentStorageArray()}
+ * returns a new array filled with the value on every call, which is not
+ * retained by the access (so that uniform cells stay small in the cache).
+ * Writes into that array are not seen by {@code getValue()}. Code that needs
+ * bulk access should check for {@link ConstantAccess} and use
+ * {@link ConstantAccess#fill(Object, int, int)} instead.
+ * <p>
+ * The six classes differ only in the primitive type. Everything else is
+ * implemented once, in {@link Constant}.
+ */
+public final class ConstantVolatileArrays
+{
+	private ConstantVolatileArrays()
+	{}
+
+	/**
+	 * Marker for constant accesses.
+	 */
+	public interface ConstantAccess
+	{
+		/**
+		 * Returns the value of all elements (boxed primitive).
+		 */
+		Number getConstantValue();
+
+		/**
+		 * Returns the number of elements.
+		 */
+		int getArrayLength();
+
+		/**
+		 * Returns the class of the primitive array that this access
+		 * represents, e.g., {@code short[].class}.
+		 */
+		Class< ? > getStorageArrayClass();
+
+		/**
+		 * Set {@code count} elements of the primitive array {@code dest}
+		 * (which must be of {@link #getStorageArrayClass()}), starting at
+		 * {@code offset}, to the constant value.
+		 */
+		void fill( Object dest, int offset, int count );
+	}
+
+	/**
+	 * If all elements of the primitive array {@code data} have the same
+	 * value, return a constant access with that value and the length of
+	 * {@code data}. Otherwise, return {@code null}.
+	 * <p>
+	 * Floating point values are compared by their bit patterns.
+	 */
+	public static VolatileArrayDataAccess< ? > ifUniform( final Object data )
+	{
+		if ( data instanceof byte[] )
+			return ifUniform( ( byte[] ) data );
+		else if ( data instanceof short[] )
+			return ifUniform( ( short[] ) data );
+		else if ( data instanceof int[] )
+			return ifUniform( ( int[] ) data );
+		else if ( data instanceof long[] )
+			return ifUniform( ( long[] ) data );
+		else if ( data instanceof float[] )
+			return ifUniform( ( float[] ) data );
+		else if ( data instanceof double[] )
+			return ifUniform( ( double[] ) data );
+		else
+			return null;
+	}
+
+	/**
+	 * Create a constant access of the given primitive {@code componentType}
+	 * and {@code length}, with all elements zero.
+	 */
+	public static VolatileArrayDataAccess< ? > zeros( final Class< ? > componentType, final int length )
+	{
+		if ( componentType == byte.class )
+			return new ConstantByteArray( length, ( byte ) 0 );
+		else if ( componentType == short.class )
+			return new ConstantShortArray( length, ( short ) 0 );
+		else if ( componentType == int.class )
+			return new ConstantIntArray( length, 0 );
+		else if ( componentType == long.class )
+			return new ConstantLongArray( length, 0 );
+		else if ( componentType == float.class )
+			return new ConstantFloatArray( length, 0 );
+		else if ( componentType == double.class )
+			return new ConstantDoubleArray( length, 0 );
+		else
+			throw new IllegalArgumentException( "unsupported component type " + componentType );
+	}
+
+	private static VolatileArrayDataAccess< ? > ifUniform( final byte[] data )
+	{
+		if ( data.length == 0 )
+			return null;
+		final byte v = data[ 0 ];
+		for ( int i = 1; i < data.length; ++i )
+			if ( data[ i ] != v )
+				return null;
+		return new ConstantByteArray( data.length, v );
+	}
+
+	private static VolatileArrayDataAccess< ? > ifUniform( final short[] data )
+	{
+		if ( data.length == 0 )
+			return null;
+		final short v = data[ 0 ];
+		for ( int i = 1; i < data.length; ++i )
+			if ( data[ i ] != v )
+				return null;
+		return new ConstantShortArray( data.length, v );
+	}
+
+	private static VolatileArrayDataAccess< ? > ifUniform( final int[] data )
+	{
+		if ( data.length == 0 )
+			return null;
+		final int v = data[ 0 ];
+		for ( int i = 1; i < data.length; ++i )
+			if ( data[ i ] != v )
+				return null;
+		return new ConstantIntArray( data.length, v );
+	}
+
+	private static VolatileArrayDataAccess< ? > ifUniform( final long[] data )
+	{
+		if ( data.length == 0 )
+			return null;
+		final long v = data[ 0 ];
+		for ( int i = 1; i < data.length; ++i )
+			if ( data[ i ] != v )
+				return null;
+		return new ConstantLongArray( data.length, v );
+	}
+
+	private static VolatileArrayDataAccess< ? > ifUniform( final float[] data )
+	{
+		if ( data.length == 0 )
+			return null;
+		final float v = data[ 0 ];
+		for ( int i = 1; i < data.length; ++i )
+			if ( Float.floatToRawIntBits( data[ i ] ) != Float.floatToRawIntBits( v ) )
+				return null;
+		return new ConstantFloatArray( data.length, v );
+	}
+
+	private static VolatileArrayDataAccess< ? > ifUniform( final double[] data )
+	{
+		if ( data.length == 0 )
+			return null;
+		final double v = data[ 0 ];
+		for ( int i = 1; i < data.length; ++i )
+			if ( Double.doubleToRawLongBits( data[ i ] ) != Double.doubleToRawLongBits( v ) )
+				return null;
+		return new ConstantDoubleArray( data.length, v );
+	}
+
+	/**
+	 * Length and value of a constant access. The value is kept as a
+	 * one-element primitive array, which is replicated into destination
+	 * arrays with {@code System.arraycopy}, independent of the primitive
+	 * type.
+	 */
+	private static final class Constant
+	{
+		final int length;
+
+		private final Object prototype;
+
+		Constant( final Object prototype, final int length )
+		{
+			this.prototype = prototype;
+			this.length = length;
+		}
+
+		/**
+		 * Returns a new array of {@code length} elements, filled with the
+		 * value.
+		 */
+		Object expand()
+		{
+			final Object array = Array.newInstance( prototype.getClass().getComponentType(), length );
+			fill( array, 0, length );
+			return array;
+		}
+
+		void fill( final Object dest, final int offset, final int count )
+		{
+			if ( count <= 0 )
+				return;
+			System.arraycopy( prototype, 0, dest, offset, 1 );
+			for ( int filled = 1; filled < count; filled <<= 1 )
+				System.arraycopy( dest, offset, dest, offset + filled, Math.min( filled, count - filled ) );
+		}
+
+		static UnsupportedOperationException readOnly()
+		{
+			return new UnsupportedOperationException( "constant access is read-only" );
+		}
+	}
+
+	public static final class ConstantByteArray extends VolatileByteArray implements ConstantAccess
+	{
+		private final Constant constant;
+
+		private final byte value;
+
+		public ConstantByteArray( final int length, final byte value )
+		{
+			super( 0, true );
+			this.constant = new Constant( new byte[] { value }, length );
+			this.value = value;
+		}
+
+		@Override
+		public byte getValue( final int index )
+		{
+			return value;
+		}
+
+		@Override
+		public void setValue( final int index, final byte value )
+		{
+			throw Constant.readOnly();
+		}
+
+		@Override
+		public byte[] getCurrentStorageArray()
+		{
+			return ( byte[] ) constant.expand();
+		}
+
+		@Override
+		public int getArrayLength()
+		{
+			return constant.length;
+		}
+
+		@Override
+		public Number getConstantValue()
+		{
+			return value;
+		}
+
+		@Override
+		public Class< ? > getStorageArrayClass()
+		{
+			return byte[].class;
+		}
+
+		@Override
+		public void fill( final Object dest, final int offset, final int count )
+		{
+			constant.fill( dest, offset, count );
+		}
+	}
+
+	public static final class ConstantShortArray extends VolatileShortArray implements ConstantAccess
+	{
+		private final Constant constant;
+
+		private final short value;
+
+		public ConstantShortArray( final int length, final short value )
+		{
+			super( 0, true );
+			this.constant = new Constant( new short[] { value }, length );
+			this.value = value;
+		}
+
+		@Override
+		public short getValue( final int index )
+		{
+			return value;
+		}
+
+		@Override
+		public void setValue( final int index, final short value )
+		{
+			throw Constant.readOnly();
+		}
+
+		@Override
+		public short[] getCurrentStorageArray()
+		{
+			return ( short[] ) constant.expand();
+		}
+
+		@Override
+		public int getArrayLength()
+		{
+			return constant.length;
+		}
+
+		@Override
+		public Number getConstantValue()
+		{
+			return value;
+		}
+
+		@Override
+		public Class< ? > getStorageArrayClass()
+		{
+			return short[].class;
+		}
+
+		@Override
+		public void fill( final Object dest, final int offset, final int count )
+		{
+			constant.fill( dest, offset, count );
+		}
+	}
+
+	public static final class ConstantIntArray extends VolatileIntArray implements ConstantAccess
+	{
+		private final Constant constant;
+
+		private final int value;
+
+		public ConstantIntArray( final int length, final int value )
+		{
+			super( 0, true );
+			this.constant = new Constant( new int[] { value }, length );
+			this.value = value;
+		}
+
+		@Override
+		public int getValue( final int index )
+		{
+			return value;
+		}
+
+		@Override
+		public void setValue( final int index, final int value )
+		{
+			throw Constant.readOnly();
+		}
+
+		@Override
+		public int[] getCurrentStorageArray()
+		{
+			return ( int[] ) constant.expand();
+		}
+
+		@Override
+		public int getArrayLength()
+		{
+			return constant.length;
+		}
+
+		@Override
+		public Number getConstantValue()
+		{
+			return value;
+		}
+
+		@Override
+		public Class< ? > getStorageArrayClass()
+		{
+			return int[].class;
+		}
+
+		@Override
+		public void fill( final Object dest, final int offset, final int count )
+		{
+			constant.fill( dest, offset, count );
+		}
+	}
+
+	public static final class ConstantLongArray extends VolatileLongArray implements ConstantAccess
+	{
+		private final Constant constant;
+
+		private final long value;
+
+		public ConstantLongArray( final int length, final long value )
+		{
+			super( 0, true );
+			this.constant = new Constant( new long[] { value }, length );
+			this.value = value;
+		}
+
+		@Override
+		public long getValue( final int index )
+		{
+			return value;
+		}
+
+		@Override
+		public void setValue( final int index, final long value )
+		{
+			throw Constant.readOnly();
+		}
+
+		@Override
+		public long[] getCurrentStorageArray()
+		{
+			return ( long[] ) constant.expand();
+		}
+
+		@Override
+		public int getArrayLength()
+		{
+			return constant.length;
+		}
+
+		@Override
+		public Number getConstantValue()
+		{
+			return value;
+		}
+
+		@Override
+		public Class< ? > getStorageArrayClass()
+		{
+			return long[].class;
+		}
+
+		@Override
+		public void fill( final Object dest, final int offset, final int count )
+		{
+			constant.fill( dest, offset, count );
+		}
+	}
+
+	public static final class ConstantFloatArray extends VolatileFloatArray implements ConstantAccess
+	{
+		private final Constant constant;
+
+		private final float value;
+
+		public ConstantFloatArray( final int length, final float value )
+		{
+			super( 0, true );
+			this.constant = new Constant( new float[] { value }, length );
+			this.value = value;
+		}
+
+		@Override
+		public float getValue( final int index )
+		{
+			return value;
+		}
+
+		@Override
+		public void setValue( final int index, final float value )
+		{
+			throw Constant.readOnly();
+		}
+
+		@Override
+		public float[] getCurrentStorageArray()
+		{
+			return ( float[] ) constant.expand();
+		}
+
+		@Override
+		public int getArrayLength()
+		{
+			return constant.length;
+		}
+
+		@Override
+		public Number getConstantValue()
+		{
+			return value;
+		}
+
+		@Override
+		public Class< ? > getStorageArrayClass()
+		{
+			return float[].class;
+		}
+
+		@Override
+		public void fill( final Object dest, final int offset, final int count )
+		{
+			constant.fill( dest, offset, count );
+		}
+	}
+
+	public static final class ConstantDoubleArray extends VolatileDoubleArray implements ConstantAccess
+	{
+		private final Constant constant;
+
+		private final double value;
+
+		public ConstantDoubleArray( final int length, final double value )
+		{
+			super( 0, true );
+			this.constant = new Constant( new double[] { value }, length );
+			this.value = value;
+		}
+
+		@Override
+		public double getValue( final int index )
+		{
+			return value;
+		}
+
+		@Override
+		public void setValue( final int index, final double value )
+		{
+			throw Constant.readOnly();
+		}
+
+		@Override
+		public double[] getCurrentStorageArray()
+		{
+			return ( double[] ) constant.expand();
+		}
+
+		@Override
+		public int getArrayLength()
+		{
+			return constant.length;
+		}
+
+		@Override
+		public Number getConstantValue()
+		{
+			return value;
+		}
+
+		@Override
+		public Class< ? > getStorageArrayClass()
+		{
+			return double[].class;
+		}
+
+		@Override
+		public void fill( final Object dest, final int offset, final int count )
+		{
+			constant.fill( dest, offset, count );
+		}
+	}
+}
@@ -113,6 +113,8 @@ public class VolatileGlobalCellCache implements CacheControl
 
 	protected final LoaderCache< Key, Cell< ? > > backingCache;
 
+	private volatile CompressedCellTier compressedTier;
+
 	/**
 	 * Create a new global cache with a new fetch queue served by the specified
 	 * number of fetcher threads.
@@ -161,6 +163,28 @@ public class VolatileGlobalCellCache implements CacheControl
 	public void clearCache()
 	{
 		backingCache.invalidateAll();
+		final CompressedCellTier tier = compressedTier;
+		if ( tier != null )
+			tier.clear();
+	}
+
+	/**
+	 * Set the compressed second cache tier, or {@code null} to disable it.
+	 * Cells dropped from the (soft reference) cache are then re-created from
+	 * the tier, if possible, instead of being loaded again. This takes effect
+	 * for all cells loaded after this call (also for images created before).
+	 */
+	public void setCompressedTier( final CompressedCellTier tier )
+	{
+		compressedTier = tier;
+	}
+
+	/**
+	 * Get the compressed second cache tier, or {@code null} if there is none.
+	 */
+	public CompressedCellTier getCompressedTier()
+	{
+		return compressedTier;
 	}
 
 	/**
@@ -248,9 +272,22 @@ public class VolatileGlobalCellCache implements CacheControl
 						? key.index
 						: null );
 
+		final CacheLoader< Long, Cell< ? > > tieredLoader = index -> {
+			final CompressedCellTier tier = compressedTier;
+			if ( tier == null )
+				return loader.get( index );
+			final Key key = new Key( timepoint, setup, level, index );
+			final Cell< ? > stored = tier.get( key );
+			if ( stored != null )
+				return stored;
+			final Cell< ? > cell = loader.get( index );
+			tier.put( key, cell );
+			return cell;
+		};
+
 		final Cache< Long, Cell< ? > > cache = backingCache
 				.mapKeys( bimap )
-				.withLoader( loader );
+				.withLoader( tieredLoader );
 
 		final CreateInvalidVolatileCell< ? > createInvalid = ( emptyArrayCreator == null )
 				? CreateInvalidVolatileCell.get( grid, type, false )
@@ -36,6 +36,7 @@ import java.net.URL;
 
 import javax.imageio.ImageIO;
 
+import bdv.img.cache.ArrayPool;
 import bdv.img.cache.CacheArrayLoader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
 
@@ -188,7 +189,8 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 		final long xm = min[ 0 ] + w;
 		final long ym = min[ 1 ] + h;
 		final double scale = 1.0 / Math.pow(2.0, level);
-		final int[] slice = new int[ w * h ];
+		final ArrayPool pool = ArrayPool.shared();
+		final int[] slice = pool.takeInts( w * h, true );
 
 		final long c0 = min[ 0 ] / tileWidth;
 		final long r0 = min[ 1 ] / tileHeight;
@@ -198,7 +200,7 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 		final int[] data;
 		if ( dimensions[ 2 ] > 1 )
 		{
-			data = new int[ w * h * dimensions[ 2 ] ];
+			data = pool.takeInts( w * h * dimensions[ 2 ], true );
 			final long[] zMin = min.clone();
 			for ( int z = 0; z < dimensions[ 2 ]; ++z )
 			{
@@ -210,6 +212,7 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 
 				System.arraycopy( slice, 0, data, z * slice.length, slice.length );
 			}
+			pool.recycle( slice );
 		}
 		else
 		{
@@ -220,6 +223,6 @@ public class CatmaidVolatileIntArrayLoader implements CacheArrayLoader< Volatile
 				loadSliceArray( slice, level, scale, c0, r0, x0, y0, min[ 2 ], xm, ym, min, w, h );
 		}
 
-		return new VolatileIntArray( data, true );
+		return pool.recycleWhenUnreachable( new VolatileIntArray( data, true ) );
 	}
 }
@@ -0,0 +1,669 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import static bdv.img.hdf5.Util.reorder;
+import static hdf.hdf5lib.HDF5Constants.H5P_DEFAULT;
+
+import hdf.hdf5lib.H5;
+import hdf.hdf5lib.HDF5Constants;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+
+/**
+ * Reads chunks of HDF5 datasets as raw (compressed) bytes, and decompresses
+ * them in Java.
+ * <p>
+ * The native HDF5 library serializes all calls, so when blocks are read
+ * through {@code H5Dread}, decompression runs on one core only, no matter how
+ * many fetcher threads there are. Here, only the lookup of the chunk is done
+ * through the HDF5 library. The compressed chunk data is read through a
+ * {@code FileChannel} (or {@code H5Dread_chunk}), and decompressed on the
+ * calling thread.
+ * <p>
+ * This supports the filters used by BigDataViewer HDF5 exports (deflate,
+ * shuffle, integer scale-offset), as well as fletcher32. Datasets with other
+ * filters, big-endian data, memory types that require conversion of the stored
+ * values, or blocks that are not aligned with chunks are not supported. For these, {@link #getChunkLayout} or {@link #readBlock} return
+ * {@code null} and the caller should fall back to {@code H5Dread}.
+ * <p>
+ * The chunk lookup functions are not available in all versions of the HDF5
+ * Java bindings, so they are looked up by reflection. If they are not
+ * available, {@link #isSupported()} returns {@code false}.
+ */
+public class DirectChunkReader
+{
+	private static final int H5Z_FILTER_DEFLATE = 1;
+
+	private static final int H5Z_FILTER_SHUFFLE = 2;
+
+	private static final int H5Z_FILTER_FLETCHER32 = 3;
+
+	private static final int H5Z_FILTER_SCALEOFFSET = 6;
+
+	private static final int H5Z_SO_INT = 2;
+
+	/**
+	 * Offset of the packed data in scale-offset compressed chunks.
+	 */
+	private static final int SCALEOFFSET_HEADER_SIZE = 21;
+
+	private static final Method getChunkInfoByCoord = findMethod( "H5Dget_chunk_info_by_coord", long.class, long[].class, int[].class, long[].class, long[].class );
+
+	private static final Method getChunkStorageSize = findMethod( "H5Dget_chunk_storage_size", long.class, long[].class );
+
+	private static final Method readChunk = findMethod( "H5Dread_chunk", long.class, long.class, long[].class, int[].class, byte[].class );
+
+	private final File file;
+
+	private final FileChannel channel;
+
+	/**
+	 * Whether the HDF5 Java bindings provide the functions for reading raw
+	 * chunks.
+	 */
+	public static boolean isSupported()
+	{
+		return getChunkInfoByCoord != null || ( getChunkStorageSize != null && readChunk != null );
+	}
+
+	public DirectChunkReader( final File file )
+	{
+		this.file = file.getAbsoluteFile();
+		FileChannel fc = null;
+		if ( getChunkInfoByCoord != null )
+		{
+			try
+			{
+				fc = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+			}
+			catch ( final IOException e )
+			{
+				// use H5Dread_chunk instead
+			}
+		}
+		channel = fc;
+	}
+
+	/**
+	 * Whether chunks of the given dataset can be read by this reader. Chunks
+	 * are read from the {@code FileChannel} of the file given in the
+	 * constructor. That is not possible for datasets stored in other files
+	 * (e.g., partitions reached through external links).
+	 */
+	public boolean canRead( final long dataSetId )
+	{
+		return channel == null || file.equals( new File( H5.H5Fget_name( dataSetId ) ).getAbsoluteFile() );
+	}
+
+	public void close()
+	{
+		if ( channel != null )
+		{
+			try
+			{
+				channel.close();
+			}
+			catch ( final IOException e )
+			{
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Chunk size, element type, and filter pipeline of a dataset.
+	 */
+	public static class ChunkLayout
+	{
+		/**
+		 * chunk size in HDF5 (row-major) order.
+		 */
+		final long[] chunkSize;
+
+		/**
+		 * {@code H5T_INTEGER} or {@code H5T_FLOAT}.
+		 */
+		final int typeClass;
+
+		/**
+		 * {@code H5T_SGN_NONE} or {@code H5T_SGN_2} for integer types.
+		 */
+		final int typeSign;
+
+		final int elementSize;
+
+		final int[] filterIds;
+
+		final int[][] filterParams;
+
+		ChunkLayout( final long[] chunkSize, final int typeClass, final int typeSign, final int elementSize, final int[] filterIds, final int[][] filterParams )
+		{
+			this.chunkSize = chunkSize;
+			this.typeClass = typeClass;
+			this.typeSign = typeSign;
+			this.elementSize = elementSize;
+			this.filterIds = filterIds;
+			this.filterParams = filterParams;
+		}
+
+		/**
+		 * Whether reading into memory type {@code memTypeId} with {@code
+		 * H5Dread} copies the stored bits unchanged, i.e., whether the
+		 * memory type has the same class, size, and sign as the dataset.
+		 */
+		boolean isBitCopy( final long memTypeId )
+		{
+			final int[] memType = memTypes.computeIfAbsent( memTypeId, DirectChunkReader::getTypeClassSignSize );
+			return memType[ 0 ] == typeClass
+					&& ( typeClass != HDF5Constants.H5T_INTEGER || memType[ 1 ] == typeSign )
+					&& memType[ 2 ] == elementSize;
+		}
+
+		int numChunkElements()
+		{
+			long n = 1;
+			for ( final long s : chunkSize )
+				n *= s;
+			return ( int ) n;
+		}
+	}
+
+	/**
+	 * Get the {@link ChunkLayout} of the given dataset, or {@code null} if
+	 * chunks of the dataset cannot be read directly.
+	 */
+	public static ChunkLayout getChunkLayout( final long dataSetId )
+	{
+		if ( !isSupported() )
+			return null;
+
+		final long typeId = H5.H5Dget_type( dataSetId );
+		final int[] classSignSize = getTypeClassSignSize( typeId );
+		final int typeClass = classSignSize[ 0 ];
+		final int typeSign = classSignSize[ 1 ];
+		final int elementSize = classSignSize[ 2 ];
+		final int order = H5.H5Tget_order( typeId );
+		H5.H5Tclose( typeId );
+		if ( typeClass != HDF5Constants.H5T_INTEGER && typeClass != HDF5Constants.H5T_FLOAT )
+			return null;
+		if ( elementSize > 1 && order != HDF5Constants.H5T_ORDER_LE )
+			return null;
+
+		final long creationPropertyList = H5.H5Dget_create_plist( dataSetId );
+		try
+		{
+			if ( H5.H5Pget_layout( creationPropertyList ) != HDF5Constants.H5D_CHUNKED )
+				return null;
+
+			final long fileSpaceId = H5.H5Dget_space( dataSetId );
+			final int nDims = H5.H5Sget_simple_extent_ndims( fileSpaceId );
+			H5.H5Sclose( fileSpaceId );
+			final long[] chunkSize = new long[ nDims ];
+			H5.H5Pget_chunk( creationPropertyList, nDims, chunkSize );
+
+			final int numFilters = H5.H5Pget_nfilters( creationPropertyList );
+			final int[] filterIds = new int[ numFilters ];
+			final int[][] filterParams = new int[ numFilters ][];
+			for ( int i = 0; i < numFilters; ++i )
+			{
+				final int[] flags = new int[ 1 ];
+				final long[] numParams = { 20 };
+				final int[] params = new int[ 20 ];
+				final String[] name = new String[ 1 ];
+				final int[] filterConfig = new int[ 1 ];
+				final int id = H5.H5Pget_filter( creationPropertyList, i, flags, numParams, params, 120, name, filterConfig );
+				if ( !isSupportedFilter( id, params, ( int ) numParams[ 0 ] ) )
+					return null;
+				filterIds[ i ] = id;
+				filterParams[ i ] = Arrays.copyOf( params, ( int ) Math.min( numParams[ 0 ], params.length ) );
+			}
+			return new ChunkLayout( chunkSize, typeClass, typeSign, elementSize, filterIds, filterParams );
+		}
+		finally
+		{
+			H5.H5Pclose( creationPropertyList );
+		}
+	}
+
+	/**
+	 * Class, sign, and size of memory types, by type id.
+	 */
+	private static final ConcurrentHashMap< Long, int[] > memTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * Get {@code { class, sign, size }} of the HDF5 datatype {@code typeId}.
+	 * The sign is {@code -1} for non-integer types.
+	 */
+	private static int[] getTypeClassSignSize( final long typeId )
+	{
+		final int typeClass = H5.H5Tget_class( typeId );
+		final int sign = typeClass == HDF5Constants.H5T_INTEGER ? H5.H5Tget_sign( typeId ) : -1;
+		final int size = ( int ) H5.H5Tget_size( typeId );
+		return new int[] { typeClass, sign, size };
+	}
+
+	private static boolean isSupportedFilter( final int id, final int[] params, final int numParams )
+	{
+		switch ( id )
+		{
+		case H5Z_FILTER_DEFLATE:
+		case H5Z_FILTER_SHUFFLE:
+		case H5Z_FILTER_FLETCHER32:
+			return true;
+		case H5Z_FILTER_SCALEOFFSET:
+			// only integer scaling of little-endian data
+			return numParams >= 8 && params[ 0 ] == H5Z_SO_INT && params[ 3 ] == 0 && params[ 6 ] == 0;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Read the block with the given {@code dimensions} and {@code min} (in
+	 * imglib2 order) from dataset {@code dataSetId}. The result is the same
+	 * as reading with {@code H5Dread} into memory type {@code memTypeId}.
+	 * Returns {@code null} if the block cannot be read directly, e.g.,
+	 * because the memory type requires conversion of the stored values,
+	 * because it does not align with a chunk, or because the chunk is not
+	 * allocated.
+	 */
+	public DataBlock< ? > readBlock(
+			final long dataSetId,
+			final ChunkLayout layout,
+			final DataType dataType,
+			final long memTypeId,
+			final int[] dimensions,
+			final long[] min )
+	{
+		if ( bytesPerElement( dataType ) != layout.elementSize
+				|| isFloat( dataType ) != ( layout.typeClass == HDF5Constants.H5T_FLOAT ) )
+			return null;
+
+		final DataBlock< ? > block = dataType.createDataBlock( dimensions, min );
+		return readBlock( dataSetId, layout, memTypeId, dimensions, min, block.getData() ) ? block : null;
+	}
+
+	/**
+	 * Read the block with the given {@code dimensions} and {@code min} (in
+	 * imglib2 order) from dataset {@code dataSetId} into the primitive array
+	 * {@code dst}. The result is the same as reading with {@code H5Dread} into
+	 * memory type {@code memTypeId}. Returns {@code false} if the block cannot
+	 * be read directly, e.g., because the memory type requires conversion of
+	 * the stored values, because it does not align with a chunk, or because
+	 * the chunk is not allocated.
+	 */
+	public boolean readBlock(
+			final long dataSetId,
+			final ChunkLayout layout,
+			final long memTypeId,
+			final int[] dimensions,
+			final long[] min,
+			final Object dst )
+	{
+		if ( bytesPerElement( dst ) != layout.elementSize || !layout.isBitCopy( memTypeId ) )
+			return false;
+
+		final int n = dimensions.length;
+		final long[] offset = reorder( min );
+		final long[] blockSize = reorder( dimensions, new long[ n ] );
+		if ( offset.length != layout.chunkSize.length )
+			return false;
+		for ( int d = 0; d < n; ++d )
+			if ( offset[ d ] % layout.chunkSize[ d ] != 0 || blockSize[ d ] > layout.chunkSize[ d ] )
+				return false;
+
+		final int[] filterMask = new int[ 1 ];
+		final byte[] raw;
+		final byte[] decoded;
+		try
+		{
+			raw = readRawChunk( dataSetId, offset, filterMask );
+			if ( raw == null )
+				return false;
+			decoded = decode( raw, filterMask[ 0 ], layout );
+		}
+		catch ( final Exception e )
+		{
+			return false;
+		}
+		if ( decoded.length < layout.numChunkElements() * layout.elementSize )
+			return false;
+
+		copyToBlock( decoded, layout.chunkSize, blockSize, dst );
+		return true;
+	}
+
+	/**
+	 * Read the raw (filtered) bytes of the chunk at {@code offset} (in HDF5
+	 * order). Returns {@code null} if the chunk is not allocated.
+	 */
+	private byte[] readRawChunk( final long dataSetId, final long[] offset, final int[] filterMask ) throws Exception
+	{
+		if ( channel != null )
+		{
+			final long[] address = new long[ 1 ];
+			final long[] size = new long[ 1 ];
+			getChunkInfoByCoord.invoke( null, dataSetId, offset, filterMask, address, size );
+			if ( address[ 0 ] < 0 || size[ 0 ] <= 0 )
+				return null;
+			final ByteBuffer buffer = ByteBuffer.allocate( ( int ) size[ 0 ] );
+			long position = address[ 0 ];
+			while ( buffer.hasRemaining() )
+			{
+				final int r = channel.read( buffer, position );
+				if ( r < 0 )
+					return null;
+				position += r;
+			}
+			return buffer.array();
+		}
+		else
+		{
+			final long size = ( ( Number ) getChunkStorageSize.invoke( null, dataSetId, offset ) ).longValue();
+			if ( size <= 0 )
+				return null;
+			final byte[] buffer = new byte[ ( int ) size ];
+			readChunk.invoke( null, dataSetId, H5P_DEFAULT, offset, filterMask, buffer );
+			return buffer;
+		}
+	}
+
+	/**
+	 * Undo the filter pipeline of the dataset. Filters that are flagged in
+	 * {@code filterMask} were skipped when the chunk was written.
+	 */
+	static byte[] decode( final byte[] raw, final int filterMask, final ChunkLayout layout ) throws DataFormatException
+	{
+		final int numElements = layout.numChunkElements();
+		final int elementSize = layout.elementSize;
+		byte[] data = raw;
+		for ( int i = layout.filterIds.length - 1; i >= 0; --i )
+		{
+			if ( ( filterMask & ( 1 << i ) ) != 0 )
+				continue;
+			switch ( layout.filterIds[ i ] )
+			{
+			case H5Z_FILTER_DEFLATE:
+				data = inflate( data, numElements * elementSize );
+				break;
+			case H5Z_FILTER_SHUFFLE:
+				data = unshuffle( data, elementSize );
+				break;
+			case H5Z_FILTER_FLETCHER32:
+				data = Arrays.copyOf( data, data.length - 4 );
+				break;
+			case H5Z_FILTER_SCALEOFFSET:
+				data = decodeScaleOffset( data, layout.filterParams[ i ], numElements, elementSize );
+				break;
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Inflate zlib compressed {@code data}. {@code sizeHint} is the expected
+	 * size of the decompressed data.
+	 */
+	static byte[] inflate( final byte[] data, final int sizeHint ) throws DataFormatException
+	{
+		final Inflater inflater = inflaters.get();
+		try
+		{
+			inflater.setInput( data );
+			byte[] out = new byte[ Math.max( sizeHint, 64 ) ];
+			int size = 0;
+			while ( !inflater.finished() )
+			{
+				if ( size == out.length )
+					out = Arrays.copyOf( out, 2 * out.length );
+				final int n = inflater.inflate( out, size, out.length - size );
+				if ( n == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+					throw new DataFormatException( "truncated deflate stream" );
+				size += n;
+			}
+			return size == out.length ? out : Arrays.copyOf( out, size );
+		}
+		finally
+		{
+			inflater.reset();
+		}
+	}
+
+	/**
+	 * Creating an {@code Inflater} allocates native zlib state, so each
+	 * fetcher thread reuses one.
+	 */
+	private static final ThreadLocal< Inflater > inflaters = ThreadLocal.withInitial( Inflater::new );
+
+	/**
+	 * Undo the HDF5 shuffle filter, which stores the first bytes of all
+	 * elements, then the second bytes of all elements, etc.
+	 */
+	static byte[] unshuffle( final byte[] data, final int elementSize )
+	{
+		if ( elementSize <= 1 )
+			return data;
+		final int numElements = data.length / elementSize;
+		final byte[] out = new byte[ data.length ];
+		for ( int b = 0; b < elementSize; ++b )
+		{
+			final int srcOffset = b * numElements;
+			for ( int i = 0; i < numElements; ++i )
+				out[ i * elementSize + b ] = data[ srcOffset + i ];
+		}
+		// leftover bytes are not shuffled
+		final int shuffled = numElements * elementSize;
+		System.arraycopy( data, shuffled, out, shuffled, data.length - shuffled );
+		return out;
+	}
+
+	/**
+	 * Undo the HDF5 scale-offset filter for integer data. Values are stored
+	 * as {@code minbits}-bit offsets from {@code minval}, packed MSB first. If
+	 * the dataset has a fill value, the all-ones offset represents the fill
+	 * value.
+	 */
+	static byte[] decodeScaleOffset( final byte[] data, final int[] params, final int numElements, final int elementSize )
+	{
+		final int minbits = ( data[ 0 ] & 0xff )
+				| ( data[ 1 ] & 0xff ) << 8
+				| ( data[ 2 ] & 0xff ) << 16
+				| ( data[ 3 ] & 0xff ) << 24;
+		final int minvalSize = Math.min( 8, data[ 4 ] & 0xff );
+		long minval = 0;
+		for ( int i = 0; i < minvalSize; ++i )
+			minval |= ( long ) ( data[ 5 + i ] & 0xff ) << ( 8 * i );
+
+		final byte[] out = new byte[ numElements * elementSize ];
+		if ( minbits == elementSize * 8 )
+		{
+			System.arraycopy( data, SCALEOFFSET_HEADER_SIZE, out, 0, out.length );
+			return out;
+		}
+
+		final boolean fillDefined = params[ 7 ] == 1 && params.length > 8;
+		long fill = 0;
+		if ( fillDefined )
+		{
+			fill = params[ 8 ] & 0xffffffffL;
+			if ( elementSize == 8 && params.length > 9 )
+				fill |= ( long ) params[ 9 ] << 32;
+		}
+		final long fillCode = minbits == 64 ? -1 : ( 1L << minbits ) - 1;
+
+		long bitPos = 8L * SCALEOFFSET_HEADER_SIZE;
+		for ( int i = 0, o = 0; i < numElements; ++i )
+		{
+			final long code = minbits == 0 ? 0 : readBits( data, bitPos, minbits );
+			bitPos += minbits;
+			final long value = ( fillDefined && code == fillCode ) ? fill : code + minval;
+			for ( int b = 0; b < elementSize; ++b )
+				out[ o++ ] = ( byte ) ( value >>> ( 8 * b ) );
+		}
+		return out;
+	}
+
+	/**
+	 * Read {@code numBits} bits (MSB first) starting at bit {@code bitPos}.
+	 */
+	private static long readBits( final byte[] data, long bitPos, final int numBits )
+	{
+		long value = 0;
+		for ( int remaining = numBits; remaining > 0; )
+		{
+			final int available = 8 - ( int ) ( bitPos & 7 );
+			final int n = Math.min( available, remaining );
+			final int bits = ( ( data[ ( int ) ( bitPos >>> 3 ) ] & 0xff ) >>> ( available - n ) ) & ( ( 1 << n ) - 1 );
+			value = ( value << n ) | bits;
+			remaining -= n;
+			bitPos += n;
+		}
+		return value;
+	}
+
+	/**
+	 * Copy the (little-endian) {@code chunk} data into the primitive array
+	 * {@code dst}. Dimensions are in HDF5 order. {@code blockSize} may be
+	 * smaller than {@code chunkSize} at the border of the dataset.
+	 */
+	static void copyToBlock( final byte[] chunk, final long[] chunkSize, final long[] blockSize, final Object dst )
+	{
+		final int n = chunkSize.length;
+		final int rowLength = ( int ) blockSize[ n - 1 ];
+		int numRows = 1;
+		for ( int d = 0; d < n - 1; ++d )
+			numRows *= blockSize[ d ];
+
+		final ByteBuffer src = ByteBuffer.wrap( chunk ).order( ByteOrder.LITTLE_ENDIAN );
+		final long[] pos = new long[ n ];
+		for ( int row = 0; row < numRows; ++row )
+		{
+			// row-major index of row start in chunk and block
+			long srcIndex = 0;
+			long dstIndex = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				srcIndex = srcIndex * chunkSize[ d ] + pos[ d ];
+				dstIndex = dstIndex * blockSize[ d ] + pos[ d ];
+			}
+			copyRow( chunk, src, ( int ) srcIndex, dst, ( int ) dstIndex, rowLength );
+
+			for ( int d = n - 2; d >= 0; --d )
+			{
+				if ( ++pos[ d ] < blockSize[ d ] )
+					break;
+				pos[ d ] = 0;
+			}
+		}
+	}
+
+	private static void copyRow( final byte[] chunk, final ByteBuffer src, final int srcIndex, final Object dst, final int dstIndex, final int length )
+	{
+		if ( dst instanceof byte[] )
+			System.arraycopy( chunk, srcIndex, dst, dstIndex, length );
+		else if ( dst instanceof short[] )
+			( ( ByteBuffer ) src.position( 2 * srcIndex ) ).asShortBuffer().get( ( short[] ) dst, dstIndex, length );
+		else if ( dst instanceof int[] )
+			( ( ByteBuffer ) src.position( 4 * srcIndex ) ).asIntBuffer().get( ( int[] ) dst, dstIndex, length );
+		else if ( dst instanceof long[] )
+			( ( ByteBuffer ) src.position( 8 * srcIndex ) ).asLongBuffer().get( ( long[] ) dst, dstIndex, length );
+		else if ( dst instanceof float[] )
+			( ( ByteBuffer ) src.position( 4 * srcIndex ) ).asFloatBuffer().get( ( float[] ) dst, dstIndex, length );
+		else if ( dst instanceof double[] )
+			( ( ByteBuffer ) src.position( 8 * srcIndex ) ).asDoubleBuffer().get( ( double[] ) dst, dstIndex, length );
+		else
+			throw new IllegalArgumentException();
+	}
+
+	private static int bytesPerElement( final DataType dataType )
+	{
+		switch ( dataType )
+		{
+		case UINT8:
+		case INT8:
+			return 1;
+		case UINT16:
+		case INT16:
+			return 2;
+		case UINT32:
+		case INT32:
+		case FLOAT32:
+			return 4;
+		case UINT64:
+		case INT64:
+		case FLOAT64:
+			return 8;
+		default:
+			return -1;
+		}
+	}
+
+	private static boolean isFloat( final DataType dataType )
+	{
+		return dataType == DataType.FLOAT32 || dataType == DataType.FLOAT64;
+	}
+
+	private static int bytesPerElement( final Object array )
+	{
+		if ( array instanceof byte[] )
+			return 1;
+		else if ( array instanceof short[] )
+			return 2;
+		else if ( array instanceof int[] || array instanceof float[] )
+			return 4;
+		else if ( array instanceof long[] || array instanceof double[] )
+			return 8;
+		else
+			return -1;
+	}
+
+	private static Method findMethod( final String name, final Class< ? >... parameterTypes )
+	{
+		try
+		{
+			return H5.class.getMethod( name, parameterTypes );
+		}
+		catch ( final NoSuchMethodException | SecurityException e )
+		{
+			return null;
+		}
+	}
+}
@@ -88,10 +88,19 @@ class HDF5Access
 
 		final long dataSetId;
 
+		/**
+		 * {@code null} if chunks of this dataset cannot be read through the
+		 * {@link #directChunkReader}.
+		 */
+		final DirectChunkReader.ChunkLayout chunkLayout;
+
 		public OpenDataSet( final String pathName )
 		{
 			refcount = new AtomicInteger( 1 );
 			dataSetId = H5Dopen( fileId, pathName, H5P_DEFAULT );
+			chunkLayout = directChunkReader != null && directChunkReader.canRead( dataSetId )
+					? DirectChunkReader.getChunkLayout( dataSetId )
+					: null;
 		}
 
 		public void retain()
@@ -170,6 +179,12 @@ class HDF5Access
 
 	private final OpenDataSetCache openDataSetCache;
 
+	/**
+	 * Reads compressed chunks and decompresses them in Java, on the calling
+	 * thread. {@code null} if not supported by the HDF5 Java bindings.
+	 */
+	private final DirectChunkReader directChunkReader;
+
 	public HDF5Access( final IHDF5Reader hdf5Reader )
 	{
 		this.hdf5Reader = hdf5Reader;
@@ -196,6 +211,8 @@ class HDF5Access
 		// Make sure to close the fileID created below. See close()
 		fileId = H5Fopen(file.getAbsolutePath(), H5F_ACC_RDONLY, fileAccessPropertyListId);
 
+		directChunkReader = DirectChunkReader.isSupported() ? new DirectChunkReader( file ) : null;
+
 		openDataSetCache = new OpenDataSetCache();
 	}
 
@@ -230,6 +247,18 @@ class HDF5Access
 		}
 	}
 
+	/**
+	 * Whether blocks of the dataset {@code pathName} are read directly (and
+	 * decompressed on the calling thread), see {@link DirectChunkReader}.
+	 */
+	public boolean isDirectChunkReadSupported( final String pathName )
+	{
+		try ( OpenDataSet dataset = openDataSetCache.getDataSet( pathName ) )
+		{
+			return dataset != null && dataset.chunkLayout != null;
+		}
+	}
+
 	public void closeAllDataSets()
 	{
 		openDataSetCache.clear();
@@ -238,6 +267,8 @@ class HDF5Access
 	public void close()
 	{
 		closeAllDataSets();
+		if ( directChunkReader != null )
+			directChunkReader.close();
 		int status = H5Pclose( numericConversionXferPropertyListID );
 		if ( status < 0 )
 		{
@@ -261,23 +292,29 @@ class HDF5Access
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
 
-		final long[] reorderedDimensions = Util.reorder( dimensions, new long[ dimensions.length ] );
-		final long[] reorderedMin = Util.reorder( min );
-
-		// TODO: using min for DataBlock.gridPosition is wrong. Should divide min by blockSize instead.
-		//       it's ok for now, because we dont use it, but should be changed when this is pushed down to n5-hdf5
-		final DataBlock< ? > block = dataType.createDataBlock( dimensions, min );
-
 		try ( OpenDataSet dataset = openDataSetCache.getDataSet( pathName ) )
 		{
+			if ( dataset.chunkLayout != null )
+			{
+				final DataBlock< ? > block = directChunkReader.readBlock( dataset.dataSetId, dataset.chunkLayout, dataType, memTypeId, dimensions, min );
+				if ( block != null )
+					return block;
+			}
+
+			final long[] reorderedDimensions = Util.reorder( dimensions, new long[ dimensions.length ] );
+			final long[] reorderedMin = Util.reorder( min );
+
+			// TODO: using min for DataBlock.gridPosition is wrong. Should divide min by blockSize instead.
+			//       it's ok for now, because we dont use it, but should be changed when this is pushed down to n5-hdf5
+			final DataBlock< ? > block = dataType.createDataBlock( dimensions, min );
+
 			final long memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
 			final long fileSpaceId = H5Dget_space( dataset.dataSetId );
 			H5Sselect_hyperslab( fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
 			H5Dread( dataset.dataSetId, memTypeId, memorySpaceId, fileSpaceId, numericConversionXferPropertyListID, block.getData() );
 			H5Sclose( fileSpaceId );
 			H5Sclose( memorySpaceId );
+			return block;
 		}
-
-		return block;
 	}
 }
@@ -32,8 +32,11 @@ import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.cache.CacheControl;
 import bdv.cache.SharedQueue;
+import bdv.img.LevelStatistics;
+import bdv.img.LevelStatisticsProvider;
 import bdv.img.MipmapInfo;
 import bdv.img.cache.CacheArrayLoader;
+import bdv.img.cache.ConstantVolatileArrays;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.img.n5.DataTypeProperties;
 import bdv.util.ConstantRandomAccessible;
@@ -54,6 +57,7 @@ import mpicbg.spim.data.sequence.Angle;
 import mpicbg.spim.data.sequence.Channel;
 import mpicbg.spim.data.sequence.MultiResolutionImgLoader;
 import mpicbg.spim.data.sequence.MultiResolutionSetupImgLoader;
+import mpicbg.spim.data.sequence.TimePoint;
 import mpicbg.spim.data.sequence.ViewId;
 import mpicbg.spim.data.sequence.VoxelDimensions;
 import net.imglib2.Dimensions;
@@ -185,7 +189,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 					final int numFetcherThreads = requestedNumFetcherThreads >= 0
 							? requestedNumFetcherThreads
-							: 1;
+							: getDefaultNumFetcherThreads( setups );
 					final SharedQueue queue = requestedSharedQueue != null
 							? requestedSharedQueue
 							: ( createdSharedQueue = new SharedQueue( numFetcherThreads, maxNumLevels ) );
@@ -201,6 +205,24 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		}
 	}
 
+	/**
+	 * With direct chunk reads, blocks are decompressed on the fetcher threads
+	 * in parallel, and one fetcher thread per core is used. Otherwise, all
+	 * reads are serialized by the HDF5 library, and one fetcher thread is
+	 * used. Whether direct chunk reads apply is checked for the full
+	 * resolution dataset of the first setup and timepoint.
+	 */
+	private int getDefaultNumFetcherThreads( final List< ? extends BasicViewSetup > setups )
+	{
+		final List< TimePoint > timepoints = seq.getTimePoints().getTimePointsOrdered();
+		if ( setups.isEmpty() || timepoints.isEmpty() )
+			return 1;
+		final String pathName = getCellsPath( timepoints.get( 0 ).getId(), setups.get( 0 ).getId(), 0 );
+		return hdf5Access.isDirectChunkReadSupported( pathName )
+				? Math.max( 1, Runtime.getRuntime().availableProcessors() )
+				: 1;
+	}
+
 	/**
 	 * Clear the cache. Images that were obtained from
 	 * this loader before {@link #close()} will stop working. Requesting images
@@ -334,7 +356,7 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 
 	public class SetupImgLoader< T extends NativeType< T >, V extends Volatile< T > & NativeType< V > >
 			extends AbstractViewerSetupImgLoader< T, V >
-			implements MultiResolutionSetupImgLoader< T >
+			implements MultiResolutionSetupImgLoader< T >, LevelStatisticsProvider
 	{
 		private final HDF5Access hdf5Access;
 
@@ -381,6 +403,22 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 			return mipmapInfo;
 		}
 
+		@Override
+		public LevelStatistics getLevelStatistics( final int timepointId, final int level )
+		{
+			final String pathName = getCellsPath( timepointId, setupId, level );
+			try
+			{
+				if ( !hdf5Reader.object().hasAttribute( pathName, LevelStatistics.STATISTICS_KEY ) )
+					return null;
+				return LevelStatistics.fromJson( hdf5Reader.string().getAttr( pathName, LevelStatistics.STATISTICS_KEY ) );
+			}
+			catch ( final RuntimeException e )
+			{
+				return null;
+			}
+		}
+
 		@Override
 		public double[][] getMipmapResolutions()
 		{
@@ -469,7 +507,8 @@ public class Hdf5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoade
 		public A loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 		{
 			final DataBlock< T > dataBlock = Cast.unchecked( hdf5Access.readBlock( pathName, dataType, memTypeId, dimensions, min ) );
-			return createVolatileArrayAccess.apply( dataBlock.getData() );
+			final A constant = Cast.unchecked( ConstantVolatileArrays.ifUniform( dataBlock.getData() ) );
+			return constant != null ? constant : createVolatileArrayAccess.apply( dataBlock.getData() );
 		}
 	}
 
@@ -57,12 +57,23 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.util.LinkedHashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import bdv.img.hdf5.DimsAndExistence;
+import bdv.img.hdf5.DirectChunkReader;
 import bdv.img.hdf5.Util;
 import bdv.img.hdf5.ViewLevelId;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 
+/**
+ * Reads Imaris files through lower-level HDF5.
+ * <p>
+ * Blocks can be read concurrently from multiple fetcher threads: If supported
+ * by the HDF5 Java bindings, compressed chunks are read directly and
+ * decompressed in Java on the calling thread (see {@link DirectChunkReader}).
+ * Otherwise, blocks are read through {@code H5Dread}, which is serialized by
+ * the HDF5 library.
+ */
 public class HDF5AccessHack implements IHDF5Access
 {
 	private final IHDF5Reader hdf5Reader;
@@ -71,28 +82,38 @@ public class HDF5AccessHack implements IHDF5Access
 
 	private final long numericConversionXferPropertyListID;
 
-	private final long[] reorderedDimensions = new long[ 3 ];
-
-	private final long[] reorderedMin = new long[ 3 ];
-
 	private static final int MAX_OPEN_DATASETS = 48;
 
-	private class OpenDataSet
+	private class OpenDataSet implements AutoCloseable
 	{
+		final AtomicInteger refcount;
+
 		final long dataSetId;
 
-		final long fileSpaceId;
+		/**
+		 * {@code null} if chunks of this dataset cannot be read through the
+		 * {@link #directChunkReader}.
+		 */
+		final DirectChunkReader.ChunkLayout chunkLayout;
 
 		public OpenDataSet( final String cellsPath )
 		{
+			refcount = new AtomicInteger( 1 );
 			dataSetId = H5Dopen( fileId, cellsPath, H5P_DEFAULT );
-			fileSpaceId = H5Dget_space( dataSetId );
+			chunkLayout = directChunkReader == null ? null : DirectChunkReader.getChunkLayout( dataSetId );
 		}
 
+		public void retain()
+		{
+			if ( refcount.getAndIncrement() <= 0 )
+				throw new IllegalStateException();
+		}
+
+		@Override
 		public void close()
 		{
-			H5Sclose( fileSpaceId );
-			H5Dclose( dataSetId );
+			if ( refcount.decrementAndGet() == 0 )
+				H5Dclose( dataSetId );
 		}
 	}
 
@@ -117,7 +138,11 @@ public class HDF5AccessHack implements IHDF5Access
 				return false;
 		}
 
-		public OpenDataSet getDataSet( final ViewLevelId id )
+		/**
+		 * Get the (retained) dataset for {@code id}. The caller must
+		 * {@link OpenDataSet#close() close} it after use.
+		 */
+		public synchronized OpenDataSet getDataSet( final ViewLevelId id )
 		{
 			OpenDataSet openDataSet = super.get( id );
 			if ( openDataSet == null )
@@ -125,12 +150,24 @@ public class HDF5AccessHack implements IHDF5Access
 				openDataSet = new OpenDataSet( getCellsPath( id ) );
 				put( id, openDataSet );
 			}
+			openDataSet.retain();
 			return openDataSet;
 		}
+
+		public synchronized void closeAll()
+		{
+			values().forEach( OpenDataSet::close );
+			clear();
+		}
 	}
 
 	private final OpenDataSetCache openDataSetCache;
 
+	/**
+	 * {@code null} if not supported by the HDF5 Java bindings.
+	 */
+	private final DirectChunkReader directChunkReader;
+
 	public HDF5AccessHack( final IHDF5Reader hdf5Reader ) throws ClassNotFoundException, SecurityException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException
 	{
 		this.hdf5Reader = hdf5Reader;
@@ -154,20 +191,31 @@ public class HDF5AccessHack implements IHDF5Access
 		f4.setAccessible( true );
 		numericConversionXferPropertyListID = ( ( Long ) f4.get( h5 ) ).longValue();
 
+		directChunkReader = DirectChunkReader.isSupported() ? new DirectChunkReader( hdf5Reader.file().getFile() ) : null;
 		openDataSetCache = new OpenDataSetCache();
 	}
 
+	/**
+	 * Whether blocks can be read concurrently (without being serialized by
+	 * the HDF5 library).
+	 */
+	public static boolean isConcurrent()
+	{
+		return DirectChunkReader.isSupported();
+	}
+
 	@Override
-	public synchronized DimsAndExistence getDimsAndExistence( final ViewLevelId id )
+	public DimsAndExistence getDimsAndExistence( final ViewLevelId id )
 	{
 		final long[] realDimensions = new long[ 3 ];
 		boolean exists = false;
-		try
+		try ( OpenDataSet dataset = openDataSetCache.getDataSet( id ) )
 		{
-			final OpenDataSet dataset = openDataSetCache.getDataSet( id );
+			final long fileSpaceId = H5Dget_space( dataset.dataSetId );
 			final long[] dimensions = new long[ H5S_MAX_RANK ];
 			final long[] maxDimensions = new long[ H5S_MAX_RANK ];
-			final int rank = H5Sget_simple_extent_dims( dataset.fileSpaceId, dimensions, maxDimensions );
+			final int rank = H5Sget_simple_extent_dims( fileSpaceId, dimensions, maxDimensions );
+			H5Sclose( fileSpaceId );
 			System.arraycopy( dimensions, 0, realDimensions, 0, rank );
 			exists = true;
 		}
@@ -180,7 +228,7 @@ public class HDF5AccessHack implements IHDF5Access
 	}
 
 	@Override
-	public synchronized byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
 		final byte[] dataBlock = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
 		readByteMDArrayBlockWithOffset( timepoint, setup, level, dimensions, min, dataBlock );
@@ -188,19 +236,9 @@ public class HDF5AccessHack implements IHDF5Access
 	}
 
 	@Override
-	public synchronized byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final byte[] dataBlock ) throws InterruptedException
+	public byte[] readByteMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final byte[] dataBlock ) throws InterruptedException
 	{
-		if ( Thread.interrupted() )
-			throw new InterruptedException();
-		Util.reorder( dimensions, reorderedDimensions );
-		Util.reorder( min, reorderedMin );
-
-		final OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) );
-		final long memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
-		H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
-		H5Dread( dataset.dataSetId, H5T_NATIVE_UCHAR, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
-		H5Sclose( memorySpaceId );
-
+		readBlock( timepoint, setup, level, dimensions, min, H5T_NATIVE_UCHAR, dataBlock );
 		return dataBlock;
 	}
 
@@ -212,21 +250,10 @@ public class HDF5AccessHack implements IHDF5Access
 		return dataBlock;
 	}
 
-	// TODO: this could be unified with readByteMDArrayBlockWithOffset? (final Object dataBlock, int H5T_NATIVE_type)?
 	@Override
 	public short[] readShortMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final short[] dataBlock ) throws InterruptedException
 	{
-		if ( Thread.interrupted() )
-			throw new InterruptedException();
-		Util.reorder( dimensions, reorderedDimensions );
-		Util.reorder( min, reorderedMin );
-
-		final OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) );
-		final long memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
-		H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
-		H5Dread( dataset.dataSetId, H5T_NATIVE_USHORT, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
-		H5Sclose( memorySpaceId );
-
+		readBlock( timepoint, setup, level, dimensions, min, H5T_NATIVE_USHORT, dataBlock );
 		return dataBlock;
 	}
 
@@ -238,22 +265,36 @@ public class HDF5AccessHack implements IHDF5Access
 		return dataBlock;
 	}
 
-	// TODO: this could be unified with readByteMDArrayBlockWithOffset? (final Object dataBlock, int H5T_NATIVE_type)?
 	@Override
 	public float[] readFloatMDArrayBlockWithOffset( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final float[] dataBlock ) throws InterruptedException
+	{
+		readBlock( timepoint, setup, level, dimensions, min, H5T_NATIVE_FLOAT, dataBlock );
+		return dataBlock;
+	}
+
+	/**
+	 * Read a block into the primitive array {@code dataBlock}. This may be
+	 * called concurrently.
+	 */
+	private void readBlock( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min, final long memTypeId, final Object dataBlock ) throws InterruptedException
 	{
 		if ( Thread.interrupted() )
 			throw new InterruptedException();
-		Util.reorder( dimensions, reorderedDimensions );
-		Util.reorder( min, reorderedMin );
-
-		final OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) );
-		final long memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
-		H5Sselect_hyperslab( dataset.fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
-		H5Dread( dataset.dataSetId, H5T_NATIVE_FLOAT, memorySpaceId, dataset.fileSpaceId, numericConversionXferPropertyListID, dataBlock );
-		H5Sclose( memorySpaceId );
 
-		return dataBlock;
+		try ( OpenDataSet dataset = openDataSetCache.getDataSet( new ViewLevelId( timepoint, setup, level ) ) )
+		{
+			if ( dataset.chunkLayout != null && directChunkReader.readBlock( dataset.dataSetId, dataset.chunkLayout, memTypeId, dimensions, min, dataBlock ) )
+				return;
+
+			final long[] reorderedDimensions = Util.reorder( dimensions, new long[ dimensions.length ] );
+			final long[] reorderedMin = Util.reorder( min );
+			final long memorySpaceId = H5Screate_simple( reorderedDimensions.length, reorderedDimensions, null );
+			final long fileSpaceId = H5Dget_space( dataset.dataSetId );
+			H5Sselect_hyperslab( fileSpaceId, H5S_SELECT_SET, reorderedMin, null, reorderedDimensions, null );
+			H5Dread( dataset.dataSetId, memTypeId, memorySpaceId, fileSpaceId, numericConversionXferPropertyListID, dataBlock );
+			H5Sclose( fileSpaceId );
+			H5Sclose( memorySpaceId );
+		}
 	}
 
 	@Override
@@ -326,8 +367,9 @@ public class HDF5AccessHack implements IHDF5Access
 	{
 		try
 		{
-			for ( final OpenDataSet dataset : openDataSetCache.values() )
-				dataset.close();
+			openDataSetCache.closeAll();
+			if ( directChunkReader != null )
+				directChunkReader.close();
 			hdf5Reader.close();
 		}
 		finally
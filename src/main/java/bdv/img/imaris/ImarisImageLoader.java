@@ -122,7 +122,12 @@ public class ImarisImageLoader< T extends NativeType< T >, V extends Volatile< T
 				final int maxNumLevels = mipmapInfo.getNumLevels();
 
 				loader = dataType.createArrayLoader( hdf5Access );
-				cache = new VolatileGlobalCellCache( maxNumLevels, 1 );
+				// Blocks can only be loaded in parallel if the HDF5 library is
+				// not involved in reading them.
+				final int numFetcherThreads = HDF5AccessHack.isConcurrent()
+						? Math.max( 1, Runtime.getRuntime().availableProcessors() )
+						: 1;
+				cache = new VolatileGlobalCellCache( maxNumLevels, numFetcherThreads );
 
 				for ( final BasicViewSetup setup : setups )
 				{
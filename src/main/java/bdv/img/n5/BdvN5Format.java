@@ -32,6 +32,7 @@ public class BdvN5Format
 {
 	public static final String DOWNSAMPLING_FACTORS_KEY = "downsamplingFactors";
 	public static final String DATA_TYPE_KEY = "dataType";
+	public static final String DATASET_ATTRIBUTES_KEY = "datasetAttributes";
 
 	public static String getPathName( final int setupId )
 	{
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import java.util.BitSet;
+import java.util.zip.Deflater;
+
+import bdv.img.DeflatedBase64;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Records which blocks of a dataset were written (are occupied). Blocks that
+ * contain only zeros are not written by the exporters, and are known to be
+ * empty if the dataset has an occupancy index. The loader can then provide
+ * them without looking for the block file.
+ * <p>
+ * The index is stored as the {@link #OCCUPANCY_KEY} attribute of the dataset,
+ * as a deflated and base64-encoded bitset (one bit per block, in flattened
+ * grid order). Blocks written by other tools are not recorded, so loaders
+ * must check that the index matches the dataset before relying on it.
+ * <p>
+ * Instances are immutable (and can be queried concurrently without locking).
+ * Exporters collect the index with {@code bdv.export.BlockOccupancyBuilder}.
+ */
+public class BlockOccupancy
+{
+	public static final String OCCUPANCY_KEY = "occupancy";
+
+	private final long[] gridDimensions;
+
+	private final long[] words;
+
+	private final int numOccupied;
+
+	/**
+	 * @param gridDimensions
+	 *            dimensions of the block grid of the dataset
+	 * @param occupied
+	 *            the occupied blocks, by flattened grid index (copied)
+	 */
+	public BlockOccupancy( final long[] gridDimensions, final BitSet occupied )
+	{
+		if ( Intervals.numElements( gridDimensions ) > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "too many blocks" );
+		this.gridDimensions = gridDimensions.clone();
+		this.words = occupied.toLongArray();
+		this.numOccupied = occupied.cardinality();
+	}
+
+	public boolean isOccupied( final long[] gridPosition )
+	{
+		final int i = index( gridPosition );
+		final int w = i >>> 6;
+		return w < words.length && ( words[ w ] & ( 1L << i ) ) != 0;
+	}
+
+	public int numOccupied()
+	{
+		return numOccupied;
+	}
+
+	/**
+	 * Returns {@code true} if {@code gridPosition} lies within the block grid.
+	 */
+	public boolean contains( final long[] gridPosition )
+	{
+		if ( gridPosition.length != gridDimensions.length )
+			return false;
+		for ( int d = 0; d < gridDimensions.length; ++d )
+			if ( gridPosition[ d ] < 0 || gridPosition[ d ] >= gridDimensions[ d ] )
+				return false;
+		return true;
+	}
+
+	private int index( final long[] gridPosition )
+	{
+		return ( int ) IntervalIndexer.positionToIndex( gridPosition, gridDimensions );
+	}
+
+	/**
+	 * Encode as a (deflated, base64) string, to be stored as attribute.
+	 */
+	public String encode()
+	{
+		return DeflatedBase64.encode( BitSet.valueOf( words ).toByteArray(), Deflater.BEST_COMPRESSION );
+	}
+
+	/**
+	 * Decode a string created by {@link #encode()}.
+	 *
+	 * @param encoded
+	 *            the encoded bitset
+	 * @param gridDimensions
+	 *            dimensions of the block grid of the dataset
+	 * @throws IllegalArgumentException
+	 *             if {@code encoded} cannot be decoded
+	 */
+	public static BlockOccupancy decode( final String encoded, final long[] gridDimensions )
+	{
+		return new BlockOccupancy( gridDimensions, BitSet.valueOf( DeflatedBase64.decode( encoded ) ) );
+	}
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import static bdv.img.n5.BdvN5Format.DATASET_ATTRIBUTES_KEY;
+import static bdv.img.n5.BdvN5Format.getPathName;
+
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Caches the {@link DatasetAttributes} of the image datasets in a BDV N5
+ * container, such that each dataset's attributes are read at most once.
+ * Attributes are read lazily, when a dataset is first accessed.
+ * <p>
+ * If a setup group contains consolidated metadata (the attributes of all of
+ * its datasets in the {@link BdvN5Format#DATASET_ATTRIBUTES_KEY} attribute, see
+ * {@link #writeConsolidatedAttributes}), these are read with a single request
+ * when the first dataset of the setup is accessed. This is much faster than
+ * reading thousands of {@code attributes.json} files on network file systems.
+ */
+public class N5DatasetAttributesCache
+{
+	private final N5Reader n5;
+
+	/**
+	 * Maps dataset path to attributes, or empty if the dataset does not exist.
+	 */
+	private final Map< String, Optional< DatasetAttributes > > attributes = new ConcurrentHashMap<>();
+
+	/**
+	 * Setups for which consolidated metadata was read (or found to be
+	 * missing).
+	 */
+	private final Set< Integer > consolidatedSetups = ConcurrentHashMap.newKeySet();
+
+	public N5DatasetAttributesCache( final N5Reader n5 )
+	{
+		this.n5 = n5;
+	}
+
+	/**
+	 * Get the attributes of the dataset for the given setup, timepoint, and
+	 * mipmap level.
+	 *
+	 * @return the attributes, or {@code null} if the dataset does not exist.
+	 */
+	public DatasetAttributes getDatasetAttributes( final int setupId, final int timepointId, final int level ) throws N5Exception
+	{
+		readConsolidatedAttributes( setupId );
+		return attributes
+				.computeIfAbsent( getPathName( setupId, timepointId, level ), p -> Optional.ofNullable( n5.getDatasetAttributes( p ) ) )
+				.orElse( null );
+	}
+
+	private void readConsolidatedAttributes( final int setupId )
+	{
+		if ( consolidatedSetups.contains( setupId ) )
+			return;
+
+		synchronized ( this )
+		{
+			if ( consolidatedSetups.contains( setupId ) )
+				return;
+
+			final String setupPath = getPathName( setupId );
+			Map< String, Entry > entries = null;
+			try
+			{
+				entries = n5.getAttribute( setupPath, DATASET_ATTRIBUTES_KEY, ENTRIES_TYPE );
+			}
+			catch ( final N5Exception | ClassCastException e )
+			{
+				// no (readable) consolidated metadata: read attributes of each dataset
+			}
+			if ( entries != null )
+				entries.forEach( ( relativePath, entry ) -> attributes.putIfAbsent(
+						setupPath + "/" + relativePath,
+						Optional.of( entry.toDatasetAttributes() ) ) );
+			consolidatedSetups.add( setupId );
+		}
+	}
+
+	/**
+	 * Write consolidated metadata for the given setup, that is, store the
+	 * attributes of all datasets of the setup in one attribute of the setup
+	 * group.
+	 *
+	 * @param n5
+	 *            the N5 container
+	 * @param setupId
+	 *            the setup id
+	 * @param datasetAttributes
+	 *            maps dataset path (as given by
+	 *            {@link BdvN5Format#getPathName(int, int, int)}) to attributes.
+	 *            All datasets must be in the group of {@code setupId}.
+	 */
+	public static void writeConsolidatedAttributes( final N5Writer n5, final int setupId, final Map< String, DatasetAttributes > datasetAttributes ) throws N5Exception
+	{
+		final String setupPath = getPathName( setupId );
+		final Map< String, Entry > entries = new LinkedHashMap<>();
+		datasetAttributes.forEach( ( path, attr ) -> {
+			if ( !path.startsWith( setupPath + "/" ) )
+				throw new IllegalArgumentException( "dataset " + path + " is not in group " + setupPath );
+			entries.put( path.substring( setupPath.length() + 1 ), new Entry( attr ) );
+		} );
+		n5.setAttribute( setupPath, DATASET_ATTRIBUTES_KEY, entries );
+	}
+
+	private static final Type ENTRIES_TYPE = new TypeToken< Map< String, Entry > >() {}.getType();
+
+	/**
+	 * JSON representation of {@code DatasetAttributes} in consolidated
+	 * metadata. This uses the same keys as the {@code attributes.json} of an
+	 * N5 dataset.
+	 */
+	private static class Entry
+	{
+		long[] dimensions;
+
+		int[] blockSize;
+
+		DataType dataType;
+
+		Compression compression;
+
+		Entry( final DatasetAttributes attributes )
+		{
+			dimensions = attributes.getDimensions();
+			blockSize = attributes.getBlockSize();
+			dataType = attributes.getDataType();
+			compression = attributes.getCompression();
+		}
+
+		DatasetAttributes toDatasetAttributes()
+		{
+			return new DatasetAttributes( dimensions, blockSize, dataType, compression );
+		}
+	}
+}
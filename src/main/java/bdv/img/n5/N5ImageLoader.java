@@ -32,26 +32,51 @@ import static bdv.img.n5.BdvN5Format.DATA_TYPE_KEY;
 import static bdv.img.n5.BdvN5Format.DOWNSAMPLING_FACTORS_KEY;
 import static bdv.img.n5.BdvN5Format.getPathName;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
 import org.janelia.saalfeldlab.n5.DataBlock;
 import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DoubleArrayDataBlock;
+import org.janelia.saalfeldlab.n5.FloatArrayDataBlock;
+import org.janelia.saalfeldlab.n5.IntArrayDataBlock;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
 import org.janelia.saalfeldlab.n5.N5Exception;
 import org.janelia.saalfeldlab.n5.N5FSReader;
 import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
 
 import bdv.AbstractViewerSetupImgLoader;
 import bdv.ViewerImgLoader;
 import bdv.cache.CacheControl;
 import bdv.cache.SharedQueue;
+import bdv.img.LevelStatistics;
+import bdv.img.LevelStatisticsProvider;
+import bdv.img.cache.ArrayPool;
+import bdv.img.cache.ConstantVolatileArrays;
 import bdv.img.cache.SimpleCacheArrayLoader;
 import bdv.img.cache.VolatileGlobalCellCache;
 import bdv.util.ConstantRandomAccessible;
@@ -70,6 +95,7 @@ import net.imglib2.Volatile;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.img.basictypeaccess.DataAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -106,7 +132,7 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 	private SharedQueue createdSharedQueue;
 	private VolatileGlobalCellCache cache;
 	private N5Reader n5;
-
+	private N5DatasetAttributesCache datasetAttributes;
 
 	private int requestedNumFetcherThreads = -1;
 	private SharedQueue requestedSharedQueue;
@@ -135,14 +161,34 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 				try
 				{
 					this.n5 = new N5FSReader( n5File.getAbsolutePath() );
+					this.datasetAttributes = new N5DatasetAttributesCache( n5 );
 
-					int maxNumLevels = 0;
+					// read setup attributes in parallel (helps on network file systems)
 					final List< ? extends BasicViewSetup > setups = seq.getViewSetupsOrdered();
-					for ( final BasicViewSetup setup : setups )
+					final List< SetupImgLoader > loaders;
+					try
+					{
+						loaders = setups.parallelStream().map( setup -> {
+							try
+							{
+								return createSetupImgLoader( setup.getId() );
+							}
+							catch ( final IOException e )
+							{
+								throw new UncheckedIOException( e );
+							}
+						} ).collect( Collectors.toList() );
+					}
+					catch ( final UncheckedIOException e )
+					{
+						throw e.getCause();
+					}
+
+					int maxNumLevels = 0;
+					for ( int i = 0; i < setups.size(); ++i )
 					{
-						final int setupId = setup.getId();
-						final SetupImgLoader setupImgLoader = createSetupImgLoader( setupId );
-						setupImgLoaders.put( setupId, setupImgLoader );
+						final SetupImgLoader setupImgLoader = loaders.get( i );
+						setupImgLoaders.put( setups.get( i ).getId(), setupImgLoader );
 						maxNumLevels = Math.max( maxNumLevels, setupImgLoader.numMipmapLevels() );
 					}
 
@@ -220,7 +266,7 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 
 	public class SetupImgLoader< T extends NativeType< T >, V extends Volatile< T > & NativeType< V > >
 			extends AbstractViewerSetupImgLoader< T, V >
-			implements MultiResolutionSetupImgLoader< T >
+			implements MultiResolutionSetupImgLoader< T >, LevelStatisticsProvider
 	{
 		private final int setupId;
 
@@ -268,8 +314,7 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 		{
 			try
 			{
-				final String pathName = getPathName( setupId, timepointId, level );
-				final DatasetAttributes attributes = n5.getDatasetAttributes( pathName );
+				final DatasetAttributes attributes = datasetAttributes.getDatasetAttributes( setupId, timepointId, level );
 				return new FinalDimensions( attributes.getDimensions() );
 			}
 			catch( final RuntimeException e )
@@ -278,6 +323,19 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 			}
 		}
 
+		@Override
+		public LevelStatistics getLevelStatistics( final int timepointId, final int level )
+		{
+			try
+			{
+				return n5.getAttribute( getPathName( setupId, timepointId, level ), LevelStatistics.STATISTICS_KEY, LevelStatistics.class );
+			}
+			catch ( final N5Exception e )
+			{
+				return null;
+			}
+		}
+
 		@Override
 		public double[][] getMipmapResolutions()
 		{
@@ -310,7 +368,9 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 			try
 			{
 				final String pathName = getPathName( setupId, timepointId, level );
-				final DatasetAttributes attributes = n5.getDatasetAttributes( pathName );
+				final DatasetAttributes attributes = datasetAttributes.getDatasetAttributes( setupId, timepointId, level );
+				if ( attributes == null )
+					throw new IOException( "dataset " + pathName + " does not exist" );
 				final long[] dimensions = attributes.getDimensions();
 				final int[] cellDimensions = attributes.getBlockSize();
 				final CellGrid grid = new CellGrid( dimensions, cellDimensions );
@@ -318,7 +378,7 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 				final int priority = numMipmapLevels() - 1 - level;
 				final CacheHints cacheHints = new CacheHints( loadingStrategy, priority, false );
 
-				final SimpleCacheArrayLoader< ? > loader = createCacheArrayLoader( n5, pathName );
+				final SimpleCacheArrayLoader< ? > loader = createCacheArrayLoader( n5, pathName, attributes, n5File );
 				return cache.createImg( grid, timepointId, setupId, level, cacheHints, loader, type );
 			}
 			catch ( final IOException | N5Exception e )
@@ -338,9 +398,47 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 		private final N5Reader n5;
 		private final String pathName;
 		private final DatasetAttributes attributes;
-		private final IntFunction< T > createPrimitiveArray;
+		private final Class< ? > componentType;
 		private final Function< T, A > createVolatileArrayAccess;
 
+		/**
+		 * The {@link BlockOccupancy} index of the dataset. {@code null} before
+		 * first use. {@link #PENDING_OCCUPANCY} while the index is read and
+		 * validated in the background. {@link #NO_OCCUPANCY} if the dataset
+		 * has no index, or the index does not match the dataset.
+		 */
+		private volatile Object occupancy;
+
+		private static final Object PENDING_OCCUPANCY = new Object();
+
+		private static final Object NO_OCCUPANCY = new Object();
+
+		/**
+		 * Validating an occupancy index lists all block files of the dataset.
+		 * This is done on a background thread, so that fetcher threads don't
+		 * wait for it. (Until the index is validated, all blocks are read
+		 * without it.)
+		 */
+		private static final ExecutorService occupancyValidation = Executors.newSingleThreadExecutor( r -> {
+			final Thread t = new Thread( r, "n5-occupancy-validation" );
+			t.setDaemon( true );
+			return t;
+		} );
+
+		/**
+		 * Directory of the dataset in the local file system, or {@code null}.
+		 * The occupancy index is only used if it can be validated against
+		 * the block files in this directory.
+		 */
+		private Path datasetPath;
+
+		/**
+		 * Directory of the dataset in the local file system, if blocks of
+		 * the dataset are uncompressed and can be read directly. Otherwise
+		 * {@code null}.
+		 */
+		private Path rawDatasetPath;
+
 		N5CacheArrayLoader( final N5Reader n5, final String pathName, final DatasetAttributes attributes,
 				final DataTypeProperties< ?, ?, T, A > dataTypeProperties )
 		{
@@ -354,29 +452,54 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 			this.n5 = n5;
 			this.pathName = pathName;
 			this.attributes = attributes;
-			this.createPrimitiveArray = createPrimitiveArray;
+			this.componentType = createPrimitiveArray.apply( 0 ).getClass().getComponentType();
 			this.createVolatileArrayAccess = createVolatileArrayAccess;
 		}
 
+		/**
+		 * Set the directory of the dataset in the local file system. This
+		 * enables the occupancy index. If blocks of the dataset are
+		 * uncompressed, they are read directly from block files in
+		 * {@code datasetPath}, instead of through the {@code N5Reader}.
+		 */
+		void setDatasetPath( final Path datasetPath )
+		{
+			this.datasetPath = datasetPath;
+			if ( attributes.getCompression() instanceof RawCompression )
+				rawDatasetPath = datasetPath;
+		}
+
 		@Override
 		public A loadArray( final long[] gridPosition, final int[] cellDimensions ) throws IOException
 		{
+			final BlockOccupancy occupancy = getOccupancy();
+			if ( occupancy != null && !occupancy.isOccupied( gridPosition ) )
+				return Cast.unchecked( ConstantVolatileArrays.zeros( componentType, ( int ) Intervals.numElements( cellDimensions ) ) );
+
 			final DataBlock< T > dataBlock;
 			try
 			{
-				dataBlock = Cast.unchecked( n5.readBlock( pathName, attributes, gridPosition ) );
+				dataBlock = Cast.unchecked( rawDatasetPath != null
+						? readRawBlock( gridPosition )
+						: n5.readBlock( pathName, attributes, gridPosition ) );
 			}
 			catch ( final N5Exception e )
 			{
 				throw new IOException( e );
 			}
+			if ( dataBlock == null && occupancy != null )
+			{
+				// an indexed block is missing: the dataset was modified after
+				// export, so the index is ignored from now on
+				this.occupancy = NO_OCCUPANCY;
+			}
 			if ( dataBlock != null && Arrays.equals( dataBlock.getSize(), cellDimensions ) )
 			{
-				return createVolatileArrayAccess.apply( dataBlock.getData() );
+				return createAccess( dataBlock.getData() );
 			}
 			else
 			{
-				final T data = createPrimitiveArray.apply( ( int ) Intervals.numElements( cellDimensions ) );
+				final T data = Cast.unchecked( ArrayPool.shared().take( componentType, ( int ) Intervals.numElements( cellDimensions ), true ) );
 				if ( dataBlock != null )
 				{
 					final T src = dataBlock.getData();
@@ -385,10 +508,223 @@ public class N5ImageLoader implements ViewerImgLoader, MultiResolutionImgLoader
 					final int[] size = new int[ srcDims.length ];
 					Arrays.setAll( size, d -> Math.min( srcDims[ d ], cellDimensions[ d ] ) );
 					ndArrayCopy( src, srcDims, pos, data, cellDimensions, pos, size );
+					ArrayPool.shared().recycle( src );
 				}
-				return createVolatileArrayAccess.apply( data );
+				return createAccess( data );
 			}
 		}
+
+		/**
+		 * Create the access for the loaded {@code data}. Uniform cells are
+		 * represented by a {@link ConstantVolatileArrays constant access}
+		 * (and {@code data} is returned to the {@link ArrayPool}). Otherwise
+		 * {@code data} is wrapped, and recycled when the access becomes
+		 * unreachable.
+		 */
+		private A createAccess( final T data )
+		{
+			final A constant = Cast.unchecked( ConstantVolatileArrays.ifUniform( data ) );
+			if ( constant != null )
+			{
+				ArrayPool.shared().recycle( data );
+				return constant;
+			}
+			return recycleWhenUnreachable( createVolatileArrayAccess.apply( data ) );
+		}
+
+		/**
+		 * Returns the occupancy index of the dataset, or {@code null} if it
+		 * doesn't have one, or it is not validated yet, or it cannot be
+		 * validated, or it does not match the dataset.
+		 * <p>
+		 * On first use, this starts reading and validating the index in the
+		 * background.
+		 */
+		private BlockOccupancy getOccupancy()
+		{
+			final Object o = occupancy;
+			if ( o == null )
+				startValidation();
+			return o instanceof BlockOccupancy ? ( BlockOccupancy ) o : null;
+		}
+
+		private synchronized void startValidation()
+		{
+			if ( occupancy != null )
+				return;
+			if ( datasetPath == null )
+			{
+				occupancy = NO_OCCUPANCY;
+				return;
+			}
+			occupancy = PENDING_OCCUPANCY;
+			occupancyValidation.execute( () -> {
+				final Object o = readOccupancy();
+				synchronized ( this )
+				{
+					if ( occupancy == PENDING_OCCUPANCY )
+						occupancy = o;
+				}
+			} );
+		}
+
+		/**
+		 * Read the occupancy index of the dataset, and check that it matches
+		 * the block files.
+		 *
+		 * @return the index, or {@link #NO_OCCUPANCY} if the dataset has no
+		 *         index, or the index cannot be read, or it does not match.
+		 */
+		private Object readOccupancy()
+		{
+			try
+			{
+				final String encoded = n5.getAttribute( pathName, BlockOccupancy.OCCUPANCY_KEY, String.class );
+				if ( encoded == null )
+					return NO_OCCUPANCY;
+				final BlockOccupancy index = BlockOccupancy.decode( encoded, new CellGrid( attributes.getDimensions(), attributes.getBlockSize() ).getGridDimensions() );
+				return matchesBlockFiles( index ) ? index : NO_OCCUPANCY;
+			}
+			catch ( final N5Exception | IllegalArgumentException | IOException | UncheckedIOException e )
+			{
+				return NO_OCCUPANCY;
+			}
+		}
+
+		/**
+		 * Check that the block files in {@link #datasetPath} are exactly the
+		 * blocks recorded in {@code index}. (Blocks written by tools other
+		 * than the BDV exporters are not recorded in the index.)
+		 */
+		private boolean matchesBlockFiles( final BlockOccupancy index ) throws IOException
+		{
+			final int n = attributes.getNumDimensions();
+			final long[] gridPosition = new long[ n ];
+			int numBlocks = 0;
+			try ( Stream< Path > files = Files.walk( datasetPath, n ) )
+			{
+				final Iterator< Path > it = files.iterator();
+				while ( it.hasNext() )
+				{
+					final Path path = it.next();
+					final Path relative = datasetPath.relativize( path );
+					if ( relative.getNameCount() != n || !parseGridPosition( relative, gridPosition ) || !Files.isRegularFile( path ) )
+						continue;
+					if ( !index.contains( gridPosition ) || !index.isOccupied( gridPosition ) )
+						return false;
+					++numBlocks;
+				}
+			}
+			catch ( final UncheckedIOException e )
+			{
+				throw e.getCause();
+			}
+			return numBlocks == index.numOccupied();
+		}
+
+		private static boolean parseGridPosition( final Path relative, final long[] gridPosition )
+		{
+			try
+			{
+				for ( int d = 0; d < gridPosition.length; ++d )
+					gridPosition[ d ] = Long.parseLong( relative.getName( d ).toString() );
+				return true;
+			}
+			catch ( final NumberFormatException e )
+			{
+				return false;
+			}
+		}
+
+		/**
+		 * Register {@code access} with the shared {@link ArrayPool}, such that
+		 * its array is reused after the cell is evicted from the cache.
+		 */
+		private A recycleWhenUnreachable( final A access )
+		{
+			if ( access instanceof ArrayDataAccess )
+				ArrayPool.shared().recycleWhenUnreachable( ( ArrayDataAccess< ? > ) access );
+			return access;
+		}
+
+		/**
+		 * Read an uncompressed block by reading the block file into a heap
+		 * buffer with a single {@code FileChannel} read, and bulk-copying the
+		 * (big-endian) data into the primitive array of the {@code DataBlock},
+		 * which is taken from the shared {@link ArrayPool}. (Block files are
+		 * not memory-mapped, because mappings are only released when the
+		 * buffer is garbage-collected.)
+		 * Blocks with a header mode other than default are read through the
+		 * {@code N5Reader}.
+		 *
+		 * @return the block, or {@code null} if the block file does not exist.
+		 */
+		private DataBlock< ? > readRawBlock( final long[] gridPosition ) throws IOException
+		{
+			Path path = rawDatasetPath;
+			for ( final long p : gridPosition )
+				path = path.resolve( Long.toString( p ) );
+
+			final ByteBuffer buffer;
+			try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) )
+			{
+				buffer = ByteBuffer.allocate( ( int ) channel.size() );
+				while ( buffer.hasRemaining() )
+					if ( channel.read( buffer ) < 0 )
+						throw new EOFException( path.toString() );
+			}
+			catch ( final NoSuchFileException e )
+			{
+				return null;
+			}
+			buffer.flip();
+			buffer.order( ByteOrder.BIG_ENDIAN );
+
+			final short mode = buffer.getShort();
+			if ( mode != 0 )
+				return n5.readBlock( pathName, attributes, gridPosition );
+			final int numDimensions = buffer.getShort() & 0xffff;
+			final int[] blockSize = new int[ numDimensions ];
+			for ( int d = 0; d < numDimensions; ++d )
+				blockSize[ d ] = buffer.getInt();
+
+			final int numElements = ( int ) Intervals.numElements( blockSize );
+			final DataBlock< ? > block = createDataBlock( blockSize, gridPosition, ArrayPool.shared().take( componentType, numElements, false ) );
+			block.readData( buffer );
+			return block;
+		}
+
+		private static DataBlock< ? > createDataBlock( final int[] blockSize, final long[] gridPosition, final Object data )
+		{
+			if ( data instanceof byte[] )
+				return new ByteArrayDataBlock( blockSize, gridPosition, ( byte[] ) data );
+			else if ( data instanceof short[] )
+				return new ShortArrayDataBlock( blockSize, gridPosition, ( short[] ) data );
+			else if ( data instanceof int[] )
+				return new IntArrayDataBlock( blockSize, gridPosition, ( int[] ) data );
+			else if ( data instanceof long[] )
+				return new LongArrayDataBlock( blockSize, gridPosition, ( long[] ) data );
+			else if ( data instanceof float[] )
+				return new FloatArrayDataBlock( blockSize, gridPosition, ( float[] ) data );
+			else if ( data instanceof double[] )
+				return new DoubleArrayDataBlock( blockSize, gridPosition, ( double[] ) data );
+			else
+				throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * Create a {@code SimpleCacheArrayLoader} for dataset {@code pathName}
+	 * (with the given {@code attributes}) in an N5 container in the local file
+	 * system at {@code n5File}. If the
+	 * dataset is uncompressed, blocks are read directly from the block files.
+	 */
+	static SimpleCacheArrayLoader< ? > createCacheArrayLoader( final N5Reader n5, final String pathName, final DatasetAttributes attributes, final File n5File )
+	{
+		final N5CacheArrayLoader< ?, ? > loader = new N5CacheArrayLoader<>( n5, pathName, attributes, DataTypeProperties.of( attributes.getDataType() ) );
+		if ( n5 instanceof N5FSReader )
+			loader.setDatasetPath( n5File.toPath().resolve( pathName ) );
+		return loader;
 	}
 
 	public static SimpleCacheArrayLoader< ? > createCacheArrayLoader( final N5Reader n5, final String pathName ) throws IOException
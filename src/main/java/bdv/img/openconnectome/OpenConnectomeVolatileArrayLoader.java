@@ -35,6 +35,7 @@ import java.net.URL;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import bdv.img.cache.ArrayPool;
 import bdv.img.cache.CacheArrayLoader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
 
@@ -106,7 +107,7 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 			final int[] dimensions,
 			final long[] min ) throws InterruptedException
 	{
-		final byte[] data = new byte[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final byte[] data = ArrayPool.shared().takeBytes( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ], true );
 
 		final StringBuffer url = new StringBuffer( tokenUrl );
 
@@ -153,6 +154,6 @@ public class OpenConnectomeVolatileArrayLoader implements CacheArrayLoader< Vola
 			System.out.println( "failed unpacking x=" + min[ 0 ] + " y=" + min[ 1 ] + " z=" + min[ 2 ] + " url(" + url.toString() + ")" );
 		}
 
-		return new VolatileByteArray( data, true );
+		return ArrayPool.shared().recycleWhenUnreachable( new VolatileByteArray( data, true ) );
 	}
 }
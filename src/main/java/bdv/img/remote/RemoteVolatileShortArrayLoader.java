@@ -33,6 +33,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import bdv.img.cache.ArrayPool;
 import bdv.img.cache.CacheArrayLoader;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
 
@@ -49,7 +50,8 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 	public VolatileShortArray loadArray( final int timepoint, final int setup, final int level, final int[] dimensions, final long[] min ) throws InterruptedException
 	{
 		final int index = imgLoader.getCellIndex( timepoint, setup, level, min );
-		final short[] data = new short[ dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ];
+		final ArrayPool pool = ArrayPool.shared();
+		final short[] data = pool.takeShorts( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ], true );
 		try
 		{
 			final URL url = new URL( String.format( "%s?p=cell/%d/%d/%d/%d/%d/%d/%d/%d/%d/%d",
@@ -65,10 +67,11 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 					min[ 1 ],
 					min[ 2 ] ) );
 			final InputStream s = url.openStream();
-			final byte[] buf = new byte[ data.length * 2 ];
+			final byte[] buf = pool.takeBytes( data.length * 2, false );
 			for ( int i = 0, l = s.read( buf, 0, buf.length ); l > 0; i += l, l = s.read( buf, i, buf.length - i ) );
 			for ( int i = 0, j = 0; i < data.length; ++i, j += 2 )
 				data[ i ] = ( short ) ( ( ( buf[ j ] & 0xff ) << 8 ) | ( buf[ j + 1 ] & 0xff ) );
+			pool.recycle( buf );
 			s.close();
 		}
 		catch ( final MalformedURLException e )
@@ -79,7 +82,7 @@ public class RemoteVolatileShortArrayLoader implements CacheArrayLoader< Volatil
 		{
 			e.printStackTrace();
 		}
-		return new VolatileShortArray( data, true );
+		return pool.recycleWhenUnreachable( new VolatileShortArray( data, true ) );
 	}
 
 	@Override
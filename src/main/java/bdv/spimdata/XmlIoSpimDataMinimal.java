@@ -45,14 +45,19 @@ public class XmlIoSpimDataMinimal extends XmlIoAbstractSpimData< SequenceDescrip
 	public XmlIoSpimDataMinimal()
 	{
 		super( SpimDataMinimal.class,
-				new XmlIoAbstractSequenceDescription<>(
-						SequenceDescriptionMinimal.class,
-						new XmlIoTimePoints(),
-						new XmlIoBasicViewSetups<>( BasicViewSetup.class ),
-						new XmlIoMissingViews() ),
+				createXmlIoSequenceDescription(),
 				new XmlIoViewRegistrations() );
 	}
 
+	static XmlIoAbstractSequenceDescription< BasicViewSetup, SequenceDescriptionMinimal > createXmlIoSequenceDescription()
+	{
+		return new XmlIoAbstractSequenceDescription<>(
+				SequenceDescriptionMinimal.class,
+				new XmlIoTimePoints(),
+				new XmlIoBasicViewSetups<>( BasicViewSetup.class ),
+				new XmlIoMissingViews() );
+	}
+
 	public SpimDataMinimal load( final String xmlFilename, final int numFetcherThreads ) throws SpimDataException
 	{
 		final SpimDataMinimal spimData = load( xmlFilename );
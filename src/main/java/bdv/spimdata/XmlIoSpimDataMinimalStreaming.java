@@ -0,0 +1,414 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.spimdata;
+
+import static mpicbg.spim.data.XmlKeys.BASEPATH_TAG;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Element;
+
+import mpicbg.spim.data.SpimDataException;
+import mpicbg.spim.data.XmlHelpers;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.generic.sequence.XmlIoAbstractSequenceDescription;
+import mpicbg.spim.data.registration.ViewRegistration;
+import mpicbg.spim.data.registration.ViewRegistrations;
+import mpicbg.spim.data.registration.ViewTransform;
+import mpicbg.spim.data.registration.ViewTransformAffine;
+import mpicbg.spim.data.sequence.ViewId;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Loads {@link SpimDataMinimal} from XML by streaming through the file with
+ * StAX instead of building a JDOM tree of the whole document.
+ * <p>
+ * Only the {@code <BasePath>} and {@code <SequenceDescription>} elements are
+ * turned into (small) JDOM trees, which are handed to the regular spim_data
+ * readers, such that all {@code ImageLoader} formats are supported. The
+ * {@code <ViewRegistrations>}, which make up the bulk of projects with many
+ * views, are scanned into a compact form and each {@link ViewRegistration} is
+ * only created when it is first accessed.
+ * <p>
+ * Documents that this reader does not understand (legacy formats,
+ * non-affine view transforms) are loaded with the regular
+ * {@link XmlIoSpimDataMinimal} JDOM reader. Saving is inherited unchanged.
+ */
+public class XmlIoSpimDataMinimalStreaming extends XmlIoSpimDataMinimal
+{
+	private static final String SPIMDATA_TAG = "SpimData";
+
+	private static final String SEQUENCEDESCRIPTION_TAG = "SequenceDescription";
+
+	private static final String VIEWREGISTRATIONS_TAG = "ViewRegistrations";
+
+	private static final String VIEWREGISTRATION_TAG = "ViewRegistration";
+
+	private static final String VIEWTRANSFORM_TAG = "ViewTransform";
+
+	private static final String VIEWTRANSFORM_NAME_TAG = "Name";
+
+	private static final String VIEWTRANSFORM_AFFINE_TAG = "affine";
+
+	private static final String VIEWTRANSFORM_TYPE_AFFINE = "affine";
+
+	/**
+	 * Thrown while scanning if the document contains something that only the
+	 * JDOM reader handles.
+	 */
+	private static class UnsupportedContentException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	@Override
+	public SpimDataMinimal load( final String xmlFilename ) throws SpimDataException
+	{
+		final File xmlFile = new File( xmlFilename );
+		try ( InputStream in = new BufferedInputStream( new FileInputStream( xmlFile ), 1 << 16 ) )
+		{
+			return load( in, xmlFile );
+		}
+		catch ( final UnsupportedContentException e )
+		{
+			return super.load( xmlFilename );
+		}
+		catch ( final IOException | XMLStreamException e )
+		{
+			throw new SpimDataException( e );
+		}
+	}
+
+	private SpimDataMinimal load( final InputStream in, final File xmlFile ) throws XMLStreamException, SpimDataException, UnsupportedContentException
+	{
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+		factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+		final XMLStreamReader reader = factory.createXMLStreamReader( in );
+		try
+		{
+			reader.nextTag();
+			if ( !SPIMDATA_TAG.equals( reader.getLocalName() ) )
+				throw new UnsupportedContentException();
+
+			final Element root = new Element( SPIMDATA_TAG );
+			Element sequenceDescriptionElem = null;
+			LazyViewRegistrationMap registrations = null;
+			while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+			{
+				final String name = reader.getLocalName();
+				if ( BASEPATH_TAG.equals( name ) )
+					root.addContent( readElement( reader ) );
+				else if ( SEQUENCEDESCRIPTION_TAG.equals( name ) )
+					sequenceDescriptionElem = readElement( reader );
+				else if ( VIEWREGISTRATIONS_TAG.equals( name ) )
+					registrations = readViewRegistrations( reader );
+				else
+					skipElement( reader );
+			}
+
+			if ( sequenceDescriptionElem == null || registrations == null )
+				throw new UnsupportedContentException();
+
+			File xmlFileParentDirectory = xmlFile.getParentFile();
+			if ( xmlFileParentDirectory == null )
+				xmlFileParentDirectory = new File( "." );
+			final File basePath = XmlHelpers.loadPath( root, BASEPATH_TAG, ".", xmlFileParentDirectory );
+
+			final XmlIoAbstractSequenceDescription< BasicViewSetup, SequenceDescriptionMinimal > xmlIoSequenceDescription = createXmlIoSequenceDescription();
+			final SequenceDescriptionMinimal sequenceDescription = xmlIoSequenceDescription.fromXml( sequenceDescriptionElem, basePath );
+			return new SpimDataMinimal( basePath, sequenceDescription, new ViewRegistrations( registrations ) );
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Read the element at the current {@code START_ELEMENT} (including all
+	 * children) into a JDOM {@link Element}. When this method returns, the
+	 * reader is positioned at the matching {@code END_ELEMENT}.
+	 */
+	private static Element readElement( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		final Element elem = new Element( reader.getLocalName() );
+		for ( int i = 0; i < reader.getAttributeCount(); ++i )
+			elem.setAttribute( reader.getAttributeLocalName( i ), reader.getAttributeValue( i ) );
+		while ( true )
+		{
+			switch ( reader.next() )
+			{
+			case XMLStreamConstants.START_ELEMENT:
+				elem.addContent( readElement( reader ) );
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				elem.addContent( reader.getText() );
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return elem;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Skip the element at the current {@code START_ELEMENT}. When this method
+	 * returns, the reader is positioned at the matching {@code END_ELEMENT}.
+	 */
+	private static void skipElement( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		int depth = 1;
+		while ( depth > 0 )
+		{
+			final int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT )
+				++depth;
+			else if ( event == XMLStreamConstants.END_ELEMENT )
+				--depth;
+		}
+	}
+
+	private static LazyViewRegistrationMap readViewRegistrations( final XMLStreamReader reader ) throws XMLStreamException, UnsupportedContentException
+	{
+		final LazyViewRegistrationMap registrations = new LazyViewRegistrationMap();
+		while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+		{
+			if ( !VIEWREGISTRATION_TAG.equals( reader.getLocalName() ) )
+				throw new UnsupportedContentException();
+
+			final int timepointId = Integer.parseInt( reader.getAttributeValue( null, "timepoint" ) );
+			final int setupId = Integer.parseInt( reader.getAttributeValue( null, "setup" ) );
+			final List< String > names = new ArrayList<>();
+			final List< String > affines = new ArrayList<>();
+			while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+			{
+				if ( !VIEWTRANSFORM_TAG.equals( reader.getLocalName() )
+						|| !VIEWTRANSFORM_TYPE_AFFINE.equals( reader.getAttributeValue( null, "type" ) ) )
+					throw new UnsupportedContentException();
+
+				String name = null;
+				String affine = null;
+				while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+				{
+					final String tag = reader.getLocalName();
+					if ( VIEWTRANSFORM_NAME_TAG.equals( tag ) )
+						name = reader.getElementText();
+					else if ( VIEWTRANSFORM_AFFINE_TAG.equals( tag ) )
+						affine = reader.getElementText();
+					else
+						skipElement( reader );
+				}
+				if ( affine == null )
+					throw new UnsupportedContentException();
+				names.add( name );
+				affines.add( affine );
+			}
+			registrations.putPending( new ViewId( timepointId, setupId ),
+					new PendingViewRegistration( timepointId, setupId,
+							names.toArray( new String[ 0 ] ),
+							affines.toArray( new String[ 0 ] ) ) );
+		}
+		return registrations;
+	}
+
+	/**
+	 * The scanned, not yet parsed, content of a {@code <ViewRegistration>}.
+	 */
+	private static class PendingViewRegistration
+	{
+		private final int timepointId;
+
+		private final int setupId;
+
+		private final String[] names;
+
+		private final String[] affines;
+
+		PendingViewRegistration( final int timepointId, final int setupId, final String[] names, final String[] affines )
+		{
+			this.timepointId = timepointId;
+			this.setupId = setupId;
+			this.names = names;
+			this.affines = affines;
+		}
+
+		ViewRegistration resolve()
+		{
+			final ArrayList< ViewTransform > transforms = new ArrayList<>( affines.length );
+			for ( int i = 0; i < affines.length; ++i )
+			{
+				final AffineTransform3D affine = new AffineTransform3D();
+				affine.set( parseDoubles( affines[ i ] ) );
+				transforms.add( new ViewTransformAffine( names[ i ], affine ) );
+			}
+			return new ViewRegistration( timepointId, setupId, transforms );
+		}
+
+		private static double[] parseDoubles( final String text )
+		{
+			final String[] entries = text.trim().split( "\\s+" );
+			final double[] values = new double[ entries.length ];
+			for ( int i = 0; i < entries.length; ++i )
+				values[ i ] = Double.parseDouble( entries[ i ] );
+			return values;
+		}
+	}
+
+	/**
+	 * Map of {@link ViewRegistration}s that are created from their
+	 * {@link PendingViewRegistration} on first access. Values put into the map
+	 * by client code are stored as is.
+	 */
+	private static class LazyViewRegistrationMap extends AbstractMap< ViewId, ViewRegistration >
+	{
+		private final HashMap< ViewId, Object > map = new HashMap<>();
+
+		void putPending( final ViewId viewId, final PendingViewRegistration pending )
+		{
+			map.put( viewId, pending );
+		}
+
+		private ViewRegistration resolve( final ViewId viewId, final Object value )
+		{
+			if ( value instanceof PendingViewRegistration )
+			{
+				final ViewRegistration registration = ( ( PendingViewRegistration ) value ).resolve();
+				map.put( viewId, registration );
+				return registration;
+			}
+			return ( ViewRegistration ) value;
+		}
+
+		@Override
+		public synchronized ViewRegistration get( final Object key )
+		{
+			final Object value = map.get( key );
+			return value == null ? null : resolve( ( ViewId ) key, value );
+		}
+
+		@Override
+		public synchronized boolean containsKey( final Object key )
+		{
+			return map.containsKey( key );
+		}
+
+		@Override
+		public synchronized ViewRegistration put( final ViewId key, final ViewRegistration value )
+		{
+			final Object previous = map.put( key, value );
+			return previous instanceof PendingViewRegistration ? ( ( PendingViewRegistration ) previous ).resolve() : ( ViewRegistration ) previous;
+		}
+
+		@Override
+		public synchronized ViewRegistration remove( final Object key )
+		{
+			final Object previous = map.remove( key );
+			return previous instanceof PendingViewRegistration ? ( ( PendingViewRegistration ) previous ).resolve() : ( ViewRegistration ) previous;
+		}
+
+		@Override
+		public synchronized int size()
+		{
+			return map.size();
+		}
+
+		@Override
+		public Set< Entry< ViewId, ViewRegistration > > entrySet()
+		{
+			return new AbstractSet< Entry< ViewId, ViewRegistration > >()
+			{
+				@Override
+				public Iterator< Entry< ViewId, ViewRegistration > > iterator()
+				{
+					final Iterator< Entry< ViewId, Object > > it = map.entrySet().iterator();
+					return new Iterator< Entry< ViewId, ViewRegistration > >()
+					{
+						@Override
+						public boolean hasNext()
+						{
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry< ViewId, ViewRegistration > next()
+						{
+							synchronized ( LazyViewRegistrationMap.this )
+							{
+								final Entry< ViewId, Object > entry = it.next();
+								Object value = entry.getValue();
+								if ( value instanceof PendingViewRegistration )
+								{
+									value = ( ( PendingViewRegistration ) value ).resolve();
+									entry.setValue( value );
+								}
+								return new SimpleImmutableEntry<>( entry.getKey(), ( ViewRegistration ) value );
+							}
+						}
+
+						@Override
+						public void remove()
+						{
+							synchronized ( LazyViewRegistrationMap.this )
+							{
+								it.remove();
+							}
+						}
+					};
+				}
+
+				@Override
+				public int size()
+				{
+					return LazyViewRegistrationMap.this.size();
+				}
+			};
+		}
+	}
+}
@@ -29,21 +29,25 @@
 package bdv.tools;
 
 import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
 
 import net.imglib2.Interval;
-import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.histogram.DiscreteFrequencyDistribution;
-import net.imglib2.histogram.Histogram1d;
-import net.imglib2.histogram.Real1dBinMapper;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
-import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.util.LinAlgHelpers;
-import net.imglib2.view.Views;
 
+import bdv.AbstractSpimSource;
+import bdv.img.LevelStatistics;
 import bdv.tools.brightness.ConverterSetup;
 import bdv.tools.brightness.MinMaxGroup;
 import bdv.tools.brightness.SetupAssignments;
+import bdv.tools.transformation.TransformedSource;
 import bdv.util.Affine3DHelpers;
 import bdv.util.Bounds;
 import bdv.viewer.AbstractViewerPanel;
@@ -55,6 +59,22 @@ import bdv.viewer.ViewerState;
 
 public class InitializeViewerState
 {
+	/**
+	 * Maximum number of cells read by {@link #estimateSourceRange}.
+	 */
+	public static final int ESTIMATE_MAX_CELLS = 64;
+
+	/**
+	 * Maximum time spent in {@link #estimateSourceRange}.
+	 */
+	public static final long ESTIMATE_MAX_MILLIS = 2000;
+
+	/**
+	 * Number of (coarsest) resolution levels sampled by
+	 * {@link #estimateSourceRange}.
+	 */
+	public static final int ESTIMATE_NUM_LEVELS = 2;
+
 	/**
 	 * Set a "good" initial viewer transform. The viewer transform is chosen
 	 * such that for the first source,
@@ -186,6 +206,99 @@ public class InitializeViewerState
 	}
 
 	/**
+	 * Like {@link #initBrightness(double, double, ViewerFrame)}, but does not
+	 * block if the range of the current source must be estimated from the
+	 * image data. See
+	 * {@link #initBrightnessInBackground(double, double, ViewerState, ConverterSetups)}.
+	 */
+	public static SourceRangeEstimator initBrightnessInBackground( final double cumulativeMinCutoff, final double cumulativeMaxCutoff, final ViewerFrame viewerFrame )
+	{
+		return initBrightnessInBackground( cumulativeMinCutoff, cumulativeMaxCutoff, viewerFrame.getViewerPanel().state().snapshot(), viewerFrame.getConverterSetups() );
+	}
+
+	/**
+	 * Set the display range of all sources to the estimated range of the
+	 * current source. If no statistics were recorded for the current source at
+	 * export, the range is estimated in a background thread, with the same
+	 * small budget on coarse levels as {@link #estimateSourceRange}, and set
+	 * once (on the EDT) when the estimate is done. Display ranges that are
+	 * modified by the user in the meantime are left alone.
+	 *
+	 * @return the running estimator (which can be used to cancel the
+	 *         estimation), or {@code null} if the display ranges were set
+	 *         immediately.
+	 */
+	public static SourceRangeEstimator initBrightnessInBackground( final double cumulativeMinCutoff, final double cumulativeMaxCutoff, final ViewerState state, final ConverterSetups converterSetups )
+	{
+		final SourceAndConverter< ? > current = state.getCurrentSource();
+		if ( current == null )
+			return null;
+		final Source< ? > source = current.getSpimSource();
+		final int timepoint = state.getCurrentTimepoint();
+		final List< ConverterSetup > setups = new ArrayList<>();
+		for ( final SourceAndConverter< ? > s : state.getSources() )
+		{
+			final ConverterSetup setup = converterSetups.getConverterSetup( s );
+			if ( setup != null )
+				setups.add( setup );
+		}
+
+		final Bounds stored = getRecordedSourceRange( source, timepoint, cumulativeMinCutoff, cumulativeMaxCutoff );
+		if ( stored != null )
+		{
+			for ( final ConverterSetup setup : setups )
+				setup.setDisplayRange( stored.getMinBound(), stored.getMaxBound() );
+			return null;
+		}
+
+		final SourceRangeEstimator estimator = createEstimator( source, timepoint );
+		final DisplayRangeUpdate update = new DisplayRangeUpdate( setups );
+		final Thread thread = new Thread( () -> {
+			final Bounds bounds = estimator.estimate( cumulativeMinCutoff, cumulativeMaxCutoff, null );
+			if ( bounds != null )
+				update.accept( bounds );
+		}, "initBrightness" );
+		thread.setDaemon( true );
+		thread.start();
+		return estimator;
+	}
+
+	/**
+	 * Sets display ranges of {@code ConverterSetup}s on the EDT, unless they
+	 * were modified since this was created.
+	 */
+	private static class DisplayRangeUpdate implements Consumer< Bounds >
+	{
+		private final Map< ConverterSetup, Bounds > initial = new LinkedHashMap<>();
+
+		DisplayRangeUpdate( final List< ConverterSetup > setups )
+		{
+			for ( final ConverterSetup setup : setups )
+				initial.put( setup, new Bounds( setup.getDisplayRangeMin(), setup.getDisplayRangeMax() ) );
+		}
+
+		@Override
+		public void accept( final Bounds bounds )
+		{
+			SwingUtilities.invokeLater( () -> initial.forEach( ( setup, range ) -> {
+				// leave ranges alone that were modified by the user
+				if ( range.getMinBound() == setup.getDisplayRangeMin() && range.getMaxBound() == setup.getDisplayRangeMax() )
+					setup.setDisplayRange( bounds.getMinBound(), bounds.getMaxBound() );
+			} ) );
+		}
+	}
+
+	/**
+	 * Estimate the range of source values, such that (approximately) a
+	 * fraction {@code cumulativeMinCutoff} of pixels is below, and a fraction
+	 * {@code 1 - cumulativeMaxCutoff} of pixels is above the range.
+	 * <p>
+	 * If statistics were recorded for the source at export, they are used.
+	 * Otherwise, the range is estimated from a sample of cells of the
+	 * {@link #ESTIMATE_NUM_LEVELS} coarsest levels of {@code timepoint} (see
+	 * {@link SourceRangeEstimator}), which blocks for up to
+	 * {@link #ESTIMATE_MAX_MILLIS}.
+	 *
 	 * @param cumulativeMinCutoff
 	 * 		fraction of pixels that are allowed to be saturated at the lower end of the range.
 	 * @param cumulativeMaxCutoff
@@ -193,39 +306,45 @@ public class InitializeViewerState
 	 */
 	public static Bounds estimateSourceRange( final Source< ? > source, final int timepoint, final double cumulativeMinCutoff, final double cumulativeMaxCutoff )
 	{
-		final Object type = source.getType();
-		if ( type instanceof UnsignedShortType && source.isPresent( timepoint ) )
-		{
-			@SuppressWarnings( "unchecked" )
-			final RandomAccessibleInterval< UnsignedShortType > img = ( RandomAccessibleInterval< UnsignedShortType > ) source.getSource( timepoint, source.getNumMipmapLevels() - 1 );
-			final long z = ( img.min( 2 ) + img.max( 2 ) + 1 ) / 2;
-
-			final int numBins = 6535;
-			final Histogram1d< ? > histogram = new Histogram1d<>( Views.hyperSlice( img, 2, z ), new Real1dBinMapper<>( 0, 65535, numBins, false ) );
-			final DiscreteFrequencyDistribution dfd = histogram.dfd();
-			final long[] bin = new long[] { 0 };
-			double cumulative = 0;
-			int i = 0;
-			for ( ; i < numBins && cumulative < cumulativeMinCutoff; ++i )
-			{
-				bin[ 0 ] = i;
-				cumulative += dfd.relativeFrequency( bin );
-			}
-			final int min = i * 65535 / numBins;
-			for ( ; i < numBins && cumulative < cumulativeMaxCutoff; ++i )
-			{
-				bin[ 0 ] = i;
-				cumulative += dfd.relativeFrequency( bin );
-			}
-			final int max = i * 65535 / numBins;
-			return new Bounds( min, max );
-		}
-		else if ( type instanceof UnsignedByteType )
+		final Bounds stored = getRecordedSourceRange( source, timepoint, cumulativeMinCutoff, cumulativeMaxCutoff );
+		if ( stored != null )
+			return stored;
+
+		final Bounds estimated = createEstimator( source, timepoint ).estimate( cumulativeMinCutoff, cumulativeMaxCutoff, null );
+		if ( estimated != null )
+			return estimated;
+		else if ( source.getType() instanceof UnsignedByteType )
 			return new Bounds( 0, 255 );
 		else
 			return new Bounds( 0, 65535 );
 	}
 
+	private static SourceRangeEstimator createEstimator( final Source< ? > source, final int timepoint )
+	{
+		return new SourceRangeEstimator( source, timepoint, 0 )
+				.maxCells( ESTIMATE_MAX_CELLS )
+				.maxMillis( ESTIMATE_MAX_MILLIS )
+				.numLevels( ESTIMATE_NUM_LEVELS );
+	}
+
+	/**
+	 * Get the range from statistics recorded at export, or {@code null} if
+	 * there are none.
+	 */
+	private static Bounds getRecordedSourceRange( final Source< ? > source, final int timepoint, final double cumulativeMinCutoff, final double cumulativeMaxCutoff )
+	{
+		final Source< ? > wrapped = source instanceof TransformedSource
+				? ( ( TransformedSource< ? > ) source ).getWrappedSource()
+				: source;
+		if ( wrapped instanceof AbstractSpimSource )
+		{
+			final LevelStatistics statistics = ( ( AbstractSpimSource< ? > ) wrapped ).getLevelStatistics( timepoint, 0 );
+			if ( statistics != null )
+				return statistics.estimateRange( cumulativeMinCutoff, cumulativeMaxCutoff );
+		}
+		return null;
+	}
+
 	@Deprecated
 	public static AffineTransform3D initTransform( final int viewerWidth, final int viewerHeight, final boolean zoomedIn, final bdv.viewer.state.ViewerState state )
 	{
@@ -28,15 +28,14 @@
  */
 package bdv.tools;
 
-import bdv.cache.CacheControl;
 import bdv.export.ProgressWriter;
 import bdv.util.Prefs;
 import bdv.viewer.BasicViewerState;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.ViewerState;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
-import bdv.viewer.render.awt.BufferedImageRenderResult;
-import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.IntensityProjection;
+import bdv.viewer.render.awt.BatchRenderer;
 import java.awt.BorderLayout;
 import java.awt.Frame;
 import java.awt.Graphics;
@@ -45,11 +44,10 @@ import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.ActionMap;
@@ -66,14 +64,8 @@ import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
-import net.imglib2.Cursor;
-import net.imglib2.display.screenimage.awt.ARGBScreenImage;
-import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.type.numeric.ARGBType;
 import bdv.viewer.OverlayRenderer;
-import bdv.viewer.render.RenderTarget;
 import net.imglib2.util.LinAlgHelpers;
 
 public class RecordMaxProjectionDialog extends DelayedPackDialog implements OverlayRenderer
@@ -293,8 +285,6 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 		tGV.set( tGV.get( 0, 3 ) + width / 2, 0, 3 );
 		tGV.set( tGV.get( 1, 3 ) + height / 2, 1, 3 );
 
-		final AffineTransform3D affine = new AffineTransform3D();
-
 		// get voxel width transformed to current viewer coordinates
 		final AffineTransform3D tSV = new AffineTransform3D();
 		renderState.getSources().get( 0 ).getSpimSource().getSourceTransform( 0, 0, tSV );
@@ -310,96 +300,38 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 
 		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
 
-		class MyTarget implements RenderTarget< BufferedImageRenderResult >
-		{
-			final ARGBScreenImage accumulated = new ARGBScreenImage( width, height );
-
-			final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
-
-			public void clear()
-			{
-				for ( final ARGBType acc : accumulated )
-					acc.setZero();
-			}
-
-			@Override
-			public BufferedImageRenderResult getReusableRenderResult()
-			{
-				return renderResult;
-			}
-
-			@Override
-			public BufferedImageRenderResult createRenderResult()
-			{
-				return new BufferedImageRenderResult();
-			}
-
-			@Override
-			public void setRenderResult( final BufferedImageRenderResult renderResult )
-			{
-				final BufferedImage bufferedImage = renderResult.getBufferedImage();
-				final Img< ARGBType > argbs = ArrayImgs.argbs( ( ( DataBufferInt ) bufferedImage.getData().getDataBuffer() ).getData(), width, height );
-				final Cursor< ARGBType > c = argbs.cursor();
-				for ( final ARGBType acc : accumulated )
-				{
-					final int current = acc.get();
-					final int in = c.next().get();
-					acc.set( ARGBType.rgba(
-							Math.max( ARGBType.red( in ), ARGBType.red( current ) ),
-							Math.max( ARGBType.green( in ), ARGBType.green( current ) ),
-							Math.max( ARGBType.blue( in ), ARGBType.blue( current ) ),
-							Math.max( ARGBType.alpha( in ), ARGBType.alpha( current ) )	) );
-				}
-			}
-
-			@Override
-			public final int getWidth()
-			{
-				return width;
-			}
-
-			@Override
-			public int getHeight()
-			{
-				return height;
-			}
-		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, () -> {}, new double[] { 1 }, 0, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
-		progressWriter.setProgress( 0 );
+		renderState.setViewerTransform( tGV );
+		final List< ViewerState > frames = new ArrayList<>();
 		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 		{
-			target.clear();
-			renderState.setCurrentTimepoint( timepoint );
-
-			for ( int step = 0; step < numSteps; ++step )
-			{
-				affine.set(
-						1, 0, 0, 0,
-						0, 1, 0, 0,
-						0, 0, 1, -dd * stepSize * step );
-				affine.concatenate( tGV );
-				renderState.setViewerTransform( affine );
-				renderer.requestRepaint();
-				renderer.paint( renderState );
-			}
-
-			final BufferedImage bi = target.accumulated.image();
+			final ViewerState frame = new BasicViewerState( renderState );
+			frame.setCurrentTimepoint( timepoint );
+			frames.add( frame );
+		}
 
-			if ( Prefs.showScaleBarInMovie() )
+		final BatchRenderer.FrameWriter png = BatchRenderer.pngWriter( dir, "img-%03d.png" );
+		final BatchRenderer.FrameWriter writer = ( frame, state, bi ) -> {
+			if ( scalebar != null )
 			{
 				final Graphics2D g2 = bi.createGraphics();
 				g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
+				synchronized ( scalebar )
+				{
+					scalebar.setViewerState( state );
+					scalebar.paint( g2 );
+				}
 			}
+			png.write( frame + minTimepointIndex, state, bi );
+		};
 
-			ImageIO.write( bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
-		}
+		final int numThreads = viewer.getOptionValues().getNumRenderingThreads();
+		final BatchRenderer renderer = new BatchRenderer(
+				width, height, numThreads, 2, Math.max( 1, numThreads / 2 ),
+				viewer.getOptionValues().getAccumulateProjectorFactory() );
+		final double step = dd * stepSize;
+		renderer.setIntensityProjection( new IntensityProjection( IntensityProjection.Mode.MAX, 0, step * ( numSteps - 1 ), step, false ) );
+		renderer.render( frames, writer, progressWriter );
 	}
 
 	@Override
@@ -28,15 +28,13 @@
  */
 package bdv.tools;
 
-import bdv.cache.CacheControl;
 import bdv.export.ProgressWriter;
 import bdv.util.Prefs;
 import bdv.viewer.BasicViewerState;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.ViewerState;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
-import bdv.viewer.render.awt.BufferedImageRenderResult;
-import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.awt.BatchRenderer;
 import java.awt.BorderLayout;
 import java.awt.Frame;
 import java.awt.Graphics;
@@ -45,10 +43,10 @@ import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.ActionMap;
@@ -67,7 +65,6 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import net.imglib2.realtransform.AffineTransform3D;
 import bdv.viewer.OverlayRenderer;
-import bdv.viewer.render.RenderTarget;
 
 public class RecordMovieDialog extends DelayedPackDialog implements OverlayRenderer
 {
@@ -266,62 +263,35 @@ public class RecordMovieDialog extends DelayedPackDialog implements OverlayRende
 
 		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
 
-		class MyTarget implements RenderTarget< BufferedImageRenderResult >
-		{
-			final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
-
-			@Override
-			public BufferedImageRenderResult getReusableRenderResult()
-			{
-				return renderResult;
-			}
-
-			@Override
-			public BufferedImageRenderResult createRenderResult()
-			{
-				return new BufferedImageRenderResult();
-			}
-
-			@Override
-			public void setRenderResult( final BufferedImageRenderResult renderResult )
-			{}
-
-			@Override
-			public int getWidth()
-			{
-				return width;
-			}
-
-			@Override
-			public int getHeight()
-			{
-				return height;
-			}
-		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, () -> {}, new double[] { 1 }, 0, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
-		progressWriter.setProgress( 0 );
+		final List< ViewerState > frames = new ArrayList<>();
 		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 		{
-			renderState.setCurrentTimepoint( timepoint );
-			renderer.requestRepaint();
-			renderer.paint( renderState );
+			final ViewerState frame = new BasicViewerState( renderState );
+			frame.setCurrentTimepoint( timepoint );
+			frames.add( frame );
+		}
 
-			final BufferedImage bi = target.renderResult.getBufferedImage();
-			if ( Prefs.showScaleBarInMovie() )
+		final BatchRenderer.FrameWriter png = BatchRenderer.pngWriter( dir, "img-%03d.png" );
+		final BatchRenderer.FrameWriter writer = ( frame, state, bi ) -> {
+			if ( scalebar != null )
 			{
 				final Graphics2D g2 = bi.createGraphics();
 				g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
+				synchronized ( scalebar )
+				{
+					scalebar.setViewerState( state );
+					scalebar.paint( g2 );
+				}
 			}
+			png.write( frame + minTimepointIndex, state, bi );
+		};
 
-			ImageIO.write( bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
-		}
+		final int numThreads = viewer.getOptionValues().getNumRenderingThreads();
+		final BatchRenderer renderer = new BatchRenderer(
+				width, height, numThreads, 2, Math.max( 1, numThreads / 2 ),
+				viewer.getOptionValues().getAccumulateProjectorFactory() );
+		renderer.render( frames, writer, progressWriter );
 	}
 
 	@Override
@@ -0,0 +1,408 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import bdv.util.Bounds;
+import bdv.util.StreamingHistogram;
+import bdv.viewer.Source;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Cast;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Estimates the intensity range of a {@link Source} of any {@link RealType}
+ * from a sample of its cells, without a priori knowledge of the value range.
+ * <p>
+ * Cells are read in parallel, each into its own {@link StreamingHistogram},
+ * which is then merged into the shared one. First, the cells of the coarsest
+ * resolution level of the current timepoint are sampled (up to half of the
+ * budget), then randomly chosen cells of all (or the {@link #numLevels
+ * coarsest}) resolution levels (from coarse to fine) of the current and other
+ * timepoints. Sampling stops when the cell budget or the time budget is
+ * exhausted. Intermediate estimates are reported periodically, so that
+ * display ranges can be updated progressively.
+ */
+public class SourceRangeEstimator
+{
+	public static final int DEFAULT_MAX_CELLS = 1024;
+
+	public static final long DEFAULT_MAX_MILLIS = 10000;
+
+	private static final int[] DEFAULT_CELL_SIZE = { 64, 64, 64 };
+
+	private static final int NUM_BINS = 4096;
+
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final long PROGRESS_INTERVAL_MILLIS = 200;
+
+	private final Source< ? > source;
+
+	private final int timepoint;
+
+	private final int numTimepoints;
+
+	private int maxCells = DEFAULT_MAX_CELLS;
+
+	private long maxMillis = DEFAULT_MAX_MILLIS;
+
+	private int numLevels = Integer.MAX_VALUE;
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	private volatile boolean canceled;
+
+	/**
+	 * @param source
+	 *            the source to estimate the range of.
+	 * @param timepoint
+	 *            the current timepoint, which is sampled first.
+	 * @param numTimepoints
+	 *            cells are also sampled from the timepoints {@code 0} to
+	 *            {@code numTimepoints - 1} where the source is present. (Pass
+	 *            {@code 0} to sample only {@code timepoint}.)
+	 */
+	public SourceRangeEstimator( final Source< ? > source, final int timepoint, final int numTimepoints )
+	{
+		this.source = source;
+		this.timepoint = timepoint;
+		this.numTimepoints = numTimepoints;
+	}
+
+	/**
+	 * Set the maximum number of cells to read.
+	 */
+	public SourceRangeEstimator maxCells( final int maxCells )
+	{
+		this.maxCells = maxCells;
+		return this;
+	}
+
+	/**
+	 * Set the time after which sampling is stopped.
+	 */
+	public SourceRangeEstimator maxMillis( final long maxMillis )
+	{
+		this.maxMillis = maxMillis;
+		return this;
+	}
+
+	/**
+	 * Only sample the {@code numLevels} coarsest resolution levels.
+	 */
+	public SourceRangeEstimator numLevels( final int numLevels )
+	{
+		this.numLevels = numLevels;
+		return this;
+	}
+
+	public SourceRangeEstimator numThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	/**
+	 * Stop sampling. A running {@link #estimate} returns the estimate from the
+	 * cells read so far.
+	 */
+	public void cancel()
+	{
+		canceled = true;
+	}
+
+	/**
+	 * Estimate the range of source values, such that (approximately) a
+	 * fraction {@code cumulativeMinCutoff} of values is below, and a fraction
+	 * {@code 1 - cumulativeMaxCutoff} of values is above the range. This
+	 * blocks until the budget is exhausted or the estimator is
+	 * {@link #cancel() canceled}.
+	 *
+	 * @param progress
+	 *            if not {@code null}, is periodically notified of intermediate
+	 *            estimates (on the calling thread).
+	 * @return the estimated range, or {@code null} if the source type is not a
+	 *         {@link RealType} or no values could be read.
+	 */
+	public Bounds estimate( final double cumulativeMinCutoff, final double cumulativeMaxCutoff, final Consumer< Bounds > progress )
+	{
+		final Object type = source.getType();
+		if ( !( type instanceof RealType ) )
+			return null;
+
+		final boolean integerValues = type instanceof IntegerType;
+		final StreamingHistogram histogram = new StreamingHistogram( NUM_BINS, integerValues );
+		final List< CellSample > samples = createSamples();
+		if ( samples.isEmpty() )
+			return null;
+
+		final long deadline = System.currentTimeMillis() + maxMillis;
+		final AtomicBoolean stopped = new AtomicBoolean();
+		final AtomicInteger threadNumber = new AtomicInteger( 1 );
+		final ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, numThreads ), r -> {
+			final Thread t = new Thread( r, "source-range-estimator-" + threadNumber.getAndIncrement() );
+			t.setDaemon( true );
+			return t;
+		} );
+		try
+		{
+			final ExecutorCompletionService< Void > completionService = new ExecutorCompletionService<>( executor );
+			for ( final CellSample sample : samples )
+				completionService.submit( () -> {
+					if ( !canceled && !stopped.get() && System.currentTimeMillis() < deadline )
+						sample.addTo( histogram, integerValues );
+					return null;
+				} );
+
+			long nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL_MILLIS;
+			for ( int i = 0; i < samples.size() && !canceled; )
+			{
+				final long now = System.currentTimeMillis();
+				if ( now >= deadline )
+					break;
+				final Future< Void > future = completionService.poll( Math.min( nextProgress, deadline ) - now, TimeUnit.MILLISECONDS );
+				if ( future != null )
+				{
+					++i;
+					try
+					{
+						future.get();
+					}
+					catch ( final ExecutionException e )
+					{
+						// a cell that cannot be read does not invalidate the estimate
+					}
+				}
+				if ( System.currentTimeMillis() >= nextProgress )
+				{
+					if ( progress != null )
+					{
+						final Bounds bounds = getBounds( histogram, cumulativeMinCutoff, cumulativeMaxCutoff );
+						if ( bounds != null )
+							progress.accept( bounds );
+					}
+					nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL_MILLIS;
+				}
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			// cells that are currently being read are finished in the background
+			stopped.set( true );
+			executor.shutdown();
+		}
+		return getBounds( histogram, cumulativeMinCutoff, cumulativeMaxCutoff );
+	}
+
+	private static Bounds getBounds( final StreamingHistogram histogram, final double cumulativeMinCutoff, final double cumulativeMaxCutoff )
+	{
+		if ( histogram.getCount() == 0 )
+			return null;
+		final double min = histogram.quantile( cumulativeMinCutoff );
+		final double max = histogram.quantile( cumulativeMaxCutoff );
+		return new Bounds( min, max > min ? max : min + 1 );
+	}
+
+	/**
+	 * Choose the cells to read, in the order they should be read.
+	 */
+	private List< CellSample > createSamples()
+	{
+		final List< CellSample > samples = new ArrayList<>();
+		final List< Integer > timepoints = new ArrayList<>();
+		for ( int t = 0; t < numTimepoints; ++t )
+			if ( t != timepoint && source.isPresent( t ) )
+				timepoints.add( t );
+		final boolean currentIsPresent = source.isPresent( timepoint );
+		if ( currentIsPresent )
+			timepoints.add( timepoint );
+		if ( timepoints.isEmpty() )
+			return samples;
+
+		final Random random = new Random( 1 );
+		final Map< Long, SampledImage > images = new HashMap<>();
+		final int numLevels = source.getNumMipmapLevels();
+		final int coarsest = numLevels - 1;
+		final int finest = Math.max( 0, numLevels - Math.max( 1, this.numLevels ) );
+
+		// the coarsest level of the current timepoint gives a quick first estimate
+		boolean complete = false;
+		if ( currentIsPresent )
+		{
+			final SampledImage image = getImage( images, timepoint, coarsest );
+			final long numCells = image.numCells();
+			final int budget = Math.max( 1, maxCells / 2 );
+			if ( numCells <= budget )
+			{
+				for ( long i = 0; i < numCells; ++i )
+					samples.add( image.cell( i ) );
+				complete = true;
+			}
+			else
+				for ( int i = 0; i < budget; ++i )
+					samples.add( image.cell( ( long ) ( random.nextDouble() * numCells ) ) );
+		}
+
+		// random cells across levels and timepoints
+		if ( complete && finest == coarsest && timepoints.size() == 1 )
+			return samples;
+		final int firstLevel = complete && finest < coarsest ? coarsest - 1 : coarsest;
+		int level = firstLevel;
+		while ( samples.size() < maxCells )
+		{
+			final int t = currentIsPresent && random.nextBoolean()
+					? timepoint
+					: timepoints.get( random.nextInt( timepoints.size() ) );
+			final SampledImage image = getImage( images, t, level );
+			samples.add( image.cell( ( long ) ( random.nextDouble() * image.numCells() ) ) );
+			level = level == finest ? firstLevel : level - 1;
+		}
+		return samples;
+	}
+
+	private SampledImage getImage( final Map< Long, SampledImage > images, final int t, final int level )
+	{
+		return images.computeIfAbsent( ( long ) t * source.getNumMipmapLevels() + level, k -> new SampledImage( source.getSource( t, level ) ) );
+	}
+
+	/**
+	 * An image of one timepoint and level, and the grid of cells to sample.
+	 */
+	private static class SampledImage
+	{
+		private final RandomAccessibleInterval< ? > img;
+
+		private final CellGrid grid;
+
+		SampledImage( final RandomAccessibleInterval< ? > img )
+		{
+			this.img = img;
+			if ( img instanceof AbstractCellImg )
+				grid = ( ( AbstractCellImg< ?, ?, ?, ? > ) img ).getCellGrid();
+			else
+			{
+				final int n = img.numDimensions();
+				final int[] cellSize = new int[ n ];
+				for ( int d = 0; d < n; ++d )
+					cellSize[ d ] = d < DEFAULT_CELL_SIZE.length ? DEFAULT_CELL_SIZE[ d ] : 1;
+				grid = new CellGrid( Intervals.dimensionsAsLongArray( img ), cellSize );
+			}
+		}
+
+		long numCells()
+		{
+			return Intervals.numElements( grid.getGridDimensions() );
+		}
+
+		CellSample cell( final long index )
+		{
+			final int n = grid.numDimensions();
+			final long[] position = new long[ n ];
+			final long[] min = new long[ n ];
+			final int[] size = new int[ n ];
+			grid.getCellGridPositionFlat( index, position );
+			grid.getCellDimensions( position, min, size );
+			final long[] max = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] += img.min( d );
+				max[ d ] = min[ d ] + size[ d ] - 1;
+			}
+			return new CellSample( img, new FinalInterval( min, max ) );
+		}
+	}
+
+	private static class CellSample
+	{
+		private final RandomAccessibleInterval< ? > img;
+
+		private final Interval cell;
+
+		CellSample( final RandomAccessibleInterval< ? > img, final Interval cell )
+		{
+			this.img = img;
+			this.cell = cell;
+		}
+
+		/**
+		 * Read the cell into a new histogram, and merge that into
+		 * {@code histogram}. (Adding chunks to the shared histogram directly
+		 * would serialize the readers.)
+		 */
+		void addTo( final StreamingHistogram histogram, final boolean integerValues )
+		{
+			final StreamingHistogram local = new StreamingHistogram( NUM_BINS, integerValues );
+			addTo( Cast.unchecked( img ), cell, local );
+			histogram.add( local );
+		}
+
+		private static < T extends RealType< T > > void addTo( final RandomAccessibleInterval< T > img, final Interval cell, final StreamingHistogram histogram )
+		{
+			final double[] values = new double[ CHUNK_SIZE ];
+			int n = 0;
+			for ( final T t : Views.interval( img, cell ) )
+			{
+				values[ n++ ] = t.getRealDouble();
+				if ( n == CHUNK_SIZE )
+				{
+					histogram.add( values, n );
+					n = 0;
+				}
+			}
+			if ( n > 0 )
+				histogram.add( values, n );
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+/**
+ * A histogram with a fixed number of bins that adapts its range to the values
+ * added, for estimating quantiles of a stream of values with unknown range.
+ * <p>
+ * The range is initialized from the first values, and whenever a value falls
+ * outside, doubled (by merging pairs of adjacent bins) until it fits. For
+ * integer values, bins start with width 1 at an integer origin, so that the
+ * histogram is exact as long as the value range does not exceed the number of
+ * bins. Non-finite values are ignored.
+ * <p>
+ * {@link #add(double[], int)} and {@link #add(StreamingHistogram)} are
+ * thread-safe. To avoid contention, concurrent producers should fill their own
+ * histograms and merge them into a shared one with
+ * {@link #add(StreamingHistogram)}, which holds the lock only for one pass over
+ * the bins.
+ */
+public class StreamingHistogram
+{
+	private final long[] counts;
+
+	private final boolean integerValues;
+
+	private boolean initialized;
+
+	/**
+	 * Lower edge of bin 0.
+	 */
+	private double origin;
+
+	private double binWidth;
+
+	private long count;
+
+	private double min = Double.POSITIVE_INFINITY;
+
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * @param numBins
+	 *            number of bins (must be even)
+	 * @param integerValues
+	 *            whether all values are integers
+	 */
+	public StreamingHistogram( final int numBins, final boolean integerValues )
+	{
+		if ( numBins < 2 || numBins % 2 != 0 )
+			throw new IllegalArgumentException( "numBins must be even" );
+		this.counts = new long[ numBins ];
+		this.integerValues = integerValues;
+	}
+
+	/**
+	 * Add the first {@code n} elements of {@code values}.
+	 */
+	public synchronized void add( final double[] values, final int n )
+	{
+		double bmin = Double.POSITIVE_INFINITY;
+		double bmax = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < n; ++i )
+		{
+			final double v = values[ i ];
+			if ( v < bmin )
+				bmin = v;
+			if ( v > bmax )
+				bmax = v;
+		}
+		if ( Double.isInfinite( bmin ) || Double.isInfinite( bmax ) )
+		{
+			// contains non-finite values (or only NaNs): recompute over finite values
+			bmin = Double.POSITIVE_INFINITY;
+			bmax = Double.NEGATIVE_INFINITY;
+			for ( int i = 0; i < n; ++i )
+			{
+				final double v = values[ i ];
+				if ( Double.isFinite( v ) )
+				{
+					bmin = Math.min( bmin, v );
+					bmax = Math.max( bmax, v );
+				}
+			}
+			if ( bmin > bmax )
+				return;
+		}
+
+		include( bmin, bmax );
+		for ( int i = 0; i < n; ++i )
+		{
+			final double v = values[ i ];
+			if ( Double.isFinite( v ) )
+			{
+				++counts[ bin( v ) ];
+				++count;
+			}
+		}
+	}
+
+	/**
+	 * Add all values of {@code other}. The counts of each bin of
+	 * {@code other} are added to the bin that contains its center. (This is
+	 * exact for integer values, as long as both histograms have bins of width
+	 * 1.)
+	 */
+	public void add( final StreamingHistogram other )
+	{
+		final long[] otherCounts;
+		final double otherOrigin;
+		final double otherBinWidth;
+		final double otherMin;
+		final double otherMax;
+		final long otherCount;
+		synchronized ( other )
+		{
+			otherCounts = other.counts.clone();
+			otherOrigin = other.origin;
+			otherBinWidth = other.binWidth;
+			otherMin = other.min;
+			otherMax = other.max;
+			otherCount = other.count;
+		}
+		if ( otherCount == 0 )
+			return;
+
+		synchronized ( this )
+		{
+			include( otherMin, otherMax );
+			for ( int i = 0; i < otherCounts.length; ++i )
+			{
+				final long c = otherCounts[ i ];
+				if ( c > 0 )
+				{
+					final double center = otherOrigin + ( i + 0.5 ) * otherBinWidth;
+					counts[ bin( Math.max( otherMin, Math.min( otherMax, center ) ) ) ] += c;
+				}
+			}
+			count += otherCount;
+		}
+	}
+
+	/**
+	 * Number of (finite) values added.
+	 */
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	public synchronized double getMin()
+	{
+		return min;
+	}
+
+	public synchronized double getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Estimate the value below which a fraction {@code q} of values lies,
+	 * interpolating linearly within bins. Returns {@code NaN} if no values
+	 * were added.
+	 */
+	public synchronized double quantile( final double q )
+	{
+		if ( count == 0 )
+			return Double.NaN;
+		if ( min == max )
+			return min;
+		final double target = q * count;
+		long cumulative = 0;
+		for ( int i = 0; i < counts.length; ++i )
+		{
+			final long c = counts[ i ];
+			if ( c > 0 && cumulative + c >= target )
+			{
+				final double fraction = Math.max( 0, target - cumulative ) / c;
+				final double value = origin + ( i + fraction ) * binWidth;
+				return Math.max( min, Math.min( max, value ) );
+			}
+			cumulative += c;
+		}
+		return max;
+	}
+
+	/**
+	 * Initialize or grow the range such that it contains {@code [bmin, bmax]}
+	 * (both finite), and update min and max.
+	 */
+	private void include( final double bmin, final double bmax )
+	{
+		if ( !initialized )
+			initialize( bmin, bmax );
+		while ( bmin < origin )
+			growDown();
+		while ( bmax >= origin + counts.length * binWidth )
+			growUp();
+		min = Math.min( min, bmin );
+		max = Math.max( max, bmax );
+	}
+
+	private int bin( final double v )
+	{
+		final int bin = ( int ) ( ( v - origin ) / binWidth );
+		return Math.max( 0, Math.min( counts.length - 1, bin ) );
+	}
+
+	private void initialize( final double bmin, final double bmax )
+	{
+		if ( integerValues )
+		{
+			origin = Math.floor( bmin );
+			binWidth = 1;
+		}
+		else if ( bmin == bmax )
+		{
+			// a single distinct value so far: put it in the middle of a
+			// narrow range, which is widened as needed
+			binWidth = Math.max( Math.abs( bmin ), 1e-6 ) * 1e-6;
+			origin = bmin - counts.length / 2 * binWidth;
+		}
+		else
+		{
+			origin = bmin;
+			binWidth = ( bmax - bmin ) / ( counts.length - 1 );
+		}
+		initialized = true;
+	}
+
+	/**
+	 * Double the bin width, keeping the origin.
+	 */
+	private void growUp()
+	{
+		final int half = counts.length / 2;
+		for ( int i = 0; i < half; ++i )
+			counts[ i ] = counts[ 2 * i ] + counts[ 2 * i + 1 ];
+		for ( int i = half; i < counts.length; ++i )
+			counts[ i ] = 0;
+		binWidth *= 2;
+	}
+
+	/**
+	 * Double the bin width, keeping the upper end of the range.
+	 */
+	private void growDown()
+	{
+		final int half = counts.length / 2;
+		for ( int i = counts.length - 1; i >= half; --i )
+		{
+			final int j = 2 * ( i - half );
+			counts[ i ] = counts[ j ] + counts[ j + 1 ];
+		}
+		for ( int i = 0; i < half; ++i )
+			counts[ i ] = 0;
+		origin -= counts.length * binWidth;
+		binWidth *= 2;
+	}
+}
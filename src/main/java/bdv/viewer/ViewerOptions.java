@@ -158,6 +158,53 @@ public class ViewerOptions
 		return this;
 	}
 
+	/**
+	 * Set whether, after navigation, the last rendered frame should be warped
+	 * to the new viewer transform and displayed immediately, while the new
+	 * frame is rendered.
+	 *
+	 * @param r
+	 *            whether to reproject the last rendered frame.
+	 * @see MultiResolutionRenderer#setReprojectLastFrame(boolean)
+	 */
+	public ViewerOptions reprojectLastFrame( final boolean r )
+	{
+		values.reprojectLastFrame = r;
+		return this;
+	}
+
+	/**
+	 * Set how many completely rendered full-resolution frames to keep, such
+	 * that returning to a recently rendered view (e.g., jumping between
+	 * bookmarks) is instant. {@code 0} disables frame caching.
+	 *
+	 * @param n
+	 *            maximum number of cached frames.
+	 * @see MultiResolutionRenderer#setFrameCacheSize(int)
+	 */
+	public ViewerOptions frameCacheSize( final int n )
+	{
+		values.frameCacheSize = n;
+		return this;
+	}
+
+	/**
+	 * Set whether rendering should be foveated. If {@code true}, screen tiles
+	 * are rendered, and missing data is requested, in order of increasing
+	 * distance to the mouse cursor (or to the center of the canvas, if the
+	 * mouse is outside), such that the region the user is looking at reaches
+	 * full resolution first.
+	 *
+	 * @param f
+	 *            whether to use foveated rendering.
+	 * @see MultiResolutionRenderer#setFovea
+	 */
+	public ViewerOptions foveatedRendering( final boolean f )
+	{
+		values.foveatedRendering = f;
+		return this;
+	}
+
 	public ViewerOptions msgOverlay( final MessageOverlayAnimator o )
 	{
 		values.msgOverlay = o;
@@ -279,6 +326,12 @@ public class ViewerOptions
 
 		private boolean useVolatileIfAvailable = true;
 
+		private boolean reprojectLastFrame = false;
+
+		private int frameCacheSize = 0;
+
+		private boolean foveatedRendering = false;
+
 		private MessageOverlayAnimator msgOverlay = new MessageOverlayAnimator( 800 );
 
 		private TransformEventHandlerFactory transformEventHandlerFactory = TransformEventHandler3D::new;
@@ -305,6 +358,9 @@ public class ViewerOptions
 				numRenderingThreads( numRenderingThreads ).
 				numSourceGroups( numSourceGroups ).
 				useVolatileIfAvailable( useVolatileIfAvailable ).
+				reprojectLastFrame( reprojectLastFrame ).
+				frameCacheSize( frameCacheSize ).
+				foveatedRendering( foveatedRendering ).
 				msgOverlay( msgOverlay ).
 				is2D( is2D ).
 				transformEventHandlerFactory( transformEventHandlerFactory ).
@@ -350,6 +406,21 @@ public class ViewerOptions
 			return useVolatileIfAvailable;
 		}
 
+		public boolean isReprojectLastFrame()
+		{
+			return reprojectLastFrame;
+		}
+
+		public int getFrameCacheSize()
+		{
+			return frameCacheSize;
+		}
+
+		public boolean isFoveatedRendering()
+		{
+			return foveatedRendering;
+		}
+
 		public MessageOverlayAnimator getMsgOverlay()
 		{
 			return msgOverlay;
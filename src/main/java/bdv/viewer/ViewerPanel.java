@@ -73,6 +73,8 @@ import bdv.viewer.overlay.MultiBoxOverlayRenderer;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
 import bdv.viewer.overlay.SourceInfoOverlayRenderer;
 import bdv.viewer.render.DebugTilingOverlay;
+import bdv.viewer.render.Fovea;
+import bdv.viewer.render.IntensityProjection;
 import bdv.viewer.render.MultiResolutionRenderer;
 import bdv.viewer.render.PainterThread;
 import bdv.viewer.render.awt.BufferedImageOverlayRenderer;
@@ -257,6 +259,21 @@ public class ViewerPanel extends AbstractViewerPanel implements OverlayRenderer,
 				options.isUseVolatileIfAvailable(),
 				options.getAccumulateProjectorFactory(),
 				cacheControl );
+		imageRenderer.setReprojectLastFrame( options.isReprojectLastFrame() );
+		imageRenderer.setFrameCacheSize( options.getFrameCacheSize() );
+		if ( options.isFoveatedRendering() )
+			imageRenderer.setFovea( ( w, h, position ) -> {
+				synchronized ( mouseCoordinates )
+				{
+					if ( mouseCoordinates.isMouseInsidePanel() )
+					{
+						position[ 0 ] = mouseCoordinates.getX();
+						position[ 1 ] = mouseCoordinates.getY();
+					}
+					else
+						Fovea.CENTER.getPosition( w, h, position );
+				}
+			} );
 
 		display.addHandler( mouseCoordinates );
 
@@ -493,6 +510,17 @@ public class ViewerPanel extends AbstractViewerPanel implements OverlayRenderer,
 		imageRenderer.requestRepaint( screenInterval );
 	}
 
+	/**
+	 * Switch between rendering intensity projections over a slab ({@code
+	 * projection != null}) and rendering the usual single slice ({@code
+	 * projection == null}).
+	 */
+	public void setIntensityProjection( final IntensityProjection projection )
+	{
+		imageRenderer.setIntensityProjection( projection );
+		requestRepaint();
+	}
+
 	@Override
 	protected void onMouseMoved()
 	{
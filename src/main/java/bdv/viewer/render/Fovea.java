@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+/**
+ * Provides the screen position that the user is looking at, for foveated
+ * rendering. When a {@code Fovea} is set, the {@link MultiResolutionRenderer}
+ * renders screen tiles and requests data near the fovea first, such that this
+ * region reaches full resolution first.
+ *
+ * @see MultiResolutionRenderer#setFovea(Fovea)
+ */
+@FunctionalInterface
+public interface Fovea
+{
+	/**
+	 * Get the current fovea position in canvas coordinates.
+	 *
+	 * @param canvasWidth
+	 *            current width of the canvas
+	 * @param canvasHeight
+	 *            current height of the canvas
+	 * @param position
+	 *            is set to the X,Y coordinates of the fovea.
+	 */
+	void getPosition( int canvasWidth, int canvasHeight, double[] position );
+
+	/**
+	 * A {@code Fovea} at the center of the canvas.
+	 */
+	Fovea CENTER = ( w, h, position ) -> {
+		position[ 0 ] = w / 2.0;
+		position[ 1 ] = h / 2.0;
+	};
+}
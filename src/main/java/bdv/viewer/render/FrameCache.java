@@ -0,0 +1,237 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ColorConverter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Intervals;
+
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+
+/**
+ * A bounded cache of completely rendered full-resolution frames, so that
+ * returning to a recently rendered view (e.g., jumping between bookmarks) does
+ * not require rendering it again.
+ * <p>
+ * Frames are identified by a {@link Key} comprising the viewer transform, the
+ * timepoint, the interpolation, the screen size, the visible sources, their
+ * source transforms (which may be edited, e.g., through a
+ * {@code TransformedSource}), and the display settings (min, max, color) of
+ * their converters. Views with visible
+ * sources whose converter is not a {@link ColorConverter} are not cached,
+ * because changes to their display settings cannot be detected.
+ * <p>
+ * Note that changes to the image data of a source cannot be detected either.
+ * If the data of sources is modified, {@link #clear()} must be called.
+ * <p>
+ * Frames are copied into {@code RenderResult}s owned by the cache. Evicted
+ * {@code RenderResult}s are re-used for new entries.
+ */
+class FrameCache
+{
+	private final int maxSize;
+
+	private final Supplier< ? extends RenderResult > renderResultFactory;
+
+	private final LinkedHashMap< Key, RenderResult > frames;
+
+	private final List< RenderResult > recycled = new ArrayList<>();
+
+	/**
+	 * @param maxSize
+	 *     maximum number of frames to keep.
+	 * @param renderResultFactory
+	 *     creates the {@code RenderResult}s that frames are copied to.
+	 */
+	public FrameCache( final int maxSize, final Supplier< ? extends RenderResult > renderResultFactory )
+	{
+		this.maxSize = maxSize;
+		this.renderResultFactory = renderResultFactory;
+		frames = new LinkedHashMap<>( 16, 0.75f, true );
+	}
+
+	/**
+	 * Create the {@code Key} for rendering {@code viewerState} to a screen of
+	 * size {@code screenW * screenH}.
+	 *
+	 * @return the key, or {@code null} if the view cannot be cached.
+	 */
+	public static Key key( final ViewerState viewerState, final int screenW, final int screenH )
+	{
+		final int t = viewerState.getCurrentTimepoint();
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		final List< Object > sourceState = new ArrayList<>();
+		for ( final SourceAndConverter< ? > source : viewerState.getSources() )
+		{
+			if ( !viewerState.isSourceVisibleAndPresent( source ) )
+				continue;
+			final Converter< ?, ? > converter = source.getConverter();
+			if ( !( converter instanceof ColorConverter ) )
+				return null;
+			final ColorConverter cc = ( ColorConverter ) converter;
+			sourceState.add( source );
+			sourceState.add( cc.getMin() );
+			sourceState.add( cc.getMax() );
+			sourceState.add( cc.getColor().get() );
+			source.getSpimSource().getSourceTransform( t, 0, sourceTransform );
+			for ( final double v : sourceTransform.getRowPackedCopy() )
+				sourceState.add( v );
+		}
+		return new Key(
+				viewerState.getViewerTransform(),
+				t,
+				viewerState.getInterpolation(),
+				screenW, screenH,
+				sourceState );
+	}
+
+	/**
+	 * Get the cached frame for {@code key}.
+	 *
+	 * @return the cached frame, or {@code null} if there is none. The returned
+	 * {@code RenderResult} is owned by the cache and must not be modified.
+	 */
+	public synchronized RenderResult get( final Key key )
+	{
+		return key == null ? null : frames.get( key );
+	}
+
+	/**
+	 * Store a copy of {@code frame} for {@code key}.
+	 */
+	public synchronized void put( final Key key, final RenderResult frame )
+	{
+		if ( key == null || maxSize <= 0 || frames.containsKey( key ) )
+			return;
+
+		final int w = ( int ) frame.getTargetImage().dimension( 0 );
+		final int h = ( int ) frame.getTargetImage().dimension( 1 );
+		final RenderResult copy = recycled.isEmpty()
+				? renderResultFactory.get()
+				: recycled.remove( recycled.size() - 1 );
+		copy.init( w, h );
+		copy.setScaleFactor( frame.getScaleFactor() );
+		copy.getViewerTransform().set( frame.getViewerTransform() );
+		copy.patch( frame, Intervals.createMinSize( 0, 0, w, h ), 0, 0 );
+		frames.put( key, copy );
+
+		final Iterator< RenderResult > it = frames.values().iterator();
+		while ( frames.size() > maxSize )
+		{
+			recycled.add( it.next() );
+			it.remove();
+		}
+	}
+
+	/**
+	 * Remove all cached frames.
+	 */
+	public synchronized void clear()
+	{
+		recycled.addAll( frames.values() );
+		frames.clear();
+	}
+
+	/**
+	 * Identifies a rendered frame.
+	 */
+	static final class Key
+	{
+		private final double[] viewerTransform;
+
+		private final int timepoint;
+
+		private final Interpolation interpolation;
+
+		private final int screenW;
+
+		private final int screenH;
+
+		private final List< Object > sourceState;
+
+		private final int hashcode;
+
+		Key(
+				final AffineTransform3D viewerTransform,
+				final int timepoint,
+				final Interpolation interpolation,
+				final int screenW,
+				final int screenH,
+				final List< Object > sourceState )
+		{
+			this.viewerTransform = viewerTransform.getRowPackedCopy();
+			this.timepoint = timepoint;
+			this.interpolation = interpolation;
+			this.screenW = screenW;
+			this.screenH = screenH;
+			this.sourceState = sourceState;
+
+			int h = Arrays.hashCode( this.viewerTransform );
+			h = 31 * h + timepoint;
+			h = 31 * h + interpolation.hashCode();
+			h = 31 * h + screenW;
+			h = 31 * h + screenH;
+			h = 31 * h + sourceState.hashCode();
+			hashcode = h;
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( this == o )
+				return true;
+			if ( !( o instanceof Key ) )
+				return false;
+			final Key that = ( Key ) o;
+			return hashcode == that.hashcode
+					&& timepoint == that.timepoint
+					&& interpolation == that.interpolation
+					&& screenW == that.screenW
+					&& screenH == that.screenH
+					&& Arrays.equals( viewerTransform, that.viewerTransform )
+					&& sourceState.equals( that.sourceState );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashcode;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+/**
+ * Settings for rendering intensity projections (maximum, minimum, or mean
+ * intensity along the view ray) over a slab instead of a single slice.
+ * <p>
+ * The slab extends from {@code zMin} to {@code zMax} along the viewer Z axis,
+ * in viewer coordinates (that is, in units of screen pixels at screen scale
+ * 1). {@code zMin = zMax = 0} would be the slice that is displayed normally.
+ *
+ * @see IntensityProjectionProjector
+ * @see MultiResolutionRenderer#setIntensityProjection(IntensityProjection)
+ */
+public class IntensityProjection
+{
+	public enum Mode
+	{
+		MAX,
+		MIN,
+		MEAN
+	}
+
+	private final Mode mode;
+
+	private final double zMin;
+
+	private final double zMax;
+
+	private final double step;
+
+	private final boolean skipEmptySpace;
+
+	private final double emptyThreshold;
+
+	/**
+	 * @param mode
+	 *            how samples along the view ray are combined.
+	 * @param zMin
+	 *            start of the slab along the viewer Z axis, in viewer
+	 *            coordinates.
+	 * @param zMax
+	 *            end of the slab along the viewer Z axis, in viewer
+	 *            coordinates.
+	 * @param step
+	 *            distance between samples along the view ray, in viewer
+	 *            coordinates. If {@code step <= 0}, one sample per voxel of the
+	 *            rendered mipmap level is taken.
+	 * @param skipEmptySpace
+	 *            whether to skip blocks whose values are all zero (or
+	 *            smaller), using the per-block value ranges recorded at
+	 *            export. It only applies to {@link Mode#MAX}, and to sources
+	 *            for which block statistics are available.
+	 */
+	public IntensityProjection( final Mode mode, final double zMin, final double zMax, final double step, final boolean skipEmptySpace )
+	{
+		this( mode, zMin, zMax, step, skipEmptySpace, 0 );
+	}
+
+	/**
+	 * @param mode
+	 *            how samples along the view ray are combined.
+	 * @param zMin
+	 *            start of the slab along the viewer Z axis, in viewer
+	 *            coordinates.
+	 * @param zMax
+	 *            end of the slab along the viewer Z axis, in viewer
+	 *            coordinates.
+	 * @param step
+	 *            distance between samples along the view ray, in viewer
+	 *            coordinates. If {@code step <= 0}, one sample per voxel of the
+	 *            rendered mipmap level is taken.
+	 * @param skipEmptySpace
+	 *            whether to skip blocks whose maximum value is at most
+	 *            {@code emptyThreshold}, using the per-block value ranges
+	 *            recorded at export. It only applies to {@link Mode#MAX}, and
+	 *            to sources for which block statistics are available.
+	 * @param emptyThreshold
+	 *            blocks whose maximum is at most this value are skipped.
+	 *            Projected values above the threshold are not affected, so
+	 *            this can be up to the lower bound of the display range.
+	 */
+	public IntensityProjection( final Mode mode, final double zMin, final double zMax, final double step, final boolean skipEmptySpace, final double emptyThreshold )
+	{
+		this.mode = mode;
+		this.zMin = Math.min( zMin, zMax );
+		this.zMax = Math.max( zMin, zMax );
+		this.step = step;
+		this.skipEmptySpace = skipEmptySpace;
+		this.emptyThreshold = emptyThreshold;
+	}
+
+	/**
+	 * Maximum intensity projection over a slab of the given {@code thickness},
+	 * centered on the displayed slice, with one sample per voxel.
+	 */
+	public static IntensityProjection max( final double thickness )
+	{
+		return new IntensityProjection( Mode.MAX, -thickness / 2, thickness / 2, 0, false );
+	}
+
+	public Mode mode()
+	{
+		return mode;
+	}
+
+	public double zMin()
+	{
+		return zMin;
+	}
+
+	public double zMax()
+	{
+		return zMax;
+	}
+
+	public double step()
+	{
+		return step;
+	}
+
+	public boolean skipEmptySpace()
+	{
+		return skipEmptySpace && mode == Mode.MAX;
+	}
+
+	public double emptyThreshold()
+	{
+		return emptyThreshold;
+	}
+}
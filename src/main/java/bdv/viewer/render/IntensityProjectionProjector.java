@@ -0,0 +1,324 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.StopWatch;
+
+/**
+ * A {@link VolatileProjector} that renders the maximum (or minimum, or mean)
+ * intensity along the view ray over a slab in a single pass.
+ * <p>
+ * For every target pixel <em>(x,y)</em>, the source is sampled at
+ * <em>(x,y,z)</em> for <em>z</em> from {@link IntensityProjection#zMin()} to
+ * {@link IntensityProjection#zMax()} in steps of {@code step}. The combined
+ * value is converted to the target pixel type.
+ * <p>
+ * Optionally, for {@link IntensityProjection.Mode#MAX}, per-block value ranges
+ * recorded at export (see {@link bdv.img.LevelStatistics#getBlockMinMax()})
+ * are used to skip empty space: If the maximum of a block of the rendered
+ * mipmap level is at most {@link IntensityProjection#emptyThreshold()}, the
+ * samples inside it are skipped. Projected values above the threshold are
+ * exact (up to interpolation at block borders). Where only skipped samples
+ * contribute, the block minimum is used.
+ * <p>
+ * For {@link Volatile} sources, samples may be invalid. The projector then
+ * combines the valid samples, and reports that it is not {@link #isValid()
+ * valid}, such that rendering is repeated.
+ *
+ * @param <A>
+ *            pixel type of the source.
+ * @param <B>
+ *            pixel type of the target {@code RandomAccessibleInterval}.
+ */
+public class IntensityProjectionProjector< A extends RealType< A >, B > implements VolatileProjector
+{
+	private final RealRandomAccessible< A > source;
+
+	private final double[] blockMinMax;
+
+	private final long[] gridDimensions;
+
+	private final AffineTransform3D screenToGrid;
+
+	private final Converter< ? super A, B > converter;
+
+	private final RandomAccessibleInterval< B > target;
+
+	private final IntensityProjection projection;
+
+	private final double step;
+
+	private final int numSteps;
+
+	/**
+	 * Time needed for rendering the last frame, in nano-seconds.
+	 */
+	private long lastFrameRenderNanoTime;
+
+	private volatile boolean canceled = false;
+
+	private boolean valid = false;
+
+	/**
+	 * @param source
+	 *            the source, interpolated and transformed to screen coordinates.
+	 * @param blockMinMax
+	 *            interleaved (min, max) of every block of the rendered mipmap
+	 *            level, in flattened grid order, used to skip empty space.
+	 *            Unknown ranges are {@code NaN}. May be {@code null}.
+	 * @param gridDimensions
+	 *            dimensions of the block grid. May be {@code null} if
+	 *            {@code blockMinMax} is {@code null}.
+	 * @param screenToGrid
+	 *            transforms screen coordinates to block grid coordinates, such
+	 *            that the center of block {@code (i,j,k)} is at {@code (i,j,k)}.
+	 *            May be {@code null} if {@code blockMinMax} is {@code null}.
+	 * @param converter
+	 *            converts from the source pixel type to the target pixel type.
+	 * @param target
+	 *            the target interval that this projector maps to
+	 * @param projection
+	 *            the slab and how samples are combined.
+	 * @param step
+	 *            distance between samples along the view ray, in screen
+	 *            coordinates.
+	 */
+	public IntensityProjectionProjector(
+			final RealRandomAccessible< A > source,
+			final double[] blockMinMax,
+			final long[] gridDimensions,
+			final AffineTransform3D screenToGrid,
+			final Converter< ? super A, B > converter,
+			final RandomAccessibleInterval< B > target,
+			final IntensityProjection projection,
+			final double step )
+	{
+		this.source = source;
+		this.converter = converter;
+		this.target = target;
+		this.projection = projection;
+		this.step = step;
+		numSteps = 1 + ( int ) Math.floor( ( projection.zMax() - projection.zMin() ) / step );
+
+		final boolean skip = blockMinMax != null && projection.skipEmptySpace();
+		this.blockMinMax = skip ? blockMinMax : null;
+		this.gridDimensions = skip ? gridDimensions : null;
+		this.screenToGrid = skip ? screenToGrid : null;
+
+		lastFrameRenderNanoTime = -1;
+	}
+
+	@Override
+	public void cancel()
+	{
+		canceled = true;
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		if ( canceled )
+			return false;
+
+		final StopWatch stopWatch = StopWatch.createAndStart();
+
+		final IntensityProjection.Mode mode = projection.mode();
+		final double zMin = projection.zMin();
+		final int minX = ( int ) target.min( 0 );
+		final int minY = ( int ) target.min( 1 );
+		final int width = ( int ) target.dimension( 0 );
+		final int height = ( int ) target.dimension( 1 );
+
+		final RealRandomAccess< A > sourceAccess = source.realRandomAccess();
+		sourceAccess.setPosition( new double[] { minX, minY, zMin } );
+		final A accumulator = sourceAccess.get().createVariable();
+		if ( accumulator instanceof Volatile )
+			( ( Volatile< ? > ) accumulator ).setValid( true );
+		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+
+		final double threshold = projection.emptyThreshold();
+
+		// direction of the view ray in block grid coordinates
+		final double[] dir = new double[ 3 ];
+		if ( screenToGrid != null )
+			for ( int d = 0; d < 3; ++d )
+				dir[ d ] = screenToGrid.get( d, 2 );
+		final double[] pos = new double[ 3 ];
+		final double[] gridPos = new double[ 3 ];
+
+		boolean allValid = true;
+		for ( int y = 0; y < height; ++y )
+		{
+			if ( canceled )
+				return false;
+
+			pos[ 1 ] = minY + y;
+			targetRandomAccess.setPosition( minX, 0 );
+			targetRandomAccess.setPosition( minY + y, 1 );
+			for ( int x = 0; x < width; ++x )
+			{
+				pos[ 0 ] = minX + x;
+
+				double value = mode == IntensityProjection.Mode.MIN ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+				double sum = 0;
+				int count = 0;
+
+				// samples before this index are known to be in a non-empty block
+				int nonEmptyUntil = 0;
+				for ( int i = 0; i < numSteps; ++i )
+				{
+					pos[ 2 ] = zMin + i * step;
+
+					if ( screenToGrid != null && i >= nonEmptyUntil )
+					{
+						screenToGrid.apply( pos, gridPos );
+						final double exit = exitDistance( gridPos, dir );
+						final int exitIndex = i + ( int ) Math.min( numSteps, Math.floor( exit / step ) );
+						final int block = blockIndex( gridPos );
+						// NB: blocks with unknown range (NaN) are never skipped
+						if ( block < 0 || blockMinMax[ 2 * block + 1 ] <= threshold )
+						{
+							// Skip samples inside the block, except the last
+							// one, nearest to its border, which may see
+							// neighboring blocks through interpolation.
+							final int skipTo = Math.min( exitIndex - 1, numSteps );
+							if ( skipTo > i )
+							{
+								// outside the grid, the source is zero
+								value = Math.max( value, block < 0 ? 0 : blockMinMax[ 2 * block ] );
+								i = skipTo - 1;
+								continue;
+							}
+						}
+						else
+							nonEmptyUntil = exitIndex;
+					}
+
+					sourceAccess.setPosition( pos );
+					final A a = sourceAccess.get();
+					if ( a instanceof Volatile && !( ( Volatile< ? > ) a ).isValid() )
+					{
+						allValid = false;
+						continue;
+					}
+					final double v = a.getRealDouble();
+					switch ( mode )
+					{
+					case MAX:
+						value = Math.max( value, v );
+						break;
+					case MIN:
+						value = Math.min( value, v );
+						break;
+					case MEAN:
+						sum += v;
+						break;
+					}
+					++count;
+				}
+
+				if ( mode == IntensityProjection.Mode.MEAN )
+					value = count > 0 ? sum / count : 0;
+				else if ( Double.isInfinite( value ) )
+					value = 0;
+				accumulator.setReal( value );
+				converter.convert( accumulator, targetRandomAccess.get() );
+				targetRandomAccess.fwd( 0 );
+			}
+		}
+
+		lastFrameRenderNanoTime = stopWatch.nanoTime();
+
+		final boolean success = !canceled;
+		valid = success && allValid;
+		return success;
+	}
+
+	/**
+	 * Get the flattened index of the block nearest to {@code gridPos}, or
+	 * {@code -1} if it is outside the block grid.
+	 */
+	private int blockIndex( final double[] gridPos )
+	{
+		int index = 0;
+		for ( int d = 2; d >= 0; --d )
+		{
+			final long p = Math.round( gridPos[ d ] );
+			if ( p < 0 || p >= gridDimensions[ d ] )
+				return -1;
+			index = ( int ) ( index * gridDimensions[ d ] + p );
+		}
+		return index;
+	}
+
+	/**
+	 * Distance along the view ray (in screen coordinates) from
+	 * {@code gridPos} to the border of the block containing it.
+	 *
+	 * @param gridPos
+	 *            position in block grid coordinates
+	 * @param dir
+	 *            direction of the view ray in block grid coordinates, per
+	 *            unit distance in screen coordinates
+	 */
+	private static double exitDistance( final double[] gridPos, final double[] dir )
+	{
+		double t = Double.POSITIVE_INFINITY;
+		for ( int d = 0; d < 3; ++d )
+		{
+			final double c = Math.round( gridPos[ d ] );
+			if ( dir[ d ] > 0 )
+				t = Math.min( t, ( c + 0.5 - gridPos[ d ] ) / dir[ d ] );
+			else if ( dir[ d ] < 0 )
+				t = Math.min( t, ( c - 0.5 - gridPos[ d ] ) / dir[ d ] );
+		}
+		return t;
+	}
+}
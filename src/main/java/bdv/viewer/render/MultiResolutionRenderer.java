@@ -29,7 +29,7 @@
 package bdv.viewer.render;
 
 import bdv.viewer.SourceAndConverter;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -126,10 +126,10 @@ public class MultiResolutionRenderer
 	private final ScreenScales screenScales;
 
 	/**
-	 * Estimate of the time it takes to render one screen pixel from one source,
-	 * in nanoseconds.
+	 * Estimates of the time it takes to render one screen pixel from one
+	 * source, in nanoseconds, for different kinds of sources.
 	 */
-	private final MovingAverage renderNanosPerPixelAndSource;
+	private final RenderCostModel renderCostModel;
 
 	/**
 	 * The ForkJoinPool used for rendering
@@ -163,17 +163,15 @@ public class MultiResolutionRenderer
 	private ViewerState currentViewerState;
 
 	/**
-	 * Estimate of the average number of sources for one rendered pixel in the
-	 * currently rendering (or most recently rendered) screen image or interval. This
-	 * is used for measuring and predicting render times.
+	 * Estimate of the number of rendered pixels for each kind of source in the
+	 * currently rendering (or most recently rendered) screen image or interval.
+	 * This is used for measuring and predicting render times.
 	 * <p>
 	 * Assuming exhaustive tiling, for every visible sources, the number of pixels
 	 * rendered for that source is the number of pixels in its bounding box, clipped to
-	 * the rendering area. The average number of sources is then the number of rendered
-	 * pixels summed over all sources and divided by the number of pixels in the
-	 * rendering area.
+	 * the rendering area.
 	 */
-	private double currentAverageNumSourcesPerPixel;
+	private RenderCostModel.Estimate currentRenderCostEstimate;
 
 
 	/**
@@ -182,6 +180,53 @@ public class MultiResolutionRenderer
 	 */
 	private RenderResult currentRenderResult;
 
+	/**
+	 * Whether {@link #currentRenderResult} is a reprojected frame (see
+	 * {@link #reprojectLastFrame(ViewerState)}) rather than a rendered one.
+	 * Reprojected frames are not reprojected again, to avoid accumulating
+	 * resampling artifacts.
+	 */
+	private boolean currentRenderResultReprojected;
+
+	/**
+	 * Whether to show the {@link #currentRenderResult last rendered frame},
+	 * warped to the new viewer transform, immediately when a new frame is
+	 * requested after navigation.
+	 */
+	private volatile boolean reprojectLastFrame;
+
+	/**
+	 * Reprojection is skipped if the slice shown by the new viewer transform
+	 * is further than this from the plane of the last rendered frame anywhere
+	 * on screen (in screen pixel units). Beyond that, an orthogonal projection
+	 * of the last frame is too different from what will be rendered.
+	 */
+	private static final double MAX_REPROJECTION_DEPTH = 16;
+
+	/**
+	 * If non-null, screen tiles are rendered and data is requested in order of
+	 * increasing distance to this fovea.
+	 */
+	private volatile Fovea fovea;
+
+	/**
+	 * If non-null, sources are rendered as intensity projections over a slab
+	 * instead of as a single slice.
+	 */
+	private volatile IntensityProjection intensityProjection;
+
+	/**
+	 * Completely rendered full-resolution frames of recently visited views, or
+	 * {@code null} if frame caching is disabled.
+	 */
+	private volatile FrameCache frameCache;
+
+	/**
+	 * Identifies the {@link #currentViewerState} in the {@link #frameCache}.
+	 * This is {@code null} if the current view cannot be cached.
+	 */
+	private FrameCache.Key currentFrameKey;
+
 	/**
 	 * If {@code true}, then we are painting intervals currently.
 	 * If {@code false}, then we are painting full frames.
@@ -301,8 +346,7 @@ public class MultiResolutionRenderer
 		currentScreenScaleIndex = -1;
 		screenScales = new ScreenScales( screenScaleFactors, targetRenderNanos );
 
-		renderNanosPerPixelAndSource = new MovingAverage( 3 );
-		renderNanosPerPixelAndSource.init( 500 );
+		renderCostModel = new RenderCostModel( 500, 0.5 );
 
 		requestedScreenScaleIndex = screenScales.size() - 1;
 		renderingMayBeCancelled = false;
@@ -360,6 +404,69 @@ public class MultiResolutionRenderer
 		painterThread.requestRepaint();
 	}
 
+	/**
+	 * Set whether, on a new frame request, the last rendered frame should be
+	 * warped to the new viewer transform and displayed immediately, while the
+	 * new frame is rendered. This only happens if the viewer transform is the
+	 * only thing that changed (not the timepoint, interpolation, or visible
+	 * sources), and the new view is (almost) in the plane of the last frame.
+	 */
+	public void setReprojectLastFrame( final boolean reprojectLastFrame )
+	{
+		this.reprojectLastFrame = reprojectLastFrame;
+	}
+
+	/**
+	 * Set the {@link Fovea} for foveated rendering. If non-null, screen tiles
+	 * are rendered, and missing data is requested, in order of increasing
+	 * distance to the fovea, such that the region the user is looking at
+	 * reaches full resolution first. {@code null} disables foveated rendering.
+	 */
+	public void setFovea( final Fovea fovea )
+	{
+		this.fovea = fovea;
+	}
+
+	/**
+	 * Set whether sources are rendered as intensity projections over a slab
+	 * ({@code projection != null}), or as the usual single slice ({@code
+	 * projection == null}). This does not trigger a repaint.
+	 */
+	public synchronized void setIntensityProjection( final IntensityProjection projection )
+	{
+		intensityProjection = projection;
+		projectorFactory.setIntensityProjection( projection );
+		invalidateFrameCache();
+	}
+
+	/**
+	 * Set the maximum number of completely rendered full-resolution frames to
+	 * keep, such that returning to a recently rendered view (e.g., jumping
+	 * between bookmarks) shows it immediately, without rendering. {@code 0}
+	 * disables frame caching.
+	 * <p>
+	 * Cached frames are identified by viewer transform, timepoint,
+	 * interpolation, visible sources, and their converter settings. Changes to
+	 * the image data of sources cannot be detected. If source data is
+	 * modified, {@link #invalidateFrameCache()} must be called.
+	 */
+	public void setFrameCacheSize( final int maxNumFrames )
+	{
+		frameCache = maxNumFrames > 0
+				? new FrameCache( maxNumFrames, display::createRenderResult )
+				: null;
+	}
+
+	/**
+	 * Remove all frames from the frame cache (see {@link #setFrameCacheSize}).
+	 */
+	public void invalidateFrameCache()
+	{
+		final FrameCache cache = frameCache;
+		if ( cache != null )
+			cache.clear();
+	}
+
 	/**
 	 * DON'T USE THIS.
 	 * <p>
@@ -373,6 +480,7 @@ public class MultiResolutionRenderer
 		projector = null;
 		currentViewerState = null;
 		currentRenderResult = null;
+		invalidateFrameCache();
 		if ( createdForkJoinPool )
 			renderingForkJoinPool.shutdown();
 	}
@@ -388,13 +496,14 @@ public class MultiResolutionRenderer
 		if ( screenW <= 0 || screenH <= 0 )
 			return false;
 
+		final boolean resized;
 		final boolean newFrame;
 		final boolean newInterval;
 		final boolean prepareNextFrame;
 		final boolean createProjector;
 		synchronized ( this )
 		{
-			final boolean resized = screenScales.checkResize( screenW, screenH );
+			resized = screenScales.checkResize( screenW, screenH );
 
 			newFrame = newFrameRequest || resized;
 			if ( newFrame )
@@ -408,10 +517,10 @@ public class MultiResolutionRenderer
 			{
 				intervalMode = true;
 
-				// NB: The following uses currentAverageNumSourcesPerPixel which is possibly
+				// NB: The following uses currentRenderCostEstimate which is possibly
 				// inaccurate because it still might have the value computed for the full screen
 				// (when we are actually rendering an interval).
-				final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * currentAverageNumSourcesPerPixel;
+				final double renderNanosPerPixel = currentRenderCostEstimate.getRenderNanosPerPixel();
 				requestedIntervalScaleIndex = screenScales.suggestIntervalScreenScale( renderNanosPerPixel, currentScreenScaleIndex );
 			}
 
@@ -434,12 +543,30 @@ public class MultiResolutionRenderer
 		if ( prepareNextFrame )
 			cacheControl.prepareNextFrame();
 
+		final FrameCache cache = frameCache;
+		if ( newInterval && cache != null )
+			// interval repaints are requested when source data changes
+			cache.clear();
+
 		if ( newFrame )
 		{
+			final ViewerState previousViewerState = currentViewerState;
 			currentViewerState = viewerState.snapshot();
-			final VisibleSourcesOnScreenBounds screenBounds = new VisibleSourcesOnScreenBounds( currentViewerState, screenScales.get( 0 ) );
-			currentAverageNumSourcesPerPixel = screenBounds.estimateNumSourcesPerPixel();
-			final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * currentAverageNumSourcesPerPixel;
+			if ( cache != null )
+			{
+				currentFrameKey = FrameCache.key( currentViewerState, screenW, screenH );
+				final RenderResult cached = cache.get( currentFrameKey );
+				if ( cached != null )
+				{
+					showCachedFrame( cached );
+					return true;
+				}
+			}
+			if ( reprojectLastFrame && !resized )
+				reprojectLastFrame( previousViewerState );
+			final VisibleSourcesOnScreenBounds screenBounds = createVisibleSourcesOnScreenBounds( currentViewerState, screenScales.get( 0 ) );
+			currentRenderCostEstimate = renderCostModel.estimate( screenBounds, currentViewerState.getInterpolation() );
+			final double renderNanosPerPixel = currentRenderCostEstimate.getRenderNanosPerPixel();
 			requestedScreenScaleIndex = screenScales.suggestScreenScale( renderNanosPerPixel );
 		}
 
@@ -496,11 +623,12 @@ public class MultiResolutionRenderer
 					renderResult.setUpdated();
 					( ( RenderTarget ) display ).setRenderResult( renderResult );
 					currentRenderResult = renderResult;
-					recordRenderTime( renderResult, rendertime );
+					currentRenderResultReprojected = false;
+					recordRenderTime( rendertime );
 					if ( debugTileOverlay != null )
 					{
 						debugTileOverlay.setRenderTime( rendertime );
-						debugTileOverlay.setRenderTimePerPixelAndSource( renderNanosPerPixelAndSource.getAverage() );
+						debugTileOverlay.setRenderTimePerPixelAndSource( renderCostModel.getAverageNanosPerPixelAndSource() );
 					}
 				}
 				else
@@ -509,8 +637,13 @@ public class MultiResolutionRenderer
 				if ( !p.isValid() && requestNewFrameIfIncomplete )
 					requestRepaint();
 				else if ( p.isValid() && currentScreenScaleIndex == 0 )
+				{
 					// indicate that rendering is complete
 					requestedScreenScaleIndex = -1;
+					final FrameCache cache = frameCache;
+					if ( cache != null )
+						cache.put( currentFrameKey, currentRenderResult );
+				}
 				else
 					iterateRepaint( Math.max( 0, currentScreenScaleIndex - 1 ) );
 			}
@@ -548,7 +681,7 @@ public class MultiResolutionRenderer
 				currentRenderResult.patch( intervalResult, intervalRenderData.targetInterval(), intervalRenderData.tx(), intervalRenderData.ty() );
 
 				if ( createProjector )
-					recordRenderTime( intervalResult, rendertime );
+					recordRenderTime( rendertime );
 
 				if ( currentIntervalScaleIndex > currentScreenScaleIndex )
 					iterateRepaintInterval( currentIntervalScaleIndex - 1 );
@@ -575,11 +708,117 @@ public class MultiResolutionRenderer
 		return success;
 	}
 
-	private void recordRenderTime( final RenderResult result, final long renderNanos )
+	/**
+	 * Display a copy of a {@code cached} frame, and mark rendering of the
+	 * {@link #currentViewerState} as complete.
+	 */
+	private synchronized void showCachedFrame( final RenderResult cached )
 	{
-		final int numRenderPixels = ( int ) ( Intervals.numElements( result.getTargetImage() ) * currentAverageNumSourcesPerPixel );
-		if ( numRenderPixels >= 4096 )
-			renderNanosPerPixelAndSource.add( renderNanos / ( double ) numRenderPixels );
+		final int w = ( int ) cached.getTargetImage().dimension( 0 );
+		final int h = ( int ) cached.getTargetImage().dimension( 1 );
+		final RenderResult result = display.getReusableRenderResult();
+		result.init( w, h );
+		result.setScaleFactor( cached.getScaleFactor() );
+		result.getViewerTransform().set( cached.getViewerTransform() );
+		result.patch( cached, Intervals.createMinSize( 0, 0, w, h ), 0, 0 );
+		result.setUpdated();
+		( ( RenderTarget ) display ).setRenderResult( result );
+		currentRenderResult = result;
+		currentRenderResultReprojected = false;
+		currentScreenScaleIndex = 0;
+		requestedScreenScaleIndex = -1;
+		projectorFactory.setPreviousTimepoint( currentViewerState.getCurrentTimepoint() );
+	}
+
+	/**
+	 * Warp the {@link #currentRenderResult last rendered frame} to the viewer
+	 * transform of {@link #currentViewerState} and display it. This is skipped
+	 * if anything other than the viewer transform changed with respect to the
+	 * {@code previousViewerState}, or if the new view is too far out of the
+	 * plane of the last frame.
+	 * <p>
+	 * The warped frame is rendered into a fresh buffer from the display and
+	 * becomes the {@link #currentRenderResult}. Handing a buffer to the display
+	 * rotates its buffers, so the previous {@code currentRenderResult} may be
+	 * returned as the next reusable buffer, and must not be used as the
+	 * reprojection source or interval repaint target after that.
+	 */
+	private synchronized void reprojectLastFrame( final ViewerState previousViewerState )
+	{
+		final RenderResult source = currentRenderResult;
+		if ( source == null || previousViewerState == null || currentRenderResultReprojected )
+			return;
+
+		if ( previousViewerState.getCurrentTimepoint() != currentViewerState.getCurrentTimepoint()
+				|| previousViewerState.getInterpolation() != currentViewerState.getInterpolation()
+				|| !previousViewerState.getVisibleAndPresentSources().equals( currentViewerState.getVisibleAndPresentSources() ) )
+			return;
+
+		final AffineTransform3D viewerTransform = currentViewerState.getViewerTransform();
+		final double scale = source.getScaleFactor();
+		final int w = ( int ) source.getTargetImage().dimension( 0 );
+		final int h = ( int ) source.getTargetImage().dimension( 1 );
+		final AffineTransform3D targetToSource = reprojectionTransform( source.getViewerTransform(), viewerTransform, scale, w, h );
+		if ( targetToSource == null )
+			return;
+
+		final RenderResult result = display.getReusableRenderResult();
+		if ( result == source )
+			return;
+		result.init( w, h );
+		result.setScaleFactor( scale );
+		if ( !result.reproject( source, targetToSource ) )
+			return;
+		result.getViewerTransform().set( viewerTransform );
+		result.setUpdated();
+		( ( RenderTarget ) display ).setRenderResult( result );
+		currentRenderResult = result;
+		currentRenderResultReprojected = true;
+	}
+
+	/**
+	 * Compute the transform from target image coordinates of a frame rendered
+	 * with {@code viewerTransform} to target image coordinates of a frame
+	 * rendered with {@code sourceViewerTransform}, both at screen scale {@code
+	 * scale} and of size {@code w} x {@code h}.
+	 *
+	 * @return the transform, or {@code null} if the transforms are identical
+	 *         or the new view is further than {@link #MAX_REPROJECTION_DEPTH}
+	 *         from the plane of the source frame at any corner.
+	 */
+	static AffineTransform3D reprojectionTransform(
+			final AffineTransform3D sourceViewerTransform,
+			final AffineTransform3D viewerTransform,
+			final double scale,
+			final int w,
+			final int h )
+	{
+		if ( Arrays.equals( sourceViewerTransform.getRowPackedCopy(), viewerTransform.getRowPackedCopy() ) )
+			return null;
+
+		final AffineTransform3D scaleTransform = ScreenScale.createScaleTransform( scale );
+		final AffineTransform3D targetToSource = scaleTransform.inverse();
+		targetToSource.preConcatenate( viewerTransform.inverse() );
+		targetToSource.preConcatenate( sourceViewerTransform );
+		targetToSource.preConcatenate( scaleTransform );
+
+		// check distance of the new view from the plane of the last frame at the corners
+		final double[] corner = new double[ 3 ];
+		final double[] sourceCorner = new double[ 3 ];
+		for ( int i = 0; i < 4; ++i )
+		{
+			corner[ 0 ] = ( i & 1 ) == 0 ? 0 : w - 1;
+			corner[ 1 ] = ( i & 2 ) == 0 ? 0 : h - 1;
+			targetToSource.apply( corner, sourceCorner );
+			if ( Math.abs( sourceCorner[ 2 ] ) > MAX_REPROJECTION_DEPTH )
+				return null;
+		}
+		return targetToSource;
+	}
+
+	private void recordRenderTime( final long renderNanos )
+	{
+		renderCostModel.record( currentRenderCostEstimate, renderNanos );
 	}
 
 	/**
@@ -629,6 +868,14 @@ public class MultiResolutionRenderer
 		}
 	}
 
+	private VisibleSourcesOnScreenBounds createVisibleSourcesOnScreenBounds( final ViewerState viewerState, final ScreenScale screenScale )
+	{
+		final IntensityProjection projection = intensityProjection;
+		return projection == null
+				? new VisibleSourcesOnScreenBounds( viewerState, screenScale )
+				: new VisibleSourcesOnScreenBounds( viewerState, screenScale, projection.zMin(), projection.zMax() );
+	}
+
 	private VolatileProjector createProjector(
 			final ViewerState viewerState,
 			final int screenScaleIndex,
@@ -641,21 +888,35 @@ public class MultiResolutionRenderer
 		final AffineTransform3D screenTransform = viewerState.getViewerTransform().preConcatenate( screenScale.scaleTransform() );
 		screenTransform.translate( -offsetX, -offsetY, 0 );
 
-		final VisibleSourcesOnScreenBounds onScreenBounds = new VisibleSourcesOnScreenBounds( viewerState, screenImage, screenTransform );
+		final IntensityProjection projection = intensityProjection;
+		final VisibleSourcesOnScreenBounds onScreenBounds = projection == null
+				? new VisibleSourcesOnScreenBounds( viewerState, screenImage, screenTransform )
+				: new VisibleSourcesOnScreenBounds( viewerState, screenImage, screenTransform, projection.zMin(), projection.zMax() );
 		final List< Tile > tiles = Tiling.findTiles( onScreenBounds );
 		final List< Tile > renderTiles = Tiling.splitForRendering( tiles );
 
+		final double[] foveaPos = getFoveaPosition( screenScale, offsetX, offsetY );
+		if ( foveaPos != null )
+			Tiling.sortByDistance( renderTiles, foveaPos[ 0 ], foveaPos[ 1 ] );
+
 
-		// NB: Re-compute currentAverageNumSourcesPerPixel here, because that might still
+		// NB: Re-compute currentRenderCostEstimate here, because that might still
 		// be the full-screen value, when we are rendering an interval. For better
 		// rendertime recording (and subsequent estimation) we want to use the correct
 		// value for the actually rendered interval.
-		currentAverageNumSourcesPerPixel = onScreenBounds.estimateNumSourcesPerPixel();
+		currentRenderCostEstimate = renderCostModel.estimate( onScreenBounds, viewerState.getInterpolation() );
 
+		// Tiles are rendered in list order, and cells are enqueued for loading
+		// in the order in which tile projectors are created. If cells are
+		// enqueued to the front of the fetch queue, create tile projectors
+		// farthest-first, so that cells near the fovea are loaded first.
 		final int numTiles = renderTiles.size();
-		final List< VolatileProjector > tileProjectors = new ArrayList<>( numTiles );
-		for ( int t = 0; t < numTiles; t++ )
+		final boolean reverse = foveaPos != null
+				&& projectorFactory.prefetchEnqueuesToFront( viewerState, viewerState.getVisibleAndPresentSources(), screenTransform );
+		final VolatileProjector[] tileProjectors = new VolatileProjector[ numTiles ];
+		for ( int i = 0; i < numTiles; i++ )
 		{
+			final int t = reverse ? numTiles - 1 - i : i;
 			final Tile tile = renderTiles.get( t );
 			final int w = tile.tileSizeX();
 			final int h = tile.tileSizeY();
@@ -665,19 +926,38 @@ public class MultiResolutionRenderer
 			final RenderStorage tileRenderStorage = new RenderStorage( w, h, sources.size() );
 
 			final RandomAccessibleInterval< ARGBType > tileImage = Views.interval( screenImage, Intervals.createMinSize( ox, oy, w, h ) );
-			tileProjectors.add( projectorFactory.createProjector(
+			tileProjectors[ t ] = projectorFactory.createProjector(
 					viewerState,
 					sources,
 					tileImage,
 					screenTransform,
-					tileRenderStorage ) );
+					tileRenderStorage,
+					foveaPos );
 		}
 
 		if ( debugTileOverlay != null )
 			debugTileOverlay.setTiling( tiles, screenScale.scale(), offsetX, offsetY );
 
 		CacheIoTiming.getIoTimeBudget().reset( iobudget );
-		return new TiledProjector( tileProjectors );
+		return new TiledProjector( Arrays.asList( tileProjectors ) );
+	}
+
+	/**
+	 * Get the position of the {@link #fovea} in the coordinates of a target
+	 * image at the given {@code screenScale}, shifted by {@code (-offsetX,
+	 * -offsetY)}.
+	 *
+	 * @return the fovea position, or {@code null} if foveated rendering is disabled.
+	 */
+	private double[] getFoveaPosition( final ScreenScale screenScale, final int offsetX, final int offsetY )
+	{
+		final Fovea f = fovea;
+		if ( f == null )
+			return null;
+		final double[] pos = new double[ 3 ];
+		f.getPosition( display.getWidth(), display.getHeight(), pos );
+		screenScale.scaleTransform().apply( pos, pos );
+		return new double[] { pos[ 0 ] - offsetX, pos[ 1 ] - offsetY };
 	}
 
 	DebugTilingOverlay debugTileOverlay;
@@ -28,6 +28,11 @@
  */
 package bdv.viewer.render;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import net.imglib2.Dimensions;
 import net.imglib2.RandomAccess;
 import net.imglib2.RealPoint;
@@ -55,11 +60,96 @@ public class Prefetcher
 	 */
 	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess )
 	{
-		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, null, false );
+	}
+
+	/**
+	 * Access cells that will be needed for rendering to the screen, ordered by
+	 * distance of their projected center to the {@code fovea}.
+	 * <p>
+	 * Cells that are accessed first are enqueued for loading first. If the
+	 * fetch queue is used as a stack ({@code enqueueToFront}) cells are
+	 * accessed in reverse order, so that cells nearest to the fovea are loaded
+	 * first in either case.
+	 *
+	 * @param sourceToScreen
+	 *            source-to-screen transform
+	 * @param cellDimensions
+	 *            standard size of a source cell
+	 * @param dimensions
+	 *            dimensions of the source {@link CellImg}
+	 * @param screenInterval
+	 *            the interval of the screen that will be rendered
+	 * @param interpolation
+	 *            the interpolation method
+	 * @param cellsRandomAccess
+	 *            access to the source cells
+	 * @param fovea
+	 *            X,Y screen coordinates of the fovea, or {@code null} to access
+	 *            cells in scan order.
+	 * @param enqueueToFront
+	 *            whether cells will be added to the front of the fetch queue.
+	 */
+	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess, final double[] fovea, final boolean enqueueToFront )
+	{
+		final Prefetcher prefetcher = new Prefetcher( fovea );
+		prefetcher.scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		prefetcher.fetchFoveated( cellsRandomAccess, enqueueToFront );
 	}
 
-	private Prefetcher()
-	{}
+	private Prefetcher( final double[] fovea )
+	{
+		this.fovea = fovea;
+		foveatedCells = fovea == null ? null : new ArrayList<>();
+	}
+
+	/**
+	 * X,Y screen coordinates of the fovea, or {@code null}.
+	 */
+	private final double[] fovea;
+
+	/**
+	 * If {@link #fovea} is set, cells are not accessed during {@link #scan},
+	 * but collected here, to be accessed in {@link #fetchFoveated} ordered by
+	 * distance to the fovea.
+	 */
+	private final List< FoveatedCell > foveatedCells;
+
+	private static class FoveatedCell
+	{
+		final int x, y, z;
+
+		final double distance;
+
+		FoveatedCell( final int x, final int y, final int z, final double distance )
+		{
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.distance = distance;
+		}
+	}
+
+	/**
+	 * Access {@link #foveatedCells} ordered by distance to the fovea.
+	 */
+	private void fetchFoveated( final RandomAccess< ? > cellsRandomAccess, final boolean enqueueToFront )
+	{
+		if ( foveatedCells == null )
+			return;
+
+		Comparator< FoveatedCell > order = Comparator.comparingDouble( c -> c.distance );
+		if ( enqueueToFront )
+			order = order.reversed();
+		Collections.sort( foveatedCells, order );
+		for ( final FoveatedCell c : foveatedCells )
+		{
+			cellsRandomAccess.setPosition( c.x, 0 );
+			cellsRandomAccess.setPosition( c.y, 1 );
+			cellsRandomAccess.setPosition( c.z, 2 );
+			cellsRandomAccess.get();
+		}
+	}
 
 	/**
 	 * The transformed vector in screen coordinate when moving by by one cell in
@@ -191,7 +281,18 @@ public class Prefetcher
 							( y + offsetPos[ 1 ] >= 0 ) &&
 							( y + offsetNeg[ 1 ] < h ) )
 					{
-						cellsRandomAccess.get();
+						if ( fovea == null )
+							cellsRandomAccess.get();
+						else
+						{
+							final double dx = x + 0.5 * ( offsetNeg[ 0 ] + offsetPos[ 0 ] ) - fovea[ 0 ];
+							final double dy = y + 0.5 * ( offsetNeg[ 1 ] + offsetPos[ 1 ] ) - fovea[ 1 ];
+							foveatedCells.add( new FoveatedCell(
+									cellsRandomAccess.getIntPosition( 0 ),
+									cellsRandomAccess.getIntPosition( 1 ),
+									cellsRandomAccess.getIntPosition( 2 ),
+									dx * dx + dy * dy ) );
+						}
 					}
 					pSource.move( cellDimensions[ 0 ], 0 );
 				}
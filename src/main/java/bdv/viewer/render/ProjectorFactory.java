@@ -29,7 +29,10 @@
 package bdv.viewer.render;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 import net.imglib2.Dimensions;
@@ -40,11 +43,18 @@ import net.imglib2.RealRandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
 
+import bdv.AbstractSpimSource;
+import bdv.img.LevelStatistics;
 import bdv.img.cache.VolatileCachedCellImg;
+import bdv.tools.transformation.TransformedSource;
 import bdv.util.MipmapTransforms;
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
@@ -113,6 +123,25 @@ class ProjectorFactory
 	// TODO: should be settable
 	private final boolean prefetchCells = true;
 
+	/**
+	 * {@link MipmapOrdering.MipmapHints} by source, computed once per frame
+	 * and reused for all tiles (and by {@link #prefetchEnqueuesToFront}).
+	 * Valid for {@link #hintsTimepoint}, {@link #previousTimepoint}, and
+	 * screen transforms that differ from {@link #hintsTransform} only by X,Y
+	 * translation (tile offset). Cleared by {@link #setPreviousTimepoint}.
+	 */
+	private final Map< Source< ? >, MipmapOrdering.MipmapHints > mipmapHints = new HashMap<>();
+
+	private int hintsTimepoint = -1;
+
+	private final AffineTransform3D hintsTransform = new AffineTransform3D();
+
+	/**
+	 * If non-null, sources are rendered as intensity projections over a slab,
+	 * instead of as a single slice.
+	 */
+	private IntensityProjection intensityProjection = null;
+
 	/**
 	 * @param numRenderingThreads
 	 *     How many threads to use for rendering.
@@ -151,6 +180,31 @@ class ProjectorFactory
 			final RandomAccessibleInterval< ARGBType > screenImage,
 			final AffineTransform3D screenTransform,
 			final RenderStorage renderStorage )
+	{
+		return createProjector( viewerState, visibleSourcesOnScreen, screenImage, screenTransform, renderStorage, null );
+	}
+
+	/**
+	 * Create a projector for rendering the specified {@code ViewerState} to the
+	 * specified {@code screenImage}, with the current visible sources (visible
+	 * in {@code ViewerState} and actually currently visible on screen) and
+	 * timepoint of the {@code ViewerState}, and the specified
+	 * {@code screenTransform} from global coordinates to coordinates in the
+	 * {@code screenImage}.
+	 * <p>
+	 * If {@code fovea} is non-null, cells are prefetched in order of increasing
+	 * distance to the fovea.
+	 *
+	 * @param fovea
+	 *     X,Y coordinates of the fovea with respect to {@code screenTransform}, or {@code null}.
+	 */
+	public VolatileProjector createProjector(
+			final ViewerState viewerState,
+			final List< SourceAndConverter< ? > > visibleSourcesOnScreen,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final AffineTransform3D screenTransform,
+			final RenderStorage renderStorage,
+			final double[] fovea )
 	{
 		/*
 		 * This shouldn't be necessary, with
@@ -167,7 +221,7 @@ class ProjectorFactory
 		else if ( visibleSourcesOnScreen.size() == 1 )
 		{
 			final byte[] maskArray = renderStorage.getMaskArray( 0 );
-			projector = createSingleSourceProjector( viewerState, visibleSourcesOnScreen.get( 0 ), screenImage, screenTransform, maskArray );
+			projector = createSingleSourceProjector( viewerState, visibleSourcesOnScreen.get( 0 ), screenImage, screenTransform, maskArray, fovea );
 		}
 		else
 		{
@@ -175,6 +229,7 @@ class ProjectorFactory
 			final int offsetY = ( int ) screenImage.min( 1 );
 			final ArrayList< VolatileProjector > sourceProjectors = new ArrayList<>();
 			final ArrayList< RandomAccessibleInterval< ARGBType > > sourceImages = new ArrayList<>();
+			final double[] renderFovea = fovea == null ? null : new double[] { fovea[ 0 ] - offsetX, fovea[ 1 ] - offsetY };
 			int j = 0;
 			for ( final SourceAndConverter< ? > source : visibleSourcesOnScreen )
 			{
@@ -183,7 +238,7 @@ class ProjectorFactory
 				++j;
 				final AffineTransform3D renderTransform = screenTransform.copy();
 				renderTransform.translate( -offsetX, -offsetY, 0 );
-				final VolatileProjector p = createSingleSourceProjector( viewerState, source, renderImage, renderTransform, maskArray );
+				final VolatileProjector p = createSingleSourceProjector( viewerState, source, renderImage, renderTransform, maskArray, renderFovea );
 				sourceProjectors.add( p );
 				sourceImages.add( renderImage );
 			}
@@ -192,22 +247,66 @@ class ProjectorFactory
 		return projector;
 	}
 
+	/**
+	 * Whether cells prefetched for rendering any of the specified {@code
+	 * sources} are added to the front of the fetch queue. In that case, cells
+	 * that are prefetched last are loaded first.
+	 */
+	public boolean prefetchEnqueuesToFront(
+			final ViewerState viewerState,
+			final Collection< SourceAndConverter< ? > > sources,
+			final AffineTransform3D screenTransform )
+	{
+		if ( !prefetchCells || !useVolatileIfAvailable )
+			return false;
+
+		final int t = viewerState.getCurrentTimepoint();
+		for ( final SourceAndConverter< ? > source : sources )
+		{
+			final Source< ? > spimSource = source.asVolatile() != null
+					? source.asVolatile().getSpimSource()
+					: source.getSpimSource();
+			if ( !( spimSource.getType() instanceof Volatile ) )
+				continue;
+
+			for ( final MipmapOrdering.Level l : getMipmapHints( spimSource, screenTransform, t ).getLevels() )
+			{
+				final CacheHints cacheHints = l.getPrefetchCacheHints();
+				if ( cacheHints != null && cacheHints.isEnqueuToFront() )
+					return true;
+			}
+		}
+		return false;
+	}
+
 	private < T > VolatileProjector createSingleSourceProjector(
 			final ViewerState viewerState,
 			final SourceAndConverter< T > source,
 			final RandomAccessibleInterval< ARGBType > screenImage,
 			final AffineTransform3D screenTransform,
-			final byte[] maskArray )
+			final byte[] maskArray,
+			final double[] fovea )
 	{
+		if ( intensityProjection != null )
+		{
+			final SourceAndConverter< ? > s = useVolatileIfAvailable && source.asVolatile() != null ? source.asVolatile() : source;
+			if ( s.getSpimSource().getType() instanceof RealType )
+			{
+				@SuppressWarnings( { "unchecked", "rawtypes" } )
+				final VolatileProjector p = createIntensityProjectionProjector( viewerState, ( SourceAndConverter ) s, screenImage, screenTransform, intensityProjection );
+				return p;
+			}
+		}
+
 		if ( useVolatileIfAvailable )
 		{
 			if ( source.asVolatile() != null )
-				return createSingleSourceVolatileProjector( viewerState, source.asVolatile(), screenImage, screenTransform, maskArray );
+				return createSingleSourceVolatileProjector( viewerState, source.asVolatile(), screenImage, screenTransform, maskArray, fovea );
 			else if ( source.getSpimSource().getType() instanceof Volatile )
 			{
 				@SuppressWarnings( "unchecked" )
 				final SourceAndConverter< ? extends Volatile< ? > > vsource = ( SourceAndConverter< ? extends Volatile< ? > > ) source;
-				return createSingleSourceVolatileProjector( viewerState, vsource, screenImage, screenTransform, maskArray );
+				return createSingleSourceVolatileProjector( viewerState, vsource, screenImage, screenTransform, maskArray, fovea );
 			}
 		}
 
@@ -222,17 +321,15 @@ class ProjectorFactory
 			final SourceAndConverter< T > source,
 			final RandomAccessibleInterval< ARGBType > screenImage,
 			final AffineTransform3D screenTransform,
-			final byte[] maskArray )
+			final byte[] maskArray,
+			final double[] fovea )
 	{
 		final ArrayList< RandomAccessible< T > > renderList = new ArrayList<>();
 		final Source< T > spimSource = source.getSpimSource();
 		final int t = viewerState.getCurrentTimepoint();
 
-		final MipmapOrdering ordering = spimSource instanceof MipmapOrdering ?
-				( MipmapOrdering ) spimSource : new DefaultMipmapOrdering( spimSource );
-
-		final MipmapOrdering.MipmapHints hints = ordering.getMipmapHints( screenTransform, t, previousTimepoint );
-		final List< MipmapOrdering.Level > levels = hints.getLevels();
+		final MipmapOrdering.MipmapHints hints = getMipmapHints( spimSource, screenTransform, t );
+		final List< MipmapOrdering.Level > levels = new ArrayList<>( hints.getLevels() );
 
 		if ( prefetchCells )
 		{
@@ -241,7 +338,7 @@ class ProjectorFactory
 			{
 				final CacheHints cacheHints = l.getPrefetchCacheHints();
 				if ( cacheHints == null || cacheHints.getLoadingStrategy() != LoadingStrategy.DONTLOAD )
-					prefetch( viewerState, spimSource, screenTransform, l.getMipmapLevel(), cacheHints, screenImage );
+					prefetch( viewerState, spimSource, screenTransform, l.getMipmapLevel(), cacheHints, screenImage, fovea );
 			}
 		}
 
@@ -255,6 +352,137 @@ class ProjectorFactory
 		return new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray );
 	}
 
+	/**
+	 * Get the {@link MipmapOrdering.MipmapHints} for rendering {@code
+	 * spimSource} with the given {@code screenTransform} at timepoint {@code
+	 * t}. Hints are computed once per source and frame, and reused for all
+	 * tiles.
+	 */
+	private MipmapOrdering.MipmapHints getMipmapHints( final Source< ? > spimSource, final AffineTransform3D screenTransform, final int t )
+	{
+		if ( t != hintsTimepoint || !equalsIgnoringXYTranslation( screenTransform, hintsTransform ) )
+		{
+			mipmapHints.clear();
+			hintsTimepoint = t;
+			hintsTransform.set( screenTransform );
+		}
+		return mipmapHints.computeIfAbsent( spimSource, s -> {
+			final MipmapOrdering ordering = s instanceof MipmapOrdering ?
+					( MipmapOrdering ) s : new DefaultMipmapOrdering( s );
+			return ordering.getMipmapHints( screenTransform, t, previousTimepoint );
+		} );
+	}
+
+	private static boolean equalsIgnoringXYTranslation( final AffineTransform3D a, final AffineTransform3D b )
+	{
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 4; ++c )
+				if ( ( c < 3 || r == 2 ) && a.get( r, c ) != b.get( r, c ) )
+					return false;
+		return true;
+	}
+
+	private static < T extends RealType< T > > VolatileProjector createIntensityProjectionProjector(
+			final ViewerState viewerState,
+			final SourceAndConverter< T > source,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final AffineTransform3D screenTransform,
+			final IntensityProjection projection )
+	{
+		final Source< T > spimSource = source.getSpimSource();
+		final int t = viewerState.getCurrentTimepoint();
+		final int numMipmapLevels = spimSource.getNumMipmapLevels();
+
+		// choose mipmap level and sample distance along the view ray
+		int level = getBestMipMapLevel( viewerState, source, screenTransform );
+		double step = projection.step();
+		if ( step > 0 )
+		{
+			// use the coarsest level that does not undersample along the view ray
+			while ( level + 1 < numMipmapLevels && getVoxelSpacingAlongViewRay( spimSource, t, level + 1, screenTransform ) <= step )
+				++level;
+		}
+		else
+			step = getVoxelSpacingAlongViewRay( spimSource, t, level, screenTransform );
+
+		final RealRandomAccessible< T > ipimg = spimSource.getInterpolatedSource( t, level, viewerState.getInterpolation() );
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		spimSource.getSourceTransform( t, level, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+
+		// per-block value ranges recorded at export are used for empty space skipping
+		double[] blockMinMax = null;
+		long[] gridDimensions = null;
+		AffineTransform3D screenToGrid = null;
+		if ( projection.skipEmptySpace() )
+		{
+			final RandomAccessibleInterval< T > img = spimSource.getSource( t, level );
+			final LevelStatistics statistics = getLevelStatistics( spimSource, t, level );
+			if ( statistics != null && img instanceof AbstractCellImg )
+			{
+				final CellGrid grid = ( ( AbstractCellImg< ?, ?, ?, ? > ) img ).getCellGrid();
+				gridDimensions = grid.getGridDimensions();
+				blockMinMax = statistics.getBlockMinMax();
+				if ( blockMinMax != null && blockMinMax.length == 2 * Intervals.numElements( gridDimensions ) )
+				{
+					// voxel coordinates to grid coordinates, such that the
+					// center of block (i,j,k) is at (i,j,k)
+					final AffineTransform3D gridToScreen = new AffineTransform3D();
+					for ( int d = 0; d < 3; ++d )
+					{
+						final int c = grid.cellDimension( d );
+						gridToScreen.set( c, d, d );
+						gridToScreen.set( 0.5 * c - 0.5, d, 3 );
+					}
+					gridToScreen.preConcatenate( sourceToScreen );
+					screenToGrid = gridToScreen.inverse();
+				}
+				else
+					blockMinMax = null;
+			}
+		}
+
+		return new IntensityProjectionProjector<>(
+				RealViews.affineReal( ipimg, sourceToScreen ),
+				blockMinMax, gridDimensions, screenToGrid,
+				source.getConverter(), screenImage, projection, step );
+	}
+
+	/**
+	 * Get the {@link LevelStatistics} recorded at export for the given
+	 * timepoint and mipmap level of {@code source}, or {@code null} if there
+	 * are none.
+	 */
+	private static LevelStatistics getLevelStatistics( final Source< ? > source, final int t, final int level )
+	{
+		final Source< ? > wrapped = source instanceof TransformedSource
+				? ( ( TransformedSource< ? > ) source ).getWrappedSource()
+				: source;
+		return wrapped instanceof AbstractSpimSource
+				? ( ( AbstractSpimSource< ? > ) wrapped ).getLevelStatistics( t, level )
+				: null;
+	}
+
+	/**
+	 * Get the distance between voxels of the given mipmap level along the view
+	 * ray (screen Z axis), in screen coordinates.
+	 */
+	private static double getVoxelSpacingAlongViewRay(
+			final Source< ? > source,
+			final int timepoint,
+			final int mipmapIndex,
+			final AffineTransform3D screenTransform )
+	{
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		source.getSourceTransform( timepoint, mipmapIndex, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+		final AffineTransform3D screenToSource = sourceToScreen.inverse();
+		double voxelsPerUnit = 0;
+		for ( int d = 0; d < 3; ++d )
+			voxelsPerUnit += screenToSource.get( d, 2 ) * screenToSource.get( d, 2 );
+		return 1.0 / Math.sqrt( voxelsPerUnit );
+	}
+
 	/**
 	 * Get the mipmap level that best matches the given screen scale for the
 	 * given source.
@@ -301,7 +529,8 @@ class ProjectorFactory
 			final AffineTransform3D screenTransform,
 			final int mipmapIndex,
 			final CacheHints prefetchCacheHints,
-			final Dimensions screenInterval )
+			final Dimensions screenInterval,
+			final double[] fovea )
 	{
 		final int timepoint = viewerState.getCurrentTimepoint();
 		final RandomAccessibleInterval< T > img = source.getSource( timepoint, mipmapIndex );
@@ -328,14 +557,26 @@ class ProjectorFactory
 			source.getSourceTransform( timepoint, mipmapIndex, sourceToScreen );
 			sourceToScreen.preConcatenate( screenTransform );
 
-			Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+			Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, fovea, hints.isEnqueuToFront() );
 		}
 	}
 
+	/**
+	 * Set whether sources should be rendered as intensity projections over a
+	 * slab ({@code projection != null}) or as a single slice ({@code
+	 * projection == null}). Sources that are not {@code RealType} are always
+	 * rendered as a slice.
+	 */
+	public void setIntensityProjection( final IntensityProjection projection )
+	{
+		intensityProjection = projection;
+	}
+
 	public void setPreviousTimepoint( final int t )
 	{
 		previousTimepoint = t;
 		newFrameRequest = false;
+		mipmapHints.clear();
 	}
 
 	public boolean requestNewFrameIfIncomplete()
@@ -0,0 +1,263 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+
+/**
+ * Estimates the time it takes to render one screen pixel of a source, in
+ * nanoseconds, separately for different kinds of sources.
+ * <p>
+ * Sources are grouped by {@link CostKey}: the pixel type of the rendered
+ * source, the class of the {@link Source} (e.g., whether it is a
+ * {@code TransformedSource} wrapping something else), and the
+ * {@link Interpolation} used. Only the total time of a render pass can be
+ * measured. Each measurement is distributed over the participating keys in
+ * proportion to their share of the predicted render time. That is, if a frame
+ * took twice as long as predicted, the estimate of a key that accounted for
+ * 90% of the predicted time is corrected much more than the estimate of a key
+ * that accounted for 10%.
+ * <p>
+ * Keys that have never been measured start with the current average over all
+ * measurements, so that the model degrades gracefully to a single global
+ * estimate.
+ * <p>
+ * Not thread-safe. All methods are expected to be called from the painter
+ * thread.
+ */
+class RenderCostModel
+{
+	/**
+	 * Render passes with less than this many rendered (pixel, source) pairs are
+	 * not recorded, because timing is too unreliable.
+	 */
+	static final long MIN_RECORDED_PIXELS = 4096;
+
+	/**
+	 * Smoothing factor for updating per-key estimates.
+	 * {@code 0.5} corresponds roughly to a {@link MovingAverage} of width 3.
+	 */
+	private final double alpha;
+
+	/**
+	 * Render nanoseconds per pixel, for each {@link CostKey} seen so far.
+	 */
+	private final Map< CostKey, Double > nanosPerPixel = new HashMap<>();
+
+	/**
+	 * Average render nanoseconds per pixel and source, over all keys. This is
+	 * used as initial estimate for new keys.
+	 */
+	private final MovingAverage renderNanosPerPixelAndSource;
+
+	/**
+	 * @param initialNanosPerPixel
+	 *     initial estimate of the render time per pixel and source, in
+	 *     nanoseconds.
+	 * @param alpha
+	 *     smoothing factor in {@code (0,1]} for updating per-key estimates.
+	 *     Larger values adapt faster.
+	 */
+	public RenderCostModel( final double initialNanosPerPixel, final double alpha )
+	{
+		this.alpha = alpha;
+		renderNanosPerPixelAndSource = new MovingAverage( 3 );
+		renderNanosPerPixelAndSource.init( initialNanosPerPixel );
+	}
+
+	/**
+	 * Get the current estimate of render nanoseconds per pixel for the given
+	 * {@code key}.
+	 */
+	public double getNanosPerPixel( final CostKey key )
+	{
+		final Double nanos = nanosPerPixel.get( key );
+		return nanos == null ? renderNanosPerPixelAndSource.getAverage() : nanos;
+	}
+
+	/**
+	 * Get the average render nanoseconds per pixel and source, over all
+	 * recorded render passes (irrespective of key).
+	 */
+	public double getAverageNanosPerPixelAndSource()
+	{
+		return renderNanosPerPixelAndSource.getAverage();
+	}
+
+	/**
+	 * Create an {@link Estimate} for rendering the sources in the given
+	 * {@code onScreenBounds} with the given {@code interpolation}.
+	 */
+	public Estimate estimate( final VisibleSourcesOnScreenBounds onScreenBounds, final Interpolation interpolation )
+	{
+		final Estimate estimate = new Estimate( onScreenBounds.numScreenPixels() );
+		onScreenBounds.estimateNumRenderedPixels( ( source, numPixels ) -> estimate.add( CostKey.of( source, interpolation ), numPixels ) );
+		return estimate;
+	}
+
+	/**
+	 * Update estimates with the measured {@code renderNanos} of a render pass
+	 * that was predicted by {@code estimate}.
+	 */
+	public void record( final Estimate estimate, final long renderNanos )
+	{
+		final long numRenderedPixels = estimate.numRenderedPixels();
+		if ( numRenderedPixels < MIN_RECORDED_PIXELS || renderNanos <= 0 )
+			return;
+
+		renderNanosPerPixelAndSource.add( renderNanos / ( double ) numRenderedPixels );
+
+		final double predicted = estimate.getRenderNanos();
+		final double ratio = renderNanos / predicted;
+		estimate.pixelsPerKey.forEach( ( key, numPixels ) -> {
+			final double nanos = getNanosPerPixel( key );
+			final double share = nanos * numPixels / predicted;
+			nanosPerPixel.put( key, nanos * ( 1 + alpha * share * ( ratio - 1 ) ) );
+		} );
+	}
+
+	/**
+	 * Identifies a class of sources that are assumed to have similar rendering
+	 * cost per pixel.
+	 */
+	static final class CostKey
+	{
+		private final Class< ? > typeClass;
+
+		private final Class< ? > sourceClass;
+
+		private final Interpolation interpolation;
+
+		private final int hashcode;
+
+		CostKey( final Class< ? > typeClass, final Class< ? > sourceClass, final Interpolation interpolation )
+		{
+			this.typeClass = typeClass;
+			this.sourceClass = sourceClass;
+			this.interpolation = interpolation;
+			this.hashcode = Objects.hash( typeClass, sourceClass, interpolation );
+		}
+
+		static CostKey of( final SourceAndConverter< ? > source, final Interpolation interpolation )
+		{
+			final SourceAndConverter< ? > rendered = source.asVolatile() != null ? source.asVolatile() : source;
+			final Source< ? > spimSource = rendered.getSpimSource();
+			final Object type = spimSource.getType();
+			return new CostKey( type == null ? null : type.getClass(), spimSource.getClass(), interpolation );
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( this == o )
+				return true;
+			if ( !( o instanceof CostKey ) )
+				return false;
+			final CostKey that = ( CostKey ) o;
+			return typeClass == that.typeClass && sourceClass == that.sourceClass && interpolation == that.interpolation;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashcode;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "CostKey{" +
+					"type=" + ( typeClass == null ? null : typeClass.getSimpleName() ) +
+					", source=" + sourceClass.getSimpleName() +
+					", interpolation=" + interpolation +
+					'}';
+		}
+	}
+
+	/**
+	 * Number of rendered pixels per {@link CostKey} for a particular render
+	 * pass (full frame or interval). Predicts the render time from the current
+	 * per-key estimates of the enclosing {@link RenderCostModel}.
+	 */
+	class Estimate
+	{
+		private final Map< CostKey, Long > pixelsPerKey = new HashMap<>();
+
+		private final long numScreenPixels;
+
+		Estimate( final long numScreenPixels )
+		{
+			this.numScreenPixels = numScreenPixels;
+		}
+
+		void add( final CostKey key, final long numPixels )
+		{
+			pixelsPerKey.merge( key, numPixels, Long::sum );
+		}
+
+		/**
+		 * Get the number of screen pixels summed over all sources.
+		 */
+		public long numRenderedPixels()
+		{
+			long sum = 0;
+			for ( final long n : pixelsPerKey.values() )
+				sum += n;
+			return sum;
+		}
+
+		/**
+		 * Get the predicted render time of the whole render pass, in
+		 * nanoseconds.
+		 */
+		public double getRenderNanos()
+		{
+			double nanos = 0;
+			for ( final Map.Entry< CostKey, Long > entry : pixelsPerKey.entrySet() )
+				nanos += getNanosPerPixel( entry.getKey() ) * entry.getValue();
+			return nanos;
+		}
+
+		/**
+		 * Get the predicted render time per screen pixel (summed over all
+		 * sources at that pixel), in nanoseconds. This is the quantity that
+		 * {@link ScreenScales} uses to suggest screen scales.
+		 */
+		public double getRenderNanosPerPixel()
+		{
+			return numScreenPixels <= 0 ? 0 : getRenderNanos() / numScreenPixels;
+		}
+	}
+}
@@ -88,6 +88,28 @@ public interface RenderResult
 	 */
 	void patch( final RenderResult patch, final Interval interval, final double ox, final double oy );
 
+	/**
+	 * Fill this {@code RenderResult} with data from {@code source}, warped by
+	 * {@code targetToSource}. That is, pixel {@code (x,y)} of this
+	 * {@code RenderResult} is filled with the pixel of {@code source} at the
+	 * X,Y coordinates of {@code targetToSource.apply(x,y,0)}. (The Z coordinate
+	 * is ignored, i.e., {@code source} is projected orthogonally onto the
+	 * target plane.) Pixels that do not map into {@code source} are cleared.
+	 * <p>
+	 * This is used to quickly show an approximation of the new view, while the
+	 * {@link MultiResolutionRenderer renderer} renders it properly.
+	 * <p>
+	 * (Called by the {@link MultiResolutionRenderer renderer}.)
+	 *
+	 * @return {@code true} if this {@code RenderResult} was filled, {@code
+	 * false} if reprojection is not supported (in which case the target image
+	 * is not modified).
+	 */
+	default boolean reproject( final RenderResult source, final AffineTransform3D targetToSource )
+	{
+		return false;
+	}
+
 	/**
 	 * Notify that the {@link #getTargetImage() target image} data was changed.
 	 * <p>
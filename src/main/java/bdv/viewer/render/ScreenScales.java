@@ -199,10 +199,21 @@ class ScreenScales
 		ScreenScale( final double scale )
 		{
 			this.scale = scale;
+			scaleTransform.set( createScaleTransform( scale ) );
+		}
+
+		/**
+		 * Create the transformation from viewer to target image coordinates
+		 * for the given screen {@code scale}.
+		 */
+		static AffineTransform3D createScaleTransform( final double scale )
+		{
+			final AffineTransform3D scaleTransform = new AffineTransform3D();
 			scaleTransform.set( scale, 0, 0 );
 			scaleTransform.set( scale, 1, 1 );
 			scaleTransform.set( 0.5 * scale - 0.5, 0, 3 );
 			scaleTransform.set( 0.5 * scale - 0.5, 1, 3 );
+			return scaleTransform;
 		}
 
 		/**
@@ -31,6 +31,7 @@ package bdv.viewer.render;
 import bdv.viewer.SourceAndConverter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.function.Function;
 import java.util.function.ToIntFunction;
@@ -145,6 +146,25 @@ class Tiling
 		return result;
 	}
 
+	/**
+	 * Sort {@code tiles} by increasing distance of their center to the given
+	 * fovea position. Tiles are rendered in list order, and data for them is
+	 * requested such that it is loaded in list order, so this makes the region
+	 * around the fovea reach full resolution first.
+	 *
+	 * @param tiles list of tiles to sort (in place)
+	 * @param foveaX X coordinate of the fovea in render target coordinates
+	 * @param foveaY Y coordinate of the fovea in render target coordinates
+	 */
+	public static void sortByDistance( final List< Tile > tiles, final double foveaX, final double foveaY )
+	{
+		tiles.sort( Comparator.comparingDouble( tile -> {
+			final double dx = 0.5 * ( tile.tileMinX() + tile.tileMaxX() ) - foveaX;
+			final double dy = 0.5 * ( tile.tileMinY() + tile.tileMaxY() ) - foveaY;
+			return dx * dx + dy * dy;
+		} ) );
+	}
+
 	/**
 	 * Splits tile into a list of tiles that are below {@code targetSize}.
 	 *
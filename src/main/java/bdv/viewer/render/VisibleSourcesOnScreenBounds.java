@@ -36,6 +36,7 @@ import bdv.viewer.ViewerState;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.ObjIntConsumer;
 import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -89,10 +90,34 @@ class VisibleSourcesOnScreenBounds
 	public VisibleSourcesOnScreenBounds(
 				final ViewerState viewerState,
 				final ScreenScales.ScreenScale screenScale )
+	{
+		this( viewerState, screenScale, 0, 0 );
+	}
+
+	/**
+	 * Find out which sources are visible for the current view and rendered area
+	 * and the given range of viewer Z coordinates, as well as their projected
+	 * bounding boxes.
+	 *
+	 * @param viewerState
+	 * 		provides list of possibly visible sources and transform into viewer coordinates.
+	 * @param screenScale
+	 * 		provides screen interval and transform from viewer to screen coordinates.
+	 * @param zMin
+	 * 		min of the rendered Z range (0 for rendering a slice).
+	 * @param zMax
+	 * 		max of the rendered Z range (0 for rendering a slice).
+	 */
+	public VisibleSourcesOnScreenBounds(
+				final ViewerState viewerState,
+				final ScreenScales.ScreenScale screenScale,
+				final double zMin,
+				final double zMax )
 	{
 		this( viewerState,
 				Intervals.createMinSize( 0, 0, screenScale.width(), screenScale.height() ),
-				viewerState.getViewerTransform().preConcatenate( screenScale.scaleTransform() ) );
+				viewerState.getViewerTransform().preConcatenate( screenScale.scaleTransform() ),
+				zMin, zMax );
 	}
 
 	/**
@@ -110,6 +135,32 @@ class VisibleSourcesOnScreenBounds
 			final ViewerState viewerState,
 			final Interval screenInterval,
 			final AffineTransform3D screenTransform )
+	{
+		this( viewerState, screenInterval, screenTransform, 0, 0 );
+	}
+
+	/**
+	 * Find out which sources are visible for the current view and rendered area
+	 * and the given range of screen Z coordinates, as well as their projected
+	 * bounding boxes.
+	 *
+	 * @param viewerState
+	 * 		provides list of possibly visible sources and transform into viewer coordinates.
+	 * @param screenInterval
+	 * 		the screen interval to be rendered.
+	 * @param screenTransform
+	 * 		transforms viewer coordinates into screen coordinates (accounts for screen scale and interval offset).
+	 * @param zMin
+	 * 		min of the rendered Z range (0 for rendering a slice).
+	 * @param zMax
+	 * 		max of the rendered Z range (0 for rendering a slice).
+	 */
+	public VisibleSourcesOnScreenBounds(
+			final ViewerState viewerState,
+			final Interval screenInterval,
+			final AffineTransform3D screenTransform,
+			final double zMin,
+			final double zMax )
 	{
 		bounds = new ArrayList<>();
 		unculledSources = new ArrayList<>();
@@ -158,8 +209,8 @@ class VisibleSourcesOnScreenBounds
 					&& bb.realMin( 0 ) <= screenMaxX
 					&& bb.realMax( 1 ) >= screenMinY
 					&& bb.realMin( 1 ) <= screenMaxY
-					&& bb.realMax( 2 ) >= 0
-					&& bb.realMin( 2 ) <= 0 )
+					&& bb.realMax( 2 ) >= zMin
+					&& bb.realMin( 2 ) <= zMax )
 			{
 				final int minX = ( int ) Math.floor( bb.realMin( 0 ) );
 				final int maxX = ( int ) Math.ceil( bb.realMax( 0 ) );
@@ -216,23 +267,36 @@ class VisibleSourcesOnScreenBounds
 		// sum over all sources in bounds:
 		// pixels in bounding box clipped to the screen area
 		for ( SourceBounds sourceBounds : bounds )
-		{
-			final int minX = Math.max( sourceBounds.minX(), screenMinX );
-			final int minY = Math.max( sourceBounds.minY(), screenMinY );
-			final int maxX = Math.min( sourceBounds.maxX(), screenMaxX );
-			final int maxY = Math.min( sourceBounds.maxY(), screenMaxY );
-			final int sizeX = maxX - minX + 1;
-			final int sizeY = maxY - minY + 1;
-			numPixels += sizeX * sizeY;
-		}
+			numPixels += numRenderedPixels( sourceBounds );
 
 		// sum over all sources in unculledSources:
 		// pixels in screen area
-		numPixels += unculledSources.size() * (screenMaxX - screenMinX + 1 ) * (screenMaxY - screenMinY + 1 );
+		numPixels += unculledSources.size() * numScreenPixels();
 
 		return numPixels;
 	}
 
+	/**
+	 * Estimate the number of screen pixels rendered for each visible source.
+	 * <p>
+	 * Assuming exhaustive tiling, the number of pixels rendered for a source is
+	 * the number of pixels in its bounding box, clipped to the screen area. For
+	 * sources that do not participate in bounding box culling, it is the number
+	 * of pixels in the screen area.
+	 *
+	 * @param pixelsPerSource
+	 * 		receives every visible source and the estimated number of screen pixels rendered for it.
+	 */
+	public void estimateNumRenderedPixels( final ObjIntConsumer< SourceAndConverter< ? > > pixelsPerSource )
+	{
+		for ( SourceBounds sourceBounds : bounds )
+			pixelsPerSource.accept( sourceBounds.source(), numRenderedPixels( sourceBounds ) );
+
+		final int screenSize = numScreenPixels();
+		for ( SourceAndConverter< ? > source : unculledSources )
+			pixelsPerSource.accept( source, screenSize );
+	}
+
 	/**
 	 * Estimate the average number of sources for one rendered pixel on screen.
 	 *
@@ -240,7 +304,28 @@ class VisibleSourcesOnScreenBounds
 	 */
 	public double estimateNumSourcesPerPixel()
 	{
-		final int screenSize = ( screenMaxX - screenMinX + 1 ) * ( screenMaxY - screenMinY + 1 );
-		return ( ( double ) estimateNumRenderedPixels() ) / screenSize;
+		return ( ( double ) estimateNumRenderedPixels() ) / numScreenPixels();
+	}
+
+	/**
+	 * @return the number of pixels in the screen area
+	 */
+	public int numScreenPixels()
+	{
+		return ( screenMaxX - screenMinX + 1 ) * ( screenMaxY - screenMinY + 1 );
+	}
+
+	/**
+	 * @return the number of pixels in the bounding box of {@code sourceBounds}, clipped to the screen area.
+	 */
+	private int numRenderedPixels( final SourceBounds sourceBounds )
+	{
+		final int minX = Math.max( sourceBounds.minX(), screenMinX );
+		final int minY = Math.max( sourceBounds.minY(), screenMinY );
+		final int maxX = Math.min( sourceBounds.maxX(), screenMaxX );
+		final int maxY = Math.min( sourceBounds.maxY(), screenMaxY );
+		final int sizeX = maxX - minX + 1;
+		final int sizeY = maxY - minY + 1;
+		return sizeX * sizeY;
 	}
 }
@@ -0,0 +1,437 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+import bdv.cache.CacheControl;
+import bdv.export.ProgressWriter;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.util.MipmapTransforms;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+import bdv.viewer.animate.AbstractTransformAnimator;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.IntensityProjection;
+import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.Prefetcher;
+import bdv.viewer.render.RenderTarget;
+
+/**
+ * Renders a sequence of {@link ViewerState}s (e.g., the frames of a movie) to
+ * {@link BufferedImage}s, without a {@code ViewerPanel} or any other UI.
+ * <p>
+ * Rendering is pipelined:
+ * <ul>
+ * <li>Several frames are rendered at the same time, such that loading data
+ * for upcoming frames overlaps with rendering of the current frame.</li>
+ * <li>Before a frame is rendered, the cells needed for the next frame are
+ * enqueued for loading by the fetcher threads (for sources that have a
+ * volatile version).</li>
+ * <li>Each frame is rendered with multiple threads, sharing one
+ * {@link ForkJoinPool}.</li>
+ * <li>Rendered frames are handed to a {@link FrameWriter} (e.g., PNG encoding)
+ * on separate threads, while the next frames are rendered.</li>
+ * </ul>
+ * The number of frames that are held in memory at any time is bounded by the
+ * number of concurrently rendered frames plus the number of writer threads.
+ */
+public class BatchRenderer
+{
+	/**
+	 * How often to try rendering a frame before giving up.
+	 */
+	private static final int MAX_PAINT_ATTEMPTS = 3;
+
+	/**
+	 * Receives rendered frames. May be called concurrently from multiple
+	 * threads (for different frames), and not necessarily in frame order.
+	 */
+	@FunctionalInterface
+	public interface FrameWriter
+	{
+		/**
+		 * @param frame
+		 *            index of the frame in the rendered sequence
+		 * @param state
+		 *            the {@code ViewerState} that was rendered
+		 * @param image
+		 *            the rendered image. It is not used anymore by the
+		 *            {@code BatchRenderer} and may be modified.
+		 */
+		void write( int frame, ViewerState state, BufferedImage image ) throws IOException;
+	}
+
+	/**
+	 * Create a {@link FrameWriter} that writes frames as PNG files into
+	 * directory {@code dir}. The file name of each frame is created by
+	 * {@code String.format( pattern, frameIndex )}.
+	 */
+	public static FrameWriter pngWriter( final File dir, final String pattern )
+	{
+		return ( frame, state, image ) -> ImageIO.write( image, "png", new File( dir, String.format( pattern, frame ) ) );
+	}
+
+	/**
+	 * Create a list of {@code ViewerState}s that follow the viewer transforms
+	 * of the given {@code animator} in {@code numFrames} equal steps. Apart from
+	 * the viewer transform, each state is a copy of {@code state}.
+	 */
+	public static List< ViewerState > animate( final ViewerState state, final AbstractTransformAnimator animator, final int numFrames )
+	{
+		final List< ViewerState > frames = new ArrayList<>( numFrames );
+		for ( int i = 0; i < numFrames; ++i )
+		{
+			final double t = numFrames > 1 ? ( double ) i / ( numFrames - 1 ) : 1.0;
+			final AffineTransform3D transform = animator.get( t );
+			final ViewerState frame = new BasicViewerState( state );
+			frame.setViewerTransform( transform );
+			frames.add( frame );
+		}
+		return frames;
+	}
+
+	private final int width;
+
+	private final int height;
+
+	private final int numRenderingThreads;
+
+	private final int numConcurrentFrames;
+
+	private final int numWriterThreads;
+
+	private final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory;
+
+	private volatile IntensityProjection intensityProjection;
+
+	/**
+	 * @param width
+	 *            width of rendered images
+	 * @param height
+	 *            height of rendered images
+	 * @param numRenderingThreads
+	 *            how many threads to use for rendering (shared by all frames)
+	 * @param numConcurrentFrames
+	 *            how many frames to render at the same time
+	 * @param numWriterThreads
+	 *            how many threads to use for writing rendered frames
+	 * @param accumulateProjectorFactory
+	 *            can be used to customize how sources are combined.
+	 */
+	public BatchRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final int numConcurrentFrames,
+			final int numWriterThreads,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory )
+	{
+		this.width = width;
+		this.height = height;
+		this.numRenderingThreads = Math.max( 1, numRenderingThreads );
+		this.numConcurrentFrames = Math.max( 1, numConcurrentFrames );
+		this.numWriterThreads = Math.max( 1, numWriterThreads );
+		this.accumulateProjectorFactory = accumulateProjectorFactory;
+	}
+
+	/**
+	 * Set whether frames are rendered as intensity projections over a slab
+	 * ({@code projection != null}), or as single slices ({@code projection ==
+	 * null}, the default).
+	 */
+	public void setIntensityProjection( final IntensityProjection projection )
+	{
+		intensityProjection = projection;
+	}
+
+	/**
+	 * Render all {@code frames} and pass the results to {@code writer}. Blocks
+	 * until all frames are rendered and written.
+	 *
+	 * @param frames
+	 *            the {@code ViewerState}s to render. These should not be
+	 *            modified while rendering.
+	 * @param writer
+	 *            receives rendered frames.
+	 * @param progressWriter
+	 *            is notified about the fraction of written frames.
+	 *
+	 * @throws IOException
+	 *             if rendering or writing a frame fails. Remaining frames are
+	 *             not rendered.
+	 */
+	public void render( final List< ? extends ViewerState > frames, final FrameWriter writer, final ProgressWriter progressWriter ) throws IOException
+	{
+		final int numFrames = frames.size();
+		final ForkJoinPool renderPool = new ForkJoinPool( numRenderingThreads );
+		final ExecutorService frameExecutor = Executors.newFixedThreadPool( numConcurrentFrames );
+		final ExecutorService writerExecutor = Executors.newFixedThreadPool( numWriterThreads );
+
+		// bounds the number of frames held in memory
+		final Semaphore framesInFlight = new Semaphore( numConcurrentFrames + numWriterThreads );
+		final AtomicInteger numWritten = new AtomicInteger();
+		final List< Future< Future< Void > > > futures = new ArrayList<>( numFrames );
+
+		progressWriter.setProgress( 0 );
+		try
+		{
+			for ( int i = 0; i < numFrames; ++i )
+			{
+				framesInFlight.acquire();
+				if ( isAnyFailed( futures ) )
+				{
+					framesInFlight.release();
+					break;
+				}
+
+				final int frame = i;
+				final ViewerState state = frames.get( i );
+				final ViewerState next = i + 1 < numFrames ? frames.get( i + 1 ) : null;
+				futures.add( frameExecutor.submit( () -> {
+					final BufferedImage image;
+					try
+					{
+						// frames start in order, so the next frame has not
+						// started yet: load its data while rendering this one
+						if ( next != null )
+							prefetch( next );
+						image = renderFrame( state, renderPool );
+					}
+					catch ( final Throwable t )
+					{
+						framesInFlight.release();
+						throw t;
+					}
+					return writerExecutor.submit( () -> {
+						try
+						{
+							writer.write( frame, state, image );
+							progressWriter.setProgress( ( double ) numWritten.incrementAndGet() / numFrames );
+						}
+						finally
+						{
+							framesInFlight.release();
+						}
+						return null;
+					} );
+				} ) );
+			}
+
+			for ( final Future< Future< Void > > future : futures )
+				future.get().get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while rendering", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			throw new IOException( cause );
+		}
+		finally
+		{
+			frameExecutor.shutdownNow();
+			writerExecutor.shutdownNow();
+			renderPool.shutdown();
+		}
+	}
+
+	/**
+	 * Render one frame using the shared {@code renderPool}. Paints until the
+	 * renderer doesn't request another repaint (that is, the frame is
+	 * complete).
+	 *
+	 * @throws IOException
+	 *             if painting fails {@link #MAX_PAINT_ATTEMPTS} times.
+	 */
+	private BufferedImage renderFrame( final ViewerState state, final ForkJoinPool renderPool ) throws IOException
+	{
+		final Target target = new Target();
+		final AtomicBoolean repaintRequested = new AtomicBoolean();
+		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
+				target, () -> repaintRequested.set( true ), new double[] { 1 }, 0, numRenderingThreads, renderPool, false,
+				accumulateProjectorFactory, new CacheControl.Dummy() );
+		try
+		{
+			renderer.setIntensityProjection( intensityProjection );
+			renderer.requestRepaint();
+			int numFailed = 0;
+			while ( repaintRequested.getAndSet( false ) )
+			{
+				if ( !renderer.paint( state ) )
+				{
+					if ( ++numFailed >= MAX_PAINT_ATTEMPTS )
+						throw new IOException( "Rendering frame failed " + numFailed + " times" );
+					renderer.requestRepaint();
+				}
+			}
+		}
+		finally
+		{
+			renderer.kill();
+		}
+		return target.renderResult.getBufferedImage();
+	}
+
+	/**
+	 * Enqueue the cells needed to render {@code state} for loading, without
+	 * waiting for them. The fetcher threads load them into the cache shared
+	 * with the non-volatile sources, which are rendered later. Only sources
+	 * that have a volatile version are prefetched.
+	 */
+	private void prefetch( final ViewerState state )
+	{
+		final int t = state.getCurrentTimepoint();
+		final AffineTransform3D screenTransform = state.getViewerTransform();
+		final Dimensions screenInterval = new FinalDimensions( width, height );
+		for ( final SourceAndConverter< ? > source : state.getVisibleAndPresentSources() )
+		{
+			if ( source.asVolatile() == null )
+				continue;
+			final Source< ? > volatileSource = source.asVolatile().getSpimSource();
+			final int level = MipmapTransforms.getBestMipMapLevel( screenTransform, volatileSource, t );
+			prefetch( state, volatileSource, level, screenTransform, screenInterval );
+		}
+	}
+
+	private static void prefetch(
+			final ViewerState state,
+			final Source< ? > source,
+			final int level,
+			final AffineTransform3D screenTransform,
+			final Dimensions screenInterval )
+	{
+		final int t = state.getCurrentTimepoint();
+		final RandomAccessibleInterval< ? > img = source.getSource( t, level );
+		if ( !( img instanceof VolatileCachedCellImg ) )
+			return;
+
+		final VolatileCachedCellImg< ?, ? > cellImg = ( VolatileCachedCellImg< ?, ? > ) img;
+		cellImg.setCacheHints( new CacheHints( LoadingStrategy.VOLATILE, cellImg.getDefaultCacheHints().getQueuePriority(), false ) );
+		final int[] cellDimensions = new int[ 3 ];
+		cellImg.getCellGrid().cellDimensions( cellDimensions );
+		final long[] dimensions = new long[ 3 ];
+		cellImg.dimensions( dimensions );
+		final RandomAccess< ? > cellsRandomAccess = cellImg.getCells().randomAccess();
+
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		source.getSourceTransform( t, level, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+
+		Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, state.getInterpolation(), cellsRandomAccess );
+	}
+
+	/**
+	 * Whether any of the {@code futures} is done and failed.
+	 */
+	private static boolean isAnyFailed( final List< Future< Future< Void > > > futures ) throws InterruptedException
+	{
+		for ( final Future< Future< Void > > future : futures )
+		{
+			if ( !future.isDone() )
+				continue;
+			try
+			{
+				final Future< Void > write = future.get();
+				if ( write.isDone() )
+					write.get();
+			}
+			catch ( final ExecutionException e )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private class Target implements RenderTarget< BufferedImageRenderResult >
+	{
+		final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
+
+		@Override
+		public BufferedImageRenderResult getReusableRenderResult()
+		{
+			return renderResult;
+		}
+
+		@Override
+		public BufferedImageRenderResult createRenderResult()
+		{
+			return new BufferedImageRenderResult();
+		}
+
+		@Override
+		public void setRenderResult( final BufferedImageRenderResult renderResult )
+		{}
+
+		@Override
+		public int getWidth()
+		{
+			return width;
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return height;
+		}
+	}
+}
@@ -31,8 +31,10 @@ package bdv.viewer.render.awt;
 import bdv.util.AWTUtils;
 import bdv.viewer.render.RenderResult;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.display.screenimage.awt.ARGBScreenImage;
@@ -118,6 +120,37 @@ public class BufferedImageRenderResult implements RenderResult
 		op.filter( biresult.getBufferedImage(), subImage( interval ) );
 	}
 
+	@Override
+	public boolean reproject( final RenderResult source, final AffineTransform3D targetToSource )
+	{
+		if ( !( source instanceof BufferedImageRenderResult ) )
+			return false;
+		final BufferedImageRenderResult biresult = ( BufferedImageRenderResult ) source;
+
+		final AffineTransform sourceToTarget;
+		try
+		{
+			sourceToTarget = new AffineTransform(
+					targetToSource.get( 0, 0 ), targetToSource.get( 1, 0 ),
+					targetToSource.get( 0, 1 ), targetToSource.get( 1, 1 ),
+					targetToSource.get( 0, 3 ), targetToSource.get( 1, 3 ) ).createInverse();
+		}
+		catch ( final NoninvertibleTransformException e )
+		{
+			return false;
+		}
+
+		// Java2D puts pixel centers at (x+0.5, y+0.5), imglib2 at (x, y)
+		final AffineTransform transform = AffineTransform.getTranslateInstance( 0.5, 0.5 );
+		transform.concatenate( sourceToTarget );
+		transform.translate( -0.5, -0.5 );
+
+		Arrays.fill( data, 0, width * height, 0 );
+		final AffineTransformOp op = new AffineTransformOp( transform, AffineTransformOp.TYPE_NEAREST_NEIGHBOR );
+		op.filter( biresult.getBufferedImage(), bufferedImage );
+		return true;
+	}
+
 	private BufferedImage subImage( final Interval interval )
 	{
 		final int x = ( int ) interval.min( 0 );
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import java.io.IOException;
+
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+/**
+ * Writes tiles from a {@link TiledRenderer} into an N5 dataset. The dataset
+ * has dimensions {@code width x height x 3} (RGB channels last), data type
+ * {@code uint8}, and block size {@code tileWidth x tileHeight x 3}, such that
+ * each tile is written as one block.
+ */
+public class N5TileWriter implements TiledRenderer.TileWriter
+{
+	private final N5Writer n5;
+
+	private final String dataset;
+
+	private final Compression compression;
+
+	private DatasetAttributes attributes;
+
+	private int tileWidth;
+
+	private int tileHeight;
+
+	/**
+	 * @param n5
+	 *            the N5 container to write to. It is not closed by this
+	 *            {@code N5TileWriter}.
+	 * @param dataset
+	 *            path of the dataset to create
+	 * @param compression
+	 *            block compression
+	 */
+	public N5TileWriter( final N5Writer n5, final String dataset, final Compression compression )
+	{
+		this.n5 = n5;
+		this.dataset = dataset;
+		this.compression = compression;
+	}
+
+	@Override
+	public void open( final long width, final long height, final int tileWidth, final int tileHeight ) throws IOException
+	{
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		attributes = new DatasetAttributes(
+				new long[] { width, height, 3 },
+				new int[] { tileWidth, tileHeight, 3 },
+				DataType.UINT8,
+				compression );
+		try
+		{
+			n5.createDataset( dataset, attributes );
+		}
+		catch ( final N5Exception e )
+		{
+			throw new IOException( e );
+		}
+	}
+
+	@Override
+	public void write( final long x, final long y, final int w, final int h, final int[] argb ) throws IOException
+	{
+		final int n = w * h;
+		final byte[] data = new byte[ 3 * n ];
+		for ( int yi = 0; yi < h; ++yi )
+		{
+			int i = yi * tileWidth;
+			int o = yi * w;
+			for ( int xi = 0; xi < w; ++xi, ++i, ++o )
+			{
+				final int v = argb[ i ];
+				data[ o ] = ( byte ) ( v >> 16 );
+				data[ o + n ] = ( byte ) ( v >> 8 );
+				data[ o + 2 * n ] = ( byte ) v;
+			}
+		}
+		final long[] gridPosition = { x / tileWidth, y / tileHeight, 0 };
+		try
+		{
+			n5.writeBlock( dataset, attributes, new ByteArrayDataBlock( new int[] { w, h, 3 }, gridPosition, data ) );
+		}
+		catch ( final N5Exception e )
+		{
+			throw new IOException( e );
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		// the N5Writer is owned by the caller
+	}
+}
@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes tiles from a {@link TiledRenderer} into a tiled, uncompressed RGB
+ * TIFF file. If the file would exceed 4 GB, BigTIFF is written.
+ * <p>
+ * All tiles have the same size in the file, so the position of each tile is
+ * known in advance. Tiles are written directly to their position, in any
+ * order, from multiple threads. The image file directory is written when the
+ * file is opened.
+ */
+public class TiffTileWriter implements TiledRenderer.TileWriter
+{
+	private static final short SHORT = 3;
+
+	private static final short LONG = 4;
+
+	private static final short LONG8 = 16;
+
+	private final File file;
+
+	private final boolean forceBigTiff;
+
+	private FileChannel channel;
+
+	private long width;
+
+	private int tileWidth;
+
+	private int tileHeight;
+
+	private int numTilesX;
+
+	private long tileBytes;
+
+	private long dataOffset;
+
+	/**
+	 * TIFF requires tile width and height to be multiples of 16.
+	 *
+	 * @param file
+	 *            the TIFF file to write
+	 */
+	public TiffTileWriter( final File file )
+	{
+		this( file, false );
+	}
+
+	/**
+	 * @param file
+	 *            the TIFF file to write
+	 * @param forceBigTiff
+	 *            whether to write BigTIFF, even if the file would not exceed
+	 *            4 GB (for testing).
+	 */
+	TiffTileWriter( final File file, final boolean forceBigTiff )
+	{
+		this.file = file;
+		this.forceBigTiff = forceBigTiff;
+	}
+
+	@Override
+	public void open( final long width, final long height, final int tileWidth, final int tileHeight ) throws IOException
+	{
+		if ( tileWidth % 16 != 0 || tileHeight % 16 != 0 )
+			throw new IllegalArgumentException( "TIFF tile width and height must be multiples of 16" );
+
+		this.width = width;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		numTilesX = ( int ) ( ( width + tileWidth - 1 ) / tileWidth );
+		final int numTilesY = ( int ) ( ( height + tileHeight - 1 ) / tileHeight );
+		final int numTiles = numTilesX * numTilesY;
+		tileBytes = 3L * tileWidth * tileHeight;
+
+		// classic TIFF uses 32-bit offsets. Leave some room for the IFD.
+		final boolean bigTiff = forceBigTiff || 16 + numTiles * ( tileBytes + 16 ) + 1024 > 0xffffffffL;
+		dataOffset = bigTiff ? 16 : 8;
+		final long ifdOffset = dataOffset + numTiles * tileBytes;
+
+		final long[] tileOffsets = new long[ numTiles ];
+		final long[] tileByteCounts = new long[ numTiles ];
+		for ( int i = 0; i < numTiles; ++i )
+		{
+			tileOffsets[ i ] = dataOffset + i * tileBytes;
+			tileByteCounts[ i ] = tileBytes;
+		}
+
+		final List< Entry > entries = new ArrayList<>();
+		entries.add( new Entry( 256, LONG, width ) ); // ImageWidth
+		entries.add( new Entry( 257, LONG, height ) ); // ImageLength
+		entries.add( new Entry( 258, SHORT, 8, 8, 8 ) ); // BitsPerSample
+		entries.add( new Entry( 259, SHORT, 1 ) ); // Compression: none
+		entries.add( new Entry( 262, SHORT, 2 ) ); // PhotometricInterpretation: RGB
+		entries.add( new Entry( 277, SHORT, 3 ) ); // SamplesPerPixel
+		entries.add( new Entry( 284, SHORT, 1 ) ); // PlanarConfiguration: chunky
+		entries.add( new Entry( 322, LONG, tileWidth ) ); // TileWidth
+		entries.add( new Entry( 323, LONG, tileHeight ) ); // TileLength
+		entries.add( new Entry( 324, bigTiff ? LONG8 : LONG, tileOffsets ) ); // TileOffsets
+		entries.add( new Entry( 325, bigTiff ? LONG8 : LONG, tileByteCounts ) ); // TileByteCounts
+
+		channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		writeFully( header( bigTiff, ifdOffset ), 0 );
+		writeFully( ifd( bigTiff, ifdOffset, entries ), ifdOffset );
+	}
+
+	@Override
+	public void write( final long x, final long y, final int w, final int h, final int[] argb ) throws IOException
+	{
+		final int tileIndex = ( int ) ( y / tileHeight ) * numTilesX + ( int ) ( x / tileWidth );
+		final ByteBuffer buffer = ByteBuffer.allocate( ( int ) tileBytes );
+		final byte[] rgb = buffer.array();
+		for ( int yi = 0; yi < h; ++yi )
+		{
+			int i = yi * tileWidth;
+			int o = 3 * i;
+			for ( int xi = 0; xi < w; ++xi, ++i )
+			{
+				final int v = argb[ i ];
+				rgb[ o++ ] = ( byte ) ( v >> 16 );
+				rgb[ o++ ] = ( byte ) ( v >> 8 );
+				rgb[ o++ ] = ( byte ) v;
+			}
+		}
+		writeFully( buffer, dataOffset + tileIndex * tileBytes );
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if ( channel != null )
+		{
+			channel.close();
+			channel = null;
+		}
+	}
+
+	private void writeFully( final ByteBuffer buffer, final long position ) throws IOException
+	{
+		long p = position;
+		while ( buffer.hasRemaining() )
+			p += channel.write( buffer, p );
+	}
+
+	private static ByteBuffer header( final boolean bigTiff, final long ifdOffset )
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( bigTiff ? 16 : 8 ).order( ByteOrder.LITTLE_ENDIAN );
+		buffer.put( ( byte ) 'I' ).put( ( byte ) 'I' );
+		if ( bigTiff )
+		{
+			buffer.putShort( ( short ) 43 );
+			buffer.putShort( ( short ) 8 ); // bytesize of offsets
+			buffer.putShort( ( short ) 0 );
+			buffer.putLong( ifdOffset );
+		}
+		else
+		{
+			buffer.putShort( ( short ) 42 );
+			buffer.putInt( ( int ) ifdOffset );
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Serialize the image file directory (which is written at
+	 * {@code ifdOffset}), followed by values that do not fit into the entries.
+	 */
+	private static ByteBuffer ifd( final boolean bigTiff, final long ifdOffset, final List< Entry > entries )
+	{
+		final int entrySize = bigTiff ? 20 : 12;
+		final int inlineSize = bigTiff ? 8 : 4;
+		final int ifdSize = bigTiff
+				? 8 + entries.size() * entrySize + 8
+				: 2 + entries.size() * entrySize + 4;
+
+		long size = ifdSize;
+		for ( final Entry entry : entries )
+			if ( entry.numBytes() > inlineSize )
+				size += entry.numBytes();
+		final ByteBuffer buffer = ByteBuffer.allocate( ( int ) size ).order( ByteOrder.LITTLE_ENDIAN );
+
+		if ( bigTiff )
+			buffer.putLong( entries.size() );
+		else
+			buffer.putShort( ( short ) entries.size() );
+
+		long valuesOffset = ifdOffset + ifdSize;
+		for ( int i = 0; i < entries.size(); ++i )
+		{
+			final Entry entry = entries.get( i );
+			buffer.putShort( ( short ) entry.tag );
+			buffer.putShort( entry.type );
+			if ( bigTiff )
+				buffer.putLong( entry.values.length );
+			else
+				buffer.putInt( entry.values.length );
+
+			if ( entry.numBytes() > inlineSize )
+			{
+				final int pos = buffer.position();
+				buffer.position( ( int ) ( valuesOffset - ifdOffset ) );
+				entry.putValues( buffer );
+				buffer.position( pos );
+				if ( bigTiff )
+					buffer.putLong( valuesOffset );
+				else
+					buffer.putInt( ( int ) valuesOffset );
+				valuesOffset += entry.numBytes();
+			}
+			else
+			{
+				final int pos = buffer.position();
+				entry.putValues( buffer );
+				buffer.position( pos + inlineSize );
+			}
+		}
+		// offset of next IFD: none (zero-filled)
+
+		buffer.position( 0 );
+		return buffer;
+	}
+
+	private static class Entry
+	{
+		final int tag;
+
+		final short type;
+
+		final long[] values;
+
+		Entry( final int tag, final short type, final long... values )
+		{
+			this.tag = tag;
+			this.type = type;
+			this.values = values;
+		}
+
+		long numBytes()
+		{
+			return ( long ) values.length * typeSize();
+		}
+
+		int typeSize()
+		{
+			return type == SHORT ? 2 : type == LONG ? 4 : 8;
+		}
+
+		void putValues( final ByteBuffer buffer )
+		{
+			for ( final long value : values )
+			{
+				if ( type == SHORT )
+					buffer.putShort( ( short ) value );
+				else if ( type == LONG )
+					buffer.putInt( ( int ) value );
+				else
+					buffer.putLong( value );
+			}
+		}
+	}
+}
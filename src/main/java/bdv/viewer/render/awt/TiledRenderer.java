@@ -0,0 +1,239 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+import bdv.export.ProgressWriter;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.ViewerState;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.IntensityProjection;
+
+/**
+ * Renders a {@link ViewerState} to an image of arbitrary size (e.g., for
+ * posters), tile by tile. Rendered tiles are streamed to a {@link TileWriter}
+ * (e.g., {@link TiffTileWriter}, {@link N5TileWriter}), so the full image never
+ * needs to fit into memory.
+ * <p>
+ * Tiles are rendered using a {@link BatchRenderer}, that is, several tiles are
+ * rendered and written concurrently.
+ */
+public class TiledRenderer
+{
+	/**
+	 * Receives rendered tiles. {@link #write} may be called concurrently from
+	 * multiple threads (for different tiles), and not in any particular order.
+	 */
+	public interface TileWriter extends Closeable
+	{
+		/**
+		 * Called once before any tiles are written.
+		 *
+		 * @param width
+		 *            width of the full image
+		 * @param height
+		 *            height of the full image
+		 * @param tileWidth
+		 *            width of tiles (except for tiles at the right border)
+		 * @param tileHeight
+		 *            height of tiles (except for tiles at the bottom border)
+		 */
+		void open( long width, long height, int tileWidth, int tileHeight ) throws IOException;
+
+		/**
+		 * Write a rendered tile.
+		 *
+		 * @param x
+		 *            min x coordinate of the tile in the full image
+		 * @param y
+		 *            min y coordinate of the tile in the full image
+		 * @param w
+		 *            width of the tile. This is smaller than {@code tileWidth}
+		 *            for tiles at the right border.
+		 * @param h
+		 *            height of the tile. This is smaller than
+		 *            {@code tileHeight} for tiles at the bottom border.
+		 * @param argb
+		 *            ARGB pixels of the tile, with line stride
+		 *            {@code tileWidth}.
+		 */
+		void write( long x, long y, int w, int h, int[] argb ) throws IOException;
+	}
+
+	private final long width;
+
+	private final long height;
+
+	private final int tileWidth;
+
+	private final int tileHeight;
+
+	private final BatchRenderer batchRenderer;
+
+	/**
+	 * @param width
+	 *            width of the rendered image
+	 * @param height
+	 *            height of the rendered image
+	 * @param tileWidth
+	 *            width of rendered tiles
+	 * @param tileHeight
+	 *            height of rendered tiles
+	 * @param numRenderingThreads
+	 *            how many threads to use for rendering (shared by all tiles)
+	 * @param numConcurrentTiles
+	 *            how many tiles to render at the same time
+	 * @param numWriterThreads
+	 *            how many threads to use for writing rendered tiles
+	 * @param accumulateProjectorFactory
+	 *            can be used to customize how sources are combined.
+	 */
+	public TiledRenderer(
+			final long width,
+			final long height,
+			final int tileWidth,
+			final int tileHeight,
+			final int numRenderingThreads,
+			final int numConcurrentTiles,
+			final int numWriterThreads,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory )
+	{
+		this.width = width;
+		this.height = height;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		batchRenderer = new BatchRenderer( tileWidth, tileHeight, numRenderingThreads, numConcurrentTiles, numWriterThreads, accumulateProjectorFactory );
+	}
+
+	/**
+	 * Set whether tiles are rendered as intensity projections over a slab
+	 * ({@code projection != null}), or as single slices ({@code projection ==
+	 * null}, the default).
+	 */
+	public void setIntensityProjection( final IntensityProjection projection )
+	{
+		batchRenderer.setIntensityProjection( projection );
+	}
+
+	/**
+	 * Render {@code state} and pass the tiles to {@code writer}. Blocks until
+	 * all tiles are rendered and written. {@code writer} is closed afterwards.
+	 * <p>
+	 * The viewer transform of {@code state} maps to coordinates of the full
+	 * image. Use {@link #scaleViewerTransform} to render the view visible on a
+	 * canvas of a different size.
+	 *
+	 * @throws IOException
+	 *             if writing a tile fails.
+	 */
+	public void render( final ViewerState state, final TileWriter writer, final ProgressWriter progressWriter ) throws IOException
+	{
+		final int numTilesX = ( int ) ( ( width + tileWidth - 1 ) / tileWidth );
+		final int numTilesY = ( int ) ( ( height + tileHeight - 1 ) / tileHeight );
+		final int numTiles = numTilesX * numTilesY;
+
+		// create the ViewerState for each tile only when it is rendered
+		final AffineTransform3D transform = state.getViewerTransform();
+		final List< ViewerState > tiles = new AbstractList< ViewerState >()
+		{
+			@Override
+			public ViewerState get( final int index )
+			{
+				final AffineTransform3D t = transform.copy();
+				t.translate( -tileMinX( index, numTilesX ), -tileMinY( index, numTilesX ), 0 );
+				final ViewerState tile = new BasicViewerState( state );
+				tile.setViewerTransform( t );
+				return tile;
+			}
+
+			@Override
+			public int size()
+			{
+				return numTiles;
+			}
+		};
+
+		try
+		{
+			writer.open( width, height, tileWidth, tileHeight );
+			batchRenderer.render( tiles, ( index, tile, image ) -> {
+				final long x = tileMinX( index, numTilesX );
+				final long y = tileMinY( index, numTilesX );
+				final int w = ( int ) Math.min( tileWidth, width - x );
+				final int h = ( int ) Math.min( tileHeight, height - y );
+				writer.write( x, y, w, h, getData( image ) );
+			}, progressWriter );
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Adjust the viewer transform of {@code state}, such that the view that is
+	 * visible on a canvas of size {@code canvasW x canvasH} fills an image of
+	 * size {@code width x height}. (If the aspect ratios differ, the view is
+	 * scaled to the width and centered vertically.)
+	 */
+	public static void scaleViewerTransform( final ViewerState state, final int canvasW, final int canvasH, final long width, final long height )
+	{
+		final AffineTransform3D affine = state.getViewerTransform();
+		affine.set( affine.get( 0, 3 ) - canvasW / 2.0, 0, 3 );
+		affine.set( affine.get( 1, 3 ) - canvasH / 2.0, 1, 3 );
+		affine.scale( ( double ) width / canvasW );
+		affine.set( affine.get( 0, 3 ) + width / 2.0, 0, 3 );
+		affine.set( affine.get( 1, 3 ) + height / 2.0, 1, 3 );
+		state.setViewerTransform( affine );
+	}
+
+	private long tileMinX( final int index, final int numTilesX )
+	{
+		return ( long ) ( index % numTilesX ) * tileWidth;
+	}
+
+	private long tileMinY( final int index, final int numTilesX )
+	{
+		return ( long ) ( index / numTilesX ) * tileHeight;
+	}
+
+	private static int[] getData( final BufferedImage image )
+	{
+		return ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData();
+	}
+}
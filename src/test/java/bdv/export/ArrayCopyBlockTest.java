@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bdv.img.cache.ConstantVolatileArrays;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArrayCopyBlockTest
+{
+	private static final long[] dimensions = { 37, 29, 13 };
+
+	private static final long[] blockMin = { 5, 7, 3 };
+
+	private static final int[] blockSize = { 16, 16, 8 };
+
+	@Test
+	public void testArrayImg()
+	{
+		testCopy( ArrayImgs.unsignedShorts( dimensions ) );
+	}
+
+	@Test
+	public void testPlanarImg()
+	{
+		testCopy( PlanarImgs.unsignedShorts( dimensions ) );
+	}
+
+	@Test
+	public void testCellImg()
+	{
+		testCopy( new CellImgFactory<>( new UnsignedShortType(), 6, 5, 4 ).create( dimensions ) );
+	}
+
+	@Test
+	public void testCopyRegionFromConstant()
+	{
+		final int[] srcDims = { 6, 5, 4 };
+		final int[] srcPos = { 1, 2, 1 };
+		final int[] size = { 4, 3, 2 };
+		final int[] dstDims = { 8, 8, 4 };
+		final int[] dstPos = { 3, 4, 2 };
+
+		final short[] values = new short[ 6 * 5 * 4 ];
+		Arrays.fill( values, ( short ) 42 );
+		final short[] expected = new short[ 8 * 8 * 4 ];
+		ArrayCopyBlock.copyRegion( values, 0, srcDims, srcPos, expected, 0, dstDims, dstPos, size, 3 );
+
+		final short[] actual = new short[ expected.length ];
+		final Object constant = ConstantVolatileArrays.ifUniform( values );
+		ArrayCopyBlock.copyRegion( constant, 0, srcDims, srcPos, actual, 0, dstDims, dstPos, size, 3 );
+		assertArrayEquals( expected, actual );
+	}
+
+	private static void testCopy( final Img< UnsignedShortType > img )
+	{
+		final Random random = new Random( 1 );
+		img.forEach( t -> t.set( random.nextInt( 65536 ) ) );
+
+		final ArrayCopyBlock copy = ArrayCopyBlock.create( img, new UnsignedShortType() );
+		assertNotNull( copy );
+
+		final short[] actual = new short[ ( int ) Intervals.numElements( blockSize ) ];
+		assertTrue( copy.copyBlock( blockMin, blockSize, actual ) );
+
+		final short[] expected = new short[ actual.length ];
+		final long[] blockMax = new long[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+			blockMax[ d ] = blockMin[ d ] + blockSize[ d ] - 1;
+		final RandomAccessibleInterval< UnsignedShortType > expectedImg = ArrayImgs.unsignedShorts( expected, 16, 16, 8 );
+		LoopBuilder.setImages( Views.interval( img, blockMin, blockMax ), expectedImg ).forEachPixel( ( s, t ) -> t.set( s ) );
+		assertArrayEquals( expected, actual );
+
+		// blocks that are not contained in the image are not handled
+		assertFalse( copy.copyBlock( new long[] { 30, 0, 0 }, blockSize, actual ) );
+	}
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import bdv.export.ExportScalePyramid.BlockOrder;
+
+public class BlockOrderTest
+{
+	@Test
+	public void testPlaneOrder()
+	{
+		final BlockOrder order = new BlockOrder( new long[] { 3, 2, 2 }, new int[] { 1, 1, 1 } );
+		assertEquals( 2, order.numSlabs() );
+		assertArrayEquals( new long[] { 0, 1, 2, 3, 4, 5 }, order.slab( 0 ) );
+		assertArrayEquals( new long[] { 6, 7, 8, 9, 10, 11 }, order.slab( 1 ) );
+	}
+
+	@Test
+	public void testTiledOrder()
+	{
+		// 2x2x2 blocks per input cell, partial tiles at the border
+		final long[] numBlocks = { 3, 2, 3 };
+		final BlockOrder order = new BlockOrder( numBlocks, new int[] { 2, 2, 2 } );
+		assertEquals( 2, order.numSlabs() );
+
+		final long[] slab0 = order.slab( 0 );
+		assertArrayEquals( new long[] {
+				0, 1, 3, 4, 6, 7, 9, 10, // first tile, both planes
+				2, 5, 8, 11 // second tile
+		}, slab0 );
+		assertArrayEquals( new long[] { 12, 13, 15, 16, 14, 17 }, order.slab( 1 ) );
+
+		// every block is written exactly once
+		final long[] all = new long[ 18 ];
+		System.arraycopy( slab0, 0, all, 0, slab0.length );
+		System.arraycopy( order.slab( 1 ), 0, all, slab0.length, 6 );
+		Arrays.sort( all );
+		for ( int i = 0; i < all.length; ++i )
+			assertEquals( i, all[ i ] );
+	}
+}
@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import bdv.export.n5.DistributedWriteSequenceToN5;
+import bdv.img.n5.N5ImageLoader;
+import bdv.spimdata.SequenceDescriptionMinimal;
+import bdv.spimdata.SpimDataMinimal;
+import bdv.spimdata.XmlIoSpimDataMinimal;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import mpicbg.spim.data.SpimDataException;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+
+/**
+ * Resave a dataset as N5 cooperatively from several processes. Start this
+ * several times (with the same arguments), for example
+ * <pre>
+ * for i in 1 2 3 4; do java -cp ... bdv.export.DistributedResaveAsN5 input.xml output.xml &amp; done
+ * </pre>
+ * The process that finishes the export writes the XML.
+ */
+public class DistributedResaveAsN5
+{
+	public static void main( String[] args ) throws SpimDataException, IOException
+	{
+		final String fnInput = args[ 0 ];
+		final String fnOutput = args[ 1 ];
+		final int numThreads = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 2;
+
+		final XmlIoSpimDataMinimal io = new XmlIoSpimDataMinimal();
+		final SpimDataMinimal spimdata = io.load( fnInput );
+
+		// propose reasonable mipmap settings
+		final int maxNumElements = 64 * 64 * 64;
+		final Map< Integer, ExportMipmapInfo > perSetupExportMipmapInfo = new HashMap<>();
+		final SequenceDescriptionMinimal seq = spimdata.getSequenceDescription();
+		for ( final BasicViewSetup setup : seq.getViewSetupsOrdered() )
+			perSetupExportMipmapInfo.put( setup.getId(), ProposeMipmaps.proposeMipmaps( setup, maxNumElements ) );
+
+		final File n5File = new File( fnOutput.substring( 0, fnOutput.length() - 4 ) + ".n5" );
+
+		final boolean finished = DistributedWriteSequenceToN5.writeN5File(
+				seq,
+				perSetupExportMipmapInfo,
+				new GzipCompression(),
+				n5File,
+				new ExportScalePyramid.DefaultLoopbackHeuristic(),
+				numThreads,
+				64,
+				60_000,
+				new ProgressWriterConsole() );
+
+		if ( finished )
+		{
+			seq.setImgLoader( new N5ImageLoader( n5File, seq ) );
+			io.save( spimdata, fnOutput );
+		}
+
+		System.out.println( "done." );
+	}
+}
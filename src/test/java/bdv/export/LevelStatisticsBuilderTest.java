@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.junit.Test;
+
+import bdv.img.LevelStatistics;
+import bdv.util.Bounds;
+
+public class LevelStatisticsBuilderTest
+{
+	@Test
+	public void testUnsignedByte()
+	{
+		final LevelStatisticsBuilder builder = new LevelStatisticsBuilder( DataType.UINT8, new long[] { 2, 1 } );
+		final byte[] block0 = new byte[ 100 ];
+		final byte[] block1 = new byte[ 100 ];
+		for ( int i = 0; i < 100; ++i )
+		{
+			block0[ i ] = ( byte ) i;
+			block1[ i ] = ( byte ) ( 100 + i );
+		}
+		block1[ 99 ] = ( byte ) 250;
+		builder.add( new long[] { 0, 0 }, block0 );
+		builder.add( new long[] { 1, 0 }, block1 );
+
+		final LevelStatistics statistics = LevelStatistics.fromJson( builder.build().toJson() );
+		assertEquals( 0, statistics.getMin(), 0 );
+		assertEquals( 250, statistics.getMax(), 0 );
+		assertEquals( 200, statistics.getCount() );
+		assertArrayEquals( new double[] { 0, 99, 100, 250 }, statistics.getBlockMinMax(), 0 );
+
+		final Bounds full = statistics.estimateRange( 0, 1 );
+		assertEquals( 0, full.getMinBound(), 0 );
+		assertEquals( 250, full.getMaxBound(), 0 );
+
+		// the single saturated pixel is cut off
+		final Bounds range = statistics.estimateRange( 0.0125, 0.9875 );
+		assertEquals( 3, range.getMinBound(), 0 );
+		assertEquals( 198, range.getMaxBound(), 0 );
+	}
+
+	@Test
+	public void testSignedShort()
+	{
+		final LevelStatisticsBuilder builder = new LevelStatisticsBuilder( DataType.INT16, new long[] { 1 } );
+		builder.add( new long[] { 0 }, new short[] { -1000, 0, 3000 } );
+		final LevelStatistics statistics = builder.build();
+		assertEquals( -1000, statistics.getMin(), 0 );
+		assertEquals( 3000, statistics.getMax(), 0 );
+		final long[] histogram = statistics.getHistogram();
+		assertEquals( 16, statistics.getBinWidth(), 0 );
+		assertEquals( 251, histogram.length );
+		assertEquals( 1, histogram[ 0 ] );
+		assertEquals( 1, histogram[ 62 ] );
+		assertEquals( 1, histogram[ 250 ] );
+	}
+
+	@Test
+	public void testFloat()
+	{
+		final LevelStatisticsBuilder builder = new LevelStatisticsBuilder( DataType.FLOAT32, new long[] { 1 } );
+		builder.add( new long[] { 0 }, new float[] { -0.5f, 2.5f } );
+		final LevelStatistics statistics = LevelStatistics.fromJson( builder.build().toJson() );
+		final Bounds range = statistics.estimateRange( 0.1, 0.9 );
+		assertEquals( -0.5, range.getMinBound(), 0 );
+		assertEquals( 2.5, range.getMaxBound(), 0 );
+	}
+
+	@Test
+	public void testNonFinite()
+	{
+		final LevelStatisticsBuilder nans = new LevelStatisticsBuilder( DataType.FLOAT32, new long[] { 1 } );
+		nans.add( new long[] { 0 }, new float[] { Float.NaN, Float.NaN } );
+		assertFalse( nans.build().hasFiniteRange() );
+
+		final LevelStatisticsBuilder builder = new LevelStatisticsBuilder( DataType.FLOAT64, new long[] { 3 } );
+		builder.add( new long[] { 0 }, new double[] { Double.NaN, 1, Double.POSITIVE_INFINITY } );
+		builder.add( new long[] { 1 }, new double[] { Double.NaN } );
+		builder.add( new long[] { 2 }, new double[] { -2, Double.NaN } );
+		final LevelStatistics built = builder.build();
+		assertTrue( built.hasFiniteRange() );
+
+		// infinite values are only recorded in the block min and max
+		final LevelStatistics statistics = LevelStatistics.fromJson( built.toJson() );
+		assertEquals( -2, statistics.getMin(), 0 );
+		assertEquals( 1, statistics.getMax(), 0 );
+		assertArrayEquals( new double[] {
+				1, Double.POSITIVE_INFINITY,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				-2, -2 }, statistics.getBlockMinMax(), 0 );
+	}
+}
@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrimitiveDownsampleBlockTest
+{
+	private static final int[] blockSize = { 16, 8, 4 };
+
+	private static final int[][] factors = {
+			{ 2, 2, 2 },
+			{ 2, 2, 1 },
+			{ 4, 2, 3 },
+			{ 1, 1, 1 }
+	};
+
+	@Test
+	public void testUnsignedShorts()
+	{
+		for ( final int[] factor : factors )
+		{
+			final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( inputSize( factor ) );
+			final Random random = new Random( 1 );
+			img.forEach( t -> t.set( random.nextInt( 65536 ) ) );
+
+			final ArrayImg< UnsignedShortType, ShortArray > expected = ArrayImgs.unsignedShorts( 16, 8, 4 );
+			final short[] actual = new short[ 16 * 8 * 4 ];
+			downsample( factor, img, expected, actual );
+			assertArrayEquals( expected.update( null ).getCurrentStorageArray(), actual );
+		}
+	}
+
+	@Test
+	public void testUnsignedBytes()
+	{
+		for ( final int[] factor : factors )
+		{
+			final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( inputSize( factor ) );
+			final Random random = new Random( 1 );
+			img.forEach( t -> t.set( random.nextInt( 256 ) ) );
+
+			final ArrayImg< UnsignedByteType, ByteArray > expected = ArrayImgs.unsignedBytes( 16, 8, 4 );
+			final byte[] actual = new byte[ 16 * 8 * 4 ];
+			downsample( factor, img, expected, actual );
+			assertArrayEquals( expected.update( null ).getCurrentStorageArray(), actual );
+		}
+	}
+
+	/**
+	 * Float results must be bit-identical to {@link DownsampleBlock}. The
+	 * input mixes signs and magnitudes, so that the order of summation
+	 * matters.
+	 */
+	@Test
+	public void testFloats()
+	{
+		for ( final int[] factor : factors )
+		{
+			final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( inputSize( factor ) );
+			final Random random = new Random( 1 );
+			img.forEach( t -> t.set( ( float ) ( random.nextGaussian() * Math.pow( 10, random.nextInt( 16 ) - 8 ) ) ) );
+
+			final ArrayImg< FloatType, FloatArray > expected = ArrayImgs.floats( 16, 8, 4 );
+			final float[] actual = new float[ 16 * 8 * 4 ];
+			downsample( factor, img, expected, actual );
+
+			final float[] e = expected.update( null ).getCurrentStorageArray();
+			final int[] expectedBits = new int[ e.length ];
+			final int[] actualBits = new int[ actual.length ];
+			for ( int i = 0; i < e.length; ++i )
+			{
+				expectedBits[ i ] = Float.floatToRawIntBits( e[ i ] );
+				actualBits[ i ] = Float.floatToRawIntBits( actual[ i ] );
+			}
+			assertArrayEquals( expectedBits, actualBits );
+		}
+	}
+
+	private static long[] inputSize( final int[] factor )
+	{
+		return new long[] {
+				blockSize[ 0 ] * factor[ 0 ],
+				blockSize[ 1 ] * factor[ 1 ],
+				blockSize[ 2 ] * factor[ 2 ] };
+	}
+
+	/**
+	 * Downsample {@code img} with the generic {@link DownsampleBlock} into
+	 * {@code expected}, and with {@link PrimitiveDownsampleBlock} into
+	 * {@code actual}.
+	 */
+	private static < T extends RealType< T > & NativeType< T > > void downsample(
+			final int[] factor,
+			final ArrayImg< T, ? > img,
+			final ArrayImg< T, ? > expected,
+			final Object actual )
+	{
+		final T type = img.firstElement().createVariable();
+
+		final RandomAccess< T > in = img.randomAccess();
+		final DownsampleBlock< T > downsampleBlock = DownsampleBlock.create( blockSize, factor, type.getClass(), in.getClass() );
+		in.setPosition( new long[ 3 ] );
+		downsampleBlock.downsampleBlock( in, expected.cursor(), blockSize );
+
+		final PrimitiveDownsampleBlock primitive = PrimitiveDownsampleBlock.create( blockSize, factor, type );
+		final ArrayCopyBlock copy = ArrayCopyBlock.create( img, type );
+		assertTrue( copy.copyBlock( new long[ 3 ], primitive.getInputSize( blockSize ), primitive.getInputBuffer() ) );
+		primitive.downsample( actual, blockSize );
+	}
+}
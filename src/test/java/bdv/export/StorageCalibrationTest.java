@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StorageCalibrationTest
+{
+	private static StorageCalibration calibration( final double latencyNanos )
+	{
+		return new StorageCalibration( latencyNanos, 1, 5, 1, 0.5, 2 );
+	}
+
+	@Test
+	public void testIsotropicBlocksAreRoughlyCubic()
+	{
+		final int[] blockSize = calibration( 100_000 ).proposeBlockSize( new double[] { 1, 1, 1 }, null );
+		final int min = Math.min( blockSize[ 0 ], Math.min( blockSize[ 1 ], blockSize[ 2 ] ) );
+		final int max = Math.max( blockSize[ 0 ], Math.max( blockSize[ 1 ], blockSize[ 2 ] ) );
+		assertTrue( max <= 2 * min );
+	}
+
+	@Test
+	public void testHigherLatencyGivesLargerBlocks()
+	{
+		final double[] voxelSize = { 1, 1, 1 };
+		final int[] fast = calibration( 10_000 ).proposeBlockSize( voxelSize, null );
+		final int[] slow = calibration( 10_000_000 ).proposeBlockSize( voxelSize, null );
+		assertTrue( numElements( slow ) > numElements( fast ) );
+	}
+
+	@Test
+	public void testAnisotropicBlocksAreRoughlySquareInWorldSpace()
+	{
+		final int[] blockSize = calibration( 100_000 ).proposeBlockSize( new double[] { 1, 1, 4 }, null );
+		assertTrue( blockSize[ 2 ] * 4 >= blockSize[ 0 ] / 2 && blockSize[ 2 ] * 4 <= blockSize[ 0 ] * 2 );
+	}
+
+	@Test
+	public void testBlockSizeIsLimitedByImageSize()
+	{
+		final int[] blockSize = calibration( 10_000_000 ).proposeBlockSize( new double[] { 1, 1, 1 }, new long[] { 1000, 1000, 1 } );
+		assertTrue( blockSize[ 0 ] >= 64 );
+		assertEquals( 1, blockSize[ 2 ] );
+	}
+
+	@Test
+	public void testBlockSizeIsLimitedBySampledRange()
+	{
+		// the largest sample block is 64^3
+		final int[] blockSize = calibration( 1e12 ).proposeBlockSize( new double[] { 1, 1, 1 }, null );
+		for ( final int s : blockSize )
+			assertTrue( s <= 128 );
+		assertTrue( numElements( blockSize ) <= 2 * 64 * 64 * 64 );
+	}
+
+	private static long numElements( final int[] size )
+	{
+		long n = 1;
+		for ( final int s : size )
+			n *= s;
+		return n;
+	}
+}
@@ -0,0 +1,264 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export.n5;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bdv.export.CostBasedLoopbackHeuristic;
+import bdv.export.ExportMipmapInfo;
+import bdv.export.ExportScalePyramid.LoopbackHeuristic;
+import bdv.export.n5.DistributedWriteSequenceToN5.ClaimLostException;
+import bdv.export.n5.DistributedWriteSequenceToN5.Markers;
+import bdv.img.n5.N5ImageLoader;
+import bdv.spimdata.SequenceDescriptionMinimal;
+import mpicbg.spim.data.generic.sequence.BasicImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicSetupImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.TimePoints;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Cast;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class DistributedWriteSequenceToN5Test
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testStaleClaimTakeover() throws IOException
+	{
+		final Path dir = folder.newFolder( "markers" ).toPath();
+		final Markers a = new Markers( dir, 10_000 );
+		final Markers b = new Markers( dir, 10_000 );
+
+		assertTrue( a.claim( "u" ) );
+		assertFalse( b.claim( "u" ) );
+
+		// a stalls, b takes over
+		final Path claim = dir.resolve( "u.claim" );
+		Files.setLastModifiedTime( claim, FileTime.fromMillis( System.currentTimeMillis() - 60_000 ) );
+		assertTrue( b.claim( "u" ) );
+		assertTrue( b.holds( "u" ) );
+		assertFalse( a.holds( "u" ) );
+
+		// a must notice, and must not refresh b's claim
+		final FileTime claimed = FileTime.fromMillis( System.currentTimeMillis() - 5_000 );
+		Files.setLastModifiedTime( claim, claimed );
+		try
+		{
+			a.touchAll();
+			fail( "expected ClaimLostException" );
+		}
+		catch ( final ClaimLostException e )
+		{
+			assertEquals( "u", e.getName() );
+		}
+		assertEquals( claimed, Files.getLastModifiedTime( claim ) );
+
+		// a can neither mark the unit done nor release b's claim
+		try
+		{
+			a.markDone( "u" );
+			fail( "expected ClaimLostException" );
+		}
+		catch ( final ClaimLostException e )
+		{
+			assertEquals( "u", e.getName() );
+		}
+		a.release( "u" );
+		assertFalse( a.isDone( "u" ) );
+		assertTrue( b.holds( "u" ) );
+
+		b.markDone( "u" );
+		assertTrue( a.isDone( "u" ) );
+		assertFalse( a.claim( "u" ) );
+	}
+
+	@Test
+	public void testTouchAllHeldClaims() throws IOException
+	{
+		final Path dir = folder.newFolder( "markers" ).toPath();
+		final Markers a = new Markers( dir, 10_000 );
+		assertTrue( a.claim( "outer" ) );
+		assertTrue( a.claim( "inner" ) );
+
+		final FileTime old = FileTime.fromMillis( System.currentTimeMillis() - 5_000 );
+		Files.setLastModifiedTime( dir.resolve( "outer.claim" ), old );
+		Files.setLastModifiedTime( dir.resolve( "inner.claim" ), old );
+		a.touchAll();
+		assertTrue( Files.getLastModifiedTime( dir.resolve( "outer.claim" ) ).compareTo( old ) > 0 );
+		assertTrue( Files.getLastModifiedTime( dir.resolve( "inner.claim" ) ).compareTo( old ) > 0 );
+
+		// done and released claims are no longer touched
+		a.markDone( "inner" );
+		a.release( "outer" );
+		assertFalse( Files.exists( dir.resolve( "outer.claim" ) ) );
+		Files.setLastModifiedTime( dir.resolve( "inner.claim" ), old );
+		a.touchAll();
+		assertEquals( old, Files.getLastModifiedTime( dir.resolve( "inner.claim" ) ) );
+
+		// a released claim can be claimed right away
+		assertTrue( new Markers( dir, 10_000 ).claim( "outer" ) );
+	}
+
+	/**
+	 * Export from several concurrent writers into one container, and compare
+	 * to a single-process export.
+	 */
+	@Test
+	public void testConcurrentExport() throws Exception
+	{
+		final SequenceDescriptionMinimal seq = createSequence();
+		final Map< Integer, ExportMipmapInfo > mipmapInfo = Collections.singletonMap( 0, new ExportMipmapInfo(
+				new int[][] { { 1, 1, 1 }, { 2, 2, 2 }, { 4, 4, 4 } },
+				new int[][] { { 16, 16, 8 }, { 8, 8, 8 }, { 8, 8, 8 } } ) );
+		final LoopbackHeuristic loopback = ( originalImg, factorsToOriginalImg, previousLevel, factorsToPreviousLevel, chunkSize ) -> previousLevel >= 0;
+
+		final File expectedFile = folder.newFolder( "expected.n5" );
+		WriteSequenceToN5.writeN5File( seq, mipmapInfo, new GzipCompression(), expectedFile, loopback, null, 1, null );
+
+		final File n5File = folder.newFolder( "distributed.n5" );
+		final int numWriters = 3;
+		final ExecutorService writers = Executors.newFixedThreadPool( numWriters );
+		final List< Future< Boolean > > results = new ArrayList<>();
+		try
+		{
+			for ( int i = 0; i < numWriters; ++i )
+				results.add( writers.submit( () -> DistributedWriteSequenceToN5.writeN5File(
+						seq, mipmapInfo, new GzipCompression(), n5File, loopback, 2, 2, 60_000, null ) ) );
+			int numFinishing = 0;
+			for ( final Future< Boolean > result : results )
+				if ( result.get() )
+					++numFinishing;
+			assertEquals( 1, numFinishing );
+		}
+		finally
+		{
+			writers.shutdown();
+		}
+
+		final N5ImageLoader expected = new N5ImageLoader( expectedFile, seq );
+		final N5ImageLoader actual = new N5ImageLoader( n5File, seq );
+		try
+		{
+			assertEquals( 3, actual.getSetupImgLoader( 0 ).numMipmapLevels() );
+			for ( int level = 0; level < 3; ++level )
+			{
+				final RandomAccessibleInterval< RealType< ? > > e = Cast.unchecked( expected.getSetupImgLoader( 0 ).getImage( 0, level ) );
+				final RandomAccessibleInterval< RealType< ? > > a = Cast.unchecked( actual.getSetupImgLoader( 0 ).getImage( 0, level ) );
+				assertArrayEquals( Intervals.dimensionsAsLongArray( e ), Intervals.dimensionsAsLongArray( a ) );
+				final Cursor< RealType< ? > > ce = Views.flatIterable( e ).cursor();
+				final Cursor< RealType< ? > > ca = Views.flatIterable( a ).cursor();
+				while ( ce.hasNext() )
+					assertEquals( ce.next().getRealDouble(), ca.next().getRealDouble(), 0 );
+			}
+		}
+		finally
+		{
+			expected.close();
+			actual.close();
+		}
+
+		// no temporary block files are left behind
+		try ( Stream< Path > files = Files.walk( n5File.toPath() ) )
+		{
+			assertFalse( files.anyMatch( p -> p.getFileName().toString().endsWith( ".tmp" ) ) );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testRejectNondeterministicHeuristic() throws Exception
+	{
+		final Map< Integer, ExportMipmapInfo > mipmapInfo = Collections.singletonMap( 0, new ExportMipmapInfo(
+				new int[][] { { 1, 1, 1 }, { 2, 2, 2 } },
+				new int[][] { { 16, 16, 8 }, { 8, 8, 8 } } ) );
+		DistributedWriteSequenceToN5.writeN5File( createSequence(), mipmapInfo, new GzipCompression(), folder.newFolder( "rejected.n5" ),
+				new CostBasedLoopbackHeuristic(), 1, 2, 60_000, null );
+	}
+
+	private static SequenceDescriptionMinimal createSequence()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 40, 30, 20 );
+		final Random random = new Random( 1 );
+		img.forEach( t -> t.set( random.nextInt( 65536 ) ) );
+
+		final BasicSetupImgLoader< UnsignedShortType > setupImgLoader = new BasicSetupImgLoader< UnsignedShortType >()
+		{
+			@Override
+			public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final ImgLoaderHint... hints )
+			{
+				return img;
+			}
+
+			@Override
+			public UnsignedShortType getImageType()
+			{
+				return new UnsignedShortType();
+			}
+		};
+		final BasicImgLoader imgLoader = setupId -> setupImgLoader;
+		final BasicViewSetup setup = new BasicViewSetup( 0, "setup 0", img, new FinalVoxelDimensions( "um", 1, 1, 1 ) );
+		final TimePoints timepoints = new TimePoints( Collections.singletonList( new TimePoint( 0 ) ) );
+		return new SequenceDescriptionMinimal( timepoints, Collections.singletonMap( 0, setup ), imgLoader, null );
+	}
+}
@@ -0,0 +1,228 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.export.n5;
+
+import static bdv.img.n5.BdvN5Format.getPathName;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bdv.export.ExportMipmapInfo;
+import bdv.img.n5.N5ImageLoader;
+import bdv.spimdata.SequenceDescriptionMinimal;
+import mpicbg.spim.data.generic.sequence.BasicImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicSetupImgLoader;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import mpicbg.spim.data.sequence.TimePoint;
+import mpicbg.spim.data.sequence.TimePoints;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Cast;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class TranscodeToN5Test
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File sourceFile;
+
+	private SequenceDescriptionMinimal sourceSeq;
+
+	private static final int numLevels = 2;
+
+	/**
+	 * Write a random 2-level N5 dataset with gzip compression and block sizes
+	 * 16x16x8 and 8x8x8.
+	 */
+	@Before
+	public void setUp() throws IOException
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 40, 30, 20 );
+		final Random random = new Random( 1 );
+		img.forEach( t -> t.set( random.nextInt( 65536 ) ) );
+
+		final BasicSetupImgLoader< UnsignedShortType > setupImgLoader = new BasicSetupImgLoader< UnsignedShortType >()
+		{
+			@Override
+			public RandomAccessibleInterval< UnsignedShortType > getImage( final int timepointId, final ImgLoaderHint... hints )
+			{
+				return img;
+			}
+
+			@Override
+			public UnsignedShortType getImageType()
+			{
+				return new UnsignedShortType();
+			}
+		};
+		final BasicImgLoader imgLoader = setupId -> setupImgLoader;
+		final BasicViewSetup setup = new BasicViewSetup( 0, "setup 0", img, new FinalVoxelDimensions( "um", 1, 1, 1 ) );
+		final TimePoints timepoints = new TimePoints( Collections.singletonList( new TimePoint( 0 ) ) );
+		final SequenceDescriptionMinimal seq = new SequenceDescriptionMinimal( timepoints, Collections.singletonMap( 0, setup ), imgLoader, null );
+
+		final ExportMipmapInfo mipmapInfo = new ExportMipmapInfo(
+				new int[][] { { 1, 1, 1 }, { 2, 2, 2 } },
+				new int[][] { { 16, 16, 8 }, { 8, 8, 8 } } );
+		sourceFile = folder.newFolder( "source.n5" );
+		WriteSequenceToN5.writeN5File( seq, Collections.singletonMap( 0, mipmapInfo ), new GzipCompression(), sourceFile, null, null, 1, null );
+
+		sourceSeq = new SequenceDescriptionMinimal( seq, null );
+		sourceSeq.setImgLoader( new N5ImageLoader( sourceFile, sourceSeq ) );
+	}
+
+	@Test
+	public void testRawCopy() throws IOException
+	{
+		final File targetFile = new File( folder.getRoot(), "raw.n5" );
+		TranscodeToN5.transcode( sourceSeq, null, null, targetFile, 2, null );
+
+		try ( N5Reader n5 = new N5FSReader( targetFile.getAbsolutePath() ) )
+		{
+			for ( int level = 0; level < numLevels; ++level )
+				assertEquals( GzipCompression.class, n5.getDatasetAttributes( getPathName( 0, 0, level ) ).getCompression().getClass() );
+		}
+		for ( int level = 0; level < numLevels; ++level )
+		{
+			final Path sourceDataset = sourceFile.toPath().resolve( getPathName( 0, 0, level ) );
+			final Path targetDataset = targetFile.toPath().resolve( getPathName( 0, 0, level ) );
+			final List< Path > blocks = listBlocks( sourceDataset );
+			assertFalse( blocks.isEmpty() );
+			assertEquals( blocks, listBlocks( targetDataset ) );
+			for ( final Path block : blocks )
+				assertArrayEquals( Files.readAllBytes( sourceDataset.resolve( block ) ), Files.readAllBytes( targetDataset.resolve( block ) ) );
+		}
+		assertSameImages( targetFile );
+	}
+
+	@Test
+	public void testRecompress() throws IOException
+	{
+		final File targetFile = new File( folder.getRoot(), "recompressed.n5" );
+		TranscodeToN5.transcode( sourceSeq, new RawCompression(), null, targetFile, 2, null );
+
+		try ( N5Reader n5 = new N5FSReader( targetFile.getAbsolutePath() ) )
+		{
+			for ( int level = 0; level < numLevels; ++level )
+				assertEquals( RawCompression.class, n5.getDatasetAttributes( getPathName( 0, 0, level ) ).getCompression().getClass() );
+		}
+		assertSameImages( targetFile );
+	}
+
+	@Test
+	public void testReblock() throws IOException
+	{
+		final File targetFile = new File( folder.getRoot(), "reblocked.n5" );
+		final int[][] blockSizes = { { 32, 8, 4 }, { 4, 4, 4 } };
+		TranscodeToN5.transcode( sourceSeq, null, Collections.singletonMap( 0, blockSizes ), targetFile, 2, null );
+
+		try ( N5Reader n5 = new N5FSReader( targetFile.getAbsolutePath() ) )
+		{
+			for ( int level = 0; level < numLevels; ++level )
+			{
+				final DatasetAttributes attributes = n5.getDatasetAttributes( getPathName( 0, 0, level ) );
+				assertArrayEquals( blockSizes[ level ], attributes.getBlockSize() );
+				assertEquals( GzipCompression.class, attributes.getCompression().getClass() );
+			}
+		}
+		assertSameImages( targetFile );
+	}
+
+	private static List< Path > listBlocks( final Path dataset ) throws IOException
+	{
+		try ( Stream< Path > files = Files.walk( dataset ) )
+		{
+			return files
+					.filter( Files::isRegularFile )
+					.filter( p -> !p.getFileName().toString().endsWith( ".json" ) )
+					.map( dataset::relativize )
+					.sorted()
+					.collect( Collectors.toList() );
+		}
+	}
+
+	/**
+	 * Compare all levels of the transcoded dataset in {@code targetFile} to
+	 * the source dataset.
+	 */
+	private void assertSameImages( final File targetFile )
+	{
+		final SequenceDescriptionMinimal targetSeq = new SequenceDescriptionMinimal( sourceSeq, null );
+		final N5ImageLoader target = new N5ImageLoader( targetFile, targetSeq );
+		final N5ImageLoader source = ( N5ImageLoader ) sourceSeq.getImgLoader();
+		try
+		{
+			assertEquals( numLevels, target.getSetupImgLoader( 0 ).numMipmapLevels() );
+			assertArrayEquals( source.getSetupImgLoader( 0 ).getMipmapResolutions(), target.getSetupImgLoader( 0 ).getMipmapResolutions() );
+			for ( int level = 0; level < numLevels; ++level )
+			{
+				final RandomAccessibleInterval< RealType< ? > > expected = Cast.unchecked( source.getSetupImgLoader( 0 ).getImage( 0, level ) );
+				final RandomAccessibleInterval< RealType< ? > > actual = Cast.unchecked( target.getSetupImgLoader( 0 ).getImage( 0, level ) );
+				assertTrue( Intervals.equals( expected, actual ) );
+				final Cursor< RealType< ? > > e = Views.flatIterable( expected ).cursor();
+				final Cursor< RealType< ? > > a = Views.flatIterable( actual ).cursor();
+				while ( e.hasNext() )
+					assertEquals( e.next().getRealDouble(), a.next().getRealDouble(), 0 );
+			}
+		}
+		finally
+		{
+			target.close();
+		}
+	}
+}
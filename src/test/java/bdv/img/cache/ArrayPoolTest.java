@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import org.junit.Test;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ArrayPoolTest
+{
+	@Test
+	public void testReuse()
+	{
+		final ArrayPool pool = new ArrayPool( 1 << 20 );
+		final short[] a = pool.takeShorts( 100, true );
+		a[ 0 ] = 1;
+		pool.recycle( a );
+
+		final short[] b = pool.takeShorts( 100, true );
+		assertSame( a, b );
+		assertEquals( 0, b[ 0 ] );
+
+		final short[] c = pool.takeShorts( 100, true );
+		assertNotSame( a, c );
+
+		final ArrayPool.Statistics stats = pool.getStatistics();
+		assertEquals( 2, stats.numAllocated );
+		assertEquals( 1, stats.numReused );
+		assertEquals( 1, stats.numRecycled );
+	}
+
+	@Test
+	public void testSizeClasses()
+	{
+		final ArrayPool pool = new ArrayPool( 1 << 20 );
+		final int[] a = pool.takeInts( 100, false );
+		pool.recycle( a );
+		assertNotSame( a, pool.takeInts( 101, false ) );
+		assertEquals( 101, pool.takeInts( 101, false ).length );
+		assertSame( a, pool.takeInts( 100, false ) );
+	}
+
+	@Test
+	public void testCapacity()
+	{
+		final ArrayPool pool = new ArrayPool( 1000 );
+		pool.recycle( new byte[ 600 ] );
+		pool.recycle( new byte[ 600 ] );
+		assertEquals( 600, pool.getStatistics().pooledBytes );
+		assertEquals( 1, pool.getStatistics().numDiscarded );
+	}
+
+	@Test
+	public void testRecycleWhenUnreachable() throws InterruptedException
+	{
+		final ArrayPool pool = new ArrayPool( 1 << 20 );
+
+		// while the access is reachable, its array must not be handed out
+		final VolatileShortArray access = pool.recycleWhenUnreachable( new VolatileShortArray( new short[ 100 ], true ) );
+		System.gc();
+		Thread.sleep( 10 );
+		assertNotSame( access.getCurrentStorageArray(), pool.takeShorts( 100, false ) );
+		assertEquals( 0, pool.getStatistics().numRecycled );
+
+		// once the access is dropped, its array comes back through the pool
+		final short[] array = registerAndDrop( pool, 200 );
+		short[] taken = null;
+		for ( int i = 0; i < 100 && taken != array; ++i )
+		{
+			System.gc();
+			Thread.sleep( 10 );
+			taken = pool.takeShorts( 200, false );
+		}
+		assertSame( array, taken );
+		assertEquals( 1, pool.getStatistics().numRecycled );
+		assertEquals( 100, access.getCurrentStorageArray().length );
+	}
+
+	private static short[] registerAndDrop( final ArrayPool pool, final int length )
+	{
+		final VolatileShortArray access = new VolatileShortArray( new short[ length ], true );
+		pool.recycleWhenUnreachable( access );
+		return access.getCurrentStorageArray();
+	}
+}
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+
+public class CompressedCellTierTest
+{
+	private static Cell< VolatileShortArray > createCell( final int seed )
+	{
+		final int[] dims = { 32, 32, 8 };
+		final short[] data = new short[ 32 * 32 * 8 ];
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = ( short ) ( seed + ( i % 97 ) );
+		return new Cell<>( dims, new long[] { 32, 64, 8 }, new VolatileShortArray( data, true ) );
+	}
+
+	@Test
+	public void testRoundTrip()
+	{
+		final CompressedCellTier tier = new CompressedCellTier( 1 << 20 );
+		final Cell< VolatileShortArray > cell = createCell( 7 );
+		tier.put( "a", cell );
+
+		final Cell< ? > stored = tier.get( "a" );
+		assertTrue( stored.getData() instanceof VolatileShortArray );
+		assertArrayEquals( cell.getData().getCurrentStorageArray(), ( ( VolatileShortArray ) stored.getData() ).getCurrentStorageArray() );
+		assertEquals( 32, stored.min( 0 ) );
+		assertEquals( 64, stored.min( 1 ) );
+		assertEquals( 8, stored.dimension( 2 ) );
+
+		assertNull( tier.get( "b" ) );
+
+		final CompressedCellTier.Statistics stats = tier.getStatistics();
+		assertEquals( 1, stats.numHits );
+		assertEquals( 1, stats.numMisses );
+		assertEquals( 32 * 32 * 8 * 2, stats.uncompressedBytes );
+		assertTrue( stats.savedBytes() > 0 );
+	}
+
+	@Test
+	public void testConstant()
+	{
+		final CompressedCellTier tier = new CompressedCellTier( 1 << 20 );
+		tier.put( "c", new Cell<>( new int[] { 4, 4, 4 }, new long[ 3 ], ConstantVolatileArrays.zeros( short.class, 64 ) ) );
+		final Cell< ? > stored = tier.get( "c" );
+		assertTrue( stored.getData() instanceof ConstantVolatileArrays.ConstantAccess );
+		assertEquals( 0, tier.getStatistics().compressedBytes );
+	}
+
+	@Test
+	public void testEviction()
+	{
+		final CompressedCellTier probe = new CompressedCellTier( Long.MAX_VALUE );
+		probe.put( 0, createCell( 0 ) );
+		final long entrySize = probe.getStatistics().compressedBytes + CompressedCellTier.ENTRY_OVERHEAD_BYTES;
+
+		// room for two entries
+		final CompressedCellTier tier = new CompressedCellTier( 2 * entrySize );
+		tier.put( 0, createCell( 0 ) );
+		tier.put( 1, createCell( 0 ) );
+		tier.get( 0 );
+		tier.put( 2, createCell( 0 ) );
+
+		// 1 was least recently used
+		assertNull( tier.get( 1 ) );
+		assertTrue( tier.get( 0 ) != null );
+		assertTrue( tier.get( 2 ) != null );
+		assertEquals( 1, tier.getStatistics().numEvicted );
+	}
+
+	@Test
+	public void testConstantEviction()
+	{
+		// constant cells have no compressed data, but still count against the budget
+		final CompressedCellTier tier = new CompressedCellTier( 10 * CompressedCellTier.ENTRY_OVERHEAD_BYTES );
+		for ( int i = 0; i < 100; ++i )
+			tier.put( i, new Cell<>( new int[] { 4, 4, 4 }, new long[ 3 ], ConstantVolatileArrays.zeros( short.class, 64 ) ) );
+
+		final CompressedCellTier.Statistics stats = tier.getStatistics();
+		assertEquals( 10, stats.numEntries );
+		assertEquals( 90, stats.numEvicted );
+		assertNull( tier.get( 0 ) );
+		assertTrue( tier.get( 99 ) != null );
+	}
+}
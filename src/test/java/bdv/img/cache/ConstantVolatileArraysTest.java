@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+
+public class ConstantVolatileArraysTest
+{
+	@Test
+	public void testUniform()
+	{
+		final short[] data = new short[ 1000 ];
+		Arrays.fill( data, ( short ) 42 );
+		final VolatileArrayDataAccess< ? > access = ConstantVolatileArrays.ifUniform( data );
+		assertTrue( access instanceof VolatileShortArray );
+		assertTrue( access instanceof ConstantVolatileArrays.ConstantAccess );
+		assertTrue( access.isValid() );
+		assertEquals( 1000, access.getArrayLength() );
+
+		final VolatileShortArray shorts = ( VolatileShortArray ) access;
+		assertEquals( 42, shorts.getValue( 0 ) );
+		assertEquals( 42, shorts.getValue( 999 ) );
+		assertArrayEquals( data, shorts.getCurrentStorageArray() );
+	}
+
+	@Test
+	public void testExpandNotRetained()
+	{
+		final VolatileShortArray access = ( VolatileShortArray ) ConstantVolatileArrays.zeros( short.class, 16 );
+		final short[] expanded = access.getCurrentStorageArray();
+		assertNotSame( expanded, access.getCurrentStorageArray() );
+
+		// writes into an expanded array are not seen by the access
+		expanded[ 0 ] = 1;
+		assertEquals( 0, access.getValue( 0 ) );
+		assertArrayEquals( new short[ 16 ], access.getCurrentStorageArray() );
+	}
+
+	@Test
+	public void testFill()
+	{
+		final double[] data = new double[ 100 ];
+		Arrays.fill( data, 0.5 );
+		final ConstantVolatileArrays.ConstantAccess access = ( ConstantVolatileArrays.ConstantAccess ) ConstantVolatileArrays.ifUniform( data );
+		assertEquals( double[].class, access.getStorageArrayClass() );
+
+		// fill lengths around powers of two, at an offset
+		for ( int count = 0; count <= 33; ++count )
+		{
+			final double[] dest = new double[ 40 ];
+			access.fill( dest, 3, count );
+			for ( int i = 0; i < dest.length; ++i )
+				assertEquals( i >= 3 && i < 3 + count ? 0.5 : 0, dest[ i ], 0 );
+		}
+	}
+
+	@Test
+	public void testNotUniform()
+	{
+		final short[] data = new short[ 1000 ];
+		data[ 999 ] = 1;
+		assertNull( ConstantVolatileArrays.ifUniform( data ) );
+
+		final float[] floats = new float[ 10 ];
+		floats[ 3 ] = -0f;
+		assertNull( ConstantVolatileArrays.ifUniform( floats ) );
+	}
+
+	@Test
+	public void testZeros()
+	{
+		final VolatileArrayDataAccess< ? > access = ConstantVolatileArrays.zeros( float.class, 64 );
+		assertTrue( access instanceof VolatileFloatArray );
+		assertEquals( 0f, ( ( VolatileFloatArray ) access ).getValue( 63 ), 0f );
+		assertEquals( 64, access.getArrayLength() );
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testReadOnly()
+	{
+		final VolatileShortArray access = ( VolatileShortArray ) ConstantVolatileArrays.zeros( short.class, 8 );
+		access.setValue( 0, ( short ) 1 );
+	}
+}
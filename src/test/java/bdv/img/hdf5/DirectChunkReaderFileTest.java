@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import static hdf.hdf5lib.HDF5Constants.H5F_ACC_RDONLY;
+import static hdf.hdf5lib.HDF5Constants.H5P_DEFAULT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.systemsx.cisd.base.mdarray.MDFloatArray;
+import ch.systemsx.cisd.base.mdarray.MDShortArray;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.HDF5FloatStorageFeatures;
+import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+import hdf.hdf5lib.H5;
+import hdf.hdf5lib.HDF5Constants;
+
+/**
+ * Tests {@link DirectChunkReader} on files written by libhdf5 (through
+ * jhdf5). The test files are created at runtime, so the chunks are encoded by
+ * the libhdf5 filter implementations (not by our own encoder).
+ */
+public class DirectChunkReaderFileTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Dataset size in HDF5 order (not a multiple of the chunk size, so there
+	 * are partial chunks at the edges).
+	 */
+	private static final int[] DIMENSIONS = { 6, 12, 40 };
+
+	private static final int[] CHUNK_SIZE = { 4, 8, 16 };
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException
+	{
+		file = new File( folder.getRoot(), "test.h5" );
+
+		// this also loads the native library
+		final IHDF5Writer writer = HDF5Factory.open( file );
+		try
+		{
+			final long[] dimensions = { DIMENSIONS[ 0 ], DIMENSIONS[ 1 ], DIMENSIONS[ 2 ] };
+			final Random random = new Random( 1 );
+
+			final short[] shorts = new short[ numElements( DIMENSIONS ) ];
+			for ( int i = 0; i < shorts.length; ++i )
+				shorts[ i ] = ( short ) ( random.nextInt( 2000 ) - 1000 );
+			writer.int16().createMDArray( "int16", dimensions, CHUNK_SIZE, HDF5IntStorageFeatures.INT_DEFLATE );
+			writer.int16().writeMDArrayBlockWithOffset( "int16", new MDShortArray( shorts, DIMENSIONS ), new long[ 3 ] );
+
+			final float[] floats = new float[ numElements( DIMENSIONS ) ];
+			for ( int i = 0; i < floats.length; ++i )
+				floats[ i ] = random.nextFloat() * 100;
+			writer.float32().createMDArray( "float32", dimensions, CHUNK_SIZE, HDF5FloatStorageFeatures.FLOAT_DEFLATE );
+			writer.float32().writeMDArrayBlockWithOffset( "float32", new MDFloatArray( floats, DIMENSIONS ), new long[ 3 ] );
+
+			// H5Z-scaleoffset (as written by the BDV HDF5 export), with and
+			// without deflate
+			final short[] signed = scaleOffsetTestData( random, -1000, 2000 );
+			writer.int16().createMDArray( "int16-scaleoffset-deflate", dimensions, CHUNK_SIZE, HDF5IntStorageFeatures.INT_AUTO_SCALING_DEFLATE );
+			writer.int16().writeMDArrayBlockWithOffset( "int16-scaleoffset-deflate", new MDShortArray( signed, DIMENSIONS ), new long[ 3 ] );
+			writer.int16().createMDArray( "int16-scaleoffset", dimensions, CHUNK_SIZE, HDF5IntStorageFeatures.INT_AUTO_SCALING );
+			writer.int16().writeMDArrayBlockWithOffset( "int16-scaleoffset", new MDShortArray( signed, DIMENSIONS ), new long[ 3 ] );
+
+			// full 16 bit range in some chunks
+			final short[] unsigned = scaleOffsetTestData( random, 0, 65536 );
+			writer.uint16().createMDArray( "uint16-scaleoffset-deflate", dimensions, CHUNK_SIZE, HDF5IntStorageFeatures.INT_AUTO_SCALING_DEFLATE_UNSIGNED );
+			writer.uint16().writeMDArrayBlockWithOffset( "uint16-scaleoffset-deflate", new MDShortArray( unsigned, DIMENSIONS ), new long[ 3 ] );
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Memory types that require conversion of the stored values are not read
+	 * directly, even if the element size matches.
+	 */
+	@Test
+	public void testMemoryTypeRequiresConversion()
+	{
+		assumeTrue( DirectChunkReader.isSupported() );
+
+		final int[] blockSize = { CHUNK_SIZE[ 2 ], CHUNK_SIZE[ 1 ], CHUNK_SIZE[ 0 ] };
+		final long[] min = new long[ 3 ];
+		final int n = numElements( CHUNK_SIZE );
+		final DirectChunkReader reader = new DirectChunkReader( file );
+		final long fileId = H5.H5Fopen( file.getAbsolutePath(), H5F_ACC_RDONLY, H5P_DEFAULT );
+		try
+		{
+			final long int16 = H5.H5Dopen( fileId, "int16", H5P_DEFAULT );
+			final DirectChunkReader.ChunkLayout int16Layout = DirectChunkReader.getChunkLayout( int16 );
+			assertNotNull( int16Layout );
+			final short[] direct = new short[ n ];
+			assertTrue( reader.readBlock( int16, int16Layout, HDF5Constants.H5T_NATIVE_SHORT, blockSize, min, direct ) );
+			assertArrayEquals( read( int16, HDF5Constants.H5T_NATIVE_SHORT, blockSize, min, new short[ n ] ), direct );
+			assertFalse( reader.readBlock( int16, int16Layout, HDF5Constants.H5T_NATIVE_USHORT, blockSize, min, new short[ n ] ) );
+			H5.H5Dclose( int16 );
+
+			final long float32 = H5.H5Dopen( fileId, "float32", H5P_DEFAULT );
+			final DirectChunkReader.ChunkLayout float32Layout = DirectChunkReader.getChunkLayout( float32 );
+			assertNotNull( float32Layout );
+			assertTrue( reader.readBlock( float32, float32Layout, HDF5Constants.H5T_NATIVE_FLOAT, blockSize, min, new float[ n ] ) );
+			assertFalse( reader.readBlock( float32, float32Layout, HDF5Constants.H5T_NATIVE_INT, blockSize, min, new int[ n ] ) );
+			H5.H5Dclose( float32 );
+		}
+		finally
+		{
+			H5.H5Fclose( fileId );
+			reader.close();
+		}
+	}
+
+	/**
+	 * Every chunk (including partial chunks at the edges) of scale-offset
+	 * compressed datasets is decoded to the same values as with {@code
+	 * H5Dread}.
+	 */
+	@Test
+	public void testScaleOffset()
+	{
+		assumeTrue( DirectChunkReader.isSupported() );
+
+		assertChunksMatchH5Dread( "int16-scaleoffset-deflate", HDF5Constants.H5T_NATIVE_SHORT );
+		assertChunksMatchH5Dread( "int16-scaleoffset", HDF5Constants.H5T_NATIVE_SHORT );
+		assertChunksMatchH5Dread( "uint16-scaleoffset-deflate", HDF5Constants.H5T_NATIVE_USHORT );
+	}
+
+	private void assertChunksMatchH5Dread( final String pathName, final long memTypeId )
+	{
+		final DirectChunkReader reader = new DirectChunkReader( file );
+		final long fileId = H5.H5Fopen( file.getAbsolutePath(), H5F_ACC_RDONLY, H5P_DEFAULT );
+		try
+		{
+			final long dataSetId = H5.H5Dopen( fileId, pathName, H5P_DEFAULT );
+			final DirectChunkReader.ChunkLayout layout = DirectChunkReader.getChunkLayout( dataSetId );
+			assertNotNull( pathName, layout );
+			assertTrue( pathName, Arrays.stream( layout.filterIds ).anyMatch( id -> id == HDF5Constants.H5Z_FILTER_SCALEOFFSET ) );
+
+			// iterate over chunks in HDF5 order
+			for ( int z = 0; z < DIMENSIONS[ 0 ]; z += CHUNK_SIZE[ 0 ] )
+			{
+				for ( int y = 0; y < DIMENSIONS[ 1 ]; y += CHUNK_SIZE[ 1 ] )
+				{
+					for ( int x = 0; x < DIMENSIONS[ 2 ]; x += CHUNK_SIZE[ 2 ] )
+					{
+						// block min and size in imglib2 order
+						final long[] min = { x, y, z };
+						final int[] blockSize = {
+								Math.min( CHUNK_SIZE[ 2 ], DIMENSIONS[ 2 ] - x ),
+								Math.min( CHUNK_SIZE[ 1 ], DIMENSIONS[ 1 ] - y ),
+								Math.min( CHUNK_SIZE[ 0 ], DIMENSIONS[ 0 ] - z ) };
+						final int n = numElements( blockSize );
+						final String chunk = pathName + " chunk at " + Arrays.toString( min );
+
+						final short[] direct = new short[ n ];
+						assertTrue( chunk, reader.readBlock( dataSetId, layout, memTypeId, blockSize, min, direct ) );
+						assertArrayEquals( chunk, read( dataSetId, memTypeId, blockSize, min, new short[ n ] ), direct );
+					}
+				}
+			}
+			H5.H5Dclose( dataSetId );
+		}
+		finally
+		{
+			H5.H5Fclose( fileId );
+			reader.close();
+		}
+	}
+
+	/**
+	 * Random values in {@code [offset, offset + range)}, except for the first
+	 * chunk, which is constant (such that scale-offset stores it with 0 bits
+	 * per value).
+	 */
+	private static short[] scaleOffsetTestData( final Random random, final int offset, final int range )
+	{
+		final short[] data = new short[ numElements( DIMENSIONS ) ];
+		int i = 0;
+		for ( int z = 0; z < DIMENSIONS[ 0 ]; ++z )
+			for ( int y = 0; y < DIMENSIONS[ 1 ]; ++y )
+				for ( int x = 0; x < DIMENSIONS[ 2 ]; ++x )
+				{
+					final boolean firstChunk = z < CHUNK_SIZE[ 0 ] && y < CHUNK_SIZE[ 1 ] && x < CHUNK_SIZE[ 2 ];
+					data[ i++ ] = ( short ) ( firstChunk ? offset + 42 : offset + random.nextInt( range ) );
+				}
+		return data;
+	}
+
+	/**
+	 * Read a block with {@code H5Dread}.
+	 */
+	private static < A > A read( final long dataSetId, final long memTypeId, final int[] blockSize, final long[] min, final A dst )
+	{
+		final long[] reorderedDimensions = Util.reorder( blockSize, new long[ 3 ] );
+		final long memorySpaceId = H5.H5Screate_simple( 3, reorderedDimensions, null );
+		final long fileSpaceId = H5.H5Dget_space( dataSetId );
+		H5.H5Sselect_hyperslab( fileSpaceId, HDF5Constants.H5S_SELECT_SET, Util.reorder( min ), null, reorderedDimensions, null );
+		H5.H5Dread( dataSetId, memTypeId, memorySpaceId, fileSpaceId, H5P_DEFAULT, dst );
+		H5.H5Sclose( fileSpaceId );
+		H5.H5Sclose( memorySpaceId );
+		return dst;
+	}
+
+	private static int numElements( final int[] size )
+	{
+		int n = 1;
+		for ( final int s : size )
+			n *= s;
+		return n;
+	}
+}
@@ -0,0 +1,236 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.hdf5;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class DirectChunkReaderTest
+{
+	private static byte[] deflate( final byte[] data )
+	{
+		final Deflater deflater = new Deflater();
+		deflater.setInput( data );
+		deflater.finish();
+		final byte[] buffer = new byte[ data.length + 1024 ];
+		final int n = deflater.deflate( buffer );
+		deflater.end();
+		final byte[] compressed = new byte[ n ];
+		System.arraycopy( buffer, 0, compressed, 0, n );
+		return compressed;
+	}
+
+	private static byte[] randomBytes( final int n )
+	{
+		final byte[] data = new byte[ n ];
+		new Random( 1 ).nextBytes( data );
+		return data;
+	}
+
+	@Test
+	public void testInflate() throws DataFormatException
+	{
+		final byte[] data = randomBytes( 10000 );
+		final byte[] compressed = deflate( data );
+		assertArrayEquals( data, DirectChunkReader.inflate( compressed, data.length ) );
+
+		// a wrong size hint only affects the initial buffer size
+		assertArrayEquals( data, DirectChunkReader.inflate( compressed, 10 ) );
+		assertArrayEquals( data, DirectChunkReader.inflate( compressed, 100000 ) );
+	}
+
+	@Test( expected = DataFormatException.class )
+	public void testInflateTruncated() throws DataFormatException
+	{
+		final byte[] compressed = deflate( randomBytes( 10000 ) );
+		final byte[] truncated = new byte[ compressed.length / 2 ];
+		System.arraycopy( compressed, 0, truncated, 0, truncated.length );
+		DirectChunkReader.inflate( truncated, 10000 );
+	}
+
+	@Test
+	public void testUnshuffle()
+	{
+		// elements {0x0102, 0x0304, 0x0506} little-endian, shuffled, with one leftover byte
+		final byte[] shuffled = { 0x02, 0x04, 0x06, 0x01, 0x03, 0x05, 0x7f };
+		final byte[] expected = { 0x02, 0x01, 0x04, 0x03, 0x06, 0x05, 0x7f };
+		assertArrayEquals( expected, DirectChunkReader.unshuffle( shuffled, 2 ) );
+
+		final byte[] data = randomBytes( 12 );
+		assertArrayEquals( data, DirectChunkReader.unshuffle( data, 1 ) );
+	}
+
+	/**
+	 * Create scale-offset filtered data with the given {@code minbits} and
+	 * {@code minval}, and packed (MSB first) {@code codes}.
+	 */
+	private static byte[] scaleOffset( final int minbits, final long minval, final long... codes )
+	{
+		final int headerSize = 21;
+		final byte[] data = new byte[ headerSize + ( codes.length * minbits + 7 ) / 8 ];
+		for ( int i = 0; i < 4; ++i )
+			data[ i ] = ( byte ) ( minbits >>> ( 8 * i ) );
+		data[ 4 ] = 8;
+		for ( int i = 0; i < 8; ++i )
+			data[ 5 + i ] = ( byte ) ( minval >>> ( 8 * i ) );
+		long bitPos = 8L * headerSize;
+		for ( final long code : codes )
+		{
+			for ( int b = minbits - 1; b >= 0; --b )
+			{
+				if ( ( ( code >>> b ) & 1 ) != 0 )
+					data[ ( int ) ( bitPos >>> 3 ) ] |= 0x80 >>> ( bitPos & 7 );
+				++bitPos;
+			}
+		}
+		return data;
+	}
+
+	private static short[] toShorts( final byte[] littleEndian )
+	{
+		final short[] values = new short[ littleEndian.length / 2 ];
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = ( short ) ( ( littleEndian[ 2 * i ] & 0xff ) | ( littleEndian[ 2 * i + 1 ] & 0xff ) << 8 );
+		return values;
+	}
+
+	@Test
+	public void testDecodeScaleOffset()
+	{
+		final int[] params = { 2, 0, 5, 0, 1, 2, 0, 0 };
+		final byte[] data = scaleOffset( 4, 100, 1, 2, 15, 0, 7 );
+		final byte[] decoded = DirectChunkReader.decodeScaleOffset( data, params, 5, 2 );
+		assertArrayEquals( new short[] { 101, 102, 115, 100, 107 }, toShorts( decoded ) );
+	}
+
+	@Test
+	public void testDecodeScaleOffsetFillValue()
+	{
+		// fill value defined: the all-ones code represents the fill value
+		final int[] params = { 2, 0, 4, 0, 1, 2, 0, 1, 7777 };
+		final byte[] data = scaleOffset( 3, 10, 1, 7, 6, 0 );
+		final byte[] decoded = DirectChunkReader.decodeScaleOffset( data, params, 4, 2 );
+		assertArrayEquals( new short[] { 11, 7777, 16, 10 }, toShorts( decoded ) );
+	}
+
+	@Test
+	public void testDecodeScaleOffsetConstant()
+	{
+		// minbits == 0: all values are minval
+		final int[] params = { 2, 0, 3, 0, 1, 2, 0, 0 };
+		final byte[] decoded = DirectChunkReader.decodeScaleOffset( scaleOffset( 0, 42 ), params, 3, 2 );
+		assertArrayEquals( new short[] { 42, 42, 42 }, toShorts( decoded ) );
+	}
+
+	@Test
+	public void testDecodeScaleOffsetFullWidth()
+	{
+		// minbits == element size: data is stored unchanged after the header
+		final int[] params = { 2, 0, 2, 0, 1, 2, 0, 0 };
+		final byte[] data = scaleOffset( 16, 0 );
+		final byte[] withValues = new byte[ data.length + 4 ];
+		System.arraycopy( data, 0, withValues, 0, data.length );
+		withValues[ data.length ] = 0x34;
+		withValues[ data.length + 1 ] = 0x12;
+		withValues[ data.length + 2 ] = ( byte ) 0xff;
+		withValues[ data.length + 3 ] = ( byte ) 0xff;
+		final byte[] decoded = DirectChunkReader.decodeScaleOffset( withValues, params, 2, 2 );
+		assertArrayEquals( new short[] { 0x1234, -1 }, toShorts( decoded ) );
+	}
+
+	@Test
+	public void testCopyToBlock()
+	{
+		// chunk of 2 x 4 shorts (HDF5 order), little-endian
+		final short[] chunkValues = { 0, 1, 2, 3, 10, 11, 12, 13 };
+		final byte[] chunk = new byte[ 2 * chunkValues.length ];
+		for ( int i = 0; i < chunkValues.length; ++i )
+		{
+			chunk[ 2 * i ] = ( byte ) chunkValues[ i ];
+			chunk[ 2 * i + 1 ] = ( byte ) ( chunkValues[ i ] >> 8 );
+		}
+
+		final short[] full = new short[ 8 ];
+		DirectChunkReader.copyToBlock( chunk, new long[] { 2, 4 }, new long[] { 2, 4 }, full );
+		assertArrayEquals( chunkValues, full );
+
+		// border block, smaller than the chunk
+		final short[] border = new short[ 3 ];
+		DirectChunkReader.copyToBlock( chunk, new long[] { 2, 4 }, new long[] { 1, 3 }, border );
+		assertArrayEquals( new short[] { 0, 1, 2 }, border );
+
+		final short[] border2 = new short[ 6 ];
+		DirectChunkReader.copyToBlock( chunk, new long[] { 2, 4 }, new long[] { 2, 3 }, border2 );
+		assertArrayEquals( new short[] { 0, 1, 2, 10, 11, 12 }, border2 );
+	}
+
+	@Test
+	public void testCopyToBlockTypes()
+	{
+		final byte[] chunk = { 1, 0, 0, 0, 0, 0, ( byte ) 0x80, 0x3f };
+		final int[] ints = new int[ 2 ];
+		DirectChunkReader.copyToBlock( chunk, new long[] { 1, 2 }, new long[] { 1, 2 }, ints );
+		assertArrayEquals( new int[] { 1, 0x3f800000 }, ints );
+
+		final float[] floats = new float[ 2 ];
+		DirectChunkReader.copyToBlock( chunk, new long[] { 1, 2 }, new long[] { 1, 2 }, floats );
+		assertEquals( 1.0f, floats[ 1 ], 0 );
+
+		final byte[] bytes = new byte[ 8 ];
+		DirectChunkReader.copyToBlock( chunk, new long[] { 2, 4 }, new long[] { 2, 4 }, bytes );
+		assertArrayEquals( chunk, bytes );
+	}
+
+	@Test
+	public void testDecodePipeline() throws DataFormatException
+	{
+		// shuffle, then deflate (filters are undone in reverse order)
+		final byte[] data = randomBytes( 64 );
+		final byte[] shuffled = new byte[ 64 ];
+		for ( int i = 0; i < 32; ++i )
+		{
+			shuffled[ i ] = data[ 2 * i ];
+			shuffled[ 32 + i ] = data[ 2 * i + 1 ];
+		}
+		final DirectChunkReader.ChunkLayout layout = new DirectChunkReader.ChunkLayout(
+				new long[] { 4, 8 }, 0, 0, 2,
+				new int[] { 2, 1 },
+				new int[][] { {}, { 6 } } );
+		assertArrayEquals( data, DirectChunkReader.decode( deflate( shuffled ), 0, layout ) );
+
+		// deflate skipped for this chunk (filter mask bit 1)
+		assertArrayEquals( data, DirectChunkReader.decode( shuffled, 2, layout ) );
+	}
+}
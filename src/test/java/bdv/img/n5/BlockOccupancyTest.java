@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.n5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bdv.export.BlockOccupancyBuilder;
+import bdv.img.cache.SimpleCacheArrayLoader;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+
+public class BlockOccupancyTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testEncodeDecode()
+	{
+		final long[] gridDimensions = { 17, 9, 5 };
+		final BlockOccupancyBuilder occupancy = new BlockOccupancyBuilder( gridDimensions );
+		occupancy.setOccupied( new long[] { 0, 0, 0 } );
+		occupancy.setOccupied( new long[] { 16, 8, 4 } );
+		occupancy.setOccupied( new long[] { 3, 2, 1 } );
+
+		final BlockOccupancy decoded = BlockOccupancy.decode( occupancy.build().encode(), gridDimensions );
+		assertEquals( 3, decoded.numOccupied() );
+		assertTrue( decoded.isOccupied( new long[] { 0, 0, 0 } ) );
+		assertTrue( decoded.isOccupied( new long[] { 16, 8, 4 } ) );
+		assertTrue( decoded.isOccupied( new long[] { 3, 2, 1 } ) );
+		assertFalse( decoded.isOccupied( new long[] { 1, 2, 3 } ) );
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		final long[] gridDimensions = { 4, 4, 4 };
+		final BlockOccupancy decoded = BlockOccupancy.decode( new BlockOccupancyBuilder( gridDimensions ).build().encode(), gridDimensions );
+		assertEquals( 0, decoded.numOccupied() );
+		assertFalse( decoded.isOccupied( new long[] { 3, 3, 3 } ) );
+	}
+
+	@Test
+	public void testBuiltIndexIsImmutable()
+	{
+		final long[] gridDimensions = { 4, 4 };
+		final BlockOccupancyBuilder builder = new BlockOccupancyBuilder( gridDimensions );
+		builder.setOccupied( new long[] { 1, 1 } );
+		final BlockOccupancy occupancy = builder.build();
+		builder.setOccupied( new long[] { 2, 2 } );
+		assertEquals( 1, occupancy.numOccupied() );
+		assertFalse( occupancy.isOccupied( new long[] { 2, 2 } ) );
+		assertTrue( occupancy.contains( new long[] { 3, 3 } ) );
+		assertFalse( occupancy.contains( new long[] { 4, 0 } ) );
+	}
+
+	/**
+	 * A block that is not in the index is read from the block file, if the
+	 * index does not match the block files (because another tool wrote
+	 * blocks after export).
+	 */
+	@Test
+	public void testIndexIgnoredIfBlocksWereAdded() throws IOException
+	{
+		final File root = folder.newFolder( "added.n5" );
+		try ( N5Writer n5 = new N5FSWriter( root.getAbsolutePath() ) )
+		{
+			final DatasetAttributes attributes = createDataset( n5, new long[][] { { 0, 0 } } );
+			assertEquals( 1, value( loader( n5, attributes, root ), 0, 0 ) );
+			assertEquals( 0, value( loader( n5, attributes, root ), 1, 0 ) );
+
+			writeBlock( n5, attributes, 1, 0, ( short ) 2 );
+			assertEquals( 2, value( loader( n5, attributes, root ), 1, 0 ) );
+		}
+	}
+
+	/**
+	 * The index is dropped when an indexed block turns out to be missing.
+	 */
+	@Test
+	public void testIndexIgnoredIfBlockIsMissing() throws IOException
+	{
+		final File root = folder.newFolder( "missing.n5" );
+		try ( N5Writer n5 = new N5FSWriter( root.getAbsolutePath() ) )
+		{
+			final DatasetAttributes attributes = createDataset( n5, new long[][] { { 0, 0 } } );
+			final SimpleCacheArrayLoader< ? > loader = loader( n5, attributes, root );
+			assertEquals( 0, value( loader, 1, 0 ) );
+
+			// modify the dataset after the index was validated
+			Files.delete( root.toPath().resolve( "data" ).resolve( "0" ).resolve( "0" ) );
+			writeBlock( n5, attributes, 1, 0, ( short ) 2 );
+			assertEquals( 0, value( loader, 0, 0 ) );
+			assertEquals( 2, value( loader, 1, 0 ) );
+		}
+	}
+
+	/**
+	 * Create an 8x8 dataset with 4x4 blocks, write blocks of ones at the given
+	 * grid positions, and record them in the occupancy index.
+	 */
+	private static DatasetAttributes createDataset( final N5Writer n5, final long[][] gridPositions )
+	{
+		n5.createDataset( "data", new long[] { 8, 8 }, new int[] { 4, 4 }, DataType.UINT16, new GzipCompression() );
+		final DatasetAttributes attributes = n5.getDatasetAttributes( "data" );
+		final BlockOccupancyBuilder occupancy = new BlockOccupancyBuilder( new long[] { 2, 2 } );
+		for ( final long[] gridPosition : gridPositions )
+		{
+			writeBlock( n5, attributes, gridPosition[ 0 ], gridPosition[ 1 ], ( short ) 1 );
+			occupancy.setOccupied( gridPosition );
+		}
+		n5.setAttribute( "data", BlockOccupancy.OCCUPANCY_KEY, occupancy.build().encode() );
+		return attributes;
+	}
+
+	private static void writeBlock( final N5Writer n5, final DatasetAttributes attributes, final long x, final long y, final short value )
+	{
+		final short[] data = new short[ 16 ];
+		Arrays.fill( data, value );
+		n5.writeBlock( "data", attributes, new ShortArrayDataBlock( new int[] { 4, 4 }, new long[] { x, y }, data ) );
+	}
+
+	private static SimpleCacheArrayLoader< ? > loader( final N5Writer n5, final DatasetAttributes attributes, final File root )
+	{
+		return N5ImageLoader.createCacheArrayLoader( n5, "data", attributes, root );
+	}
+
+	private static int value( final SimpleCacheArrayLoader< ? > loader, final long x, final long y ) throws IOException
+	{
+		final ShortAccess access = ( ShortAccess ) loader.loadArray( new long[] { x, y }, new int[] { 4, 4 } );
+		return access.getValue( 5 );
+	}
+}
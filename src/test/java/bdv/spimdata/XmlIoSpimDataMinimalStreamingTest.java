@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.spimdata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import mpicbg.spim.data.SpimDataException;
+import mpicbg.spim.data.generic.sequence.BasicViewSetup;
+import mpicbg.spim.data.registration.ViewRegistration;
+import mpicbg.spim.data.registration.ViewTransform;
+import mpicbg.spim.data.sequence.ViewId;
+
+/**
+ * Load the same XML with {@link XmlIoSpimDataMinimalStreaming} and
+ * {@link XmlIoSpimDataMinimal} and compare the results.
+ */
+public class XmlIoSpimDataMinimalStreamingTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSyntheticProject() throws IOException, SpimDataException
+	{
+		final File xml = folder.newFile( "synthetic.xml" );
+		XmlLoadingBenchmark.writeSyntheticXml( xml, 7, 5, 3 );
+		assertSameContent( xml );
+	}
+
+	@Test
+	public void testProjectWithMissingViewsAndAttributes() throws IOException, SpimDataException
+	{
+		final File xml = folder.newFile( "attributes.xml" );
+		try ( PrintWriter out = new PrintWriter( xml, "UTF-8" ) )
+		{
+			out.println( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+			out.println( "<SpimData version=\"0.2\">" );
+			out.println( "  <BasePath type=\"relative\">.</BasePath>" );
+			out.println( "  <SequenceDescription>" );
+			out.println( "    <ImageLoader format=\"catmaid\">" );
+			out.println( "      <width>512</width><height>512</height><depth>64</depth>" );
+			out.println( "      <resXY>1</resXY><resZ>1</resZ>" );
+			out.println( "      <urlFormat>http://localhost/%1$d/%5$d/%8$d_%9$d_%1$d.jpg</urlFormat>" );
+			out.println( "      <tileWidth>256</tileWidth><tileHeight>256</tileHeight>" );
+			out.println( "    </ImageLoader>" );
+			out.println( "    <ViewSetups>" );
+			for ( int s = 0; s < 2; ++s )
+			{
+				out.println( "      <ViewSetup>" );
+				out.println( "        <id>" + s + "</id>" );
+				out.println( "        <name>channel " + s + "</name>" );
+				out.println( "        <size>512 512 64</size>" );
+				out.println( "        <voxelSize><unit>um</unit><size>0.25 0.25 1.5</size></voxelSize>" );
+				out.println( "        <attributes><channel>" + ( s + 1 ) + "</channel></attributes>" );
+				out.println( "      </ViewSetup>" );
+			}
+			out.println( "      <Attributes name=\"channel\">" );
+			out.println( "        <Channel><id>1</id><name>green</name></Channel>" );
+			out.println( "        <Channel><id>2</id><name>red</name></Channel>" );
+			out.println( "      </Attributes>" );
+			out.println( "    </ViewSetups>" );
+			out.println( "    <Timepoints type=\"pattern\">" );
+			out.println( "      <integerpattern>0, 2, 5</integerpattern>" );
+			out.println( "    </Timepoints>" );
+			out.println( "    <MissingViews>" );
+			out.println( "      <MissingView timepoint=\"2\" setup=\"1\" />" );
+			out.println( "    </MissingViews>" );
+			out.println( "  </SequenceDescription>" );
+			out.println( "  <ViewRegistrations>" );
+			for ( final int t : new int[] { 0, 2, 5 } )
+			{
+				for ( int s = 0; s < 2; ++s )
+				{
+					if ( t == 2 && s == 1 )
+						continue;
+					out.println( "    <ViewRegistration timepoint=\"" + t + "\" setup=\"" + s + "\">" );
+					out.println( "      <ViewTransform type=\"affine\">" );
+					out.println( "        <Name>calibration</Name>" );
+					out.println( "        <affine>0.25 0.0 0.0 0.0 0.0 0.25 0.0 0.0 0.0 0.0 1.5 0.0</affine>" );
+					out.println( "      </ViewTransform>" );
+					out.println( "      <ViewTransform type=\"affine\">" );
+					out.println( "        <affine>1.0 0.1 0.0 " + t + " 0.0 1.0 0.0 " + s + " 0.0 0.0 1.0 -3.5e-2</affine>" );
+					out.println( "      </ViewTransform>" );
+					out.println( "    </ViewRegistration>" );
+				}
+			}
+			out.println( "  </ViewRegistrations>" );
+			out.println( "  <ViewInterestPoints />" );
+			out.println( "</SpimData>" );
+		}
+		assertSameContent( xml );
+	}
+
+	private static void assertSameContent( final File xml ) throws SpimDataException
+	{
+		final SpimDataMinimal expected = new XmlIoSpimDataMinimal().load( xml.getAbsolutePath() );
+		final SpimDataMinimal actual = new XmlIoSpimDataMinimalStreaming().load( xml.getAbsolutePath() );
+
+		assertEquals( expected.getBasePath(), actual.getBasePath() );
+
+		assertEquals(
+				expected.getSequenceDescription().getTimePoints().getTimePointsOrdered(),
+				actual.getSequenceDescription().getTimePoints().getTimePointsOrdered() );
+		assertEquals(
+				expected.getSequenceDescription().getMissingViews(),
+				actual.getSequenceDescription().getMissingViews() );
+		assertEquals(
+				expected.getSequenceDescription().getImgLoader().getClass(),
+				actual.getSequenceDescription().getImgLoader().getClass() );
+
+		final Map< Integer, BasicViewSetup > expectedSetups = expected.getSequenceDescription().getViewSetups();
+		final Map< Integer, BasicViewSetup > actualSetups = actual.getSequenceDescription().getViewSetups();
+		assertEquals( expectedSetups.keySet(), actualSetups.keySet() );
+		for ( final Integer id : expectedSetups.keySet() )
+		{
+			final BasicViewSetup e = expectedSetups.get( id );
+			final BasicViewSetup a = actualSetups.get( id );
+			assertEquals( e.getName(), a.getName() );
+			assertArrayEquals( e.getSize().dimensionsAsLongArray(), a.getSize().dimensionsAsLongArray() );
+			assertEquals( e.getVoxelSize().unit(), a.getVoxelSize().unit() );
+			assertArrayEquals( e.getVoxelSize().dimensionsAsDoubleArray(), a.getVoxelSize().dimensionsAsDoubleArray(), 0 );
+			assertEquals( e.getAttributes(), a.getAttributes() );
+		}
+
+		final Map< ViewId, ViewRegistration > expectedRegistrations = expected.getViewRegistrations().getViewRegistrations();
+		final Map< ViewId, ViewRegistration > actualRegistrations = actual.getViewRegistrations().getViewRegistrations();
+		assertEquals( expectedRegistrations.keySet(), actualRegistrations.keySet() );
+		for ( final ViewId viewId : expectedRegistrations.keySet() )
+		{
+			final ViewRegistration e = expectedRegistrations.get( viewId );
+			final ViewRegistration a = actualRegistrations.get( viewId );
+			assertNotNull( a );
+			assertEquals( e.getTimePointId(), a.getTimePointId() );
+			assertEquals( e.getViewSetupId(), a.getViewSetupId() );
+			final List< ViewTransform > et = e.getTransformList();
+			final List< ViewTransform > at = a.getTransformList();
+			assertEquals( et.size(), at.size() );
+			for ( int i = 0; i < et.size(); ++i )
+			{
+				assertEquals( et.get( i ).getName(), at.get( i ).getName() );
+				assertArrayEquals( et.get( i ).asAffine3D().getRowPackedCopy(), at.get( i ).asAffine3D().getRowPackedCopy(), 0 );
+			}
+			assertArrayEquals( e.getModel().getRowPackedCopy(), a.getModel().getRowPackedCopy(), 0 );
+		}
+	}
+}
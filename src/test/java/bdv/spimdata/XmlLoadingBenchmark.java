@@ -0,0 +1,181 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.spimdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import mpicbg.spim.data.SpimDataException;
+import mpicbg.spim.data.registration.ViewRegistrations;
+
+/**
+ * Startup time of loading a synthetic large BDV XML project with the JDOM
+ * ({@link XmlIoSpimDataMinimal}) and the streaming
+ * ({@link XmlIoSpimDataMinimalStreaming}) reader. After loading, the
+ * registrations of the first timepoint are accessed, as the viewer does when
+ * it opens.
+ */
+@State( Scope.Benchmark )
+@Fork( 1 )
+public class XmlLoadingBenchmark
+{
+	@Param( { "100", "2000" } )
+	public int numSetups;
+
+	@Param( { "50" } )
+	public int numTimepoints;
+
+	public File xmlFile;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		xmlFile = File.createTempFile( "XmlLoadingBenchmark", ".xml" );
+		writeSyntheticXml( xmlFile, numSetups, numTimepoints, 3 );
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists( xmlFile.toPath() );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.SingleShotTime )
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	public Object loadJdom() throws SpimDataException
+	{
+		return touchFirstTimepoint( new XmlIoSpimDataMinimal().load( xmlFile.getAbsolutePath() ) );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.SingleShotTime )
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	public Object loadStreaming() throws SpimDataException
+	{
+		return touchFirstTimepoint( new XmlIoSpimDataMinimalStreaming().load( xmlFile.getAbsolutePath() ) );
+	}
+
+	private Object touchFirstTimepoint( final SpimDataMinimal spimData )
+	{
+		final ViewRegistrations registrations = spimData.getViewRegistrations();
+		double sum = 0;
+		for ( int s = 0; s < numSetups; ++s )
+			sum += registrations.getViewRegistration( 0, s ).getModel().get( 0, 3 );
+		return sum;
+	}
+
+	/**
+	 * Write a BDV XML project with {@code numSetups x numTimepoints} views,
+	 * each registered with {@code numTransforms} affine transforms. The
+	 * (network-free) CATMAID image loader is used so that no image data is
+	 * required.
+	 */
+	public static void writeSyntheticXml( final File file, final int numSetups, final int numTimepoints, final int numTransforms ) throws IOException
+	{
+		try ( PrintWriter out = new PrintWriter( file, "UTF-8" ) )
+		{
+			out.println( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+			out.println( "<SpimData version=\"0.2\">" );
+			out.println( "  <BasePath type=\"relative\">.</BasePath>" );
+			out.println( "  <SequenceDescription>" );
+			out.println( "    <ImageLoader format=\"catmaid\">" );
+			out.println( "      <width>1024</width><height>1024</height><depth>256</depth>" );
+			out.println( "      <resXY>1</resXY><resZ>1</resZ>" );
+			out.println( "      <urlFormat>http://localhost/%1$d/%5$d/%8$d_%9$d_%1$d.jpg</urlFormat>" );
+			out.println( "      <tileWidth>256</tileWidth><tileHeight>256</tileHeight>" );
+			out.println( "    </ImageLoader>" );
+			out.println( "    <ViewSetups>" );
+			for ( int s = 0; s < numSetups; ++s )
+			{
+				out.println( "      <ViewSetup>" );
+				out.println( "        <id>" + s + "</id>" );
+				out.println( "        <name>setup " + s + "</name>" );
+				out.println( "        <size>1024 1024 256</size>" );
+				out.println( "        <voxelSize><unit>um</unit><size>0.5 0.5 2.0</size></voxelSize>" );
+				out.println( "      </ViewSetup>" );
+			}
+			out.println( "    </ViewSetups>" );
+			out.println( "    <Timepoints type=\"range\">" );
+			out.println( "      <first>0</first>" );
+			out.println( "      <last>" + ( numTimepoints - 1 ) + "</last>" );
+			out.println( "    </Timepoints>" );
+			out.println( "  </SequenceDescription>" );
+			out.println( "  <ViewRegistrations>" );
+			for ( int t = 0; t < numTimepoints; ++t )
+			{
+				for ( int s = 0; s < numSetups; ++s )
+				{
+					out.println( "    <ViewRegistration timepoint=\"" + t + "\" setup=\"" + s + "\">" );
+					for ( int i = 0; i < numTransforms; ++i )
+					{
+						out.println( "      <ViewTransform type=\"affine\">" );
+						out.println( "        <Name>transform " + i + "</Name>" );
+						out.println( "        <affine>1.0 0.0 0.0 " + ( 1024.0 * s + i ) + " 0.0 1.0 0.0 " + t + ".5 0.0 0.0 4.0 0.25</affine>" );
+						out.println( "      </ViewTransform>" );
+					}
+					out.println( "    </ViewRegistration>" );
+				}
+			}
+			out.println( "  </ViewRegistrations>" );
+			out.println( "</SpimData>" );
+		}
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( XmlLoadingBenchmark.class.getSimpleName() )
+				.warmupIterations( 2 )
+				.measurementIterations( 8 )
+				.warmupTime( TimeValue.milliseconds( 500 ) )
+				.measurementTime( TimeValue.milliseconds( 500 ) )
+				.build();
+		new Runner( opt ).run();
+	}
+}
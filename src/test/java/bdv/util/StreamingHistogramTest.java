@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StreamingHistogramTest
+{
+	@Test
+	public void testIntegerValuesAreExact()
+	{
+		final StreamingHistogram histogram = new StreamingHistogram( 1024, true );
+		final double[] values = new double[ 1000 ];
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = i - 200;
+		histogram.add( values, values.length );
+
+		assertEquals( 1000, histogram.getCount() );
+		assertEquals( -200, histogram.getMin(), 0 );
+		assertEquals( 799, histogram.getMax(), 0 );
+		assertEquals( 300, histogram.quantile( 0.5 ), 0 );
+		assertEquals( -200, histogram.quantile( 0 ), 0 );
+		assertEquals( 799, histogram.quantile( 1 ), 0 );
+	}
+
+	@Test
+	public void testRangeGrowsInBothDirections()
+	{
+		final Random random = new Random( 1 );
+		final StreamingHistogram histogram = new StreamingHistogram( 4096, false );
+		final double[] all = new double[ 100000 ];
+		final double[] chunk = new double[ 1000 ];
+		for ( int c = 0; c < 100; ++c )
+		{
+			// the spread of values increases from chunk to chunk
+			final double scale = 1 + c;
+			for ( int i = 0; i < chunk.length; ++i )
+				chunk[ i ] = all[ c * chunk.length + i ] = scale * random.nextGaussian() - 10;
+			histogram.add( chunk, chunk.length );
+		}
+		Arrays.sort( all );
+
+		final double tolerance = ( all[ all.length - 1 ] - all[ 0 ] ) / 1000;
+		assertEquals( all[ 0 ], histogram.getMin(), 0 );
+		assertEquals( all[ all.length - 1 ], histogram.getMax(), 0 );
+		for ( final double q : new double[] { 0.001, 0.1, 0.5, 0.9, 0.999 } )
+			assertEquals( all[ ( int ) ( q * all.length ) ], histogram.quantile( q ), tolerance );
+	}
+
+	@Test
+	public void testNonFiniteValuesAreIgnored()
+	{
+		final StreamingHistogram histogram = new StreamingHistogram( 16, false );
+		histogram.add( new double[] { Double.NaN, 2.5, Double.POSITIVE_INFINITY }, 3 );
+		assertEquals( 1, histogram.getCount() );
+		assertEquals( 2.5, histogram.quantile( 0.5 ), 0 );
+		histogram.add( new double[] { -1.5, Double.NEGATIVE_INFINITY }, 2 );
+		assertEquals( 2, histogram.getCount() );
+		final double median = histogram.quantile( 0.5 );
+		assertTrue( median >= -1.5 && median <= 2.5 );
+	}
+
+	@Test
+	public void testMerge()
+	{
+		// integer values are merged exactly
+		final StreamingHistogram merged = new StreamingHistogram( 1024, true );
+		final StreamingHistogram expected = new StreamingHistogram( 1024, true );
+		for ( int c = 0; c < 4; ++c )
+		{
+			final double[] values = new double[ 300 ];
+			for ( int i = 0; i < values.length; ++i )
+				values[ i ] = 200 * c - 100 + i;
+			final StreamingHistogram local = new StreamingHistogram( 1024, true );
+			local.add( values, values.length );
+			merged.add( local );
+			expected.add( values, values.length );
+		}
+		assertEquals( expected.getCount(), merged.getCount() );
+		assertEquals( expected.getMin(), merged.getMin(), 0 );
+		assertEquals( expected.getMax(), merged.getMax(), 0 );
+		for ( final double q : new double[] { 0, 0.01, 0.25, 0.5, 0.75, 0.99, 1 } )
+			assertEquals( expected.quantile( q ), merged.quantile( q ), 0 );
+
+		// float values are merged up to the bin width
+		final Random random = new Random( 1 );
+		final StreamingHistogram floats = new StreamingHistogram( 4096, false );
+		final double[] all = new double[ 40000 ];
+		for ( int c = 0; c < 4; ++c )
+		{
+			final double[] values = new double[ 10000 ];
+			for ( int i = 0; i < values.length; ++i )
+				values[ i ] = all[ c * values.length + i ] = ( c + 1 ) * random.nextGaussian();
+			final StreamingHistogram local = new StreamingHistogram( 4096, false );
+			local.add( values, values.length );
+			floats.add( local );
+		}
+		Arrays.sort( all );
+		final double tolerance = ( all[ all.length - 1 ] - all[ 0 ] ) / 1000;
+		for ( final double q : new double[] { 0.001, 0.1, 0.5, 0.9, 0.999 } )
+			assertEquals( all[ ( int ) ( q * all.length ) ], floats.quantile( q ), tolerance );
+	}
+}
@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import bdv.BigDataViewer;
+import bdv.tools.transformation.TransformedSource;
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.awt.BufferedImageRenderResult;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class FrameCacheTest
+{
+	private final List< BufferedImageRenderResult > created = new ArrayList<>();
+
+	private FrameCache createCache( final int maxSize )
+	{
+		return new FrameCache( maxSize, () -> {
+			final BufferedImageRenderResult result = new BufferedImageRenderResult();
+			created.add( result );
+			return result;
+		} );
+	}
+
+	private static FrameCache.Key key( final double x )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.translate( x, 0, 0 );
+		return new FrameCache.Key( transform, 0, Interpolation.NEARESTNEIGHBOR, 4, 3, Collections.emptyList() );
+	}
+
+	private static RenderResult frame( final int value )
+	{
+		final BufferedImageRenderResult frame = new BufferedImageRenderResult();
+		frame.init( 4, 3 );
+		frame.setScaleFactor( 1 );
+		frame.getViewerTransform().translate( value, 0, 0 );
+		final RandomAccess< ARGBType > a = frame.getTargetImage().randomAccess();
+		a.setPosition( new int[] { 1, 2 } );
+		a.get().set( value );
+		return frame;
+	}
+
+	private static int value( final RenderResult frame )
+	{
+		final RandomAccess< ARGBType > a = frame.getTargetImage().randomAccess();
+		a.setPosition( new int[] { 1, 2 } );
+		return a.get().get();
+	}
+
+	@Test
+	public void testMiss()
+	{
+		final FrameCache cache = createCache( 2 );
+		assertNull( cache.get( key( 1 ) ) );
+		assertNull( cache.get( null ) );
+
+		cache.put( key( 1 ), frame( 1 ) );
+		assertNull( cache.get( key( 2 ) ) );
+	}
+
+	@Test
+	public void testHitReturnsCopy()
+	{
+		final FrameCache cache = createCache( 2 );
+		final RenderResult frame = frame( 7 );
+		cache.put( key( 1 ), frame );
+
+		// modifying the frame after put() does not affect the cached copy
+		final RandomAccess< ARGBType > a = frame.getTargetImage().randomAccess();
+		a.setPosition( new int[] { 1, 2 } );
+		a.get().set( 0 );
+
+		final RenderResult cached = cache.get( key( 1 ) );
+		assertNotNull( cached );
+		assertNotSame( frame, cached );
+		assertEquals( 7, value( cached ) );
+		assertEquals( 4, cached.getTargetImage().dimension( 0 ) );
+		assertEquals( 3, cached.getTargetImage().dimension( 1 ) );
+		assertEquals( 7, cached.getViewerTransform().get( 0, 3 ), 0 );
+	}
+
+	@Test
+	public void testNullKeyIsNotCached()
+	{
+		final FrameCache cache = createCache( 2 );
+		cache.put( null, frame( 1 ) );
+		assertEquals( 0, created.size() );
+	}
+
+	@Test
+	public void testZeroSize()
+	{
+		final FrameCache cache = createCache( 0 );
+		cache.put( key( 1 ), frame( 1 ) );
+		assertNull( cache.get( key( 1 ) ) );
+		assertEquals( 0, created.size() );
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed()
+	{
+		final FrameCache cache = createCache( 2 );
+		cache.put( key( 1 ), frame( 1 ) );
+		cache.put( key( 2 ), frame( 2 ) );
+
+		// access 1, so that 2 is the least recently used
+		assertEquals( 1, value( cache.get( key( 1 ) ) ) );
+		cache.put( key( 3 ), frame( 3 ) );
+
+		assertNull( cache.get( key( 2 ) ) );
+		assertEquals( 1, value( cache.get( key( 1 ) ) ) );
+		assertEquals( 3, value( cache.get( key( 3 ) ) ) );
+	}
+
+	@Test
+	public void testEvictedFramesAreRecycled()
+	{
+		final FrameCache cache = createCache( 2 );
+		cache.put( key( 1 ), frame( 1 ) );
+		cache.put( key( 2 ), frame( 2 ) );
+		cache.put( key( 3 ), frame( 3 ) );
+		assertEquals( 3, created.size() );
+
+		// the RenderResult evicted for key 1 is re-used for key 4
+		cache.put( key( 4 ), frame( 4 ) );
+		assertEquals( 3, created.size() );
+		assertSame( created.get( 0 ), cache.get( key( 4 ) ) );
+		assertEquals( 4, value( cache.get( key( 4 ) ) ) );
+	}
+
+	@Test
+	public void testClear()
+	{
+		final FrameCache cache = createCache( 2 );
+		cache.put( key( 1 ), frame( 1 ) );
+		cache.put( key( 2 ), frame( 2 ) );
+		cache.clear();
+		assertNull( cache.get( key( 1 ) ) );
+		assertNull( cache.get( key( 2 ) ) );
+
+		cache.put( key( 3 ), frame( 3 ) );
+		assertEquals( 2, created.size() );
+		assertEquals( 3, value( cache.get( key( 3 ) ) ) );
+	}
+
+	@Test
+	public void testKeyEquality()
+	{
+		assertEquals( key( 1 ), key( 1 ) );
+		assertEquals( key( 1 ).hashCode(), key( 1 ).hashCode() );
+
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.translate( 1, 0, 0 );
+		final FrameCache.Key base = new FrameCache.Key( transform, 0, Interpolation.NEARESTNEIGHBOR, 4, 3, Collections.emptyList() );
+		assertEquals( base, key( 1 ) );
+		assertNotEquals( base, key( 2 ) );
+		assertNotEquals( base, new FrameCache.Key( transform, 1, Interpolation.NEARESTNEIGHBOR, 4, 3, Collections.emptyList() ) );
+		assertNotEquals( base, new FrameCache.Key( transform, 0, Interpolation.NLINEAR, 4, 3, Collections.emptyList() ) );
+		assertNotEquals( base, new FrameCache.Key( transform, 0, Interpolation.NEARESTNEIGHBOR, 5, 3, Collections.emptyList() ) );
+		assertNotEquals( base, new FrameCache.Key( transform, 0, Interpolation.NEARESTNEIGHBOR, 4, 3, Collections.singletonList( 0.5 ) ) );
+	}
+
+	@Test
+	public void testSourceTransformChangeIsMiss()
+	{
+		final TransformedSource< UnsignedByteType > source = new TransformedSource<>( new RandomAccessibleIntervalSource<>(
+				ArrayImgs.unsignedBytes( 4, 4, 4 ), new UnsignedByteType(), new AffineTransform3D(), "source" ) );
+		final SourceAndConverter< UnsignedByteType > soc = new SourceAndConverter<>( source, BigDataViewer.createConverterToARGB( new UnsignedByteType() ) );
+		final BasicViewerState state = new BasicViewerState();
+		state.addSource( soc );
+		state.setSourceActive( soc, true );
+		state.setCurrentSource( soc );
+
+		final FrameCache cache = createCache( 2 );
+		final FrameCache.Key before = FrameCache.key( state, 4, 3 );
+		assertNotNull( before );
+		cache.put( before, frame( 1 ) );
+		assertEquals( 1, value( cache.get( FrameCache.key( state, 4, 3 ) ) ) );
+
+		// editing the source transform does not change the viewer transform
+		final AffineTransform3D moved = new AffineTransform3D();
+		moved.translate( 10, 0, 0 );
+		source.setFixedTransform( moved );
+		assertNull( cache.get( FrameCache.key( state, 4, 3 ) ) );
+
+		source.setFixedTransform( new AffineTransform3D() );
+		final AffineTransform3D incremental = new AffineTransform3D();
+		incremental.rotate( 2, 0.1 );
+		source.setIncrementalTransform( incremental );
+		assertNull( cache.get( FrameCache.key( state, 4, 3 ) ) );
+
+		source.setIncrementalTransform( new AffineTransform3D() );
+		assertEquals( 1, value( cache.get( FrameCache.key( state, 4, 3 ) ) ) );
+	}
+}
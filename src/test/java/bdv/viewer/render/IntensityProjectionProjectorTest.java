@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+public class IntensityProjectionProjectorTest
+{
+	private static final int SIZE = 16;
+
+	private static final int BLOCK_SIZE = 8;
+
+	private static final long[] GRID_DIMENSIONS = { 2, 2, 2 };
+
+	private static final Converter< UnsignedShortType, UnsignedShortType > COPY = ( a, b ) -> b.set( a );
+
+	/**
+	 * A volume that is zero except for a single bright voxel at {@code (x,y,z)}.
+	 */
+	private static ArrayImg< UnsignedShortType, ShortArray > sparseVolume( final int x, final int y, final int z )
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( SIZE, SIZE, SIZE );
+		final RandomAccess< UnsignedShortType > a = img.randomAccess();
+		a.setPosition( new int[] { x, y, z } );
+		a.get().set( 1000 );
+		return img;
+	}
+
+	/**
+	 * The (min, max) of each block of {@code img}, in flattened grid order.
+	 */
+	private static double[] blockMinMax( final ArrayImg< UnsignedShortType, ShortArray > img )
+	{
+		final double[] minmax = new double[ 16 ];
+		for ( int i = 0; i < 8; ++i )
+		{
+			final int bx = i & 1;
+			final int by = ( i >> 1 ) & 1;
+			final int bz = ( i >> 2 ) & 1;
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for ( final UnsignedShortType t : Views.flatIterable( Views.offsetInterval( img,
+					new long[] { bx * BLOCK_SIZE, by * BLOCK_SIZE, bz * BLOCK_SIZE },
+					new long[] { BLOCK_SIZE, BLOCK_SIZE, BLOCK_SIZE } ) ) )
+			{
+				min = Math.min( min, t.get() );
+				max = Math.max( max, t.get() );
+			}
+			minmax[ 2 * i ] = min;
+			minmax[ 2 * i + 1 ] = max;
+		}
+		return minmax;
+	}
+
+	private static AffineTransform3D screenToGrid()
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.scale( 1.0 / BLOCK_SIZE );
+		t.translate( 0.5 / BLOCK_SIZE - 0.5, 0.5 / BLOCK_SIZE - 0.5, 0.5 / BLOCK_SIZE - 0.5 );
+		return t;
+	}
+
+	/**
+	 * Render a MAX projection over the whole volume (screen coordinates are
+	 * voxel coordinates) and return the target image.
+	 */
+	private static ArrayImg< UnsignedShortType, ShortArray > project(
+			final ArrayImg< UnsignedShortType, ShortArray > img,
+			final double[] blockMinMax,
+			final boolean skipEmptySpace )
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > target = ArrayImgs.unsignedShorts( SIZE, SIZE );
+		final IntensityProjection projection = new IntensityProjection( IntensityProjection.Mode.MAX, 0, SIZE - 1, 1, skipEmptySpace );
+		final IntensityProjectionProjector< UnsignedShortType, UnsignedShortType > projector = new IntensityProjectionProjector<>(
+				Views.interpolate( Views.extendZero( img ), new NearestNeighborInterpolatorFactory<>() ),
+				blockMinMax, GRID_DIMENSIONS, screenToGrid(),
+				COPY, target, projection, 1 );
+		assertTrue( projector.map( true ) );
+		return target;
+	}
+
+	private static void assertOnlyBright( final ArrayImg< UnsignedShortType, ShortArray > target, final int x, final int y )
+	{
+		final RandomAccess< UnsignedShortType > a = target.randomAccess();
+		for ( int ty = 0; ty < SIZE; ++ty )
+			for ( int tx = 0; tx < SIZE; ++tx )
+			{
+				a.setPosition( new int[] { tx, ty } );
+				assertEquals( "pixel (" + tx + ", " + ty + ")", tx == x && ty == y ? 1000 : 0, a.get().get() );
+			}
+	}
+
+	@Test
+	public void testSparseBrightVoxelWithoutSkipping()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = sparseVolume( 5, 6, 3 );
+		assertOnlyBright( project( img, null, false ), 5, 6 );
+		assertOnlyBright( project( img, blockMinMax( img ), false ), 5, 6 );
+	}
+
+	@Test
+	public void testSparseBrightVoxelWithSkipping()
+	{
+		// The coarse mipmap average of this block would round to zero, but the
+		// recorded block maximum is not.
+		final ArrayImg< UnsignedShortType, ShortArray > img = sparseVolume( 5, 6, 3 );
+		assertOnlyBright( project( img, blockMinMax( img ), true ), 5, 6 );
+
+		final ArrayImg< UnsignedShortType, ShortArray > img2 = sparseVolume( 12, 1, 10 );
+		assertOnlyBright( project( img2, blockMinMax( img2 ), true ), 12, 1 );
+	}
+
+	@Test
+	public void testEmptyBlocksAreSkipped()
+	{
+		// with (wrong) statistics claiming all blocks are zero, the voxel is
+		// skipped, which shows that the statistics are used
+		final ArrayImg< UnsignedShortType, ShortArray > img = sparseVolume( 5, 6, 3 );
+		final double[] zeros = new double[ 16 ];
+		assertOnlyBright( project( img, zeros, true ), -1, -1 );
+	}
+
+	@Test
+	public void testUnknownBlocksAreNotSkipped()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = sparseVolume( 5, 6, 3 );
+		final double[] unknown = new double[ 16 ];
+		Arrays.fill( unknown, Double.NaN );
+		assertOnlyBright( project( img, unknown, true ), 5, 6 );
+	}
+
+	@Test
+	public void testSkippingIsOptIn()
+	{
+		assertFalse( IntensityProjection.max( 10 ).skipEmptySpace() );
+		assertTrue( new IntensityProjection( IntensityProjection.Mode.MAX, 0, 10, 0, true ).skipEmptySpace() );
+		assertFalse( new IntensityProjection( IntensityProjection.Mode.MEAN, 0, 10, 0, true ).skipEmptySpace() );
+		assertFalse( new IntensityProjection( IntensityProjection.Mode.MIN, 0, 10, 0, true ).skipEmptySpace() );
+	}
+}
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import bdv.viewer.Interpolation;
+import net.imglib2.FinalDimensions;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class PrefetcherTest
+{
+	/**
+	 * Records the positions at which {@link #get()} is called.
+	 */
+	private static class RecordingRandomAccess extends Point implements RandomAccess< Void >
+	{
+		final List< long[] > accessed = new ArrayList<>();
+
+		RecordingRandomAccess()
+		{
+			super( 3 );
+		}
+
+		@Override
+		public Void get()
+		{
+			accessed.add( positionAsLongArray() );
+			return null;
+		}
+
+		@Override
+		public RecordingRandomAccess copy()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public RecordingRandomAccess copyRandomAccess()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * A single plane of 10x10 cells of 10x10 pixels, covering the 100x100
+	 * screen exactly.
+	 */
+	private static List< long[] > fetchCells( final double[] fovea, final boolean enqueueToFront )
+	{
+		final RecordingRandomAccess cells = new RecordingRandomAccess();
+		Prefetcher.fetchCells(
+				new AffineTransform3D(),
+				new int[] { 10, 10, 1 },
+				new long[] { 100, 100, 1 },
+				new FinalDimensions( 100, 100 ),
+				Interpolation.NEARESTNEIGHBOR,
+				cells,
+				fovea,
+				enqueueToFront );
+		return cells.accessed;
+	}
+
+	/**
+	 * Squared distance of the center of a cell to {@code fovea}.
+	 */
+	private static double distance( final long[] cell, final double[] fovea )
+	{
+		final double dx = cell[ 0 ] * 10 + 4.5 - fovea[ 0 ];
+		final double dy = cell[ 1 ] * 10 + 4.5 - fovea[ 1 ];
+		return dx * dx + dy * dy;
+	}
+
+	private static Set< List< Long > > asSet( final List< long[] > cells )
+	{
+		return cells.stream()
+				.map( c -> Arrays.asList( c[ 0 ], c[ 1 ], c[ 2 ] ) )
+				.collect( Collectors.toSet() );
+	}
+
+	@Test
+	public void testScanOrder()
+	{
+		final List< long[] > cells = fetchCells( null, false );
+		assertEquals( 100, cells.size() );
+		for ( int i = 0; i < 100; ++i )
+			assertArrayEquals( new long[] { i % 10, i / 10, 0 }, cells.get( i ) );
+	}
+
+	@Test
+	public void testFoveatedOrder()
+	{
+		final double[] fovea = { 57, 32 };
+		final List< long[] > cells = fetchCells( fovea, false );
+
+		// the same cells as in scan order
+		assertEquals( 100, cells.size() );
+		assertEquals( asSet( fetchCells( null, false ) ), asSet( cells ) );
+
+		// starting with the cell containing the fovea, by increasing distance
+		assertArrayEquals( new long[] { 5, 3, 0 }, cells.get( 0 ) );
+		for ( int i = 1; i < cells.size(); ++i )
+			assertTrue( distance( cells.get( i - 1 ), fovea ) <= distance( cells.get( i ), fovea ) );
+	}
+
+	@Test
+	public void testFoveatedOrderEnqueueToFront()
+	{
+		// cells enqueued to the front of the queue are loaded in reverse
+		// order, so they are accessed by decreasing distance
+		final double[] fovea = { 57, 32 };
+		final List< long[] > cells = fetchCells( fovea, true );
+		assertEquals( 100, cells.size() );
+		assertArrayEquals( new long[] { 5, 3, 0 }, cells.get( cells.size() - 1 ) );
+		for ( int i = 1; i < cells.size(); ++i )
+			assertTrue( distance( cells.get( i - 1 ), fovea ) >= distance( cells.get( i ), fovea ) );
+	}
+
+	@Test
+	public void testTies()
+	{
+		// fovea at the corner between 4 cells: cells at equal distance keep
+		// their scan order
+		final double[] fovea = { 49.5, 49.5 };
+		final long[][] tied = { { 4, 4, 0 }, { 5, 4, 0 }, { 4, 5, 0 }, { 5, 5, 0 } };
+
+		final List< long[] > cells = fetchCells( fovea, false );
+		for ( int i = 0; i < 4; ++i )
+			assertArrayEquals( tied[ i ], cells.get( i ) );
+
+		final List< long[] > reversed = fetchCells( fovea, true );
+		for ( int i = 0; i < 4; ++i )
+			assertArrayEquals( tied[ i ], reversed.get( 96 + i ) );
+	}
+
+	@Test
+	public void testOffScreenFovea()
+	{
+		// fovea far left of the screen: all visible cells are still fetched,
+		// the leftmost column first
+		final double[] fovea = { -1000, 50 };
+		final List< long[] > cells = fetchCells( fovea, false );
+		assertEquals( 100, cells.size() );
+		assertEquals( 100, asSet( cells ).size() );
+		assertArrayEquals( new long[] { 0, 5, 0 }, cells.get( 0 ) );
+		assertArrayEquals( new long[] { 0, 4, 0 }, cells.get( 1 ) );
+		for ( int i = 0; i < 10; ++i )
+			assertEquals( 0, cells.get( i )[ 0 ] );
+		for ( int i = 1; i < cells.size(); ++i )
+			assertTrue( distance( cells.get( i - 1 ), fovea ) <= distance( cells.get( i ), fovea ) );
+	}
+}
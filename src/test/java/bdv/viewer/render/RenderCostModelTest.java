@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import org.junit.Test;
+
+import bdv.viewer.Interpolation;
+
+import static org.junit.Assert.assertEquals;
+
+public class RenderCostModelTest
+{
+	private static final RenderCostModel.CostKey cheap = new RenderCostModel.CostKey( Byte.class, Object.class, Interpolation.NEARESTNEIGHBOR );
+
+	private static final RenderCostModel.CostKey expensive = new RenderCostModel.CostKey( Float.class, Object.class, Interpolation.NLINEAR );
+
+	@Test
+	public void testConvergesToPerKeyCost()
+	{
+		final double cheapNanos = 20;
+		final double expensiveNanos = 400;
+
+		final RenderCostModel model = new RenderCostModel( 100, 0.5 );
+		for ( int i = 0; i < 200; ++i )
+		{
+			final long numCheap = ( i % 3 == 1 ) ? 0 : 10000;
+			final long numExpensive = ( i % 3 == 0 ) ? 0 : 5000;
+			final RenderCostModel.Estimate estimate = model.new Estimate( 10000 );
+			if ( numCheap > 0 )
+				estimate.add( cheap, numCheap );
+			if ( numExpensive > 0 )
+				estimate.add( expensive, numExpensive );
+			model.record( estimate, ( long ) ( numCheap * cheapNanos + numExpensive * expensiveNanos ) );
+		}
+
+		assertEquals( cheapNanos, model.getNanosPerPixel( cheap ), 1 );
+		assertEquals( expensiveNanos, model.getNanosPerPixel( expensive ), 1 );
+	}
+
+	@Test
+	public void testPrediction()
+	{
+		final RenderCostModel model = new RenderCostModel( 100, 0.5 );
+		final RenderCostModel.Estimate estimate = model.new Estimate( 10000 );
+		estimate.add( cheap, 10000 );
+		estimate.add( expensive, 5000 );
+		assertEquals( 15000, estimate.numRenderedPixels() );
+		assertEquals( 1500000, estimate.getRenderNanos(), 1e-6 );
+		assertEquals( 150, estimate.getRenderNanosPerPixel(), 1e-6 );
+	}
+
+	@Test
+	public void testSmallPassesAreIgnored()
+	{
+		final RenderCostModel model = new RenderCostModel( 100, 0.5 );
+		final RenderCostModel.Estimate estimate = model.new Estimate( 100 );
+		estimate.add( cheap, 100 );
+		model.record( estimate, 1000000 );
+		assertEquals( 100, model.getNanosPerPixel( cheap ), 1e-6 );
+	}
+}
@@ -0,0 +1,101 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class ReprojectionTransformTest
+{
+	private static AffineTransform3D viewerTransform()
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.scale( 2 );
+		t.translate( 100, 50, -20 );
+		return t;
+	}
+
+	@Test
+	public void testIdenticalTransforms()
+	{
+		assertNull( MultiResolutionRenderer.reprojectionTransform( viewerTransform(), viewerTransform(), 1, 100, 100 ) );
+	}
+
+	@Test
+	public void testInPlaneTranslation()
+	{
+		final AffineTransform3D source = viewerTransform();
+		final AffineTransform3D target = viewerTransform();
+		target.translate( 10, -4, 0 );
+
+		final AffineTransform3D t = MultiResolutionRenderer.reprojectionTransform( source, target, 1, 100, 100 );
+		assertNotNull( t );
+		final double[] p = new double[ 3 ];
+		t.apply( new double[] { 20, 30, 0 }, p );
+		assertEquals( 10, p[ 0 ], 1e-9 );
+		assertEquals( 34, p[ 1 ], 1e-9 );
+		assertEquals( 0, p[ 2 ], 1e-9 );
+	}
+
+	@Test
+	public void testScreenScale()
+	{
+		final AffineTransform3D source = viewerTransform();
+		final AffineTransform3D target = viewerTransform();
+		target.translate( 10, -4, 0 );
+
+		final AffineTransform3D t = MultiResolutionRenderer.reprojectionTransform( source, target, 0.5, 50, 50 );
+		assertNotNull( t );
+		final double[] p = new double[ 3 ];
+		t.apply( new double[] { 20, 30, 0 }, p );
+		assertEquals( 15, p[ 0 ], 1e-9 );
+		assertEquals( 32, p[ 1 ], 1e-9 );
+	}
+
+	@Test
+	public void testOutOfPlaneRotation()
+	{
+		final AffineTransform3D source = viewerTransform();
+
+		// tilting by a small angle keeps the corners close to the plane
+		final AffineTransform3D slightlyTilted = viewerTransform();
+		slightlyTilted.rotate( 0, Math.toRadians( 2 ) );
+		assertNotNull( MultiResolutionRenderer.reprojectionTransform( source, slightlyTilted, 1, 100, 100 ) );
+
+		// tilting by 45 degrees moves the far corners ~70 pixels out of the plane
+		final AffineTransform3D tilted = viewerTransform();
+		tilted.rotate( 0, Math.toRadians( 45 ) );
+		assertNull( MultiResolutionRenderer.reprojectionTransform( source, tilted, 1, 100, 100 ) );
+	}
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TilingTest
+{
+	/**
+	 * 3x3 tiles of 10x10 pixels, in row-major order.
+	 */
+	private static List< Tile > createTiles()
+	{
+		final List< Tile > tiles = new ArrayList<>();
+		for ( int y = 0; y < 3; ++y )
+			for ( int x = 0; x < 3; ++x )
+				tiles.add( new Tile( Collections.emptyList(), Collections.emptyList(), 10 * x, 10 * y, 10 * x + 9, 10 * y + 9 ) );
+		return tiles;
+	}
+
+	private static void assertOrder( final List< Tile > tiles, final int[][] expectedMinXY )
+	{
+		assertEquals( expectedMinXY.length, tiles.size() );
+		for ( int i = 0; i < expectedMinXY.length; ++i )
+		{
+			assertEquals( "tile " + i + " min x", expectedMinXY[ i ][ 0 ], tiles.get( i ).tileMinX() );
+			assertEquals( "tile " + i + " min y", expectedMinXY[ i ][ 1 ], tiles.get( i ).tileMinY() );
+		}
+	}
+
+	@Test
+	public void testSortByDistance()
+	{
+		final List< Tile > tiles = createTiles();
+		Tiling.sortByDistance( tiles, 27, 3 );
+
+		// the tile containing the fovea comes first
+		assertEquals( 20, tiles.get( 0 ).tileMinX() );
+		assertEquals( 0, tiles.get( 0 ).tileMinY() );
+
+		// distances are non-decreasing
+		double previous = 0;
+		for ( final Tile tile : tiles )
+		{
+			final double dx = 0.5 * ( tile.tileMinX() + tile.tileMaxX() ) - 27;
+			final double dy = 0.5 * ( tile.tileMinY() + tile.tileMaxY() ) - 3;
+			final double d = dx * dx + dy * dy;
+			assertTrue( d >= previous );
+			previous = d;
+		}
+	}
+
+	@Test
+	public void testTiesKeepOrder()
+	{
+		// fovea at the center of the middle tile: the 4 edge neighbors, and
+		// the 4 corners are at equal distance
+		final List< Tile > tiles = createTiles();
+		Tiling.sortByDistance( tiles, 14.5, 14.5 );
+		assertOrder( tiles, new int[][] {
+				{ 10, 10 },
+				{ 10, 0 }, { 0, 10 }, { 20, 10 }, { 10, 20 },
+				{ 0, 0 }, { 20, 0 }, { 0, 20 }, { 20, 20 } } );
+	}
+
+	@Test
+	public void testOffScreenFovea()
+	{
+		// fovea far left of the screen, at the height of the middle row:
+		// tiles are ordered column by column
+		final List< Tile > tiles = createTiles();
+		Tiling.sortByDistance( tiles, -100, 14.5 );
+		assertOrder( tiles, new int[][] {
+				{ 0, 10 }, { 0, 0 }, { 0, 20 },
+				{ 10, 10 }, { 10, 0 }, { 10, 20 },
+				{ 20, 10 }, { 20, 0 }, { 20, 20 } } );
+	}
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import bdv.BigDataViewer;
+import bdv.export.ProgressWriterNull;
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+import bdv.viewer.render.AccumulateProjectorARGB;
+import net.imglib2.Cursor;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.ByteArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class BatchRendererTest
+{
+	private static final int W = 16;
+
+	private static final int H = 12;
+
+	private final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( W, H, 1 );
+
+	private final SourceAndConverter< UnsignedByteType > source;
+
+	public BatchRendererTest()
+	{
+		final Cursor< UnsignedByteType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( value( c.getIntPosition( 0 ), c.getIntPosition( 1 ) ) );
+		}
+		final UnsignedByteType type = new UnsignedByteType();
+		source = new SourceAndConverter<>(
+				new RandomAccessibleIntervalSource<>( img, type, new AffineTransform3D(), "img" ),
+				BigDataViewer.createConverterToARGB( type ) );
+	}
+
+	private static int value( final int x, final int y )
+	{
+		return x + W * y;
+	}
+
+	/**
+	 * Frame {@code i} shifts the source by {@code i} pixels to the right.
+	 */
+	private List< ViewerState > createFrames( final int numFrames )
+	{
+		final List< ViewerState > frames = new ArrayList<>();
+		for ( int i = 0; i < numFrames; ++i )
+		{
+			final BasicViewerState state = new BasicViewerState();
+			state.addSource( source );
+			state.setSourceActive( source, true );
+			state.setCurrentSource( source );
+			final AffineTransform3D transform = new AffineTransform3D();
+			transform.translate( i, 0, 0 );
+			state.setViewerTransform( transform );
+			frames.add( state );
+		}
+		return frames;
+	}
+
+	@Test
+	public void testRenderFrames() throws IOException
+	{
+		final int numFrames = 5;
+		final List< ViewerState > frames = createFrames( numFrames );
+		final Map< Integer, BufferedImage > written = new ConcurrentHashMap<>();
+		final BatchRenderer renderer = new BatchRenderer( W, H, 2, 2, 2, AccumulateProjectorARGB.factory );
+		renderer.render( frames, ( frame, state, image ) -> {
+			assertSame( frames.get( frame ), state );
+			written.put( frame, image );
+		}, new ProgressWriterNull() );
+
+		assertEquals( numFrames, written.size() );
+		final Converter< UnsignedByteType, ARGBType > converter = source.getConverter();
+		final UnsignedByteType v = new UnsignedByteType();
+		final ARGBType expected = new ARGBType();
+		for ( int i = 0; i < numFrames; ++i )
+		{
+			final BufferedImage image = written.get( i );
+			assertEquals( W, image.getWidth() );
+			assertEquals( H, image.getHeight() );
+			for ( int y = 0; y < H; ++y )
+			{
+				for ( int x = i; x < W; ++x )
+				{
+					v.set( value( x - i, y ) );
+					converter.convert( v, expected );
+					assertEquals( "frame " + i + " at (" + x + ", " + y + ")", expected.get(), image.getRGB( x, y ) );
+				}
+			}
+		}
+	}
+
+	@Test( expected = IOException.class )
+	public void testFailedPaintThrows() throws IOException
+	{
+		// rendering to an empty target fails
+		final BatchRenderer renderer = new BatchRenderer( 0, 0, 1, 1, 1, AccumulateProjectorARGB.factory );
+		renderer.render( createFrames( 2 ), ( frame, state, image ) -> {}, new ProgressWriterNull() );
+	}
+}
@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bdv.viewer.render.RenderResult;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+public class BufferedImageRenderResultTest
+{
+	private static int get( final RenderResult result, final int x, final int y )
+	{
+		final RandomAccess< ARGBType > a = result.getTargetImage().randomAccess();
+		a.setPosition( x, 0 );
+		a.setPosition( y, 1 );
+		return a.get().get();
+	}
+
+	@Test
+	public void testReprojectTranslation()
+	{
+		final BufferedImageRenderResult source = new BufferedImageRenderResult();
+		source.init( 8, 8 );
+		final RandomAccess< ARGBType > a = source.getTargetImage().randomAccess();
+		a.setPosition( 2, 0 );
+		a.setPosition( 3, 1 );
+		a.get().set( 0xff123456 );
+
+		// target (x, y) shows source (x - 1, y + 2)
+		final AffineTransform3D targetToSource = new AffineTransform3D();
+		targetToSource.translate( -1, 2, 0 );
+
+		final BufferedImageRenderResult target = new BufferedImageRenderResult();
+		target.init( 8, 8 );
+		assertTrue( target.reproject( source, targetToSource ) );
+
+		assertEquals( 0xff123456, get( target, 3, 1 ) );
+		for ( int y = 0; y < 8; ++y )
+			for ( int x = 0; x < 8; ++x )
+				if ( x != 3 || y != 1 )
+					assertEquals( 0, get( target, x, y ) );
+
+		// the source is left unchanged
+		assertEquals( 0xff123456, get( source, 2, 3 ) );
+	}
+
+	@Test
+	public void testReprojectClearsTarget()
+	{
+		final BufferedImageRenderResult source = new BufferedImageRenderResult();
+		source.init( 4, 4 );
+
+		final BufferedImageRenderResult target = new BufferedImageRenderResult();
+		target.init( 4, 4 );
+		final RandomAccess< ARGBType > a = target.getTargetImage().randomAccess();
+		a.setPosition( new int[] { 0, 0 } );
+		a.get().set( 0xffffffff );
+
+		// shift everything out of view
+		final AffineTransform3D targetToSource = new AffineTransform3D();
+		targetToSource.translate( 100, 0, 0 );
+		assertTrue( target.reproject( source, targetToSource ) );
+		assertEquals( 0, get( target, 0, 0 ) );
+	}
+
+	@Test
+	public void testReprojectUnsupportedSource()
+	{
+		final BufferedImageRenderResult target = new BufferedImageRenderResult();
+		target.init( 4, 4 );
+		final RenderResult other = new RenderResult()
+		{
+			@Override
+			public void init( final int width, final int height )
+			{}
+
+			@Override
+			public RandomAccessibleInterval< ARGBType > getTargetImage()
+			{
+				return null;
+			}
+
+			@Override
+			public AffineTransform3D getViewerTransform()
+			{
+				return null;
+			}
+
+			@Override
+			public double getScaleFactor()
+			{
+				return 1;
+			}
+
+			@Override
+			public void setScaleFactor( final double scaleFactor )
+			{}
+
+			@Override
+			public void setUpdated()
+			{}
+
+			@Override
+			public void patch( final RenderResult patch, final Interval interval, final double ox, final double oy )
+			{}
+		};
+		assertFalse( target.reproject( other, new AffineTransform3D() ) );
+	}
+}
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class N5TileWriterTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Image size is not a multiple of the tile size, so there are partial
+	 * tiles at the right and bottom edges.
+	 */
+	private static final int W = 40;
+
+	private static final int H = 20;
+
+	private static final int TILE_W = 16;
+
+	private static final int TILE_H = 16;
+
+	private static int pixel( final int x, final int y )
+	{
+		return 0xff000000 | ( x * 5 ) << 16 | ( y * 11 ) << 8 | ( x + y );
+	}
+
+	@Test
+	public void testWriteTiles() throws IOException
+	{
+		final N5Writer n5 = new N5FSWriter( folder.getRoot().getAbsolutePath() );
+		final N5TileWriter writer = new N5TileWriter( n5, "render", new GzipCompression() );
+
+		// write tiles in reverse order, with garbage beyond the image border
+		writer.open( W, H, TILE_W, TILE_H );
+		for ( int y0 = ( H - 1 ) / TILE_H * TILE_H; y0 >= 0; y0 -= TILE_H )
+		{
+			for ( int x0 = ( W - 1 ) / TILE_W * TILE_W; x0 >= 0; x0 -= TILE_W )
+			{
+				final int w = Math.min( TILE_W, W - x0 );
+				final int h = Math.min( TILE_H, H - y0 );
+				final int[] argb = new int[ TILE_W * TILE_H ];
+				for ( int y = 0; y < TILE_H; ++y )
+					for ( int x = 0; x < TILE_W; ++x )
+						argb[ y * TILE_W + x ] = x < w && y < h ? pixel( x0 + x, y0 + y ) : 0xffffffff;
+				writer.write( x0, y0, w, h, argb );
+			}
+		}
+		writer.close();
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes( "render" );
+		assertArrayEquals( new long[] { W, H, 3 }, attributes.getDimensions() );
+		assertArrayEquals( new int[] { TILE_W, TILE_H, 3 }, attributes.getBlockSize() );
+		assertEquals( DataType.UINT8, attributes.getDataType() );
+
+		// one block per tile, RGB channels last
+		for ( int gy = 0; gy < 2; ++gy )
+		{
+			for ( int gx = 0; gx < 3; ++gx )
+			{
+				final DataBlock< ? > block = n5.readBlock( "render", attributes, gx, gy, 0 );
+				assertNotNull( block );
+				final int w = Math.min( TILE_W, W - gx * TILE_W );
+				final int h = Math.min( TILE_H, H - gy * TILE_H );
+				assertArrayEquals( new int[] { w, h, 3 }, block.getSize() );
+
+				final byte[] data = ( byte[] ) block.getData();
+				final int n = w * h;
+				assertEquals( 3 * n, data.length );
+				for ( int y = 0; y < h; ++y )
+				{
+					for ( int x = 0; x < w; ++x )
+					{
+						final int i = y * w + x;
+						final int argb = 0xff000000
+								| ( data[ i ] & 0xff ) << 16
+								| ( data[ i + n ] & 0xff ) << 8
+								| ( data[ i + 2 * n ] & 0xff );
+						final int px = gx * TILE_W + x;
+						final int py = gy * TILE_H + y;
+						assertEquals( "pixel (" + px + ", " + py + ")", pixel( px, py ), argb );
+					}
+				}
+			}
+		}
+
+		// no blocks outside the grid
+		assertNull( n5.readBlock( "render", attributes, 3, 0, 0 ) );
+		assertNull( n5.readBlock( "render", attributes, 0, 2, 0 ) );
+		n5.close();
+	}
+}
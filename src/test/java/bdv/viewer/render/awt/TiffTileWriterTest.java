@@ -0,0 +1,252 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TiffTileWriterTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Image size is not a multiple of the tile size, so there are partial
+	 * tiles at the right and bottom edges.
+	 */
+	private static final int W = 40;
+
+	private static final int H = 20;
+
+	private static final int TILE_W = 16;
+
+	private static final int TILE_H = 16;
+
+	private static int pixel( final int x, final int y )
+	{
+		return 0xff000000 | ( x * 5 ) << 16 | ( y * 11 ) << 8 | ( x + y );
+	}
+
+	/**
+	 * Write all tiles of the test image, in reverse order. Pixels in the
+	 * tile arrays beyond the image border are set to garbage.
+	 */
+	private static void writeTiles( final TiffTileWriter writer ) throws IOException
+	{
+		writer.open( W, H, TILE_W, TILE_H );
+		for ( int y0 = ( H - 1 ) / TILE_H * TILE_H; y0 >= 0; y0 -= TILE_H )
+		{
+			for ( int x0 = ( W - 1 ) / TILE_W * TILE_W; x0 >= 0; x0 -= TILE_W )
+			{
+				final int w = Math.min( TILE_W, W - x0 );
+				final int h = Math.min( TILE_H, H - y0 );
+				final int[] argb = new int[ TILE_W * TILE_H ];
+				for ( int y = 0; y < TILE_H; ++y )
+					for ( int x = 0; x < TILE_W; ++x )
+						argb[ y * TILE_W + x ] = x < w && y < h ? pixel( x0 + x, y0 + y ) : 0xffffffff;
+				writer.write( x0, y0, w, h, argb );
+			}
+		}
+		writer.close();
+	}
+
+	@Test
+	public void testTiff() throws IOException
+	{
+		final File file = folder.newFile( "test.tif" );
+		writeTiles( new TiffTileWriter( file ) );
+		final Tiff tiff = Tiff.read( file );
+		assertFalse( tiff.bigTiff );
+		assertImage( tiff );
+	}
+
+	@Test
+	public void testBigTiff() throws IOException
+	{
+		final File file = folder.newFile( "test.tif" );
+		writeTiles( new TiffTileWriter( file, true ) );
+		final Tiff tiff = Tiff.read( file );
+		assertTrue( tiff.bigTiff );
+		assertImage( tiff );
+	}
+
+	private static void assertImage( final Tiff tiff )
+	{
+		assertEquals( W, tiff.width );
+		assertEquals( H, tiff.height );
+		assertEquals( TILE_W, tiff.tileWidth );
+		assertEquals( TILE_H, tiff.tileHeight );
+
+		final int numTiles = 3 * 2;
+		assertEquals( numTiles, tiff.tileOffsets.length );
+		for ( int i = 0; i < numTiles; ++i )
+			assertEquals( 3 * TILE_W * TILE_H, tiff.tileByteCounts[ i ] );
+
+		for ( int y = 0; y < H; ++y )
+			for ( int x = 0; x < W; ++x )
+				assertEquals( "pixel (" + x + ", " + y + ")", pixel( x, y ), tiff.get( x, y ) );
+
+		// padding of partial tiles (beyond the image border) is zero
+		for ( int y = 0; y < TILE_H; ++y )
+			for ( int x = W % TILE_W; x < TILE_W; ++x )
+				assertEquals( 0xff000000, tiff.getInTile( 2, x, y ) );
+		for ( int y = H % TILE_H; y < TILE_H; ++y )
+			for ( int x = 0; x < TILE_W; ++x )
+				assertEquals( 0xff000000, tiff.getInTile( 3, x, y ) );
+	}
+
+	/**
+	 * Minimal reader for the tiled, uncompressed, chunky RGB TIFFs written by
+	 * {@link TiffTileWriter}.
+	 */
+	static class Tiff
+	{
+		boolean bigTiff;
+
+		long width;
+
+		long height;
+
+		int tileWidth;
+
+		int tileHeight;
+
+		long[] tileOffsets;
+
+		long[] tileByteCounts;
+
+		private ByteBuffer data;
+
+		static Tiff read( final File file ) throws IOException
+		{
+			final Tiff tiff = new Tiff();
+			final ByteBuffer data = ByteBuffer.wrap( Files.readAllBytes( file.toPath() ) ).order( ByteOrder.LITTLE_ENDIAN );
+			tiff.data = data;
+			assertEquals( 'I', data.get( 0 ) );
+			assertEquals( 'I', data.get( 1 ) );
+			final int version = data.getShort( 2 );
+			tiff.bigTiff = version == 43;
+			final long ifdOffset;
+			if ( tiff.bigTiff )
+			{
+				assertEquals( 8, data.getShort( 4 ) );
+				ifdOffset = data.getLong( 8 );
+			}
+			else
+			{
+				assertEquals( 42, version );
+				ifdOffset = data.getInt( 4 ) & 0xffffffffL;
+			}
+
+			final Map< Integer, long[] > entries = readIfd( data, ( int ) ifdOffset, tiff.bigTiff );
+			assertArrayEquals( new long[] { 8, 8, 8 }, entries.get( 258 ) ); // BitsPerSample
+			assertArrayEquals( new long[] { 1 }, entries.get( 259 ) ); // Compression: none
+			assertArrayEquals( new long[] { 2 }, entries.get( 262 ) ); // PhotometricInterpretation: RGB
+			assertArrayEquals( new long[] { 3 }, entries.get( 277 ) ); // SamplesPerPixel
+			assertArrayEquals( new long[] { 1 }, entries.get( 284 ) ); // PlanarConfiguration: chunky
+			tiff.width = entries.get( 256 )[ 0 ];
+			tiff.height = entries.get( 257 )[ 0 ];
+			tiff.tileWidth = ( int ) entries.get( 322 )[ 0 ];
+			tiff.tileHeight = ( int ) entries.get( 323 )[ 0 ];
+			tiff.tileOffsets = entries.get( 324 );
+			tiff.tileByteCounts = entries.get( 325 );
+			return tiff;
+		}
+
+		/**
+		 * ARGB value of pixel {@code (x, y)} of the image.
+		 */
+		int get( final long x, final long y )
+		{
+			final int numTilesX = ( int ) ( ( width + tileWidth - 1 ) / tileWidth );
+			final int tile = ( int ) ( y / tileHeight ) * numTilesX + ( int ) ( x / tileWidth );
+			return getInTile( tile, ( int ) ( x % tileWidth ), ( int ) ( y % tileHeight ) );
+		}
+
+		/**
+		 * ARGB value of pixel {@code (x, y)} of the given tile.
+		 */
+		int getInTile( final int tile, final int x, final int y )
+		{
+			final int o = ( int ) tileOffsets[ tile ] + 3 * ( y * tileWidth + x );
+			return 0xff000000
+					| ( data.get( o ) & 0xff ) << 16
+					| ( data.get( o + 1 ) & 0xff ) << 8
+					| ( data.get( o + 2 ) & 0xff );
+		}
+
+		private static Map< Integer, long[] > readIfd( final ByteBuffer data, final int ifdOffset, final boolean bigTiff )
+		{
+			final Map< Integer, long[] > entries = new HashMap<>();
+			final int numEntries = ( int ) ( bigTiff ? data.getLong( ifdOffset ) : data.getShort( ifdOffset ) & 0xffff );
+			final int entrySize = bigTiff ? 20 : 12;
+			final int inlineSize = bigTiff ? 8 : 4;
+			int pos = ifdOffset + ( bigTiff ? 8 : 2 );
+			for ( int i = 0; i < numEntries; ++i, pos += entrySize )
+			{
+				final int tag = data.getShort( pos ) & 0xffff;
+				final int type = data.getShort( pos + 2 );
+				final int count = ( int ) ( bigTiff ? data.getLong( pos + 4 ) : data.getInt( pos + 4 ) );
+				final int typeSize = type == 3 ? 2 : type == 4 ? 4 : type == 16 ? 8 : -1;
+				if ( typeSize < 0 )
+					throw new AssertionError( "unexpected type " + type + " of tag " + tag );
+				final int valuePos = pos + ( bigTiff ? 12 : 8 );
+				final int valuesOffset = count * typeSize <= inlineSize
+						? valuePos
+						: ( int ) ( bigTiff ? data.getLong( valuePos ) : data.getInt( valuePos ) & 0xffffffffL );
+				final long[] values = new long[ count ];
+				for ( int j = 0; j < count; ++j )
+				{
+					final int p = valuesOffset + j * typeSize;
+					values[ j ] = typeSize == 2
+							? data.getShort( p ) & 0xffff
+							: typeSize == 4
+									? data.getInt( p ) & 0xffffffffL
+									: data.getLong( p );
+				}
+				entries.put( tag, values );
+			}
+			return entries;
+		}
+	}
+}
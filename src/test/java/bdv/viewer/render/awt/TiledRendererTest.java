@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2024 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render.awt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bdv.BigDataViewer;
+import bdv.export.ProgressWriterNull;
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.AccumulateProjectorARGB;
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.ByteArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class TiledRendererTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Image size is not a multiple of the tile size, so there are partial
+	 * tiles at the right and bottom edges.
+	 */
+	private static final int W = 40;
+
+	private static final int H = 20;
+
+	private static final int TILE_W = 16;
+
+	private static final int TILE_H = 16;
+
+	private final SourceAndConverter< UnsignedByteType > source;
+
+	private final BasicViewerState state;
+
+	public TiledRendererTest()
+	{
+		final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( W, H, 1 );
+		final Cursor< UnsignedByteType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( value( c.getIntPosition( 0 ), c.getIntPosition( 1 ) ) );
+		}
+		final UnsignedByteType type = new UnsignedByteType();
+		source = new SourceAndConverter<>(
+				new RandomAccessibleIntervalSource<>( img, type, new AffineTransform3D(), "img" ),
+				BigDataViewer.createConverterToARGB( type ) );
+
+		// identity viewer transform: image pixel (x,y) shows source voxel (x,y,0)
+		state = new BasicViewerState();
+		state.addSource( source );
+		state.setSourceActive( source, true );
+		state.setCurrentSource( source );
+	}
+
+	private static int value( final int x, final int y )
+	{
+		return 5 * x + y;
+	}
+
+	private int expectedPixel( final int x, final int y )
+	{
+		final ARGBType argb = new ARGBType();
+		source.getConverter().convert( new UnsignedByteType( value( x, y ) ), argb );
+		return argb.get();
+	}
+
+	private static TiledRenderer createRenderer()
+	{
+		return new TiledRenderer( W, H, TILE_W, TILE_H, 2, 2, 2, AccumulateProjectorARGB.factory );
+	}
+
+	/**
+	 * Collects tiles into a full image.
+	 */
+	private static class ImageTileWriter implements TiledRenderer.TileWriter
+	{
+		final int[] image = new int[ W * H ];
+
+		final Set< String > tiles = ConcurrentHashMap.newKeySet();
+
+		volatile boolean opened;
+
+		volatile boolean closed;
+
+		@Override
+		public void open( final long width, final long height, final int tileWidth, final int tileHeight )
+		{
+			assertEquals( W, width );
+			assertEquals( H, height );
+			assertEquals( TILE_W, tileWidth );
+			assertEquals( TILE_H, tileHeight );
+			opened = true;
+		}
+
+		@Override
+		public void write( final long x, final long y, final int w, final int h, final int[] argb )
+		{
+			assertTrue( opened );
+			assertEquals( TILE_W * TILE_H, argb.length );
+			assertEquals( Math.min( TILE_W, W - x ), w );
+			assertEquals( Math.min( TILE_H, H - y ), h );
+			assertTrue( "tile " + x + "," + y + " written twice", tiles.add( x + "," + y ) );
+			for ( int yi = 0; yi < h; ++yi )
+				System.arraycopy( argb, yi * TILE_W, image, ( int ) ( ( y + yi ) * W + x ), w );
+		}
+
+		@Override
+		public void close()
+		{
+			closed = true;
+		}
+	}
+
+	@Test
+	public void testRenderTiles() throws IOException
+	{
+		final ImageTileWriter writer = new ImageTileWriter();
+		createRenderer().render( state, writer, new ProgressWriterNull() );
+
+		assertTrue( writer.closed );
+		assertEquals( 3 * 2, writer.tiles.size() );
+		for ( int y = 0; y < H; ++y )
+			for ( int x = 0; x < W; ++x )
+				assertEquals( "pixel (" + x + ", " + y + ")", expectedPixel( x, y ), writer.image[ y * W + x ] );
+	}
+
+	@Test
+	public void testRenderToTiff() throws IOException
+	{
+		final File file = folder.newFile( "render.tif" );
+		createRenderer().render( state, new TiffTileWriter( file ), new ProgressWriterNull() );
+
+		final TiffTileWriterTest.Tiff tiff = TiffTileWriterTest.Tiff.read( file );
+		assertEquals( W, tiff.width );
+		assertEquals( H, tiff.height );
+		for ( int y = 0; y < H; ++y )
+			for ( int x = 0; x < W; ++x )
+				assertEquals( "pixel (" + x + ", " + y + ")", expectedPixel( x, y ) | 0xff000000, tiff.get( x, y ) );
+	}
+}